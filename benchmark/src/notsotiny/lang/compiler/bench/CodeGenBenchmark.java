@@ -0,0 +1,209 @@
+package notsotiny.lang.compiler.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.cenotelie.hime.redist.parsers.InitializationException;
+import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.aasm.AASMPart;
+import notsotiny.lang.compiler.bench.CompilerFixture.FunctionFixture;
+import notsotiny.lang.compiler.codegen.ISelTileSelector;
+import notsotiny.lang.compiler.codegen.alloc.RAStrategy;
+import notsotiny.lang.compiler.codegen.alloc.RegisterAllocator;
+import notsotiny.lang.compiler.codegen.dag.ISelDAG;
+import notsotiny.lang.compiler.codegen.dag.ISelDAGNode;
+import notsotiny.lang.compiler.codegen.dag.ISelDAGTile;
+import notsotiny.lang.compiler.codegen.pattern.ISelPatternMatcher;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lib.data.Pair;
+
+/**
+ * Pattern matching, tile selection, and register allocation over every function of a file
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class CodeGenBenchmark {
+    
+    // Tile selections per measured batch
+    private static final int SELECTION_BATCH_SIZE = 20;
+    
+    /**
+     * DAGs for each function. Pattern matching doesn't modify them, so they're built once.
+     */
+    @State(Scope.Thread)
+    public static class DAGState {
+        
+        @Param({
+            "test/benchmark/badappleplayer.nstl",
+            "test/benchmark/benchmark.nstl",
+            "test/benchmark/graph.nstl",
+            "test/benchmark/mandel.nstl",
+            "test/benchmark/queens.nstl",
+            "test/maths/complex.nstl",
+            "test/maths/fft.nstl",
+            "test/maths/float.nstl"
+        })
+        public String file;
+        
+        public List<FunctionFixture> functions;
+        
+        @Setup
+        public void setup() throws IOException, CompilationException, InitializationException {
+            this.functions = new CompilerFixture(this.file).buildDAGs();
+        }
+    }
+    
+    /**
+     * Matches for tile selection. Selection modifies the matched tiles, so each invocation of a batch gets
+     * its own matches. Preparing them per iteration keeps setup out of the timed region without
+     * per-invocation overhead. Kept apart from DAGState so that pattern matching doesn't prepare them.
+     */
+    @State(Scope.Thread)
+    public static class MatchState {
+        
+        public List<FunctionFixture> functions;
+        
+        // Matches for each invocation in a batch. Each holds the matches for each DAG, in the same order as the functions' DAG lists
+        public List<List<Map<ISelDAGNode, Set<ISelDAGTile>>>> matches;
+        
+        // Next entry of matches to use
+        public int nextMatches;
+        
+        /**
+         * @param dags
+         * @throws CompilationException
+         */
+        @Setup(Level.Iteration)
+        public void match(DAGState dags) throws CompilationException {
+            this.functions = dags.functions;
+            this.matches = new ArrayList<>(SELECTION_BATCH_SIZE);
+            this.nextMatches = 0;
+            
+            for(int b = 0; b < SELECTION_BATCH_SIZE; b++) {
+                List<Map<ISelDAGNode, Set<ISelDAGTile>>> batchMatches = new ArrayList<>();
+                
+                for(FunctionFixture fixture : this.functions) {
+                    for(ISelDAG dag : fixture.dags()) {
+                        batchMatches.add(ISelPatternMatcher.matchPatterns(dag, fixture.typeMap()));
+                    }
+                }
+                
+                this.matches.add(batchMatches);
+            }
+        }
+    }
+    
+    /**
+     * Scheduled abstract assembly for each function. The allocator doesn't modify the code, but it interns
+     * spill names into the function, so each invocation allocates for a fresh copy of each function.
+     */
+    @State(Scope.Thread)
+    public static class ScheduleState {
+        
+        @Param({
+            "test/benchmark/badappleplayer.nstl",
+            "test/benchmark/benchmark.nstl",
+            "test/benchmark/graph.nstl",
+            "test/benchmark/mandel.nstl",
+            "test/benchmark/queens.nstl",
+            "test/maths/complex.nstl",
+            "test/maths/fft.nstl",
+            "test/maths/float.nstl"
+        })
+        public String file;
+        
+        @Param
+        public RAStrategy.Coalescing coalescing;
+        
+        @Param
+        public RAStrategy.SpillHeuristic spillHeuristic;
+        
+        public List<Pair<IRFunction, List<List<AASMPart>>>> scheduled;
+        
+        public RAStrategy strategy;
+        
+        // Copies of the scheduled functions for the next invocation
+        public List<IRFunction> functions;
+        
+        @Setup
+        public void setup() throws IOException, CompilationException, InitializationException {
+            this.scheduled = new CompilerFixture(this.file).schedule();
+            this.strategy = new RAStrategy(false, this.coalescing, this.spillHeuristic, 0);
+        }
+        
+        @Setup(Level.Invocation)
+        public void copyFunctions() {
+            this.functions = new ArrayList<>(this.scheduled.size());
+            
+            for(Pair<IRFunction, List<List<AASMPart>>> function : this.scheduled) {
+                IRFunction f = function.a;
+                
+                // Same code, fresh identifier table
+                this.functions.add(new IRFunction(f.getID(), f.getReturnType(), f.getArguments(), f.getBasicBlockList(), f.isExternal(), f.getFUIDCounter(), f.getModule(), f.getSourceLineNumber()));
+            }
+        }
+    }
+    
+    @Benchmark
+    public void patternMatching(DAGState state, Blackhole bh) throws CompilationException {
+        for(FunctionFixture fixture : state.functions) {
+            for(ISelDAG dag : fixture.dags()) {
+                bh.consume(ISelPatternMatcher.matchPatterns(dag, fixture.typeMap()));
+            }
+        }
+    }
+    
+    /**
+     * Timed as single shots over batches, as each invocation consumes a set of matches prepared per iteration.
+     * Reported times are for a batch of SELECTION_BATCH_SIZE selections over the file.
+     * @param state
+     * @param bh
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = SELECTION_BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = SELECTION_BATCH_SIZE)
+    public void tileSelection(MatchState state, Blackhole bh) {
+        List<Map<ISelDAGNode, Set<ISelDAGTile>>> matches = state.matches.get(state.nextMatches++);
+        int i = 0;
+        
+        for(FunctionFixture fixture : state.functions) {
+            for(ISelDAG dag : fixture.dags()) {
+                Map<ISelDAGNode, ISelDAGTile> selectedTiles = new HashMap<>();
+                Map<ISelDAGNode, Set<ISelDAGTile>> coveringTiles = new HashMap<>();
+                ISelTileSelector.selectTiles(selectedTiles, coveringTiles, dag, matches.get(i++));
+                bh.consume(selectedTiles);
+            }
+        }
+    }
+    
+    @Benchmark
+    public void registerAllocation(ScheduleState state, Blackhole bh) throws CompilationException {
+        for(int i = 0; i < state.scheduled.size(); i++) {
+            bh.consume(RegisterAllocator.allocateRegisters(state.scheduled.get(i).b, state.functions.get(i), state.strategy, () -> false, false, false));
+        }
+    }
+    
+}
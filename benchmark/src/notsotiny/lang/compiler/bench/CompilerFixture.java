@@ -0,0 +1,233 @@
+package notsotiny.lang.compiler.bench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import asmlib.util.FileLocator;
+import fr.cenotelie.hime.redist.ASTNode;
+import fr.cenotelie.hime.redist.ParseResult;
+import fr.cenotelie.hime.redist.parsers.InitializationException;
+import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.NSTLCompiler;
+import notsotiny.lang.compiler.aasm.AASMPart;
+import notsotiny.lang.compiler.codegen.ISelTileSelector;
+import notsotiny.lang.compiler.codegen.InterBlockScheduler;
+import notsotiny.lang.compiler.codegen.IntraBlockScheduler;
+import notsotiny.lang.compiler.codegen.dag.ISelDAG;
+import notsotiny.lang.compiler.codegen.dag.ISelDAGBuilder;
+import notsotiny.lang.compiler.codegen.dag.ISelDAGNode;
+import notsotiny.lang.compiler.codegen.dag.ISelDAGTile;
+import notsotiny.lang.compiler.codegen.pattern.ISelPatternMatcher;
+import notsotiny.lang.compiler.codegen.pretransform.ISelPretransformConditionalArguments;
+import notsotiny.lang.compiler.irgen.IRGenV1;
+import notsotiny.lang.compiler.optimization.IROptV1;
+import notsotiny.lang.compiler.optimization.IROptimizationPass;
+import notsotiny.lang.ir.parts.IRBasicBlock;
+import notsotiny.lang.ir.parts.IRDefinition;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRIdentifier;
+import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.parts.IRType;
+import notsotiny.lang.ir.util.IRBinaryReader;
+import notsotiny.lang.ir.util.IRUtil;
+import notsotiny.lang.parser.NstlgrammarLexer;
+import notsotiny.lang.parser.NstlgrammarParser;
+import notsotiny.lib.data.Pair;
+
+/**
+ * A source file prepared for benchmarking, with helpers to run the compiler up to a given stage.
+ * Paths are relative to the compiler project directory, which is the working directory unless the
+ * nstl.root system property says otherwise.
+ */
+public class CompilerFixture {
+    
+    // Names of optimization passes in pipeline order, as run by IROptV1
+    public static final List<String> PASS_ORDER = List.of("sccp", "bbmerge", "gvnpre", "bbmerge", "lcse");
+    
+    private Path sourceFile,
+                 standardDir;
+    
+    private String source,
+                   libName;
+    
+    private ASTNode ast;
+    
+    /**
+     * Code generation state of a function, ready for instruction selection
+     */
+    public record FunctionFixture(IRFunction function, Map<IRIdentifier, IRType> typeMap, Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets, Map<IRIdentifier, Integer> loopDepths, List<ISelDAG> dags) {}
+    
+    /**
+     * @param file Source file relative to the project directory
+     * @throws IOException
+     * @throws InitializationException
+     */
+    public CompilerFixture(String file) throws IOException, InitializationException {
+        Path root = Paths.get(System.getProperty("nstl.root", "")).toAbsolutePath();
+        
+        Properties properties = new Properties();
+        try(FileInputStream fis = new FileInputStream(root.resolve("lib.properties").toFile())) {
+            properties.load(fis);
+        }
+        
+        this.sourceFile = root.resolve(file);
+        this.standardDir = root.resolve(properties.getProperty("stdlib", ""));
+        this.source = Files.readString(this.sourceFile);
+        
+        String fileName = this.sourceFile.getFileName().toString();
+        this.libName = fileName.substring(0, fileName.lastIndexOf('.'));
+        this.ast = parse();
+    }
+    
+    /**
+     * Parses the source file
+     * @return
+     * @throws InitializationException
+     */
+    public ASTNode parse() throws InitializationException {
+        NstlgrammarParser parser = new NstlgrammarParser(new NstlgrammarLexer(this.source));
+        ParseResult result = parser.parse();
+        
+        if(result.getErrors().size() != 0) {
+            throw new IllegalStateException("Errors parsing " + this.sourceFile + ": " + result.getErrors());
+        }
+        
+        return result.getRoot();
+    }
+    
+    /**
+     * Generates unoptimized IR from the parsed source
+     * @return
+     * @throws CompilationException
+     */
+    public IRModule generateIR() throws CompilationException {
+        FileLocator locator = new FileLocator(this.sourceFile.getParent(), this.standardDir, NSTLCompiler.SOURCE_EXTENSIONS, NSTLCompiler.HEADER_EXTENSIONS);
+        locator.addFile(this.sourceFile);
+        locator.setWorkingDirectory(this.sourceFile);
+        
+        return new IRGenV1().generate(this.ast, this.libName, locator, this.sourceFile);
+    }
+    
+    /**
+     * Loads a binary IR snapshot, as written by -irfb, without parsing or generating IR
+     * @param file Binary IR file relative to the project directory
+     * @return
+     * @throws IOException
+     */
+    public static IRModule loadIR(String file) throws IOException {
+        Path root = Paths.get(System.getProperty("nstl.root", "")).toAbsolutePath();
+        return IRBinaryReader.read(root.resolve(file));
+    }
+    
+    /**
+     * Creates a pass by name
+     * @param name
+     * @return
+     */
+    public static IROptimizationPass createPass(String name) {
+        return IROptV1.createPass(name);
+    }
+    
+    /**
+     * Generates IR and runs the pipeline up to the first occurrence of a pass
+     * @param pass Pass to stop before, or null to run the whole pipeline
+     * @return
+     * @throws CompilationException
+     */
+    public IRModule generateIRBefore(String pass) throws CompilationException {
+        IRModule module = generateIR();
+        
+        for(String name : PASS_ORDER) {
+            if(name.equals(pass)) {
+                break;
+            }
+            
+            module = createPass(name).optimize(module);
+        }
+        
+        return module;
+    }
+    
+    /**
+     * Generates optimized IR and builds instruction selection DAGs for each function
+     * @return
+     * @throws CompilationException
+     */
+    public List<FunctionFixture> buildDAGs() throws CompilationException {
+        return buildDAGs(generateIRBefore(null));
+    }
+    
+    /**
+     * Builds instruction selection DAGs for each function of a module
+     * @param module
+     * @return
+     * @throws CompilationException
+     */
+    public static List<FunctionFixture> buildDAGs(IRModule module) throws CompilationException {
+        List<FunctionFixture> functions = new ArrayList<>();
+        
+        for(IRFunction function : module.getInternalFunctions().values()) {
+            new ISelPretransformConditionalArguments().transform(function);
+            
+            Map<IRIdentifier, IRType> typeMap = IRUtil.getTypeMap(function);
+            Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets = IRUtil.getLivenessSets(function, false);
+            Map<IRIdentifier, Integer> loopDepths = IRUtil.getLoopDepths(function, IRUtil.getLoopNestingForest(function));
+            Map<IRIdentifier, IRDefinition> definitionMap = IRUtil.getDefinitionMap(function);
+            Map<IRIdentifier, ISelDAG> bbDAGs = new HashMap<>();
+            
+            for(IRBasicBlock irBB : new ArrayList<>(function.getBasicBlockList())) {
+                IRUtil.inferNoneTypes(irBB, typeMap);
+                bbDAGs.putAll(ISelDAGBuilder.buildDAG(irBB, typeMap, livenessSets, definitionMap));
+            }
+            
+            functions.add(new FunctionFixture(function, typeMap, livenessSets, loopDepths, new ArrayList<>(bbDAGs.values())));
+        }
+        
+        return functions;
+    }
+    
+    /**
+     * Runs instruction selection and scheduling, producing the register allocator's input for each function
+     * @return Pairs of (function, scheduled code)
+     * @throws CompilationException
+     */
+    public List<Pair<IRFunction, List<List<AASMPart>>>> schedule() throws CompilationException {
+        return schedule(buildDAGs());
+    }
+    
+    /**
+     * Runs instruction selection and scheduling on built DAGs
+     * @param fixtures
+     * @return Pairs of (function, scheduled code)
+     * @throws CompilationException
+     */
+    public static List<Pair<IRFunction, List<List<AASMPart>>>> schedule(List<FunctionFixture> fixtures) throws CompilationException {
+        List<Pair<IRFunction, List<List<AASMPart>>>> scheduled = new ArrayList<>();
+        
+        for(FunctionFixture fixture : fixtures) {
+            Map<IRIdentifier, List<List<AASMPart>>> bbAASMs = new HashMap<>();
+            
+            for(ISelDAG dag : fixture.dags()) {
+                Map<ISelDAGNode, Set<ISelDAGTile>> matchingTilesMap = ISelPatternMatcher.matchPatterns(dag, fixture.typeMap());
+                Map<ISelDAGNode, ISelDAGTile> selectedTiles = new HashMap<>();
+                Map<ISelDAGNode, Set<ISelDAGTile>> coveringTiles = new HashMap<>();
+                ISelTileSelector.selectTiles(selectedTiles, coveringTiles, dag, matchingTilesMap);
+                bbAASMs.put(dag.getBasicBlock().getID(), IntraBlockScheduler.scheduleBlock(dag, selectedTiles, coveringTiles));
+            }
+            
+            scheduled.add(new Pair<>(fixture.function(), InterBlockScheduler.scheduleBlocks(fixture.function(), bbAASMs, fixture.livenessSets(), fixture.loopDepths())));
+        }
+        
+        return scheduled;
+    }
+    
+}
@@ -0,0 +1,295 @@
+package notsotiny.lang.compiler.bench;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import fr.cenotelie.hime.redist.parsers.InitializationException;
+import notsotiny.lang.compiler.NSTLCompiler;
+
+/**
+ * Compiles the programs in test/benchmark at each optimization level, runs them on the simulator, and
+ * compares cycle counts and code size against a baseline.
+ *
+ * Each benchmark is run from a generated driver which initializes the fake OS, calls the benchmark's
+ * entry function, and defers to the OS, the same way benchmark.nstl does. The cost of a driver that only
+ * initializes the OS and defers is subtracted, so reported cycles are those of the benchmark alone. Code
+ * size is the total size of the driver's object files. Drivers are compiled in a scratch copy of
+ * test/benchmark so that the benchmark's libraries are found without writing to the source tree.
+ *
+ * No baseline is committed, as it depends on the simulator build. Run with -update to record one before
+ * checking for regressions.
+ *
+ * Run from the compiler project directory.
+ * Usage: CycleBenchmarkRunner [-update] [-threshold <percent>] [-baseline <file>]
+ * Exits with status 1 if any benchmark regresses past the threshold.
+ */
+public class CycleBenchmarkRunner {
+    
+    private static final Path BENCHMARK_DIR = Paths.get("test", "benchmark");
+    
+    private static final Path DEFAULT_BASELINE = BENCHMARK_DIR.resolve("baseline.properties");
+    
+    private static final int[] LEVELS = { 0, 1, 2, 3 };
+    
+    // Stop runaway programs well past the largest benchmark
+    private static final long CYCLE_LIMIT = 20_000_000_000l;
+    
+    /**
+     * A benchmark program
+     * @param name Name used in reports and the baseline
+     * @param library Library name of the program
+     * @param function Entry function
+     * @param declare Whether the driver needs to declare the entry function (i.e. the program has no header)
+     */
+    private record Benchmark(String name, String library, String function, boolean declare) {}
+    
+    private static final List<Benchmark> BENCHMARKS = List.of(
+            new Benchmark("mandel", "_mandel", "mandel", true),
+            new Benchmark("queens", "_queens", "queens", true),
+            new Benchmark("graph", "_graph", "run", false),
+            new Benchmark("badapple", "_badappleplayer", "main", true)
+    );
+    
+    // Driver for measuring fake OS startup
+    private static final Benchmark EMPTY = new Benchmark("empty", null, null, false);
+    
+    /**
+     * Measured results of a benchmark
+     */
+    private record Result(long cycles, long size) {}
+    
+    public static void main(String[] args) throws IOException, InitializationException {
+        boolean update = false;
+        double threshold = 1.0;
+        Path baselineFile = DEFAULT_BASELINE;
+        
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-update":
+                    update = true;
+                    break;
+                
+                case "-threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                
+                case "-baseline":
+                    baselineFile = Paths.get(args[++i]);
+                    break;
+                
+                default:
+                    System.out.println("Usage: CycleBenchmarkRunner [-update] [-threshold <percent>] [-baseline <file>]");
+                    System.exit(2);
+                    return;
+            }
+        }
+        
+        // Load the baseline
+        Properties baseline = new Properties();
+        boolean hasBaseline = Files.exists(baselineFile);
+        
+        if(hasBaseline) {
+            try(FileInputStream fis = new FileInputStream(baselineFile.toFile())) {
+                baseline.load(fis);
+            }
+        } else if(!update) {
+            System.out.println("No baseline at " + baselineFile + ". Run with -update to create one.");
+        }
+        
+        Properties results = new Properties();
+        List<String> regressions = new ArrayList<>();
+        Path workDir = Files.createTempDirectory("nstlbench");
+        
+        try {
+            // Drivers have to sit next to the benchmarks for their libraries to be found
+            Path sourceDir = workDir.resolve("src");
+            copyRecursively(BENCHMARK_DIR, sourceDir);
+            
+            for(int level : LEVELS) {
+                Result empty = measure(EMPTY, level, sourceDir, workDir);
+                long total = 0;
+                
+                for(Benchmark bench : BENCHMARKS) {
+                    Result res = measure(bench, level, sourceDir, workDir);
+                    long cycles = res.cycles() - empty.cycles();
+                    String key = bench.name() + ".O" + level;
+                    
+                    total += cycles;
+                    results.setProperty(key + ".cycles", Long.toString(cycles));
+                    results.setProperty(key + ".size", Long.toString(res.size()));
+                    
+                    System.out.println(String.format("%-10s O%d  %,16d cycles  %,10d bytes", bench.name(), level, cycles, res.size()));
+                    
+                    if(hasBaseline) {
+                        check(regressions, key + ".cycles", cycles, baseline, threshold);
+                        check(regressions, key + ".size", res.size(), baseline, threshold);
+                    }
+                }
+                
+                results.setProperty("total.O" + level + ".cycles", Long.toString(total));
+                System.out.println(String.format("%-10s O%d  %,16d cycles", "total", level, total));
+                
+                if(hasBaseline) {
+                    check(regressions, "total.O" + level + ".cycles", total, baseline, threshold);
+                }
+            }
+        } finally {
+            deleteRecursively(workDir);
+        }
+        
+        if(update) {
+            try(FileOutputStream fos = new FileOutputStream(baselineFile.toFile())) {
+                results.store(fos, "Benchmark baseline. Generated by CycleBenchmarkRunner -update");
+            }
+            
+            System.out.println("Wrote baseline to " + baselineFile);
+        } else if(!regressions.isEmpty()) {
+            System.out.println("Regressions beyond " + threshold + "%:");
+            
+            for(String r : regressions) {
+                System.out.println("\t" + r);
+            }
+            
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Compiles and runs a benchmark
+     * @param bench
+     * @param level Optimization level
+     * @param sourceDir Copy of the benchmark sources to put the driver in
+     * @param workDir Scratch directory
+     * @return
+     * @throws IOException
+     * @throws InitializationException
+     */
+    private static Result measure(Benchmark bench, int level, Path sourceDir, Path workDir) throws IOException, InitializationException {
+        Path driver = sourceDir.resolve("bench_" + bench.name() + ".nstl");
+        Path outDir = workDir.resolve(bench.name() + "_O" + level);
+        Path execFile = workDir.resolve(bench.name() + "_O" + level + ".oex");
+        
+        Files.createDirectories(outDir);
+        Files.writeString(driver, createDriver(bench));
+        
+        String[] args = { "-O", Integer.toString(level), "-o", outDir.toString(), "-x", execFile.toString(), driver.toString() };
+        
+        if(!NSTLCompiler.compile(args, Paths.get("").toAbsolutePath()).succeeded()) {
+            throw new IllegalStateException("Could not compile " + bench.name());
+        }
+        
+        long size;
+        try(Stream<Path> files = Files.list(outDir)) {
+            size = files.filter(p -> p.toString().endsWith(".obj"))
+                        .mapToLong(p -> p.toFile().length())
+                        .sum();
+        }
+        
+        long cycles = new SimulatedMachine(execFile).run(CYCLE_LIMIT);
+        
+        return new Result(cycles, size);
+    }
+    
+    /**
+     * Creates the source of a benchmark's driver
+     * @param bench
+     * @return
+     */
+    private static String createDriver(Benchmark bench) {
+        StringBuilder sb = new StringBuilder();
+        
+        sb.append("-- generated by CycleBenchmarkRunner\n\n");
+        sb.append("library _os from \"fakeos/os\";\n");
+        
+        if(bench.library() != null) {
+            sb.append("library ").append(bench.library()).append(";\n");
+            
+            if(bench.declare()) {
+                sb.append("external function ").append(bench.library()).append(".").append(bench.function()).append(" of none;\n");
+            }
+        }
+        
+        sb.append("\n");
+        sb.append("variable hcf is ptr gets -1;\n");
+        sb.append("\n");
+        sb.append("variable iret is u8 gets 0xD7;\n");
+        sb.append("variable nmi is u32 pointer gets 1 * 4;\n");
+        sb.append("variable rtc is u32 pointer gets 12 * 4;\n");
+        sb.append("\n");
+        sb.append("function main of none begin\n");
+        sb.append("\tat nmi gets to iret;\n");
+        sb.append("\tat rtc gets to iret;\n");
+        sb.append("\t\n");
+        sb.append("\tcall _os.init with 0x0800_0000, 0x0020_0000;\n");
+        
+        if(bench.library() != null) {
+            sb.append("\tcall ").append(bench.library()).append(".").append(bench.function()).append(" with none;\n");
+        }
+        
+        sb.append("\tcall _os.defer with none;\n");
+        sb.append("\t\n");
+        sb.append("\tcall hcf with none;\n");
+        sb.append("end function\n");
+        
+        return sb.toString();
+    }
+    
+    /**
+     * Records a regression if a value exceeds its baseline by more than the threshold
+     * @param regressions
+     * @param key
+     * @param value
+     * @param baseline
+     * @param threshold Percent
+     */
+    private static void check(List<String> regressions, String key, long value, Properties baseline, double threshold) {
+        String base = baseline.getProperty(key);
+        
+        if(base == null) {
+            return;
+        }
+        
+        long baseValue = Long.parseLong(base);
+        
+        if(value > baseValue * (1 + threshold / 100)) {
+            regressions.add(String.format("%s: %,d -> %,d (%+.2f%%)", key, baseValue, value, (value - baseValue) * 100.0 / baseValue));
+        }
+    }
+    
+    /**
+     * Copies a directory and its contents
+     * @param from
+     * @param to
+     * @throws IOException
+     */
+    private static void copyRecursively(Path from, Path to) throws IOException {
+        try(Stream<Path> files = Files.walk(from)) {
+            for(Path p : files.toList()) {
+                Files.copy(p, to.resolve(from.relativize(p).toString()));
+            }
+        }
+    }
+    
+    /**
+     * Deletes a directory and its contents
+     * @param dir
+     * @throws IOException
+     */
+    private static void deleteRecursively(Path dir) throws IOException {
+        try(Stream<Path> files = Files.walk(dir)) {
+            for(Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,63 @@
+package notsotiny.lang.compiler.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.cenotelie.hime.redist.ASTNode;
+import fr.cenotelie.hime.redist.parsers.InitializationException;
+import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.ir.parts.IRModule;
+
+/**
+ * Parsing and IR generation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FrontEndBenchmark {
+    
+    @Param({
+        "test/benchmark/badappleplayer.nstl",
+        "test/benchmark/benchmark.nstl",
+        "test/benchmark/graph.nstl",
+        "test/benchmark/mandel.nstl",
+        "test/benchmark/queens.nstl",
+        "test/maths/complex.nstl",
+        "test/maths/fft.nstl",
+        "test/maths/float.nstl"
+    })
+    public String file;
+    
+    private CompilerFixture fixture;
+    
+    @Setup
+    public void setup() throws IOException, InitializationException {
+        this.fixture = new CompilerFixture(this.file);
+    }
+    
+    @Benchmark
+    public ASTNode parse() throws InitializationException {
+        return this.fixture.parse();
+    }
+    
+    @Benchmark
+    public IRModule generateIR() throws CompilationException {
+        return this.fixture.generateIR();
+    }
+    
+}
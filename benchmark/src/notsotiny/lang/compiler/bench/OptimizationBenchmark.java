@@ -0,0 +1,73 @@
+package notsotiny.lang.compiler.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.cenotelie.hime.redist.parsers.InitializationException;
+import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.optimization.IROptimizationPass;
+import notsotiny.lang.ir.parts.IRModule;
+
+/**
+ * Individual optimization passes. Passes work in place, so each invocation gets a fresh module
+ * which has been through the passes that precede the measured one in the pipeline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@Fork(2)
+public class OptimizationBenchmark {
+    
+    @Param({
+        "test/benchmark/badappleplayer.nstl",
+        "test/benchmark/benchmark.nstl",
+        "test/benchmark/graph.nstl",
+        "test/benchmark/mandel.nstl",
+        "test/benchmark/queens.nstl",
+        "test/maths/complex.nstl",
+        "test/maths/fft.nstl",
+        "test/maths/float.nstl"
+    })
+    public String file;
+    
+    @Param({"sccp", "bbmerge", "gvnpre", "lcse"})
+    public String pass;
+    
+    private CompilerFixture fixture;
+    
+    private IROptimizationPass optimizationPass;
+    
+    private IRModule module;
+    
+    @Setup
+    public void setup() throws IOException, InitializationException {
+        this.fixture = new CompilerFixture(this.file);
+        this.optimizationPass = CompilerFixture.createPass(this.pass);
+    }
+    
+    @Setup(Level.Invocation)
+    public void prepareModule() throws CompilationException {
+        this.module = this.fixture.generateIRBefore(this.pass);
+    }
+    
+    @Benchmark
+    public IRModule optimize() {
+        return this.optimizationPass.optimize(this.module);
+    }
+    
+}
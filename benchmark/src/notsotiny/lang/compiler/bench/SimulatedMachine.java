@@ -0,0 +1,67 @@
+package notsotiny.lang.compiler.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import asmlib.util.relocation.ExecLoader;
+import notsotiny.sim.NotSoTinySimulator;
+import notsotiny.sim.memory.FlatMemoryController;
+
+/**
+ * A headless NST machine for running benchmark executables.
+ * Memory is flat RAM with no devices, standing in for the fake OS's environment. Programs run until they
+ * return from their entry function or jump to the halt-and-catch-fire address.
+ */
+public class SimulatedMachine {
+    
+    // Large enough for the fake OS heap used by the benchmarks
+    private static final int MEMORY_SIZE = 0x0C00_0000;
+    
+    // Returning to this address ends the program, as does hcf
+    private static final int HALT_ADDRESS = 0xFFFF_FFFF;
+    
+    private byte[] memory;
+    
+    private NotSoTinySimulator sim;
+    
+    /**
+     * Loads an executable
+     * @param execFile
+     * @throws IOException
+     */
+    public SimulatedMachine(Path execFile) throws IOException {
+        this.memory = new byte[MEMORY_SIZE];
+        int entry = ExecLoader.loadExecFileToMemory(execFile.toFile(), this.memory, 0);
+        
+        // Return address of the entry function goes on top of the stack
+        int sp = MEMORY_SIZE - 4;
+        this.memory[sp + 0] = (byte) (HALT_ADDRESS >> 0);
+        this.memory[sp + 1] = (byte) (HALT_ADDRESS >> 8);
+        this.memory[sp + 2] = (byte) (HALT_ADDRESS >> 16);
+        this.memory[sp + 3] = (byte) (HALT_ADDRESS >> 24);
+        
+        this.sim = new NotSoTinySimulator(new FlatMemoryController(this.memory));
+        this.sim.setRegIP(entry);
+        this.sim.setRegSP(sp);
+        this.sim.setRegBP(sp);
+    }
+    
+    /**
+     * Runs the program to completion
+     * @param cycleLimit
+     * @return Cycles taken
+     * @throws IllegalStateException if the program doesn't finish within the limit
+     */
+    public long run(long cycleLimit) {
+        while(this.sim.getRegIP() != HALT_ADDRESS) {
+            if(this.sim.getCycleCount() > cycleLimit) {
+                throw new IllegalStateException("Program did not finish within " + cycleLimit + " cycles");
+            }
+            
+            this.sim.step();
+        }
+        
+        return this.sim.getCycleCount();
+    }
+    
+}
@@ -0,0 +1,436 @@
+package notsotiny.lang.compiler.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.bench.CompilerFixture.FunctionFixture;
+import notsotiny.lang.ir.parts.IRArgumentMapping;
+import notsotiny.lang.ir.parts.IRBasicBlock;
+import notsotiny.lang.ir.parts.IRBranchInstruction;
+import notsotiny.lang.ir.parts.IRBranchOperation;
+import notsotiny.lang.ir.parts.IRCondition;
+import notsotiny.lang.ir.parts.IRConstant;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRIdentifier;
+import notsotiny.lang.ir.parts.IRIdentifierClass;
+import notsotiny.lang.ir.parts.IRLinearInstruction;
+import notsotiny.lang.ir.parts.IRLinearOperation;
+import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.parts.IRType;
+import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lang.ir.util.IRDominatorTree;
+import notsotiny.lang.ir.util.IRUtil;
+
+/**
+ * Generates synthetic IR far larger than real programs, to check that analyses and code generation scale
+ * and don't overflow the stack.
+ *
+ * Large CFGs are a chain of straight-line blocks, diamonds, and two-block loops, so the depth-first spanning
+ * tree is as deep as the function is long. Large DAGs are a single block of dependent arithmetic.
+ *
+ * Usage: StressGenerator [-blocks <n,...>] [-nodes <n,...>] [-seed <n>]
+ * Exits with status 1 if any stage fails, or if a stage's time grows more than MAX_GROWTH times faster than
+ * its input between the smallest and a larger size.
+ */
+public class StressGenerator {
+    
+    private static final int[] DEFAULT_BLOCKS = { 10_000, 50_000, 100_000 };
+    
+    private static final int[] DEFAULT_NODES = { 10_000, 100_000 };
+    
+    // Allowed slowdown over linear scaling. Quadratic stages exceed it across the default sizes.
+    private static final double MAX_GROWTH = 2.0;
+    
+    // Times below this are too noisy to compare
+    private static final long NOISE_FLOOR_NS = 20_000_000;
+    
+    private static final IRLinearOperation[] OPS = {
+            IRLinearOperation.ADD, IRLinearOperation.SUB, IRLinearOperation.AND, IRLinearOperation.OR, IRLinearOperation.XOR
+    };
+    
+    private IRModule module;
+    
+    private IRFunction function;
+    
+    private Random rng;
+    
+    private int blockCount,
+                localCount;
+    
+    /**
+     * @param name Name of the generated function
+     * @param seed
+     */
+    private StressGenerator(String name, long seed) {
+        this.module = new IRModule("stress");
+        this.function = new IRFunction(this.module.getIdentifier(name), IRType.I32, 0, this.module, 0);
+        this.rng = new Random(seed);
+        this.blockCount = 0;
+        this.localCount = 0;
+        
+        this.module.addFunction(this.function);
+        this.function.addArgument(this.function.getIdentifier("n", IRIdentifierClass.LOCAL), IRType.I32);
+    }
+    
+    /**
+     * Generates a module containing a function with approximately the given number of basic blocks
+     * @param blocks
+     * @param seed
+     * @return
+     */
+    public static IRModule generateCFG(int blocks, long seed) {
+        StressGenerator gen = new StressGenerator("cfg" + blocks, seed);
+        IRFunction func = gen.function;
+        
+        IRBasicBlock entry = gen.newBlock(false);
+        IRValue value = gen.addArithmetic(entry, func.getArguments().getName(0));
+        
+        // Each segment's head takes the running value as an argument
+        IRBasicBlock head = gen.newBlock(true);
+        gen.jump(entry, head, value);
+        
+        while(gen.blockCount < blocks) {
+            IRValue a = head.getArgumentList().getName(0);
+            IRBasicBlock next = gen.newBlock(true);
+            
+            switch(gen.rng.nextInt(3)) {
+                case 0: {
+                    // Straight line
+                    gen.jump(head, next, gen.addArithmetic(head, a));
+                    break;
+                }
+                
+                case 1: {
+                    // Diamond
+                    IRValue t = gen.addArithmetic(head, a);
+                    IRBasicBlock left = gen.newBlock(false),
+                                 right = gen.newBlock(false);
+                    
+                    gen.branch(head, t, left, null, right, null);
+                    gen.jump(left, next, gen.addArithmetic(left, t));
+                    gen.jump(right, next, gen.addArithmetic(right, t));
+                    break;
+                }
+                
+                default: {
+                    // Loop with a separate body
+                    IRValue t = gen.addArithmetic(head, a);
+                    IRBasicBlock body = gen.newBlock(false);
+                    
+                    gen.jump(head, body, null);
+                    IRValue u = gen.addArithmetic(body, t);
+                    gen.branch(body, u, head, u, next, u);
+                    break;
+                }
+            }
+            
+            head = next;
+        }
+        
+        head.setExitInstruction(new IRBranchInstruction(IRBranchOperation.RET, head.getArgumentList().getName(0), head, gen.blockCount));
+        
+        return gen.module;
+    }
+    
+    /**
+     * Generates a module containing a function with a single basic block of the given number of instructions.
+     * Operands reach back through the block, so the instruction selection DAG is deep and wide.
+     * @param nodes
+     * @param seed
+     * @return
+     */
+    public static IRModule generateDAG(int nodes, long seed) {
+        StressGenerator gen = new StressGenerator("dag" + nodes, seed);
+        IRFunction func = gen.function;
+        
+        IRBasicBlock entry = gen.newBlock(false);
+        IRIdentifier[] values = new IRIdentifier[nodes + 1];
+        values[0] = func.getArguments().getName(0);
+        
+        for(int i = 1; i <= nodes; i++) {
+            IRValue b = gen.rng.nextBoolean() ? values[gen.rng.nextInt(i)] : new IRConstant(gen.rng.nextInt(256), IRType.I32);
+            values[i] = gen.newLocal();
+            entry.addInstruction(new IRLinearInstruction(OPS[gen.rng.nextInt(OPS.length)], values[i], IRType.I32, values[i - 1], b, entry, i));
+        }
+        
+        entry.setExitInstruction(new IRBranchInstruction(IRBranchOperation.RET, values[nodes], entry, nodes + 1));
+        
+        return gen.module;
+    }
+    
+    /**
+     * Creates a basic block and adds it to the function
+     * @param hasArgument If true, the block takes an I32 argument
+     * @return
+     */
+    private IRBasicBlock newBlock(boolean hasArgument) {
+        // The first block is the entry block
+        String name = (this.blockCount == 0) ? "entry" : ("b" + this.blockCount);
+        IRIdentifier id = this.function.getIdentifier(name, IRIdentifierClass.BLOCK);
+        IRBasicBlock bb = new IRBasicBlock(id, this.module, this.function, this.blockCount++);
+        
+        if(hasArgument) {
+            bb.addArgument(newLocal(), IRType.I32);
+        }
+        
+        this.function.addBasicBlock(bb);
+        return bb;
+    }
+    
+    /**
+     * @return A new local
+     */
+    private IRIdentifier newLocal() {
+        return this.function.getIdentifier("v" + this.localCount++, IRIdentifierClass.LOCAL);
+    }
+    
+    /**
+     * Adds a short run of arithmetic on a value to a block
+     * @param bb
+     * @param value
+     * @return The result
+     */
+    private IRValue addArithmetic(IRBasicBlock bb, IRValue value) {
+        int count = 1 + this.rng.nextInt(4);
+        
+        for(int i = 0; i < count; i++) {
+            IRIdentifier dest = newLocal();
+            bb.addInstruction(new IRLinearInstruction(OPS[this.rng.nextInt(OPS.length)], dest, IRType.I32, value, new IRConstant(this.rng.nextInt(256), IRType.I32), bb, bb.getSourceLineNumber()));
+            value = dest;
+        }
+        
+        return value;
+    }
+    
+    /**
+     * Ends a block with an unconditional branch
+     * @param from
+     * @param to
+     * @param arg Value passed to the target's argument, or null if it has none
+     */
+    private void jump(IRBasicBlock from, IRBasicBlock to, IRValue arg) {
+        from.setExitInstruction(new IRBranchInstruction(IRBranchOperation.JMP, to.getID(), createMapping(to, arg), from, from.getSourceLineNumber()));
+        to.addPredecessor(from.getID());
+    }
+    
+    /**
+     * Ends a block with a conditional branch on a value
+     * @param from
+     * @param cond
+     * @param trueBB
+     * @param trueArg Value passed to the true target's argument, or null if it has none
+     * @param falseBB
+     * @param falseArg Value passed to the false target's argument, or null if it has none
+     */
+    private void branch(IRBasicBlock from, IRValue cond, IRBasicBlock trueBB, IRValue trueArg, IRBasicBlock falseBB, IRValue falseArg) {
+        from.setExitInstruction(new IRBranchInstruction(IRBranchOperation.JCC, IRCondition.B, cond, new IRConstant(128, IRType.I32), trueBB.getID(), createMapping(trueBB, trueArg), falseBB.getID(), createMapping(falseBB, falseArg), from, from.getSourceLineNumber()));
+        trueBB.addPredecessor(from.getID());
+        falseBB.addPredecessor(from.getID());
+    }
+    
+    /**
+     * @param to
+     * @param arg
+     * @return A mapping of arg to the argument of to, if it has one
+     */
+    private static IRArgumentMapping createMapping(IRBasicBlock to, IRValue arg) {
+        IRArgumentMapping mapping = new IRArgumentMapping();
+        
+        if(arg != null) {
+            mapping.addMapping(to.getArgumentList().getName(0), arg);
+        }
+        
+        return mapping;
+    }
+    
+    public static void main(String[] args) {
+        int[] blockSizes = DEFAULT_BLOCKS;
+        int[] nodeSizes = DEFAULT_NODES;
+        long seed = 0;
+        
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-blocks":
+                    blockSizes = parseSizes(args[++i]);
+                    break;
+                
+                case "-nodes":
+                    nodeSizes = parseSizes(args[++i]);
+                    break;
+                
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                
+                default:
+                    System.out.println("Usage: StressGenerator [-blocks <n,...>] [-nodes <n,...>] [-seed <n>]");
+                    System.exit(2);
+                    return;
+            }
+        }
+        
+        boolean failed = false;
+        
+        // Stage -> { input size, time in ns } of each run
+        Map<String, List<long[]>> timings = new LinkedHashMap<>();
+        
+        for(int blocks : blockSizes) {
+            IRModule module = generateCFG(blocks, seed);
+            IRFunction func = module.getInternalFunctions().values().iterator().next();
+            IRIdentifier exitID = func.getAnalyses().getExitID();
+            int size = func.getBasicBlockList().size();
+            String name = size + " blocks";
+            
+            failed |= !time(name, "reverse postorder", size, () -> IRUtil.getReversePostorderList(func), timings);
+            failed |= !time(name, "preorder", size, () -> IRUtil.getPreorderInfo(func), timings);
+            failed |= !time(name, "dominators", size, () -> checkDominators(IRDominatorTree.dominators(func, IRUtil.getReversePostorderList(func))), timings);
+            failed |= !time(name, "postdominators", size, () -> checkPostdominators(func, IRUtil.getPostdominatorMap(func, exitID), exitID), timings);
+            failed |= !time(name, "liveness", size, () -> IRUtil.getLivenessSets(func, false), timings);
+            failed |= !time(name, "scheduling", size, () -> schedule(module), timings);
+        }
+        
+        for(int nodes : nodeSizes) {
+            IRModule module = generateDAG(nodes, seed);
+            
+            failed |= !time(nodes + " nodes", "DAG scheduling", nodes, () -> schedule(module), timings);
+        }
+        
+        failed |= !checkScaling(timings);
+        
+        if(failed) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Builds DAGs, selects instructions, and schedules the module
+     * @param module
+     * @return
+     * @throws CompilationException
+     */
+    private static Object schedule(IRModule module) throws CompilationException {
+        List<FunctionFixture> fixtures = CompilerFixture.buildDAGs(module);
+        return CompilerFixture.schedule(fixtures);
+    }
+    
+    /**
+     * Checks that each reachable block is dominated by its immediate dominator and the entry, and
+     * doesn't dominate its immediate dominator
+     * @param dominators
+     * @return
+     */
+    private static Object checkDominators(IRDominatorTree dominators) {
+        IRIdentifier root = dominators.getRoot();
+        
+        for(IRIdentifier id : dominators.getReversePostorderList()) {
+            IRIdentifier idom = dominators.getImmediateDominator(id);
+            
+            if(!dominators.dominates(idom, id) || !dominators.dominates(root, id)) {
+                throw new IllegalStateException(id + " is not dominated by " + idom + " and " + root);
+            }
+            
+            if(!id.equals(root) && dominators.dominates(id, idom)) {
+                throw new IllegalStateException(id + " dominates its immediate dominator " + idom);
+            }
+        }
+        
+        return dominators;
+    }
+    
+    /**
+     * Checks that the RET block of a generated function is postdominated by the exit
+     * @param func
+     * @param postdominators
+     * @param exitID
+     * @return
+     */
+    private static Object checkPostdominators(IRFunction func, Map<IRIdentifier, IRIdentifier> postdominators, IRIdentifier exitID) {
+        for(IRBasicBlock bb : func.getBasicBlockList()) {
+            if(bb.getExitInstruction().getOp() == IRBranchOperation.RET && !exitID.equals(postdominators.get(bb.getID()))) {
+                throw new IllegalStateException(bb.getID() + " is not postdominated by " + exitID);
+            }
+        }
+        
+        return postdominators;
+    }
+    
+    /**
+     * Runs and reports a stage, recording its time
+     * @param name Name of the input
+     * @param stage
+     * @param size Size of the input
+     * @param task
+     * @param timings
+     * @return true if the stage completed
+     */
+    private static boolean time(String name, String stage, int size, Callable<Object> task, Map<String, List<long[]>> timings) {
+        long start = System.nanoTime();
+        
+        try {
+            task.call();
+        } catch(Exception | StackOverflowError e) {
+            System.out.println(String.format("%-14s %-18s failed: %s", name, stage, e));
+            return false;
+        }
+        
+        long time = System.nanoTime() - start;
+        timings.computeIfAbsent(stage, k -> new ArrayList<>()).add(new long[] { size, time });
+        
+        System.out.println(String.format("%-14s %-18s %,10d ms", name, stage, time / 1_000_000));
+        return true;
+    }
+    
+    /**
+     * Checks that each stage scales close to linearly, comparing each run against the smallest
+     * @param timings
+     * @return true if no stage grew more than MAX_GROWTH times faster than its input
+     */
+    private static boolean checkScaling(Map<String, List<long[]>> timings) {
+        boolean passed = true;
+        
+        for(Map.Entry<String, List<long[]>> entry : timings.entrySet()) {
+            List<long[]> runs = entry.getValue();
+            runs.sort((a, b) -> Long.compare(a[0], b[0]));
+            
+            long[] smallest = runs.get(0);
+            
+            for(long[] run : runs) {
+                if(run[1] < NOISE_FLOOR_NS) {
+                    continue;
+                }
+                
+                double sizeRatio = (double) run[0] / smallest[0],
+                       timeRatio = (double) run[1] / Math.max(smallest[1], NOISE_FLOOR_NS);
+                
+                if(timeRatio > sizeRatio * MAX_GROWTH) {
+                    System.out.println(String.format("%-18s grew %.1fx from %,d to %,d, limit %.1fx", entry.getKey(), timeRatio, smallest[0], run[0], sizeRatio * MAX_GROWTH));
+                    passed = false;
+                }
+            }
+        }
+        
+        return passed;
+    }
+    
+    /**
+     * Parses a comma-separated list of sizes
+     * @param s
+     * @return
+     */
+    private static int[] parseSizes(String s) {
+        String[] parts = s.split(",");
+        int[] sizes = new int[parts.length];
+        
+        for(int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim().replace("_", ""));
+        }
+        
+        return sizes;
+    }
+    
+}
@@ -0,0 +1,285 @@
+package notsotiny.lang.compiler;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records wall time, CPU time, and allocated bytes for each phase of compilation.
+ *
+ * Sections nest per thread. Sections opened on a thread with no open section are placed under the root,
+ * so parallel workers each get their own subtree. Sections with the same name under the same parent are
+ * accumulated and counted.
+ *
+ * When profiling isn't enabled, sections do nothing.
+ */
+public class CompileProfiler {
+    
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    
+    private static final Section DISABLED_SECTION = () -> {};
+    
+    // Root of the current profile, or null if not profiling
+    private static volatile Node root = null;
+    
+    private static volatile long rootStartTime;
+    
+    // Innermost open section of each thread
+    private static final ThreadLocal<Node> current = new ThreadLocal<>();
+    
+    /**
+     * Starts profiling
+     */
+    public static void start() {
+        // Per-thread counters may be off by default
+        if(THREADS.isThreadCpuTimeSupported()) {
+            THREADS.setThreadCpuTimeEnabled(true);
+        }
+        
+        if(THREADS instanceof com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemorySupported()) {
+            sunThreads.setThreadAllocatedMemoryEnabled(true);
+        }
+        
+        root = new Node("compile");
+        rootStartTime = System.nanoTime();
+    }
+    
+    /**
+     * Stops profiling and writes the report as JSON
+     * @param reportFile
+     * @throws IOException
+     */
+    public static void finish(Path reportFile) throws IOException {
+        Node finished = root;
+        root = null;
+        current.remove();
+        
+        if(finished == null) {
+            return;
+        }
+        
+        finished.add(System.nanoTime() - rootStartTime, 0, 0);
+        
+        StringBuilder sb = new StringBuilder();
+        finished.toJSON(sb, 0);
+        sb.append("\n");
+        
+        Files.writeString(reportFile, sb.toString());
+    }
+    
+    /**
+     * Stops profiling without writing a report
+     */
+    public static void discard() {
+        root = null;
+        current.remove();
+    }
+    
+    /**
+     * @return True if profiling is enabled
+     */
+    public static boolean isEnabled() {
+        return root != null;
+    }
+    
+    /**
+     * Opens a section. Use with try-with-resources.
+     * @param name
+     * @return
+     */
+    public static Section section(String name) {
+        Node r = root;
+        
+        if(r == null) {
+            return DISABLED_SECTION;
+        }
+        
+        Node parent = current.get();
+        if(parent == null) {
+            parent = r;
+        }
+        
+        Node node = parent.getChild(name);
+        current.set(node);
+        
+        return new OpenSection(node, parent == r ? null : parent);
+    }
+    
+    /**
+     * A timed region of code
+     */
+    public interface Section extends AutoCloseable {
+        
+        @Override
+        public void close();
+    }
+    
+    /**
+     * An open section on the current thread
+     */
+    private static class OpenSection implements Section {
+        
+        private Node node,
+                     parent;
+        
+        private long startWall,
+                     startCPU,
+                     startAllocated;
+        
+        /**
+         * @param node
+         * @param parent Section to return to when closed, or null if this is a top-level section
+         */
+        public OpenSection(Node node, Node parent) {
+            this.node = node;
+            this.parent = parent;
+            
+            this.startAllocated = getAllocatedBytes();
+            this.startCPU = getCPUTime();
+            this.startWall = System.nanoTime();
+        }
+        
+        @Override
+        public void close() {
+            long wall = System.nanoTime() - this.startWall,
+                 cpu = getCPUTime() - this.startCPU,
+                 allocated = getAllocatedBytes() - this.startAllocated;
+            
+            this.node.add(wall, cpu, allocated);
+            
+            if(this.parent == null) {
+                current.remove();
+            } else {
+                current.set(this.parent);
+            }
+        }
+    }
+    
+    /**
+     * A node in the profile tree
+     */
+    private static class Node {
+        
+        private String name;
+        
+        private int count = 0;
+        
+        private long wall = 0,
+                     cpu = 0,
+                     allocated = 0;
+        
+        private Map<String, Node> children = new LinkedHashMap<>();
+        
+        public Node(String name) {
+            this.name = name;
+        }
+        
+        /**
+         * Gets or creates a child node
+         * @param childName
+         * @return
+         */
+        public synchronized Node getChild(String childName) {
+            return this.children.computeIfAbsent(childName, Node::new);
+        }
+        
+        /**
+         * Adds a measurement
+         * @param wall
+         * @param cpu
+         * @param allocated
+         */
+        public synchronized void add(long wall, long cpu, long allocated) {
+            this.count++;
+            this.wall += wall;
+            this.cpu += cpu;
+            this.allocated += allocated;
+        }
+        
+        /**
+         * Writes this node and its children as JSON
+         * @param sb
+         * @param indent
+         */
+        public synchronized void toJSON(StringBuilder sb, int indent) {
+            String pad = "  ".repeat(indent);
+            
+            sb.append(pad).append("{\n");
+            sb.append(pad).append("  \"name\": ").append(quote(this.name)).append(",\n");
+            sb.append(pad).append("  \"count\": ").append(this.count).append(",\n");
+            sb.append(pad).append("  \"wallNanos\": ").append(this.wall).append(",\n");
+            sb.append(pad).append("  \"cpuNanos\": ").append(this.cpu).append(",\n");
+            sb.append(pad).append("  \"allocatedBytes\": ").append(this.allocated).append(",\n");
+            sb.append(pad).append("  \"children\": [");
+            
+            List<Node> childList = new ArrayList<>(this.children.values());
+            
+            if(childList.isEmpty()) {
+                sb.append("]\n");
+            } else {
+                sb.append("\n");
+                
+                for(int i = 0; i < childList.size(); i++) {
+                    childList.get(i).toJSON(sb, indent + 2);
+                    sb.append(i < childList.size() - 1 ? ",\n" : "\n");
+                }
+                
+                sb.append(pad).append("  ]\n");
+            }
+            
+            sb.append(pad).append("}");
+        }
+    }
+    
+    /**
+     * @return CPU time of the current thread, or 0 if unsupported
+     */
+    private static long getCPUTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+    
+    /**
+     * @return Bytes allocated by the current thread, or 0 if unsupported
+     */
+    private static long getAllocatedBytes() {
+        if(THREADS instanceof com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemorySupported()) {
+            return sunThreads.getCurrentThreadAllocatedBytes();
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Quotes a string for JSON
+     * @param s
+     * @return
+     */
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        
+        for(char c : s.toCharArray()) {
+            switch(c) {
+                case '"'    -> sb.append("\\\"");
+                case '\\'   -> sb.append("\\\\");
+                case '\n'   -> sb.append("\\n");
+                case '\r'   -> sb.append("\\r");
+                case '\t'   -> sb.append("\\t");
+                default     -> {
+                    if(c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        
+        return sb.append("\"").toString();
+    }
+}
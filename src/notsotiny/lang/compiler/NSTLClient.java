@@ -0,0 +1,80 @@
+package notsotiny.lang.compiler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Thin client for NSTLServer. Takes the same arguments as NSTLCompiler, optionally preceded by '-socket <path>'.
+ * '-shutdown' stops the server once any running build finishes.
+ * Diagnostics are printed to stderr and the executable path to stdout.
+ */
+public class NSTLClient {
+    
+    public static void main(String[] args) throws IOException {
+        Path socketPath = NSTLServer.getDefaultSocketPath();
+        
+        if(args.length >= 2 && args[0].equals("-socket")) {
+            socketPath = Paths.get(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        
+        try(SocketChannel server = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.connect(UnixDomainSocketAddress.of(socketPath));
+            
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(server));
+            DataInputStream in = new DataInputStream(Channels.newInputStream(server));
+            
+            // Send request
+            if(args.length == 1 && args[0].equals("-shutdown")) {
+                out.writeByte(NSTLServer.REQUEST_SHUTDOWN);
+            } else {
+                out.writeByte(NSTLServer.REQUEST_COMPILE);
+                out.writeUTF(Paths.get("").toAbsolutePath().toString());
+                out.writeInt(args.length);
+                
+                for(String arg : args) {
+                    out.writeUTF(arg);
+                }
+            }
+            
+            out.flush();
+            
+            // Print responses until we get a result
+            while(true) {
+                byte type = in.readByte();
+                String contents = NSTLServer.readFrameContents(in);
+                
+                switch(type) {
+                    case NSTLServer.FRAME_MESSAGE:
+                        System.err.print(contents);
+                        break;
+                    
+                    case NSTLServer.FRAME_SUCCESS:
+                        if(!contents.isEmpty()) {
+                            System.out.println(contents);
+                        }
+                        
+                        return;
+                    
+                    case NSTLServer.FRAME_FAILURE:
+                        System.err.println(contents);
+                        System.exit(1);
+                        return;
+                    
+                    default:
+                        System.err.println("Unknown response from server: " + type);
+                        System.exit(1);
+                        return;
+                }
+            }
+        }
+    }
+}
@@ -10,10 +10,16 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 import asmlib.util.FileLocator;
@@ -28,9 +34,13 @@ import notsotiny.lang.compiler.codegen.CodeGenerator;
 import notsotiny.lang.compiler.compilers.IRCompiler;
 import notsotiny.lang.compiler.irgen.IRGenV1;
 import notsotiny.lang.compiler.irgen.IRGenerator;
+import notsotiny.lang.compiler.irgen.TopLevelParser;
 import notsotiny.lang.compiler.optimization.IROptV1;
 import notsotiny.lang.compiler.optimization.IROptimizationLevel;
 import notsotiny.lang.compiler.optimization.IROptimizer;
+import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.util.IRBinaryReader;
+import notsotiny.lang.ir.util.IRParser;
 import notsotiny.lang.parser.NstlgrammarLexer;
 import notsotiny.lang.parser.NstlgrammarParser;
 import notsotiny.lib.printing.StreamPrinter;
@@ -44,25 +54,59 @@ public class NSTLCompiler {
     
     private static Logger LOG = Logger.getLogger(NSTLCompiler.class.getName());
     
+    // Tried in order. Binary IR comes after source so a stale .nirb doesn't shadow an edited .nstl
+    public static final List<String> SOURCE_EXTENSIONS = List.of(".obj", ".asm", ".nstl", ".nirb"),
+                                     HEADER_EXTENSIONS = List.of(".nsth");
+    
+    /**
+     * The result of processing a single input file
+     * @param file File processed
+     * @param object Resulting object, or null if errors were encountered
+     * @param libraryName Library name of the resulting object
+     * @param discoveredFiles Files referenced by this file, in the order they were found. Only populated in parallel builds.
+     */
+    private record UnitResult(Path file, RenameableRelocatableObject object, String libraryName, List<Path> discoveredFiles) {}
+    
+    /**
+     * The result of running the compiler
+     * @param succeeded False if errors were encountered
+     * @param execFile The executable file written, or null if the options stop before linking
+     */
+    public record CompileResult(boolean succeeded, Path execFile) {}
+    
+    private static final CompileResult FAILED = new CompileResult(false, null);
+    
     public static void main(String[] args) throws IOException, InitializationException {
+        compile(args, Paths.get("").toAbsolutePath());
+    }
+    
+    /**
+     * Runs the compiler
+     * @param args Command line arguments
+     * @param workingDirectory Directory relative paths in arguments are resolved against
+     * @return Whether compilation succeeded, and the executable file written if any
+     * @throws IOException
+     * @throws InitializationException
+     */
+    public static CompileResult compile(String[] args, Path workingDirectory) throws IOException, InitializationException {
         // Properties
         Properties properties = new Properties();
         
         // Load .properties configuration
         // stdlib location
-        try(FileInputStream fis = new FileInputStream("lib.properties")) {
+        try(FileInputStream fis = new FileInputStream(workingDirectory.resolve("lib.properties").toFile())) {
             properties.load(fis);
         } catch(IOException e) {
             LOG.severe("Could not read standard library properties file. Specify standard library location with 'stdlib' in \"lib.properties\".");
-            return;
+            return FAILED;
         }
         
         // compiler properties (default arguments)
-        try(FileInputStream fis = new FileInputStream("compiler.properties")) {
+        try(FileInputStream fis = new FileInputStream(workingDirectory.resolve("compiler.properties").toFile())) {
             properties.load(fis);
         } catch(IOException e) {
             LOG.severe("Could not read configuration file \"compiler.properties\".");
-            return;
+            return FAILED;
         }
         
         // Configuration
@@ -77,8 +121,15 @@ public class NSTLCompiler {
                 hasUIROutputDir = !properties.getProperty("uirPath", "").equals(""),
                 hasIIROutputDir = !properties.getProperty("iirPath", "").equals(""),
                 hasOIROutputDir = !properties.getProperty("oirPath", "").equals(""),
+                hasBIROutputDir = !properties.getProperty("birPath", "").equals(""),
                 hasAASMOutputDir = !properties.getProperty("aasmPath", "").equals(""),
                 hasFASMOutputDir = !properties.getProperty("asmPath", "").equals(""),
+                hasCacheDir = !properties.getProperty("cachePath", "").equals(""),
+                hasTimeFile = false,
+                fromIR = false,
+                hasPipeline = false,
+                verify = booleanProperty(properties, "verify", false),
+                runCodegen = true,
                 showISelDAG = booleanProperty(properties, "showISelDAG", false),
                 showRAIGUncolored = booleanProperty(properties, "showRAIDUncolored", false),
                 showRAIGColored = booleanProperty(properties, "showRAIGColored", false);
@@ -90,20 +141,29 @@ public class NSTLCompiler {
                uirOutputArg = properties.getProperty("uirPath", ""),
                iirOutputArg = properties.getProperty("iirPath", ""),
                oirOutputArg = properties.getProperty("oirPath", ""),
+               birOutputArg = properties.getProperty("birPath", ""),
                aasmOutputArg = properties.getProperty("aasmPath", ""),
                fasmOutputArg = properties.getProperty("asmPath", ""),
+               cacheArg = properties.getProperty("cachePath", ""),
+               timeArg = "",
+               pipelineArg = "",
                compilerName = properties.getProperty("compilerName", "ir"),
                entry = properties.getProperty("entry", "main");
         
+        int jobs = Integer.parseInt(properties.getProperty("jobs", "1")),
+            functionJobs = Integer.parseInt(properties.getProperty("functionJobs", "1"));
+        
+        IROptimizationLevel optLevel = IROptimizationLevel.THREE;
+        
         if(standardArg.equals("")) {
             LOG.severe("Could not find standard library path. Specify standard library location with 'stdlib' in \"lib.properties\".");
-            return;
+            return FAILED;
         }
         
         // Process arguments
         if(args.length < 1) {
             printUsage();
-            return; 
+            return FAILED;
         }
         
         out:
@@ -136,6 +196,12 @@ public class NSTLCompiler {
                     hasOIROutputDir = true;
                     oirOutputArg = args[flagCount - 1];
                     break;
+                
+                case "-irfb":
+                    flagCount += 2;
+                    hasBIROutputDir = true;
+                    birOutputArg = args[flagCount - 1];
+                    break;
                     
                 case "-asmfa":
                     flagCount += 2;
@@ -200,6 +266,68 @@ public class NSTLCompiler {
                     compilerName = args[flagCount - 1];
                     break;
                 
+                case "-cache":
+                    flagCount += 2;
+                    hasCacheDir = true;
+                    cacheArg = args[flagCount - 1];
+                    break;
+                
+                case "-j":
+                    flagCount += 2;
+                    jobs = Integer.parseInt(args[flagCount - 1]);
+                    break;
+                
+                case "-jf":
+                    flagCount += 2;
+                    functionJobs = Integer.parseInt(args[flagCount - 1]);
+                    break;
+                
+                case "-O":
+                    flagCount += 2;
+                    optLevel = parseOptimizationLevel(args[flagCount - 1]);
+                    
+                    if(optLevel == null) {
+                        LOG.severe("Invalid optimization level " + args[flagCount - 1] + ". Levels are 0 to " + (IROptimizationLevel.values().length - 1));
+                        printUsage();
+                        return FAILED;
+                    }
+                    break;
+                
+                case "-O0":
+                case "-O1":
+                case "-O2":
+                case "-O3":
+                    optLevel = IROptimizationLevel.values()[args[flagCount].charAt(2) - '0'];
+                    flagCount++;
+                    break;
+                
+                case "-time":
+                    flagCount += 2;
+                    hasTimeFile = true;
+                    timeArg = args[flagCount - 1];
+                    break;
+                
+                case "-from-ir":
+                    flagCount++;
+                    fromIR = true;
+                    break;
+                
+                case "-passes":
+                    flagCount += 2;
+                    hasPipeline = true;
+                    pipelineArg = args[flagCount - 1];
+                    break;
+                
+                case "-no-codegen":
+                    flagCount++;
+                    runCodegen = false;
+                    break;
+                
+                case "-verify":
+                    flagCount++;
+                    verify = true;
+                    break;
+                
                 default:
                     break out;
             }
@@ -207,35 +335,126 @@ public class NSTLCompiler {
         
         inputFileArg = args[flagCount];
         
+        // Without -passes, use the configured pipeline of the level if there is one
+        if(!hasPipeline) {
+            pipelineArg = properties.getProperty("pipeline" + optLevel.ordinal(), "");
+            hasPipeline = !pipelineArg.equals("");
+        }
+        
+        // Check the pipeline before compiling anything
+        if(hasPipeline) {
+            try {
+                new IROptV1().setPipeline(pipelineArg);
+            } catch(IllegalArgumentException e) {
+                LOG.severe(e.getMessage());
+                return FAILED;
+            }
+        }
+        
         // get full path for file finding
-        Path sourceFile = Paths.get(inputFileArg),
+        Path sourceFile = workingDirectory.resolve(inputFileArg),
              execFile,
              sourceDir = sourceFile.toAbsolutePath().getParent(),
-             outDir = hasOutputDir ? Paths.get(outputArg) : sourceDir.resolve("out"),
-             uirOutDir = hasUIROutputDir ? Paths.get(uirOutputArg) : null,
-             iirOutDir = hasIIROutputDir ? Paths.get(iirOutputArg) : null,
-             oirOutDir = hasOIROutputDir ? Paths.get(oirOutputArg) : null,
-             aasmOutDir = hasAASMOutputDir ? Paths.get(aasmOutputArg) : null,
-             fasmOutDir = hasFASMOutputDir ? Paths.get(fasmOutputArg) : null,
-             standardDir = Paths.get(standardArg);
+             outDir = hasOutputDir ? workingDirectory.resolve(outputArg) : sourceDir.resolve("out"),
+             uirOutDir = hasUIROutputDir ? workingDirectory.resolve(uirOutputArg) : null,
+             iirOutDir = hasIIROutputDir ? workingDirectory.resolve(iirOutputArg) : null,
+             oirOutDir = hasOIROutputDir ? workingDirectory.resolve(oirOutputArg) : null,
+             birOutDir = hasBIROutputDir ? workingDirectory.resolve(birOutputArg) : null,
+             aasmOutDir = hasAASMOutputDir ? workingDirectory.resolve(aasmOutputArg) : null,
+             fasmOutDir = hasFASMOutputDir ? workingDirectory.resolve(fasmOutputArg) : null,
+             cacheDir = hasCacheDir ? workingDirectory.resolve(cacheArg) : null,
+             timeFile = hasTimeFile ? workingDirectory.resolve(timeArg) : null,
+             standardDir = workingDirectory.resolve(standardArg);
+        
+        // Run passes and code generation on an IR file by itself
+        if(fromIR) {
+            IROptV1 optimizer = new IROptV1();
+            optimizer.setLevel(optLevel);
+            optimizer.setParallelism(functionJobs);
+            optimizer.setCFGVisualization(showIIRCFG, showOIRCFG);
+            optimizer.setPipeline(hasPipeline ? pipelineArg : null);
+            optimizer.setVerification(verify);
+            
+            if(hasIIROutputDir) {
+                createOutputDirectory(iirOutDir);
+                optimizer.setIntermediateOutput(true, iirOutDir);
+            }
+            
+            if(hasOIROutputDir) {
+                createOutputDirectory(oirOutDir);
+                optimizer.setFileOutput(true, oirOutDir);
+            }
+            
+            if(hasBIROutputDir) {
+                createOutputDirectory(birOutDir);
+                optimizer.setBinaryOutput(true, birOutDir);
+            }
+            
+            CodeGenerator codegen = null;
+            
+            if(runCodegen) {
+                codegen = new CodeGenV1();
+                codegen.setGraphVisualization(showISelDAG, showRAIGUncolored, showRAIGColored);
+                codegen.setParallelism(functionJobs);
+                codegen.setLevel(optLevel);
+                
+                if(hasAASMOutputDir) {
+                    createOutputDirectory(aasmOutDir);
+                    codegen.setAbstractOutput(true, aasmOutDir);
+                }
+            }
+            
+            if(hasFASMOutputDir) {
+                createOutputDirectory(fasmOutDir);
+            }
+            
+            if(hasTimeFile) {
+                CompileProfiler.start();
+            }
+            
+            compileFromIR(sourceFile, optimizer, codegen, fasmOutDir);
+            
+            if(hasTimeFile) {
+                LOG.info("Writing timing report to " + timeFile);
+                CompileProfiler.finish(timeFile);
+            }
+            
+            LOG.info("Done.");
+            return new CompileResult(true, null);
+        }
         
         // Find necessary files
         if(hasExecFile) {
-            execFile = Paths.get(execFileArg);
+            execFile = workingDirectory.resolve(execFileArg);
         } else {
             String sourceName = sourceFile.getFileName().toString();
             sourceName = sourceName.substring(0, sourceName.lastIndexOf('.')) + ".oex";
             execFile = sourceFile.resolveSibling(sourceName);
         }
         
-        FileLocator locator = new FileLocator(sourceDir, standardDir, List.of(".obj", ".asm", ".nstl"), List.of(".nsth"));
+        FileLocator locator = new FileLocator(sourceDir, standardDir, SOURCE_EXTENSIONS, HEADER_EXTENSIONS);
         if(!locator.addFile(sourceFile.toAbsolutePath())) {
             LOG.severe("Could not fine sounce file " + sourceFile);
-            return;
+            return FAILED;
         }
         
         AssemblyOptions asmOptions = new AssemblyOptions(true, true, debug, entry, standardDir, 8);
         
+        // Cached objects skip compilation entirely, so only use the cache when nothing else is expected of the compiler
+        ObjectCache cache = null;
+        if(hasCacheDir) {
+            if(hasUIROutputDir || hasIIROutputDir || hasOIROutputDir || hasBIROutputDir || hasAASMOutputDir || hasFASMOutputDir ||
+               showASTCFG || showUIRCFG || showIIRCFG || showOIRCFG || showISelDAG || showRAIGUncolored || showRAIGColored) {
+                LOG.info("Intermediate output requested, not using object cache");
+            } else {
+                cache = ObjectCache.open(cacheDir, compilerName + " " + optLevel + " " + (hasPipeline ? pipelineArg : "") + " " + debug + " " + entry);
+            }
+        }
+        
+        if(hasTimeFile) {
+            CompileProfiler.start();
+        }
+        
         List<ASMObject> compiledObjects = new ArrayList<>();
         List<RenameableRelocatableObject> assembledObjects = new ArrayList<>();
         
@@ -243,160 +462,189 @@ public class NSTLCompiler {
         
         boolean errorsEncountered = false;
         
+        // Parallel builds give each file its own worker and locator
+        ExecutorService pool = (jobs > 1) ? Executors.newFixedThreadPool(jobs) : null;
+        CompletionService<UnitResult> completionService = (pool != null) ? new ExecutorCompletionService<>(pool) : null;
+        int pendingUnits = 0;
+        
+        List<UnitResult> unitResults = new ArrayList<>();
+        
         // process files and referenced files
         LOG.fine("Compiling files");
-        while(locator.hasUnconsumed()) {
-            Path workingFile = locator.consume();
-            LOG.info("Processing file " + workingFile);
+        while(true) {
+            while(locator.hasUnconsumed()) {
+                Path workingFile = locator.consume();
+                LOG.info("Processing file " + workingFile);
             
-            String fileName = workingFile.getFileName().toString(),
-                   extension = fileName.substring(fileName.indexOf('.'));
+                String fileName = workingFile.getFileName().toString(),
+                       extension = fileName.substring(fileName.indexOf('.'));
             
-            locator.setWorkingDirectory(workingFile);
+                // Parallel workers can't share the locator's working directory
+                FileLocator unitLocator = (pool != null) ? new FileLocator(sourceDir, standardDir, SOURCE_EXTENSIONS, HEADER_EXTENSIONS) : locator;
+                unitLocator.setWorkingDirectory(workingFile);
+                
+                NSTCompiler comp = null;
             
-            switch(extension) {
-                case ".nstl":
-                    // compile
-                    NstlgrammarLexer lexer = new NstlgrammarLexer(new InputStreamReader(Files.newInputStream(workingFile)));
-                    NstlgrammarParser parser = new NstlgrammarParser(lexer);
-                    NSTCompiler comp = switch(compilerName) {
-                        case "ir"   -> {
-                            IRGenerator generator = new IRGenV1();
-                            generator.setCFGVisualization(showASTCFG, showUIRCFG);
+                switch(extension) {
+                    case ".nstl", ".nirb":
+                        comp = switch(compilerName) {
+                            case "ir"   -> {
+                                IRGenerator generator = new IRGenV1();
+                                generator.setCFGVisualization(showASTCFG, showUIRCFG);
                             
-                            if(hasUIROutputDir) {
-                                // make the output directory if it doesn't exist
-                                if(!Files.exists(uirOutDir)) {
-                                    LOG.finest(() -> "Creating output directory " + uirOutDir);
-                                    Files.createDirectory(uirOutDir);
-                                }
+                                if(hasUIROutputDir) {
+                                    // make the output directory if it doesn't exist
+                                    if(!Files.exists(uirOutDir)) {
+                                        LOG.finest(() -> "Creating output directory " + uirOutDir);
+                                        Files.createDirectory(uirOutDir);
+                                    }
                                 
-                                generator.setFileOutput(true, uirOutDir);
-                            }
+                                    generator.setFileOutput(true, uirOutDir);
+                                }
                             
-                            IROptimizer optimizer = new IROptV1();
-                            optimizer.setCFGVisualization(showIIRCFG, showOIRCFG);
+                                IROptimizer optimizer = new IROptV1();
+                                optimizer.setCFGVisualization(showIIRCFG, showOIRCFG);
                             
-                            if(hasOIROutputDir) {
-                                // make the output directory if it doesn't exist
-                                if(!Files.exists(oirOutDir)) {
-                                    LOG.finest(() -> "Creating output directory " + oirOutDir);
-                                    Files.createDirectory(oirOutDir);
+                                if(hasOIROutputDir) {
+                                    // make the output directory if it doesn't exist
+                                    if(!Files.exists(oirOutDir)) {
+                                        LOG.finest(() -> "Creating output directory " + oirOutDir);
+                                        Files.createDirectory(oirOutDir);
+                                    }
+                                
+                                    optimizer.setFileOutput(true, oirOutDir);
                                 }
                                 
-                                optimizer.setFileOutput(true, oirOutDir);
-                            }
-                            
-                            if(hasIIROutputDir) {
-                                // make the intermediate output directory if it doesn't exist
-                                if(!Files.exists(iirOutDir)) {
-                                    LOG.finest(() -> "Creating output directory" + iirOutDir);
-                                    Files.createDirectory(iirOutDir);
+                                if(hasBIROutputDir) {
+                                    // make the output directory if it doesn't exist
+                                    if(!Files.exists(birOutDir)) {
+                                        LOG.finest(() -> "Creating output directory " + birOutDir);
+                                        Files.createDirectory(birOutDir);
+                                    }
+                                
+                                    optimizer.setBinaryOutput(true, birOutDir);
                                 }
+                            
+                                if(hasIIROutputDir) {
+                                    // make the intermediate output directory if it doesn't exist
+                                    if(!Files.exists(iirOutDir)) {
+                                        LOG.finest(() -> "Creating output directory" + iirOutDir);
+                                        Files.createDirectory(iirOutDir);
+                                    }
                                 
-                                optimizer.setIntermediateOutput(true, iirOutDir);
-                            }
+                                    optimizer.setIntermediateOutput(true, iirOutDir);
+                                }
                             
-                            // TODO: set level from arg
-                            optimizer.setLevel(IROptimizationLevel.THREE);
+                                optimizer.setLevel(optLevel);
+                                optimizer.setPipeline(hasPipeline ? pipelineArg : null);
+                                optimizer.setVerification(verify);
+                                optimizer.setParallelism(functionJobs);
                             
-                            CodeGenerator codegen = new CodeGenV1();
-                            codegen.setGraphVisualization(showISelDAG, showRAIGUncolored, showRAIGColored);
+                                CodeGenerator codegen = new CodeGenV1();
+                                codegen.setGraphVisualization(showISelDAG, showRAIGUncolored, showRAIGColored);
+                                codegen.setParallelism(functionJobs);
+                                codegen.setLevel(optLevel);
                             
-                            if(hasAASMOutputDir) {
-                                // make the abstract assembly output directory if it doesn't exist
-                                if(!Files.exists(aasmOutDir)) {
-                                    LOG.finest(() -> "Creating output directory" + aasmOutDir);
-                                    Files.createDirectory(aasmOutDir);
-                                }
+                                if(hasAASMOutputDir) {
+                                    // make the abstract assembly output directory if it doesn't exist
+                                    if(!Files.exists(aasmOutDir)) {
+                                        LOG.finest(() -> "Creating output directory" + aasmOutDir);
+                                        Files.createDirectory(aasmOutDir);
+                                    }
                                 
-                                codegen.setAbstractOutput(true, aasmOutDir);
-                            }
+                                    codegen.setAbstractOutput(true, aasmOutDir);
+                                }
                             
-                            yield new IRCompiler(generator, optimizer, codegen);
-                        }
-                        default     -> throw new IllegalArgumentException("Unknown compiler: " + compilerName);
-                    };
-                    
-                    if(hasFASMOutputDir) {
-                        // make the final assembly output directory if it doesn't exist
-                        if(!Files.exists(fasmOutDir)) {
-                            LOG.finest(() -> "Creating output directory" + fasmOutDir);
-                            Files.createDirectory(fasmOutDir);
-                        }
-                    }
-                    
-                    ParseResult result = parser.parse();
+                                yield new IRCompiler(generator, optimizer, codegen);
+                            }
+                            default     -> throw new IllegalArgumentException("Unknown compiler: " + compilerName);
+                        };
                     
-                    if(result.getErrors().size() != 0) {
-                        LOG.severe("Encountered errors parsing " + workingFile);
-                        for(ParseError e : result.getErrors()) {
-                            LOG.severe("ParseError: " + e);
-                        }
-                        
-                        errorsEncountered = true;
-                    } else {
-                        ASTNode root = result.getRoot();
-                        LOG.finest("AST");
-                        LOG.finest(() -> {printTree(LOG, root, new boolean[] {}); return "";});
-                        
-                        String libname = workingFile.getFileName().toString();
-                        libname = libname.substring(0, libname.lastIndexOf('.'));
-                        
-                        try {
-                            // Compile!
-                            ASMObject obj = comp.compile(root, libname, locator, workingFile);
-                            
-                            // output AssemblyObject if applicable
-                            if(hasFASMOutputDir) {
-                                String fileNameName = fileName.substring(0, fileName.lastIndexOf("."));
-                                Path fasmOutputFile = fasmOutDir.resolve(fileNameName + ".asm");
-                                
-                                LOG.info("Writing final assembly to " + fasmOutputFile);
-                                
-                                try(BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(fasmOutputFile))) {
-                                    StreamPrinter filePrinter = new StreamPrinter(bos);
-                                    ASMPrinter.printObject(filePrinter, obj);
-                                } catch(IOException e) {}
+                        if(hasFASMOutputDir) {
+                            // make the final assembly output directory if it doesn't exist
+                            if(!Files.exists(fasmOutDir)) {
+                                LOG.finest(() -> "Creating output directory" + fasmOutDir);
+                                Files.createDirectory(fasmOutDir);
                             }
-                            
-                            assembledObjects.add(NSTAssembler.assembleObject(obj, asmOptions));
-                            libraryNameMap.put(libname, workingFile);
-                        } catch(CompilationException | AssemblyException e) {
-                            errorsEncountered = true;
-                        } catch(IllegalStateException e) {
-                            LOG.severe(e.getMessage());
-                            errorsEncountered = true;
                         }
-                    }
-                    break;
+                        break;
                 
-                case ".asm":
-                    // assemble
-                    try {
-                        RenameableRelocatableObject obj = NSTAssembler.assembleFile(workingFile, locator, asmOptions);
-                        assembledObjects.add(obj);
-                        libraryNameMap.put(obj.getName(), workingFile);
-                    } catch(AssemblyException e) {
-                        errorsEncountered = true;
-                    } catch(IOException e) {
-                        LOG.severe("Exception while assembling " + workingFile);
-                        e.printStackTrace();
+                    case ".asm", ".obj":
+                        break;
+                
+                    default:
+                        LOG.severe("Unknown file type: " + workingFile);
                         errorsEncountered = true;
-                    }
-                    break;
+                        continue;
+                }
                 
-                case ".obj":
-                    // copy
-                    RenameableRelocatableObject obj = new RenameableRelocatableObject(workingFile.toFile(), null);
-                    libraryNameMap.put(obj.getName(), workingFile);
-                    assembledObjects.add(obj);
-                    break;
+                if(pool == null) {
+                    try(CompileProfiler.Section s = CompileProfiler.section("file " + workingFile)) {
+                        unitResults.add(processFile(workingFile, extension, comp, unitLocator, fasmOutDir, asmOptions, cache));
+                    }
+                } else {
+                    NSTCompiler unitComp = comp;
+                    ObjectCache unitCache = cache;
+                    completionService.submit(() -> {
+                        UnitResult res;
+                        try(CompileProfiler.Section s = CompileProfiler.section("file " + workingFile)) {
+                            res = processFile(workingFile, extension, unitComp, unitLocator, fasmOutDir, asmOptions, unitCache);
+                        }
+                        
+                        // Collect referenced files for the driver
+                        List<Path> discovered = new ArrayList<>();
+                        while(unitLocator.hasUnconsumed()) {
+                            discovered.add(unitLocator.consume());
+                        }
+                        
+                        return new UnitResult(res.file(), res.object(), res.libraryName(), discovered);
+                    });
+                    pendingUnits++;
+                }
+            }
+            
+            if(pendingUnits == 0) {
+                break;
+            }
+            
+            // Wait for a worker to finish and queue up what it found
+            UnitResult res;
+            try {
+                res = completionService.take().get();
+                pendingUnits--;
+            } catch(InterruptedException e) {
+                pool.shutdownNow();
+                throw new IllegalStateException("Interrupted during parallel build", e);
+            } catch(ExecutionException e) {
+                pool.shutdownNow();
                 
-                default:
-                    LOG.severe("Unknown file type: " + workingFile);
-                    errorsEncountered = true;
-                    break;
+                switch(e.getCause()) {
+                    case IOException ioe                -> throw ioe;
+                    case InitializationException ie     -> throw ie;
+                    case RuntimeException re            -> throw re;
+                    default                             -> throw new IllegalStateException(e.getCause());
+                }
+            }
+            
+            unitResults.add(res);
+            
+            for(Path p : res.discoveredFiles()) {
+                locator.addFile(p);
+            }
+        }
+        
+        if(pool != null) {
+            pool.shutdown();
+            unitResults = serialOrder(unitResults);
+        }
+        
+        // collect results
+        for(UnitResult res : unitResults) {
+            if(res.object() == null) {
+                errorsEncountered = true;
+            } else {
+                assembledObjects.add(res.object());
+                libraryNameMap.put(res.libraryName(), res.file());
             }
         }
         
@@ -412,24 +660,288 @@ public class NSTLCompiler {
             throw new IllegalStateException("Encountered errors during file processing. See severe logs above.");
         }
         
-        // unify names
-        LOG.fine("Unifying library names");
-        RenameableRelocatableObject.unifyNames(assembledObjects, libraryNameMap, LOG);
+        try(CompileProfiler.Section s = CompileProfiler.section("link")) {
+            // unify names
+            LOG.fine("Unifying library names");
+            RenameableRelocatableObject.unifyNames(assembledObjects, libraryNameMap, LOG);
+        
+            String mainFileName = sourceFile.getFileName().toString(),
+                   entrySymbolName = mainFileName.substring(0, mainFileName.lastIndexOf('.')) + "." + entry;
         
-        String mainFileName = sourceFile.getFileName().toString(),
-               entrySymbolName = mainFileName.substring(0, mainFileName.lastIndexOf('.')) + "." + entry;
+            // compact names if debug isn't enabled
+            if(!debug) {
+                LOG.fine("Compacting references");
+                entrySymbolName = RenameableRelocatableObject.compactNames(assembledObjects, Set.of("ORIGIN", "PRIVILEGED"), entrySymbolName, LOG);
+            }
         
-        // compact names if debug isn't enabled
-        if(!debug) {
-            LOG.fine("Compacting references");
-            entrySymbolName = RenameableRelocatableObject.compactNames(assembledObjects, Set.of("ORIGIN", "PRIVILEGED"), entrySymbolName, LOG);
+            // write output
+            LOG.fine("Writing output files");
+            ExecWriter.write(assembledObjects, outDir, execFile, entrySymbolName, LOG);
         }
         
-        // write output
-        LOG.fine("Writing output files");
-        ExecWriter.write(assembledObjects, outDir, execFile, entrySymbolName, LOG);
+        if(hasTimeFile) {
+            LOG.info("Writing timing report to " + timeFile);
+            CompileProfiler.finish(timeFile);
+        }
         
         LOG.info("Done.");
+        
+        return new CompileResult(true, execFile);
+    }
+    
+    /**
+     * Processes a single input file, compiling and assembling as needed
+     * @param workingFile
+     * @param extension
+     * @param comp Compiler for .nstl files
+     * @param locator
+     * @param fasmOutDir Final assembly output directory, or null
+     * @param asmOptions
+     * @param cache Object cache, or null
+     * @return
+     * @throws IOException
+     * @throws InitializationException
+     */
+    private static UnitResult processFile(Path workingFile, String extension, NSTCompiler comp, FileLocator locator, Path fasmOutDir, AssemblyOptions asmOptions, ObjectCache cache) throws IOException, InitializationException {
+        String fileName = workingFile.getFileName().toString();
+        
+        switch(extension) {
+            case ".nstl":
+                // compile
+                NstlgrammarLexer lexer = new NstlgrammarLexer(new InputStreamReader(Files.newInputStream(workingFile)));
+                NstlgrammarParser parser = new NstlgrammarParser(lexer);
+                
+                ParseResult result;
+                try(CompileProfiler.Section s = CompileProfiler.section("parse")) {
+                    result = parser.parse();
+                }
+                
+                if(result.getErrors().size() != 0) {
+                    LOG.severe("Encountered errors parsing " + workingFile);
+                    for(ParseError e : result.getErrors()) {
+                        LOG.severe("ParseError: " + e);
+                    }
+                    
+                    return new UnitResult(workingFile, null, null, List.of());
+                }
+                
+                ASTNode root = result.getRoot();
+                LOG.finest("AST");
+                LOG.finest(() -> {printTree(LOG, root, new boolean[] {}); return "";});
+                
+                String libname = fileName.substring(0, fileName.lastIndexOf('.'));
+                String cacheKey = null;
+                
+                try {
+                    // Check the cache
+                    TopLevelParser.ModuleSource source = null;
+                    if(cache != null) {
+                        source = TopLevelParser.collectSource(libname, root, locator);
+                        
+                        if(source.encounteredErrors()) {
+                            throw new CompilationException();
+                        }
+                        
+                        cacheKey = cache.getKey(workingFile, source.headerPaths());
+                        RenameableRelocatableObject cached = cache.load(cacheKey);
+                        
+                        if(cached != null) {
+                            LOG.info("Using cached object for " + workingFile);
+                            return new UnitResult(workingFile, cached, libname, List.of());
+                        }
+                    }
+                    
+                    // Compile! Reuse the collected headers if the compiler can take them
+                    ASMObject obj;
+                    if(source != null && comp instanceof IRCompiler irComp) {
+                        obj = irComp.compile(source, workingFile);
+                    } else {
+                        obj = comp.compile(root, libname, locator, workingFile);
+                    }
+                    RenameableRelocatableObject assembled = assembleCompiled(obj, libname, fasmOutDir, asmOptions);
+                    
+                    if(cacheKey != null) {
+                        cache.store(cacheKey, assembled);
+                    }
+                    
+                    return new UnitResult(workingFile, assembled, libname, List.of());
+                } catch(CompilationException | AssemblyException e) {
+                    return new UnitResult(workingFile, null, null, List.of());
+                } catch(IllegalStateException e) {
+                    LOG.severe(e.getMessage());
+                    return new UnitResult(workingFile, null, null, List.of());
+                }
+            
+            case ".nirb": {
+                // restart code generation from optimized IR
+                String irLibname = fileName.substring(0, fileName.lastIndexOf('.'));
+                
+                if(!(comp instanceof IRCompiler irComp)) {
+                    LOG.severe("Binary IR input requires the IR compiler: " + workingFile);
+                    return new UnitResult(workingFile, null, null, List.of());
+                }
+                
+                IRModule module;
+                try(CompileProfiler.Section s = CompileProfiler.section("read ir")) {
+                    module = IRBinaryReader.read(workingFile);
+                } catch(IOException e) {
+                    LOG.severe("Could not read binary IR " + workingFile + ": " + e.getMessage());
+                    return new UnitResult(workingFile, null, null, List.of());
+                }
+                
+                // Libraries are compiled from source as usual
+                for(Path library : module.getLibraryFileMap().keySet()) {
+                    locator.addFile(library);
+                }
+                
+                try {
+                    ASMObject obj = irComp.generate(module);
+                    return new UnitResult(workingFile, assembleCompiled(obj, irLibname, fasmOutDir, asmOptions), irLibname, List.of());
+                } catch(CompilationException | AssemblyException e) {
+                    return new UnitResult(workingFile, null, null, List.of());
+                }
+            }
+            
+            case ".asm":
+                // assemble
+                try {
+                    RenameableRelocatableObject obj = NSTAssembler.assembleFile(workingFile, locator, asmOptions);
+                    return new UnitResult(workingFile, obj, obj.getName(), List.of());
+                } catch(AssemblyException e) {
+                    return new UnitResult(workingFile, null, null, List.of());
+                } catch(IOException e) {
+                    LOG.severe("Exception while assembling " + workingFile);
+                    e.printStackTrace();
+                    return new UnitResult(workingFile, null, null, List.of());
+                }
+            
+            case ".obj":
+                // copy
+                RenameableRelocatableObject obj = new RenameableRelocatableObject(workingFile.toFile(), null);
+                return new UnitResult(workingFile, obj, obj.getName(), List.of());
+            
+            default:
+                throw new IllegalArgumentException("Unknown file type: " + workingFile);
+        }
+    }
+    
+    /**
+     * Runs the optimizer and code generator on a .nir or .nirb file, without assembling or linking
+     * @param irFile
+     * @param optimizer
+     * @param codegen Code generator, or null to stop after optimization
+     * @param fasmOutDir Final assembly output directory, or null
+     * @throws IOException
+     */
+    private static void compileFromIR(Path irFile, IROptimizer optimizer, CodeGenerator codegen, Path fasmOutDir) throws IOException {
+        String fileName = irFile.getFileName().toString();
+        IRModule module;
+        
+        LOG.info("Reading IR from " + irFile);
+        
+        try(CompileProfiler.Section s = CompileProfiler.section("read ir")) {
+            module = fileName.endsWith(".nirb") ? IRBinaryReader.read(irFile) : IRParser.parse(irFile);
+        } catch(IllegalArgumentException e) {
+            LOG.severe("Could not parse " + irFile + ": " + e.getMessage());
+            throw new IllegalStateException("Encountered errors reading IR. See severe logs above.");
+        }
+        
+        try(CompileProfiler.Section s = CompileProfiler.section("optimize")) {
+            module = optimizer.optimize(module);
+        }
+        
+        if(codegen == null) {
+            return;
+        }
+        
+        ASMObject obj;
+        try(CompileProfiler.Section s = CompileProfiler.section("codegen")) {
+            obj = codegen.generate(module);
+        } catch(CompilationException e) {
+            throw new IllegalStateException("Encountered errors during code generation. See severe logs above.");
+        }
+        
+        // output AssemblyObject if applicable
+        if(fasmOutDir != null) {
+            Path fasmOutputFile = fasmOutDir.resolve(fileName.substring(0, fileName.lastIndexOf('.')) + ".asm");
+            
+            LOG.info("Writing final assembly to " + fasmOutputFile);
+            
+            try(BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(fasmOutputFile))) {
+                StreamPrinter filePrinter = new StreamPrinter(bos);
+                ASMPrinter.printObject(filePrinter, obj);
+            }
+        }
+    }
+    
+    /**
+     * Creates an output directory if it doesn't exist
+     * @param directory
+     * @throws IOException
+     */
+    private static void createOutputDirectory(Path directory) throws IOException {
+        if(!Files.exists(directory)) {
+            LOG.finest(() -> "Creating output directory " + directory);
+            Files.createDirectories(directory);
+        }
+    }
+    
+    /**
+     * Writes final assembly if applicable and assembles a compiled object
+     * @param obj
+     * @param libname
+     * @param fasmOutDir Final assembly output directory, or null
+     * @param asmOptions
+     * @return
+     * @throws AssemblyException
+     * @throws IOException
+     */
+    private static RenameableRelocatableObject assembleCompiled(ASMObject obj, String libname, Path fasmOutDir, AssemblyOptions asmOptions) throws AssemblyException, IOException {
+        // output AssemblyObject if applicable
+        if(fasmOutDir != null) {
+            Path fasmOutputFile = fasmOutDir.resolve(libname + ".asm");
+            
+            LOG.info("Writing final assembly to " + fasmOutputFile);
+            
+            try(BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(fasmOutputFile))) {
+                StreamPrinter filePrinter = new StreamPrinter(bos);
+                ASMPrinter.printObject(filePrinter, obj);
+            } catch(IOException e) {}
+        }
+        
+        try(CompileProfiler.Section s = CompileProfiler.section("assemble")) {
+            return NSTAssembler.assembleObject(obj, asmOptions);
+        }
+    }
+    
+    /**
+     * Orders the results of a parallel build the way a serial build would have consumed them.
+     * A serial build consumes files in the order they're found, so walk the references
+     * breadth-first from the first file.
+     * @param results Results in completion order
+     * @return
+     */
+    private static List<UnitResult> serialOrder(List<UnitResult> results) {
+        Map<Path, UnitResult> resultMap = new HashMap<>();
+        for(UnitResult res : results) {
+            resultMap.put(res.file(), res);
+        }
+        
+        List<UnitResult> ordered = new ArrayList<>();
+        Set<Path> seen = new HashSet<>();
+        
+        seen.add(results.get(0).file());
+        ordered.add(results.get(0));
+        
+        for(int i = 0; i < ordered.size(); i++) {
+            for(Path p : ordered.get(i).discoveredFiles()) {
+                if(seen.add(p) && resultMap.containsKey(p)) {
+                    ordered.add(resultMap.get(p));
+                }
+            }
+        }
+        
+        return ordered;
     }
     
     public static void printTree(Logger log, ASTNode node, boolean[] crossings) {
@@ -458,6 +970,23 @@ public class NSTLCompiler {
         }
     }
     
+    /**
+     * Parses an optimization level number
+     * @param level
+     * @return The level, or null if it isn't one
+     */
+    private static IROptimizationLevel parseOptimizationLevel(String level) {
+        try {
+            int ordinal = Integer.parseInt(level);
+            
+            if(ordinal >= 0 && ordinal < IROptimizationLevel.values().length) {
+                return IROptimizationLevel.values()[ordinal];
+            }
+        } catch(NumberFormatException e) {}
+        
+        return null;
+    }
+    
     /**
      * Returns a property as a boolean
      * @param properties
@@ -485,8 +1014,18 @@ public class NSTLCompiler {
         System.out.println("\t-irfu <output directory>\tUnoptimized IR Output. Specifies where to output unoptimized IR and enables unoptimized IR file output");
         System.out.println("\t-irfi <output directory>\tIntermediate IR Output. Specifies where to output intermediate IR during optimization and enables intermediate IR file output");
         System.out.println("\t-irfo <output directory>\tOptimized IR Output. Specifies where to output optimzied IR and enables optimized IR file output");
+        System.out.println("\t-irfb <output directory>\tBinary IR Output. Specifies where to output optimized IR in binary form. Binary IR files (.nirb) can be given as input to restart code generation");
         System.out.println("\t-asmfa <output directory>\tAbstract Assembly Output. Specifies where to output abstract assembly and enbles abstract assembly file output");
         System.out.println("\t-asmfo <output directory>\tFinal Assembly Output. Specifies where to output assembly and enables assembly file output");
         System.out.println("\t-raig <type>\t\tShow register allocation interference graphs. Type = uncolored, colored");
+        System.out.println("\t-cache <cache directory>\tObject Cache. Specifies where to cache compiled objects and enables the cache. Unchanged files are not recompiled");
+        System.out.println("\t-j <jobs>\t\tJobs. Specifies how many files to compile in parallel. Default 1");
+        System.out.println("\t-jf <jobs>\t\tFunction Jobs. Specifies how many functions of a file to optimize and generate code for in parallel. Default 1");
+        System.out.println("\t-O <level>\t\tOptimization Level. Specifies how much to optimize, from 0 to 3. Also -O0 to -O3. Default 3");
+        System.out.println("\t-from-ir\t\tFrom IR. The input file is a .nir or .nirb IR file. Optimizes and generates code for it alone, without assembling or linking");
+        System.out.println("\t-passes <pipeline>\tPasses. Runs the given passes instead of those of the optimization level, e.g. (sccp,bbmerge)*3,lcse. Parenthesized groups repeat until nothing changes, at most *N times. none runs no passes");
+        System.out.println("\t-verify\t\t\tVerify. Checks that the IR is in SSA form before optimization and after each pass that changes it");
+        System.out.println("\t-no-codegen\t\tNo Code Generation. With -from-ir, stops after optimization");
+        System.out.println("\t-time <report file>\tTiming. Records wall time, CPU time, and allocations of each compilation phase and writes them to the report file as JSON");
     }
 }
@@ -0,0 +1,304 @@
+package notsotiny.lang.compiler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import notsotiny.lang.compiler.codegen.pattern.ISelPatternMatcher;
+import notsotiny.lang.parser.NstlgrammarLexer;
+import notsotiny.lang.parser.NstlgrammarParser;
+
+/**
+ * Long-lived compiler process. Keeps the parser automata, instruction selection patterns, and header cache
+ * loaded between builds. Requests are sent by NSTLClient over a local socket. Each client is served on its own
+ * thread, but builds run one at a time as logging and profiling are process-wide.
+ *
+ * Request: COMPILE, working directory, argument count, arguments
+ *          SHUTDOWN
+ * Response: any number of MESSAGE frames, then one SUCCESS or FAILURE frame
+ * Frame: type byte, length, UTF-8 contents
+ */
+public class NSTLServer {
+    
+    private static Logger LOG = Logger.getLogger(NSTLServer.class.getName());
+    
+    // Request types
+    static final byte REQUEST_COMPILE = 0,
+                      REQUEST_SHUTDOWN = 1;
+    
+    // Response frame types
+    static final byte FRAME_MESSAGE = 0,
+                      FRAME_SUCCESS = 1,
+                      FRAME_FAILURE = 2;
+    
+    // Held for the duration of a build
+    private static final Object buildLock = new Object();
+    
+    public static void main(String[] args) throws IOException {
+        Path socketPath = (args.length >= 2 && args[0].equals("-socket")) ? Paths.get(args[1]) : getDefaultSocketPath();
+        
+        serve(socketPath);
+    }
+    
+    /**
+     * Serves compilation requests until a shutdown request is received
+     * @param socketPath
+     * @throws IOException
+     */
+    public static void serve(Path socketPath) throws IOException {
+        if(!clearStaleSocket(socketPath)) {
+            LOG.severe("A server is already listening on " + socketPath);
+            return;
+        }
+        
+        warmUp();
+        
+        ExecutorService clients = Executors.newCachedThreadPool();
+        
+        // Don't leave the socket behind if we're killed
+        Thread cleanup = new Thread(() -> {
+            try {
+                Files.deleteIfExists(socketPath);
+            } catch(IOException e) {}
+        });
+        
+        Runtime.getRuntime().addShutdownHook(cleanup);
+        
+        try(ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            LOG.info("Listening on " + socketPath);
+            
+            while(true) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch(ClosedChannelException e) {
+                    // Shut down by a client
+                    break;
+                }
+                
+                clients.execute(() -> {
+                    try(client) {
+                        handleRequest(client, server);
+                    } catch(IOException e) {
+                        LOG.warning("Lost connection to client: " + e.getMessage());
+                    }
+                });
+            }
+        } finally {
+            clients.shutdown();
+            Files.deleteIfExists(socketPath);
+            Runtime.getRuntime().removeShutdownHook(cleanup);
+        }
+        
+        LOG.info("Server stopped");
+    }
+    
+    /**
+     * Removes a socket file left by a server which is no longer running
+     * @param socketPath
+     * @return false if a live server is using the socket
+     * @throws IOException
+     */
+    private static boolean clearStaleSocket(Path socketPath) throws IOException {
+        if(!Files.exists(socketPath)) {
+            return true;
+        }
+        
+        try(SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            probe.connect(UnixDomainSocketAddress.of(socketPath));
+            return false;
+        } catch(IOException e) {
+            // Nobody listening
+            LOG.info("Removing stale socket " + socketPath);
+            Files.deleteIfExists(socketPath);
+            return true;
+        }
+    }
+    
+    /**
+     * Loads the parser automata and instruction selection patterns so the first request doesn't pay for them
+     */
+    private static void warmUp() {
+        LOG.info("Loading parser and patterns");
+        
+        try {
+            ClassLoader loader = NSTLServer.class.getClassLoader();
+            Class.forName(NstlgrammarLexer.class.getName(), true, loader);
+            Class.forName(NstlgrammarParser.class.getName(), true, loader);
+            Class.forName(ISelPatternMatcher.class.getName(), true, loader);
+        } catch(ClassNotFoundException e) {
+            // Can't happen, they're referenced directly
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Handles a single request
+     * @param client
+     * @param server
+     * @throws IOException
+     */
+    private static void handleRequest(SocketChannel client, ServerSocketChannel server) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client));
+        
+        int type = in.read();
+        
+        switch(type) {
+            case -1:
+                // Closed without a request, such as another server checking the socket
+                break;
+            
+            case REQUEST_COMPILE:
+                synchronized(buildLock) {
+                    handleCompile(in, out);
+                }
+                break;
+            
+            case REQUEST_SHUTDOWN:
+                // Let the current build finish first
+                synchronized(buildLock) {
+                    LOG.info("Shutting down");
+                    server.close();
+                    writeFrame(out, FRAME_SUCCESS, "Server stopped");
+                }
+                break;
+            
+            default:
+                writeFrame(out, FRAME_FAILURE, "Unknown request: " + type);
+        }
+    }
+    
+    /**
+     * Runs a single compilation request, forwarding log output to the client
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    private static void handleCompile(DataInputStream in, DataOutputStream out) throws IOException {
+        // Read request
+        Path workingDirectory = Paths.get(in.readUTF());
+        String[] args = new String[in.readInt()];
+        
+        for(int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        
+        LOG.info("Compiling " + String.join(" ", args) + " in " + workingDirectory);
+        
+        // Forward diagnostics for the duration of the request
+        Logger rootLogger = Logger.getLogger("");
+        Handler forwarder = new ClientHandler(out);
+        
+        if(rootLogger.getHandlers().length != 0) {
+            forwarder.setLevel(rootLogger.getHandlers()[0].getLevel());
+        }
+        
+        rootLogger.addHandler(forwarder);
+        
+        try {
+            NSTLCompiler.CompileResult result = NSTLCompiler.compile(args, workingDirectory);
+            
+            if(!result.succeeded()) {
+                writeFrame(out, FRAME_FAILURE, "Compilation failed. See the log above.");
+            } else if(result.execFile() != null) {
+                writeFrame(out, FRAME_SUCCESS, result.execFile().toString());
+            } else {
+                // Stopped before linking, e.g. -from-ir
+                writeFrame(out, FRAME_SUCCESS, "");
+            }
+        } catch(Exception e) {
+            writeFrame(out, FRAME_FAILURE, e.toString());
+        } finally {
+            // A failed request may have left profiling on
+            CompileProfiler.discard();
+            rootLogger.removeHandler(forwarder);
+        }
+    }
+    
+    /**
+     * Writes a response frame
+     * @param out
+     * @param type
+     * @param contents
+     * @throws IOException
+     */
+    static void writeFrame(DataOutputStream out, byte type, String contents) throws IOException {
+        byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        
+        synchronized(out) {
+            out.writeByte(type);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.flush();
+        }
+    }
+    
+    /**
+     * Reads the contents of a response frame, after its type
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    static String readFrameContents(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * @return Socket path used when none is given
+     */
+    static Path getDefaultSocketPath() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "nstlc.sock");
+    }
+    
+    /**
+     * Sends log records to a client as MESSAGE frames
+     */
+    private static class ClientHandler extends Handler {
+        
+        private DataOutputStream out;
+        
+        public ClientHandler(DataOutputStream out) {
+            this.out = out;
+            setFormatter(new SimpleFormatter());
+        }
+        
+        @Override
+        public void publish(LogRecord record) {
+            if(!isLoggable(record)) {
+                return;
+            }
+            
+            try {
+                writeFrame(this.out, FRAME_MESSAGE, getFormatter().format(record));
+            } catch(IOException e) {
+                // Client went away, the result won't reach them either
+            }
+        }
+        
+        @Override
+        public void flush() {}
+        
+        @Override
+        public void close() {}
+    }
+}
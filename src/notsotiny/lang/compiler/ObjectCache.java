@@ -0,0 +1,182 @@
+package notsotiny.lang.compiler;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import asmlib.util.relocation.RenameableRelocatableObject;
+
+/**
+ * On-disk cache of assembled objects.
+ * Objects are keyed by a hash of their source, the headers it includes, the compiler options, and the compiler itself.
+ */
+public class ObjectCache {
+    
+    private static Logger LOG = Logger.getLogger(ObjectCache.class.getName());
+    
+    private Path cacheDirectory;
+    
+    private byte[] configuration;
+    
+    /**
+     * @param cacheDirectory Directory to store objects in. Created if it doesn't exist.
+     * @param compilerVersion Identifies the build of the compiler
+     * @param options Compiler options which affect output
+     * @throws IOException
+     */
+    private ObjectCache(Path cacheDirectory, String compilerVersion, String options) throws IOException {
+        this.cacheDirectory = cacheDirectory;
+        this.configuration = (compilerVersion + "\n" + options).getBytes(StandardCharsets.UTF_8);
+        
+        Files.createDirectories(cacheDirectory);
+    }
+    
+    /**
+     * Opens a cache. Objects built by a different compiler must never be reused, so if the build of
+     * the running compiler can't be identified no cache is used.
+     * @param cacheDirectory Directory to store objects in. Created if it doesn't exist.
+     * @param options Compiler options which affect output
+     * @return The cache, or null if the compiler build can't be identified
+     * @throws IOException
+     */
+    public static ObjectCache open(Path cacheDirectory, String options) throws IOException {
+        String compilerVersion = getCompilerVersion();
+        
+        if(compilerVersion == null) {
+            LOG.warning("Could not identify the compiler build, not using object cache");
+            return null;
+        }
+        
+        return new ObjectCache(cacheDirectory, compilerVersion, options);
+    }
+    
+    /**
+     * Computes the cache key of a source file
+     * @param sourceFile
+     * @param headerFiles Headers included by the source file, in inclusion order
+     * @return
+     * @throws IOException
+     */
+    public String getKey(Path sourceFile, List<Path> headerFiles) throws IOException {
+        MessageDigest digest = getDigest();
+        
+        digest.update(this.configuration);
+        hashFile(digest, sourceFile);
+        
+        for(Path header : headerFiles) {
+            hashFile(digest, header);
+        }
+        
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    /**
+     * Loads a cached object
+     * @param key
+     * @return The cached object, or null if there is none
+     */
+    public RenameableRelocatableObject load(String key) {
+        Path objectFile = this.cacheDirectory.resolve(key + ".obj");
+        
+        if(!Files.exists(objectFile)) {
+            return null;
+        }
+        
+        try {
+            return new RenameableRelocatableObject(objectFile.toFile(), null);
+        } catch(RuntimeException e) {
+            // Treat unreadable entries as misses
+            LOG.warning("Could not read cached object " + objectFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Stores an object in the cache
+     * @param key
+     * @param obj
+     */
+    public void store(String key, RenameableRelocatableObject obj) {
+        Path objectFile = this.cacheDirectory.resolve(key + ".obj");
+        
+        try {
+            // Write then move so concurrent builds never see a partial object
+            Path tempFile = Files.createTempFile(this.cacheDirectory, key, ".tmp");
+            Files.write(tempFile, obj.asObjectFile());
+            Files.move(tempFile, objectFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            LOG.warning("Could not cache object " + objectFile + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Adds a file's path and contents to a digest
+     * @param digest
+     * @param file
+     * @throws IOException
+     */
+    private static void hashFile(MessageDigest digest, Path file) throws IOException {
+        byte[] contents = Files.readAllBytes(file);
+        
+        digest.update(file.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Integer.toString(contents.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(contents);
+    }
+    
+    /**
+     * Identifies the build of the compiler being run. Uses the size and modification time of the
+     * jar or class directory the compiler was loaded from, so rebuilding the compiler invalidates the cache.
+     * @return The build identifier, or null if it can't be determined
+     */
+    private static String getCompilerVersion() {
+        try {
+            CodeSource source = ObjectCache.class.getProtectionDomain().getCodeSource();
+            
+            if(source == null || source.getLocation() == null) {
+                return null;
+            }
+            
+            Path location = Paths.get(source.getLocation().toURI());
+            
+            if(Files.isDirectory(location)) {
+                // Class directory. Use the newest class file.
+                try(Stream<Path> files = Files.walk(location)) {
+                    long newest = files.filter(Files::isRegularFile)
+                                       .mapToLong(p -> p.toFile().lastModified())
+                                       .max().orElse(0);
+                    
+                    return location + ":" + newest;
+                }
+            } else {
+                return location + ":" + Files.size(location) + ":" + Files.getLastModifiedTime(location).toMillis();
+            }
+        } catch(IOException | URISyntaxException | SecurityException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * @return A new SHA-256 digest
+     */
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            // Every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
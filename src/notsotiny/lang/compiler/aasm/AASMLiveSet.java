@@ -9,8 +9,9 @@ import notsotiny.lang.ir.parts.IRIdentifier;
  * @param localSet Set of locals which are live at this point
  * @param stackSet Set of stack slots which are live at this point
  * @param isDef true if this is a 'define'/live-in of the locals in the set, false if this is a 'use'/live-out of the locals in the set
+ * @param loopDepth Loop nesting depth of the basic block this marks the start or end of
  */
-public record AASMLiveSet(Set<IRIdentifier> localSet, Set<IRIdentifier> stackSet, boolean isDef) implements AASMPart {
+public record AASMLiveSet(Set<IRIdentifier> localSet, Set<IRIdentifier> stackSet, boolean isDef, int loopDepth) implements AASMPart {
     
     @Override
     public String toString() {
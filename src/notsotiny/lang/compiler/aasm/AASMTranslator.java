@@ -13,7 +13,6 @@ import notsotiny.nstasm.asmparts.ASMComponent;
 import notsotiny.nstasm.asmparts.ASMConstant;
 import notsotiny.nstasm.asmparts.ASMInstruction;
 import notsotiny.nstasm.asmparts.ASMLabel;
-import notsotiny.nstasm.asmparts.ASMObject;
 import notsotiny.nstasm.asmparts.ASMReference;
 import notsotiny.nstasm.asmparts.ASMReference.ReferenceType;
 import notsotiny.nstasm.asmparts.ASMMemory;
@@ -25,19 +24,18 @@ import notsotiny.sim.ops.Opcode;
 public class AASMTranslator {
     
     /**
-     * Translates aasm, placing results in assemblyComponents and assemblyLabelIndexMap
-     * @param aasm
+     * Translates allocated code, appending the function's assembly components to components
      * @param allocRes
-     * @param assemblyComponents
-     * @param assemblyLabelIndexMap
+     * @param components
+     * @param sourceFunction
      */
-    public static void translate(AllocationResult allocRes, ASMObject asmObj, IRFunction sourceFunction) {
+    public static void translate(AllocationResult allocRes, List<ASMComponent> components, IRFunction sourceFunction) {
         // Create prologue
-        asmObj.addComponent(new ASMLabel(sourceFunction.getID().getName()));
+        components.add(new ASMLabel(sourceFunction.getID().getName()));
         
         // Base pointer
-        asmObj.addComponent(new ASMInstruction(Opcode.PUSHW_BP));
-        asmObj.addComponent(new ASMInstruction(
+        components.add(new ASMInstruction(Opcode.PUSHW_BP));
+        components.add(new ASMInstruction(
             Opcode.MOVW_RIM,
             ASMArgument.REG_BP,
             ASMArgument.REG_SP
@@ -47,13 +45,13 @@ public class AASMTranslator {
         if(allocRes.stackAllocationSize() > 0) {
             if(allocRes.stackAllocationSize() < 0x100) {
                 // Fits in I8 -> shortcut
-                asmObj.addComponent(new ASMInstruction(
+                components.add(new ASMInstruction(
                     Opcode.SUBW_SP_I8,
                     new ASMArgument(new ASMConstant(allocRes.stackAllocationSize()), 1)
                 ));
             } else {
                 // Doesn't fit -> no shortcut
-                asmObj.addComponent(new ASMInstruction(
+                components.add(new ASMInstruction(
                     Opcode.SUBW_RIM,
                     ASMArgument.REG_SP,
                     new ASMArgument(new ASMConstant(allocRes.stackAllocationSize()), 0)
@@ -64,35 +62,35 @@ public class AASMTranslator {
         // Push callee-saved registers  if needed
         Set<Register> toSave = allocRes.usedCalleeSavedRegisters(); 
         if(toSave.contains(Register.JI)) {
-            asmObj.addComponent(new ASMInstruction(Opcode.PUSHW_JI));
+            components.add(new ASMInstruction(Opcode.PUSHW_JI));
         } else {
             if(toSave.contains(Register.I)) {
-                asmObj.addComponent(new ASMInstruction(Opcode.PUSH_I));
+                components.add(new ASMInstruction(Opcode.PUSH_I));
             }
             
             if(toSave.contains(Register.J)) {
-                asmObj.addComponent(new ASMInstruction(Opcode.PUSH_J));
+                components.add(new ASMInstruction(Opcode.PUSH_J));
             }
         }
         
         if(toSave.contains(Register.LK)) {
-            asmObj.addComponent(new ASMInstruction(Opcode.PUSHW_LK));
+            components.add(new ASMInstruction(Opcode.PUSHW_LK));
         } else {
             if(toSave.contains(Register.K)) {
-                asmObj.addComponent(new ASMInstruction(Opcode.PUSH_K));
+                components.add(new ASMInstruction(Opcode.PUSH_K));
             }
             
             if(toSave.contains(Register.L)) {
-                asmObj.addComponent(new ASMInstruction(Opcode.PUSH_L));
+                components.add(new ASMInstruction(Opcode.PUSH_L));
             }
         }
         
         if(toSave.contains(Register.XP)) {
-            asmObj.addComponent(new ASMInstruction(Opcode.PUSHW_XP));
+            components.add(new ASMInstruction(Opcode.PUSHW_XP));
         }
         
         if(toSave.contains(Register.YP)) {
-            asmObj.addComponent(new ASMInstruction(Opcode.PUSHW_YP));
+            components.add(new ASMInstruction(Opcode.PUSHW_YP));
         }
         
         // Create epilogue, which replaces RET
@@ -162,12 +160,12 @@ public class AASMTranslator {
                     switch(meta.op) {
                         // Special cases
                         case RET:
-                            asmObj.addComponents(epilogue);
+                            components.addAll(epilogue);
                             break;
                         
                         case CMOV:
                             // CMOVCC needs its condition as an EI8
-                            asmObj.addComponent(new ASMInstruction(
+                            components.add(new ASMInstruction(
                                 (meta.sourceType == IRType.I32 || meta.destType == IRType.I32) ? Opcode.CMOVWCC_RIM : Opcode.CMOVCC_RIM,
                                 translateArg(inst.getDestination(), true, false, false, sourceFunction),
                                 translateArg(inst.getSource(), true, false, false, sourceFunction),
@@ -177,7 +175,7 @@ public class AASMTranslator {
                         
                         case CALL, JMP, JCC:
                             // Inferred link sizes
-                            asmObj.addComponent(new ASMInstruction(
+                            components.add(new ASMInstruction(
                                 op,
                                 translateArg(inst.getSource(), true, true, false, sourceFunction)
                             ));
@@ -185,7 +183,7 @@ public class AASMTranslator {
                         
                         // One argument (destination)
                         case INC, ICC, DEC, DCC, NOT, NEG:
-                            asmObj.addComponent(new ASMInstruction(
+                            components.add(new ASMInstruction(
                                 op,
                                 translateArg(inst.getDestination(), true, false, false, sourceFunction)
                             ));
@@ -193,7 +191,7 @@ public class AASMTranslator {
                             
                         // One argument (source)
                         case CALLA, JMPA:
-                            asmObj.addComponent(new ASMInstruction(
+                            components.add(new ASMInstruction(
                                 op,
                                 translateArg(inst.getSource(), true, false, false, sourceFunction)
                             ));
@@ -201,7 +199,7 @@ public class AASMTranslator {
                             
                         case PUSH:
                             // Push becomes DST SP, x & needs its size specified
-                            asmObj.addComponent(new ASMInstruction(
+                            components.add(new ASMInstruction(
                                 op,
                                 ASMArgument.REG_SP,
                                 translateArg(inst.getSource(), true, false, true, sourceFunction)
@@ -210,7 +208,7 @@ public class AASMTranslator {
                             
                         case POP:
                             // POP becomes LDI x, SP
-                            asmObj.addComponent(new ASMInstruction(
+                            components.add(new ASMInstruction(
                                 op,
                                 translateArg(inst.getDestination(), true, false, false, sourceFunction),
                                 ASMArgument.REG_SP
@@ -219,7 +217,7 @@ public class AASMTranslator {
                         
                         // Two argument
                         default:
-                            asmObj.addComponent(new ASMInstruction(
+                            components.add(new ASMInstruction(
                                 op,
                                 translateArg(inst.getDestination(), true, false, false, sourceFunction),
                                 translateArg(inst.getSource(), true, false, false, sourceFunction)
@@ -231,7 +229,7 @@ public class AASMTranslator {
                 
                 case AASMLabel lbl: {
                     // Label
-                    asmObj.addComponent(new ASMLabel(lbl.acName(sourceFunction.getID().getName())));
+                    components.add(new ASMLabel(lbl.acName(sourceFunction.getID().getName())));
                     break;
                 }
                 
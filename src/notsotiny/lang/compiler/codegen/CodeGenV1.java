@@ -5,18 +5,31 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Logger;
 
 import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.CompileProfiler;
+import notsotiny.lang.compiler.aasm.AASMInstruction;
+import notsotiny.lang.compiler.aasm.AASMLabel;
 import notsotiny.lang.compiler.aasm.AASMPart;
 import notsotiny.lang.compiler.aasm.AASMPrinter;
 import notsotiny.lang.compiler.aasm.AASMTranslator;
 import notsotiny.lang.compiler.codegen.alloc.AllocationResult;
+import notsotiny.lang.compiler.codegen.alloc.LinearScanAllocator;
+import notsotiny.lang.compiler.codegen.alloc.RAStrategy;
 import notsotiny.lang.compiler.codegen.alloc.RegisterAllocator;
 import notsotiny.lang.compiler.codegen.dag.ISelDAG;
 import notsotiny.lang.compiler.codegen.dag.ISelDAGBuilder;
@@ -26,6 +39,7 @@ import notsotiny.lang.compiler.codegen.dag.ISelDAGTile;
 import notsotiny.lang.compiler.codegen.pattern.ISelPatternMatcher;
 import notsotiny.lang.compiler.codegen.pretransform.ISelPretransformConditionalArguments;
 import notsotiny.lang.compiler.codegen.pretransform.ISelPretransformer;
+import notsotiny.lang.compiler.optimization.IROptimizationLevel;
 import notsotiny.lang.ir.parts.IRBasicBlock;
 import notsotiny.lang.ir.parts.IRConstant;
 import notsotiny.lang.ir.parts.IRDefinition;
@@ -35,9 +49,13 @@ import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.lang.ir.parts.IRType;
 import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lang.ir.util.IRAnalysis;
+import notsotiny.lang.ir.util.IRAnalysisManager;
+import notsotiny.lang.ir.util.IRChange;
 import notsotiny.lang.ir.util.IRUtil;
 import notsotiny.lib.data.Pair;
 import notsotiny.lib.printing.StreamPrinter;
+import notsotiny.nstasm.asmparts.ASMComponent;
 import notsotiny.nstasm.asmparts.ASMConstant;
 import notsotiny.nstasm.asmparts.ASMInitializedData;
 import notsotiny.nstasm.asmparts.ASMLabel;
@@ -50,14 +68,38 @@ public class CodeGenV1 implements CodeGenerator {
     
     private static Logger LOG = Logger.getLogger(CodeGenV1.class.getName());
     
-    // TODO: tie to optimization level?
-    private static final int ALLOCATION_ITERATIONS = 16;
+    // Number of register allocation strategies tried at -O2 and above
+    private static final int ALLOCATION_PORTFOLIO_SIZE = 16;
+    
+    // Seed of the register allocation portfolio. Output is the same for the same seed.
+    private static final long ALLOCATION_SEED = 0;
+    
+    /**
+     * A completed register allocation attempt
+     * @param result
+     * @param code Allocated code after peephole optimization
+     * @param score Allocation quality heuristic. Lower is better.
+     */
+    private record Allocation(AllocationResult result, List<AASMPart> code, int score) {}
+    
+    /**
+     * Code generated for a function
+     * @param code Assembly components
+     * @param abstractCode Abstract assembly before register allocation if it's being output, otherwise null
+     */
+    private record FunctionResult(List<ASMComponent> code, List<List<AASMPart>> abstractCode) {}
     
     private boolean showISelDAG = false;
     private boolean showRAIGUncolored = false;
     private boolean showRAIGColored = false;
     private boolean outputAbstractToFile = false;
     
+    // Number of functions to generate code for at once
+    private int parallelism = 1;
+    
+    // Selects the register allocator
+    private IROptimizationLevel level = IROptimizationLevel.THREE;
+    
     private Path abstractOutputDirectory = null;
     
     // Transformations
@@ -76,99 +118,32 @@ public class CodeGenV1 implements CodeGenerator {
         ASMObject asmObj = new ASMObject(module.getName());
         module.getLibraryFileMap().forEach((p, n) -> asmObj.addLibraryMapping(p, n));
         
-        // pre-register allocation AASM so we can output 1 file per module instead of 1 file per function
-        Map<IRIdentifier, List<List<AASMPart>>> abstractResults = new HashMap<>();
-        
         // Generate code :)
-        for(IRFunction function : module.getInternalFunctions().values()) {
-            LOG.fine("----Generating code for " + function.getID().getName() + "----");
-            
-            // Perform pre-DAG transformations
-            for(ISelPretransformer transformer : pretransformers) {
-                transformer.transform(function);
-            }
-            
-            // Convert basic blocks into ISelDAGs
-            // bb ID -> bb DAG
-            Map<IRIdentifier, ISelDAG> bbDAGs = new HashMap<>();
-            
-            // Get information about locals
-            // typeMap and livenessSets will be maintained during code generation. definitionMap will not.
-            Map<IRIdentifier, IRType> typeMap = IRUtil.getTypeMap(function);
-            Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets = IRUtil.getLivenessSets(function, false);
-            Map<IRIdentifier, IRDefinition> definitionMap = IRUtil.getDefinitionMap(function);
-            
-            // Copy of the list as DAG construction adds BBs for conditional argument mappings
-            // New BBs have their DAGs built when created so they don't need to be included in the loop
-            // New BBs are also added to the liveness sets
-            List<IRBasicBlock> sourceBBs = new ArrayList<>(function.getBasicBlockList());
-            for(IRBasicBlock irBB : sourceBBs) {
-                //LOG.info(irBB.getID() + " liveness: " + livenessSets.get(irBB.getID()) + "");
-                
-                // Ensure we have no unnecessary NONEs
-                IRUtil.inferNoneTypes(irBB, typeMap);
-                
-                // Build DAG
-                bbDAGs.putAll(ISelDAGBuilder.buildDAG(irBB, typeMap, livenessSets, definitionMap));
-            }
-            
-            if(this.showISelDAG) {
-                for(Entry<IRIdentifier, ISelDAG> entry : bbDAGs.entrySet()) {
-                    ISelDAGRenderer.renderDAG(entry.getValue(), function.getID() + " - " + entry.getKey());
-                }
-            }
-            
-            // Perform instruction selection
-            Map<IRIdentifier, List<List<AASMPart>>> bbAASMs = new HashMap<>(); 
-            
-            for(ISelDAG dag : bbDAGs.values()) {
-                // Perform pattern matching to determine what tiles can be used for each node
-                Map<ISelDAGNode, Set<ISelDAGTile>> matchingTilesMap = ISelPatternMatcher.matchPatterns(dag, typeMap);
-                
-                // Tile the DAG to select instructions
-                Map<ISelDAGNode, ISelDAGTile> selectedTiles = new HashMap<>();
-                Map<ISelDAGNode, Set<ISelDAGTile>> coveringTiles = new HashMap<>();
-                ISelTileSelector.selectTiles(selectedTiles, coveringTiles, dag, matchingTilesMap);
-                
-                // Perform intra-block scheduling
-                List<List<AASMPart>> schedule = IntraBlockScheduler.scheduleBlock(dag, selectedTiles, coveringTiles);
-                bbAASMs.put(dag.getBasicBlock().getID(), schedule);
-            }
-            
-            // Perform inter-block scheduling
-            List<List<AASMPart>> scheduledCode = InterBlockScheduler.scheduleBlocks(function, bbAASMs, livenessSets);
+        List<IRFunction> functions = new ArrayList<>(module.getInternalFunctions().values());
+        List<FunctionResult> functionResults;
+        
+        // Graphs are shown one function at a time
+        if(this.parallelism > 1 && functions.size() > 1 && !this.showISelDAG && !this.showRAIGUncolored && !this.showRAIGColored) {
+            functionResults = generateFunctions(functions);
+        } else {
+            functionResults = new ArrayList<>();
             
-            if(this.outputAbstractToFile) {
-                abstractResults.put(function.getID(), scheduledCode);
+            for(IRFunction function : functions) {
+                functionResults.add(generateFunction(function));
             }
+        }
+        
+        // pre-register allocation AASM so we can output 1 file per module instead of 1 file per function
+        Map<IRIdentifier, List<List<AASMPart>>> abstractResults = new LinkedHashMap<>();
+        
+        // Functions are added in module order regardless of the order they finished in
+        for(int i = 0; i < functions.size(); i++) {
+            FunctionResult result = functionResults.get(i);
+            asmObj.addComponents(result.code());
             
-            // Do several register allocation attempts to ensure the best is achieved
-            int bestScore = Integer.MAX_VALUE;
-            List<AASMPart> bestCode = null;
-            AllocationResult bestResult = null;
-            int iters = (this.showRAIGColored || this.showRAIGUncolored) ? 1 : ALLOCATION_ITERATIONS;
-            
-            for(int i = 0; i < iters; i++) {
-                // Perform register allocation
-                AllocationResult allocRes = RegisterAllocator.allocateRegisters(scheduledCode, function, showRAIGUncolored, showRAIGColored);
-                
-                // Perform peephole optimizations
-                // Mainly cleaning up RA output
-                List<AASMPart> optimizedCode = PeepholeOptimizer.optimize(allocRes.allocatedCode(), function);
-                
-                // Allocation quality heuristic: # of instructions + # callee saved registers * factor
-                int score = optimizedCode.size() + (allocRes.usedCalleeSavedRegisters().size() * 1);
-                //int score = optimizedCode.size();
-                
-                if(score < bestScore) {
-                    bestCode = optimizedCode;
-                    bestResult = allocRes;
-                    bestScore = score;
-                }
+            if(result.abstractCode() != null) {
+                abstractResults.put(functions.get(i).getID(), result.abstractCode());
             }
-            
-            // Convert to assembly components
-            AASMTranslator.translate(new AllocationResult(bestCode, bestResult.stackAllocationSize(), bestResult.usedCalleeSavedRegisters()), asmObj, function);
         }
         
         // Output abstract assembly to file if needed
@@ -245,6 +220,321 @@ public class CodeGenV1 implements CodeGenerator {
         return asmObj;
     }
 
+    /**
+     * Generates code for each function, in parallel
+     * Code generation only reads the function it's working on and the pattern tables, so functions are
+     * independent.
+     * @param functions
+     * @return Results for each function, in the order of functions
+     * @throws CompilationException
+     */
+    private List<FunctionResult> generateFunctions(List<IRFunction> functions) throws CompilationException {
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        
+        try {
+            List<Future<FunctionResult>> tasks = new ArrayList<>();
+            
+            for(IRFunction function : functions) {
+                tasks.add(pool.submit(() -> generateFunction(function)));
+            }
+            
+            // Wait for everything, rethrowing failures in function order
+            List<FunctionResult> functionResults = new ArrayList<>();
+            
+            for(Future<FunctionResult> task : tasks) {
+                try {
+                    functionResults.add(task.get());
+                } catch(ExecutionException e) {
+                    if(e.getCause() instanceof CompilationException ce) {
+                        throw ce;
+                    } else if(e.getCause() instanceof RuntimeException re) {
+                        throw re;
+                    } else if(e.getCause() instanceof Error err) {
+                        throw err;
+                    }
+                    
+                    throw new IllegalStateException(e.getCause());
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            
+            return functionResults;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Generates code for a function
+     * @param function
+     * @return The function's assembly components and abstract assembly
+     * @throws CompilationException
+     */
+    private FunctionResult generateFunction(IRFunction function) throws CompilationException {
+        try(CompileProfiler.Section fs = CompileProfiler.section("function " + function.getModule().getName() + "." + function.getID().getName())) {
+            return generateFunctionCode(function);
+        }
+    }
+    
+    /**
+     * Runs the code generation stages on a function
+     * @param function
+     * @return The function's assembly components and abstract assembly
+     * @throws CompilationException
+     */
+    private FunctionResult generateFunctionCode(IRFunction function) throws CompilationException {
+        LOG.fine("----Generating code for " + function.getID().getName() + "----");
+        
+        // Perform pre-DAG transformations
+        IRChange pretransformChange = IRChange.NONE;
+        
+        try(CompileProfiler.Section s = CompileProfiler.section("pretransform")) {
+            for(ISelPretransformer transformer : pretransformers) {
+                pretransformChange = pretransformChange.combine(transformer.transform(function));
+            }
+        }
+        
+        // Convert basic blocks into ISelDAGs
+        // bb ID -> bb DAG
+        Map<IRIdentifier, ISelDAG> bbDAGs = new HashMap<>();
+        
+        // Get information about locals
+        // typeMap and livenessSets will be maintained during code generation. definitionMap will not.
+        Map<IRIdentifier, IRType> typeMap;
+        Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets;
+        Map<IRIdentifier, Integer> loopDepths;
+        
+        try(CompileProfiler.Section s = CompileProfiler.section("dag build")) {
+            // Pretransformations may have changed the function
+            IRAnalysisManager analyses = function.getAnalyses();
+            analyses.invalidate(pretransformChange, EnumSet.noneOf(IRAnalysis.class));
+            
+            // Computed outside the cache, so the live sets code generation modifies are its own
+            Pair<List<IRIdentifier>, Map<Integer, Integer>> dfsInfo = analyses.getPreorderInfo();
+            
+            typeMap = analyses.getTypeMap();
+            livenessSets = IRUtil.getLivenessSets(function, false, analyses.getLoopNestingForest(), dfsInfo.a, dfsInfo.b);
+            loopDepths = IRUtil.getLoopDepths(function, analyses.getLoopNestingForest());
+            Map<IRIdentifier, IRDefinition> definitionMap = analyses.getDefinitionMap();
+            
+            // Code generation takes ownership of these and modifies the function
+            analyses.invalidateAll();
+            
+            // Copy of the list as DAG construction adds BBs for conditional argument mappings
+            // New BBs have their DAGs built when created so they don't need to be included in the loop
+            // New BBs are also added to the liveness sets
+            List<IRBasicBlock> sourceBBs = new ArrayList<>(function.getBasicBlockList());
+            for(IRBasicBlock irBB : sourceBBs) {
+                //LOG.info(irBB.getID() + " liveness: " + livenessSets.get(irBB.getID()) + "");
+                
+                // Ensure we have no unnecessary NONEs
+                IRUtil.inferNoneTypes(irBB, typeMap);
+                
+                // Build DAG
+                bbDAGs.putAll(ISelDAGBuilder.buildDAG(irBB, typeMap, livenessSets, definitionMap));
+            }
+        }
+        
+        if(this.showISelDAG) {
+            for(Entry<IRIdentifier, ISelDAG> entry : bbDAGs.entrySet()) {
+                ISelDAGRenderer.renderDAG(entry.getValue(), function.getID() + " - " + entry.getKey());
+            }
+        }
+        
+        // Perform instruction selection
+        Map<IRIdentifier, List<List<AASMPart>>> bbAASMs = new HashMap<>(); 
+        
+        for(ISelDAG dag : bbDAGs.values()) {
+            // Perform pattern matching to determine what tiles can be used for each node
+            Map<ISelDAGNode, Set<ISelDAGTile>> matchingTilesMap;
+            try(CompileProfiler.Section s = CompileProfiler.section("pattern matching")) {
+                matchingTilesMap = ISelPatternMatcher.matchPatterns(dag, typeMap);
+            }
+            
+            // Tile the DAG to select instructions
+            Map<ISelDAGNode, ISelDAGTile> selectedTiles = new HashMap<>();
+            Map<ISelDAGNode, Set<ISelDAGTile>> coveringTiles = new HashMap<>();
+            try(CompileProfiler.Section s = CompileProfiler.section("tile selection")) {
+                ISelTileSelector.selectTiles(selectedTiles, coveringTiles, dag, matchingTilesMap);
+            }
+            
+            // Perform intra-block scheduling
+            try(CompileProfiler.Section s = CompileProfiler.section("intra-block scheduling")) {
+                List<List<AASMPart>> schedule = IntraBlockScheduler.scheduleBlock(dag, selectedTiles, coveringTiles);
+                bbAASMs.put(dag.getBasicBlock().getID(), schedule);
+            }
+        }
+        
+        // Perform inter-block scheduling
+        List<List<AASMPart>> scheduledCode;
+        try(CompileProfiler.Section s = CompileProfiler.section("inter-block scheduling")) {
+            scheduledCode = InterBlockScheduler.scheduleBlocks(function, bbAASMs, livenessSets, loopDepths);
+        }
+        
+        Allocation best;
+        try(CompileProfiler.Section s = CompileProfiler.section("register allocation")) {
+            if(this.level == IROptimizationLevel.ZERO && !this.showRAIGColored && !this.showRAIGUncolored) {
+                // Linear scan for fast compiles
+                best = finishAllocation(LinearScanAllocator.allocateRegisters(scheduledCode, function), function);
+            } else {
+                // Try several register allocation strategies to ensure the best is achieved
+                // -O1 and graph visualization use a single attempt
+                List<RAStrategy> strategies = (this.level == IROptimizationLevel.ONE || this.showRAIGColored || this.showRAIGUncolored) ? List.of(RAStrategy.DEFAULT) : RAStrategy.portfolio(ALLOCATION_PORTFOLIO_SIZE, ALLOCATION_SEED);
+                best = allocateRegisters(scheduledCode, function, strategies);
+            }
+        }
+        
+        // Convert to assembly components
+        List<ASMComponent> components = new ArrayList<>();
+        try(CompileProfiler.Section s = CompileProfiler.section("translation")) {
+            AASMTranslator.translate(new AllocationResult(best.code(), best.result().stackAllocationSize(), best.result().usedCalleeSavedRegisters()), components, function);
+        }
+        
+        return new FunctionResult(components, this.outputAbstractToFile ? scheduledCode : null);
+    }
+    
+    /**
+     * Runs register allocation with each strategy concurrently and picks the best result. Attempts
+     * after one that reaches the lower bound on score are cancelled, as they can't do better. Ties
+     * go to the earliest strategy, so the result doesn't depend on timing.
+     * @param scheduledCode
+     * @param function
+     * @param strategies
+     * @return Best allocation
+     * @throws CompilationException
+     */
+    private Allocation allocateRegisters(List<List<AASMPart>> scheduledCode, IRFunction function, List<RAStrategy> strategies) throws CompilationException {
+        int lowerBound = allocationLowerBound(scheduledCode);
+        
+        // Index of the first attempt to reach the lower bound
+        AtomicInteger cutoff = new AtomicInteger(Integer.MAX_VALUE);
+        
+        // Fork into the current pool, or the common pool if we aren't in one
+        List<ForkJoinTask<Allocation>> attempts = new ArrayList<>();
+        
+        for(int i = 0; i < strategies.size(); i++) {
+            int index = i;
+            RAStrategy strategy = strategies.get(i);
+            
+            attempts.add(ForkJoinTask.adapt(() -> {
+                BooleanSupplier cancelled = () -> cutoff.get() < index;
+                
+                if(cancelled.getAsBoolean()) {
+                    return null;
+                }
+                
+                // Perform register allocation
+                AllocationResult allocRes = RegisterAllocator.allocateRegisters(scheduledCode, function, strategy, cancelled, this.showRAIGUncolored, this.showRAIGColored);
+                
+                if(allocRes == null) {
+                    return null;
+                }
+                
+                Allocation allocation = finishAllocation(allocRes, function);
+                
+                if(allocation.score() <= lowerBound) {
+                    LOG.finest(function.getID() + " reached allocation lower bound with " + strategy);
+                    cutoff.accumulateAndGet(index, Math::min);
+                }
+                
+                return allocation;
+            }).fork());
+        }
+        
+        // Wait for everything
+        List<Allocation> results = new ArrayList<>();
+        
+        for(ForkJoinTask<Allocation> attempt : attempts) {
+            try {
+                results.add(attempt.join());
+            } catch(RuntimeException e) {
+                // Allocation failures are the same for every strategy, don't bother with the rest
+                for(ForkJoinTask<Allocation> other : attempts) {
+                    other.cancel(false);
+                }
+                
+                for(Throwable t = e; t != null; t = t.getCause()) {
+                    if(t instanceof CompilationException ce) {
+                        throw ce;
+                    }
+                }
+                
+                throw e;
+            }
+        }
+        
+        // Pick the best. Attempts up to the cutoff always finish.
+        Allocation best = null;
+        int last = Math.min(cutoff.get(), results.size() - 1);
+        
+        for(int i = 0; i <= last; i++) {
+            Allocation a = results.get(i);
+            
+            if(best == null || a.score() < best.score()) {
+                best = a;
+            }
+        }
+        
+        LOG.finer(function.getID() + " allocation score " + best.score() + " (lower bound " + lowerBound + ")");
+        
+        return best;
+    }
+    
+    /**
+     * Cleans up allocated code and scores it
+     * @param allocRes
+     * @param function
+     * @return
+     */
+    private static Allocation finishAllocation(AllocationResult allocRes, IRFunction function) {
+        // Perform peephole optimizations
+        // Mainly cleaning up RA output
+        List<AASMPart> optimizedCode = PeepholeOptimizer.optimize(allocRes.allocatedCode(), function);
+        
+        // Allocation quality heuristic: # of instructions + # callee saved registers * factor
+        int score = optimizedCode.size() + (allocRes.usedCalleeSavedRegisters().size() * 1);
+        //int score = optimizedCode.size();
+        
+        return new Allocation(allocRes, optimizedCode, score);
+    }
+    
+    /**
+     * Computes a lower bound on the allocation score of some code. Moves and exchanges may be
+     * coalesced away, pushes merged, and jumps to the next label removed, while everything else
+     * remains.
+     * @param code
+     * @return
+     */
+    private static int allocationLowerBound(List<List<AASMPart>> code) {
+        int bound = 0;
+        
+        for(List<AASMPart> group : code) {
+            for(AASMPart part : group) {
+                switch(part) {
+                    case AASMLabel lbl:
+                        bound++;
+                        break;
+                    
+                    case AASMInstruction inst:
+                        switch(inst.getOp()) {
+                            case MOV, XCHG, PUSH, JMP, JCC:
+                                break;
+                            
+                            default:
+                                bound++;
+                        }
+                        break;
+                    
+                    default:
+                }
+            }
+        }
+        
+        return bound;
+    }
+    
     @Override
     public void setGraphVisualization(boolean isel, boolean raUncolored, boolean raColored) {
         this.showISelDAG = isel;
@@ -258,4 +548,14 @@ public class CodeGenV1 implements CodeGenerator {
         this.abstractOutputDirectory = directory;
     }
 
+    @Override
+    public void setParallelism(int threads) {
+        this.parallelism = threads;
+    }
+
+    @Override
+    public void setLevel(IROptimizationLevel level) {
+        this.level = level;
+    }
+
 }
@@ -3,6 +3,7 @@ package notsotiny.lang.compiler.codegen;
 import java.nio.file.Path;
 
 import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.optimization.IROptimizationLevel;
 import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.nstasm.asmparts.ASMObject;
 
@@ -33,4 +34,16 @@ public interface CodeGenerator {
      */
     public void setGraphVisualization(boolean isel, boolean raUncolored, boolean raColored);
     
+    /**
+     * Set how many functions may have code generated at once
+     * @param threads
+     */
+    public void setParallelism(int threads);
+    
+    /**
+     * Sets the optimization level. Lower levels trade code quality for compile time.
+     * @param level
+     */
+    public void setLevel(IROptimizationLevel level);
+    
 }
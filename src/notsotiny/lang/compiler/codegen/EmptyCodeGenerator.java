@@ -2,6 +2,7 @@ package notsotiny.lang.compiler.codegen;
 
 import java.nio.file.Path;
 
+import notsotiny.lang.compiler.optimization.IROptimizationLevel;
 import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.nstasm.asmparts.ASMObject;
 
@@ -25,4 +26,16 @@ public class EmptyCodeGenerator implements CodeGenerator {
         
     }
     
+    @Override
+    public void setParallelism(int threads) {
+        // TODO Auto-generated method stub
+        
+    }
+    
+    @Override
+    public void setLevel(IROptimizationLevel level) {
+        // TODO Auto-generated method stub
+        
+    }
+    
 }
@@ -1,6 +1,8 @@
 package notsotiny.lang.compiler.codegen;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -31,9 +33,10 @@ public class InterBlockScheduler {
      * @param function
      * @param bbAASMs
      * @param livenessSets
+     * @param loopDepths Loop nesting depth of each block, recorded in its liveness markers
      * @return
      */
-    public static List<List<AASMPart>> scheduleBlocks(IRFunction function, Map<IRIdentifier, List<List<AASMPart>>> bbAASMs, Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets) {
+    public static List<List<AASMPart>> scheduleBlocks(IRFunction function, Map<IRIdentifier, List<List<AASMPart>>> bbAASMs, Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets, Map<IRIdentifier, Integer> loopDepths) {
         
         LOG.finer("Scheduling blocks in " + function.getID());
         
@@ -64,7 +67,7 @@ public class InterBlockScheduler {
         }
         
         // Schedule
-        schedule(parts, function.getBasicBlockList().get(0).getID(), function, bbAASMs, livenessSets, new HashSet<>());
+        schedule(parts, function.getBasicBlockList().get(0).getID(), function, bbAASMs, livenessSets, loopDepths, new HashSet<>());
         
         // Report scheduled code
         if(LOG.isLoggable(Level.FINEST)) {
@@ -83,30 +86,53 @@ public class InterBlockScheduler {
     }
     
     /**
-     * Adds a basic block to the code and schedules its successors recursively
+     * Adds basic blocks to the code in depth-first preorder, starting from the given block
      * @param parts
-     * @param blockID
+     * @param entryID
      * @param function
      * @param bbAASMs
      * @param livenessSets
+     * @param loopDepths
      * @param scheduledBlocks
      */
-    private static void schedule(List<List<AASMPart>> parts, IRIdentifier blockID, IRFunction function, Map<IRIdentifier, List<List<AASMPart>>> bbAASMs, Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets, Set<IRIdentifier> scheduledBlocks) {
-        if(scheduledBlocks.contains(blockID)) {
-            // Already scheduled
-            return;
-        }
-        
-        scheduledBlocks.add(blockID);
+    private static void schedule(List<List<AASMPart>> parts, IRIdentifier entryID, IRFunction function, Map<IRIdentifier, List<List<AASMPart>>> bbAASMs, Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets, Map<IRIdentifier, Integer> loopDepths, Set<IRIdentifier> scheduledBlocks) {
+        // Explicit stack, so that large functions don't overflow the call stack
+        Deque<IRIdentifier> stack = new ArrayDeque<>();
+        stack.push(entryID);
         
+        while(!stack.isEmpty()) {
+            IRIdentifier blockID = stack.pop();
+            
+            if(scheduledBlocks.contains(blockID)) {
+                // Already scheduled
+                continue;
+            }
+            
+            scheduledBlocks.add(blockID);
+            scheduleBlock(parts, blockID, function, bbAASMs, livenessSets, loopDepths, stack);
+        }
+    }
+    
+    /**
+     * Adds a basic block to the code and pushes its successors to the stack
+     * @param parts
+     * @param blockID
+     * @param function
+     * @param bbAASMs
+     * @param livenessSets
+     * @param loopDepths
+     * @param stack
+     */
+    private static void scheduleBlock(List<List<AASMPart>> parts, IRIdentifier blockID, IRFunction function, Map<IRIdentifier, List<List<AASMPart>>> bbAASMs, Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSets, Map<IRIdentifier, Integer> loopDepths, Deque<IRIdentifier> stack) {
         // Retrieve basic block info
         IRBasicBlock block = function.getBasicBlock(blockID);
         Pair<Set<IRIdentifier>, Set<IRIdentifier>> liveness = livenessSets.get(blockID);
         Set<IRIdentifier> liveInSet = liveness.a;
         Set<IRIdentifier> liveOutSet = liveness.b;
+        int loopDepth = loopDepths.getOrDefault(blockID, 0);
         
         // Label the block and add live-in information
-        parts.add(List.of(new AASMLabel(blockID + ""), new AASMLiveSet(liveInSet, new HashSet<>(), true)));
+        parts.add(List.of(new AASMLabel(blockID + ""), new AASMLiveSet(liveInSet, new HashSet<>(), true, loopDepth)));
         
         // Add the basic block's code
         for(List<AASMPart> group : bbAASMs.get(blockID)) {
@@ -116,7 +142,7 @@ public class InterBlockScheduler {
         }
         
         // Add live-out information
-        parts.add(List.of(new AASMLiveSet(liveOutSet, new HashSet<>(), false)));
+        parts.add(List.of(new AASMLiveSet(liveOutSet, new HashSet<>(), false, loopDepth)));
         
         // Schedule successors
         IRBranchInstruction exit = block.getExitInstruction();
@@ -126,13 +152,14 @@ public class InterBlockScheduler {
                 // Two successors
                 // The trailing branch of a conditional branch generated by the pattern matcher is to the false target
                 // Schedule false target first to eliminate the trailing jump if it hasn't already been scheduled
-                schedule(parts, exit.getFalseTargetBlock(), function, bbAASMs, livenessSets, scheduledBlocks);
-                schedule(parts, exit.getTrueTargetBlock(), function, bbAASMs, livenessSets, scheduledBlocks);
+                // The stack is LIFO, so the false target is pushed last
+                stack.push(exit.getTrueTargetBlock());
+                stack.push(exit.getFalseTargetBlock());
                 break;
                 
             case JMP:
                 // One successor
-                schedule(parts, exit.getTrueTargetBlock(), function, bbAASMs, livenessSets, scheduledBlocks);
+                stack.push(exit.getTrueTargetBlock());
                 break;
                 
             case RET:
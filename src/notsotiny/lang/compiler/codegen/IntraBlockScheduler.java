@@ -1,8 +1,12 @@
 package notsotiny.lang.compiler.codegen;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -234,11 +238,21 @@ public class IntraBlockScheduler {
             tsDFSVisit(unmarked.iterator().next(), unmarked, tList, matchedTiles, coveringTiles);
         }
         
+        // Tiles were added in reverse topological order
+        Collections.reverse(tList);
+        
         return tList;
     }
     
     /**
-     * depth-first search visit for getTopologicalSort
+     * A tile on the stack of tsDFSVisit
+     * @param tile
+     * @param next Remaining tiles to visit before this one
+     */
+    private record TSFrame(ISelDAGTile tile, Iterator<ISelDAGTile> next) {}
+    
+    /**
+     * depth-first search visit for getTopologicalSort. Iterative, so that large DAGs don't overflow the stack.
      * @param tile
      * @param unmarked
      * @param tList
@@ -246,28 +260,49 @@ public class IntraBlockScheduler {
      * @param coveringTiles
      */
     private static void tsDFSVisit(ISelDAGTile tile, Set<ISelDAGTile> unmarked, List<ISelDAGTile> tList, Map<ISelDAGNode, ISelDAGTile> matchedTiles, Map<ISelDAGNode, Set<ISelDAGTile>> coveringTiles) {
-        if(!unmarked.contains(tile)) {
-            // Already dealt with
-            return;
+        Deque<TSFrame> stack = new ArrayDeque<>();
+        stack.push(new TSFrame(tile, tsDependencies(tile, matchedTiles, coveringTiles)));
+        
+        while(!stack.isEmpty()) {
+            TSFrame frame = stack.peek();
+            
+            if(frame.next().hasNext()) {
+                ISelDAGTile next = frame.next().next();
+                
+                // Visit if not already dealt with
+                if(unmarked.contains(next)) {
+                    //LOG.finest("Visiting " + next.rootNode().getDescription() + " " + AASMPrinter.getAASMString(next.aasm()));
+                    stack.push(new TSFrame(next, tsDependencies(next, matchedTiles, coveringTiles)));
+                }
+            } else {
+                // Mark & add to ts list
+                stack.pop();
+                unmarked.remove(frame.tile());
+                tList.add(frame.tile());
+            }
         }
+    }
         
-        //LOG.finest("Visiting " + tile.rootNode().getDescription() + " " + AASMPrinter.getAASMString(tile.aasm()));
+    /**
+     * @param tile
+     * @param matchedTiles
+     * @param coveringTiles
+     * @return The tiles of a tile's inputs followed by the tiles covering its chain
+     */
+    private static Iterator<ISelDAGTile> tsDependencies(ISelDAGTile tile, Map<ISelDAGNode, ISelDAGTile> matchedTiles, Map<ISelDAGNode, Set<ISelDAGTile>> coveringTiles) {
+        List<ISelDAGTile> dependencies = new ArrayList<>();
         
-        // Visit inputs
+        // Inputs
         for(ISelDAGNode inputNode : tile.inputNodes()) {
-            tsDFSVisit(matchedTiles.get(inputNode), unmarked, tList, matchedTiles, coveringTiles);
+            dependencies.add(matchedTiles.get(inputNode));
         }
         
-        // Visit chain
+        // Chain
         if(tile.chainNode() != null) {
-            for(ISelDAGTile chainTile : coveringTiles.get(tile.chainNode())) {
-                tsDFSVisit(chainTile, unmarked, tList, matchedTiles, coveringTiles);
-            }
+            dependencies.addAll(coveringTiles.get(tile.chainNode()));
         }
         
-        // Mark & add to ts list
-        unmarked.remove(tile);
-        tList.addFirst(tile); // reverse topological sort would append
+        return dependencies.iterator();
     }
     
 }
@@ -0,0 +1,511 @@
+package notsotiny.lang.compiler.codegen.alloc;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import notsotiny.sim.Register;
+import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.aasm.AASMAbstractRegister;
+import notsotiny.lang.compiler.aasm.AASMInstruction;
+import notsotiny.lang.compiler.aasm.AASMLiveSet;
+import notsotiny.lang.compiler.aasm.AASMMachineRegister;
+import notsotiny.lang.compiler.aasm.AASMOperation;
+import notsotiny.lang.compiler.aasm.AASMPart;
+import notsotiny.lang.compiler.aasm.AASMRegister;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRIdentifier;
+
+/**
+ * Allocates registers quickly
+ *
+ * Using the linear scan allocator described in Poletto & Sarkar Linear Scan Register Allocation, with
+ * lifetime holes as in Wimmer & Mössenböck Optimized Interval Splitting in a Linear Scan Register
+ * Allocator. Intervals are allocated in order of start without backtracking and whole locals are spilled.
+ * Produces worse code than RegisterAllocator in much less time.
+ */
+public class LinearScanAllocator {
+    
+    private static Logger LOG = Logger.getLogger(LinearScanAllocator.class.getName());
+    
+    // Machine register of each machine register ID
+    private static final Map<IRIdentifier, Register> MACHINE_REGISTERS = new HashMap<>();
+    
+    static {
+        for(RARegisterClass rClass : List.of(RARegisterClass.I8, RARegisterClass.I16, RARegisterClass.I32)) {
+            for(Register r : rClass.registers()) {
+                MACHINE_REGISTERS.put(new AASMMachineRegister(r).id(), r);
+            }
+        }
+    }
+    
+    /**
+     * The live interval of a local
+     */
+    private static class Interval {
+        IRIdentifier id;
+        RARegisterClass rClass;
+        
+        // Positions where the local is live. Part k of the code uses at 2k and defines at 2k + 1
+        BitSet positions = new BitSet();
+        
+        int start,
+            end;
+        
+        // Live across a CALL
+        boolean crossesCall = false;
+        
+        // Spill loads and what's left of spilled locals can't be spilled
+        boolean unspillable;
+        
+        // Local or machine register this is moved to or from
+        IRIdentifier hint = null;
+        
+        Register register = Register.NONE;
+        
+        Interval(IRIdentifier id, RARegisterClass rClass, boolean unspillable) {
+            this.id = id;
+            this.rClass = rClass;
+            this.unspillable = unspillable;
+        }
+    }
+    
+    /**
+     * Liveness of locals and machine registers during the backwards walk
+     */
+    private static class Liveness {
+        Map<IRIdentifier, Interval> intervals;
+        
+        // Positions each machine register is live
+        Map<Register, BitSet> machineLive = new EnumMap<>(Register.class);
+        
+        // Live IDs and the position they became live
+        Map<IRIdentifier, Integer> live = new HashMap<>();
+        
+        Liveness(Map<IRIdentifier, Interval> intervals) {
+            this.intervals = intervals;
+        }
+        
+        /**
+         * Marks id as live at and before pos
+         * @param id
+         * @param pos
+         */
+        void add(IRIdentifier id, int pos) {
+            if((this.intervals.containsKey(id) || MACHINE_REGISTERS.containsKey(id)) && !this.live.containsKey(id)) {
+                this.live.put(id, pos);
+            }
+        }
+        
+        /**
+         * Marks id as not live before pos
+         * @param id
+         * @param pos
+         */
+        void remove(IRIdentifier id, int pos) {
+            Integer livePos = this.live.remove(id);
+            
+            if(livePos == null) {
+                return;
+            }
+            
+            Interval interval = this.intervals.get(id);
+            
+            if(interval != null) {
+                interval.positions.set(pos, livePos + 1);
+            } else {
+                this.machineLive.computeIfAbsent(MACHINE_REGISTERS.get(id), r -> new BitSet()).set(pos, livePos + 1);
+            }
+        }
+    }
+    
+    /**
+     * Allocates registers given abstract assembly
+     * @param abstractCode
+     * @param sourceFunction
+     * @return
+     * @throws CompilationException
+     */
+    public static AllocationResult allocateRegisters(List<List<AASMPart>> abstractCode, IRFunction sourceFunction) throws CompilationException {
+        
+        LOG.finer("Performing linear scan register allocation for " + sourceFunction.getID());
+        
+        // Perform register class analysis
+        Map<IRIdentifier, RARegisterClass> registerClassMap = new HashMap<>();  // Register class of each local
+        Set<IRIdentifier> preexistingStackSlots = new HashSet<>();              // STACK instruction slots
+        Map<IRIdentifier, Integer> stackSlotSizes = new HashMap<>();            // Size of each stack slot
+        Set<IRIdentifier> spillLoads = new HashSet<>();                         // IDs loaded to by spilled locals
+        Set<IRIdentifier> unspillable = new HashSet<>();                        // Spill loads and spilled locals
+        
+        for(List<AASMPart> group : abstractCode) {
+            for(AASMPart part : group) {
+                if(part instanceof AASMInstruction) {
+                    // For each instruction, identify and validate the register class of each local
+                    RegisterAllocator.assessRegisterClasses(part, registerClassMap, preexistingStackSlots, stackSlotSizes);
+                }
+            }
+        }
+        
+        // Locals which can be recomputed instead of stored when spilled
+        Map<IRIdentifier, AASMPart> rematerializable = RegisterAllocator.findRematerializable(abstractCode);
+        
+        List<List<AASMPart>> currentCode = abstractCode;
+        Map<IRIdentifier, Interval> intervals;
+        int iteration = 0;
+        
+        while(true) {
+            LOG.finest("Linear scan iteration " + iteration);
+            
+            // Find intervals
+            intervals = new HashMap<>();
+            
+            for(IRIdentifier id : registerClassMap.keySet()) {
+                intervals.put(id, new Interval(id, registerClassMap.get(id), unspillable.contains(id)));
+            }
+            
+            Map<Register, BitSet> machineLive = computeIntervals(currentCode, intervals);
+            
+            // Allocate
+            Set<IRIdentifier> spilled = scan(intervals, machineLive, sourceFunction);
+            
+            if(spilled.isEmpty()) {
+                // we're done!
+                break;
+            }
+            
+            // Something spilled. Not done.
+            currentCode = RegisterAllocator.rewriteProgram(currentCode, spilled, registerClassMap, stackSlotSizes, spillLoads, rematerializable, sourceFunction);
+            unspillable.addAll(spilled);
+            unspillable.addAll(spillLoads);
+            iteration++;
+        }
+        
+        // Collect allocation information
+        Map<IRIdentifier, Register> registerMapping = new HashMap<>();
+        
+        for(Interval interval : intervals.values()) {
+            registerMapping.put(interval.id, interval.register);
+        }
+        
+        return RegisterAllocator.realize(currentCode, registerMapping, preexistingStackSlots, stackSlotSizes, sourceFunction);
+    }
+    
+    /**
+     * Computes the interval of each local, walking the code backwards like RegisterAllocator does when
+     * building the interference graph
+     * @param code
+     * @param intervals
+     * @return Positions each machine register is live
+     */
+    private static Map<Register, BitSet> computeIntervals(List<List<AASMPart>> code, Map<IRIdentifier, Interval> intervals) {
+        Liveness liveness = new Liveness(intervals);
+        
+        int k = 0;
+        for(List<AASMPart> group : code) {
+            k += group.size();
+        }
+        
+        // For each part in reverse order
+        for(int g = code.size() - 1; g >= 0; g--) {
+            List<AASMPart> group = code.get(g);
+            
+            for(int i = group.size() - 1; i >= 0; i--) {
+                k--;
+                int usePos = 2 * k,
+                    defPos = 2 * k + 1;
+                
+                switch(group.get(i)) {
+                    case AASMLiveSet ls: {
+                        if(ls.isDef()) {
+                            // Live-in/def. Defined here and live before
+                            for(IRIdentifier def : ls.localSet()) {
+                                liveness.add(def, defPos);
+                            }
+                        } else {
+                            // Live-out/use. Only these are live
+                            for(IRIdentifier id : new ArrayList<>(liveness.live.keySet())) {
+                                if(!ls.localSet().contains(id)) {
+                                    liveness.remove(id, defPos + 1);
+                                }
+                            }
+                            
+                            for(IRIdentifier id : ls.localSet()) {
+                                liveness.add(id, defPos);
+                            }
+                        }
+                        break;
+                    }
+                    
+                    case AASMInstruction inst: {
+                        // If something is live during a CALL, it can't use ABCD
+                        if(inst.getOp() == AASMOperation.CALL || inst.getOp() == AASMOperation.CALLA) {
+                            for(IRIdentifier id : liveness.live.keySet()) {
+                                Interval interval = intervals.get(id);
+                                
+                                if(interval != null) {
+                                    interval.crossesCall = true;
+                                }
+                            }
+                        }
+                        
+                        // Collect use/def
+                        Set<IRIdentifier> used = new HashSet<>();
+                        IRIdentifier defined = null;
+                        
+                        // Populate uses
+                        RegisterAllocator.addUses(inst.getDestination(), used);
+                        
+                        // Set defined if applicable
+                        if(inst.getDestination() instanceof AASMRegister reg) {
+                            if(inst.getOp().definesDestination()) {
+                                defined = reg.id();
+                            }
+                            
+                            if(!inst.getOp().usesDestination()) {
+                                used.remove(reg.id());
+                            }
+                        }
+                        
+                        RegisterAllocator.addUses(inst.getSource(), used);
+                        
+                        // BP/SP are not relevant
+                        used.remove(MachineRegisters.ID_BP);
+                        used.remove(MachineRegisters.ID_SP);
+                        
+                        // Moves between whole registers hint that both sides should get the same register
+                        if(inst.getOp() == AASMOperation.MOV && inst.getSource() instanceof AASMRegister srcReg && inst.getDestination() instanceof AASMRegister dstReg &&
+                           !(srcReg instanceof AASMAbstractRegister absSrc && absSrc.half()) &&
+                           !(dstReg instanceof AASMAbstractRegister absDst && absDst.half())) {
+                            addHint(srcReg.id(), dstReg.id(), intervals);
+                            addHint(dstReg.id(), srcReg.id(), intervals);
+                        }
+                        
+                        // Defined after uses
+                        if(defined != null && !defined.equals(MachineRegisters.ID_SP)) {
+                            liveness.add(defined, defPos);
+                            liveness.remove(defined, defPos);
+                        }
+                        
+                        for(IRIdentifier use : used) {
+                            liveness.add(use, usePos);
+                        }
+                        break;
+                    }
+                    
+                    default:
+                        // No action.
+                }
+            }
+        }
+        
+        // Anything still live is live from the start
+        for(IRIdentifier id : new ArrayList<>(liveness.live.keySet())) {
+            liveness.remove(id, 0);
+        }
+        
+        for(Interval interval : intervals.values()) {
+            interval.start = interval.positions.nextSetBit(0);
+            interval.end = interval.positions.length() - 1;
+        }
+        
+        return liveness.machineLive;
+    }
+    
+    /**
+     * Records that the local id is moved to or from other
+     * @param id
+     * @param other
+     * @param intervals
+     */
+    private static void addHint(IRIdentifier id, IRIdentifier other, Map<IRIdentifier, Interval> intervals) {
+        Interval interval = intervals.get(id);
+        
+        if(interval != null && interval.hint == null) {
+            interval.hint = other;
+        }
+    }
+    
+    /**
+     * Assigns registers to intervals in order of start
+     * @param intervals
+     * @param machineLive
+     * @param sourceFunction
+     * @return Locals that must be spilled
+     * @throws CompilationException If an unspillable interval can't be given a register
+     */
+    private static Set<IRIdentifier> scan(Map<IRIdentifier, Interval> intervals, Map<Register, BitSet> machineLive, IRFunction sourceFunction) throws CompilationException {
+        LOG.finest("Scanning intervals");
+        
+        // Sort by start, with IDs breaking ties so that allocation is deterministic
+        List<Interval> unhandled = new ArrayList<>(intervals.values());
+        unhandled.sort(Comparator.<Interval>comparingInt(i -> i.start).thenComparingInt(i -> i.end).thenComparing(i -> i.id.toString()));
+        
+        // Intervals assigned to each register
+        Map<Register, List<Interval>> assigned = new EnumMap<>(Register.class);
+        
+        // Avoid callee-saved registers if they haven't been used already
+        Set<Register> undesirable = EnumSet.copyOf(RegisterAllocator.CalleeSaveInfo.calleeSavedRegisters);
+        
+        Set<IRIdentifier> spilled = new HashSet<>();
+        
+        for(Interval current : unhandled) {
+            // Find allowed registers
+            Set<Register> allowed = EnumSet.copyOf(current.rClass.registers());
+            
+            if(current.crossesCall) {
+                allowed.removeAll(MachineRegisters.aliasSet(RARegisterClass.I16_HALF));
+            }
+            
+            allowed.removeIf(r -> conflicts(current, MachineRegisters.aliasSet(r), machineLive));
+            
+            // Find which are free
+            Set<Register> free = EnumSet.noneOf(Register.class);
+            for(Register r : allowed) {
+                if(blockers(current, r, assigned).isEmpty()) {
+                    free.add(r);
+                }
+            }
+            
+            Register chosen;
+            
+            if(!free.isEmpty()) {
+                chosen = choose(current, free, intervals, undesirable);
+            } else {
+                // Nothing free. Find the register whose blocking intervals end latest
+                Register best = Register.NONE;
+                List<Interval> bestBlockers = null;
+                int bestEnd = -1;
+                
+                for(Register r : allowed) {
+                    List<Interval> blockers = blockers(current, r, assigned);
+                    int blockedUntil = Integer.MAX_VALUE;
+                    
+                    for(Interval blocker : blockers) {
+                        blockedUntil = blocker.unspillable ? -1 : Math.min(blockedUntil, blocker.end);
+                        
+                        if(blockedUntil < 0) {
+                            break;
+                        }
+                    }
+                    
+                    if(blockedUntil > bestEnd) {
+                        best = r;
+                        bestBlockers = blockers;
+                        bestEnd = blockedUntil;
+                    }
+                }
+                
+                // Spill those intervals if they outlast the current one, otherwise spill the current one
+                if(bestBlockers != null && (current.unspillable || bestEnd > current.end)) {
+                    for(Interval blocker : bestBlockers) {
+                        LOG.finest("Spilled " + blocker.id);
+                        
+                        assigned.get(blocker.register).remove(blocker);
+                        blocker.register = Register.NONE;
+                        spilled.add(blocker.id);
+                    }
+                    
+                    chosen = best;
+                } else if(!current.unspillable) {
+                    LOG.finest("Spilled " + current.id);
+                    
+                    spilled.add(current.id);
+                    continue;
+                } else {
+                    LOG.severe("Unable to allocate a register for " + current.id + " in " + sourceFunction.getID());
+                    throw new CompilationException();
+                }
+            }
+            
+            // Assign
+            current.register = chosen;
+            assigned.computeIfAbsent(chosen, r -> new ArrayList<>()).add(current);
+            
+            // Used register is no longer undesirable
+            if(undesirable.remove(chosen)) {
+                try {
+                    undesirable.remove(MachineRegisters.upperHalf(chosen));
+                    undesirable.remove(MachineRegisters.lowerHalf(chosen));
+                } catch(IllegalArgumentException e) {}
+            }
+            
+            LOG.finest(current.id + " = " + chosen + " [" + current.start + ", " + current.end + "]");
+        }
+        
+        return spilled;
+    }
+    
+    /**
+     * @param current
+     * @param r
+     * @param assigned
+     * @return Assigned intervals that prevent current from using r
+     */
+    private static List<Interval> blockers(Interval current, Register r, Map<Register, List<Interval>> assigned) {
+        List<Interval> blockers = new ArrayList<>();
+        
+        for(Register alias : MachineRegisters.aliasSet(r)) {
+            for(Interval other : assigned.getOrDefault(alias, List.of())) {
+                if(other.positions.intersects(current.positions)) {
+                    blockers.add(other);
+                }
+            }
+        }
+        
+        return blockers;
+    }
+    
+    /**
+     * Chooses a register for an interval from the free registers
+     * @param current
+     * @param free
+     * @param intervals
+     * @param undesirable
+     * @return
+     */
+    private static Register choose(Interval current, Set<Register> free, Map<IRIdentifier, Interval> intervals, Set<Register> undesirable) {
+        // Prefer the register of whatever it's moved to or from
+        if(current.hint != null) {
+            Interval hinted = intervals.get(current.hint);
+            Register hint = (hinted == null) ? MACHINE_REGISTERS.get(current.hint) : hinted.register;
+            
+            if(hint != null && free.contains(hint)) {
+                return hint;
+            }
+        }
+        
+        for(Register r : free) {
+            if(!undesirable.contains(r)) {
+                return r;
+            }
+        }
+        
+        return free.iterator().next();
+    }
+    
+    /**
+     * @param interval
+     * @param registers
+     * @param machineLive
+     * @return true if any of the registers are live as machine registers during the interval
+     */
+    private static boolean conflicts(Interval interval, Set<Register> registers, Map<Register, BitSet> machineLive) {
+        for(Register r : registers) {
+            BitSet positions = machineLive.get(r);
+            
+            if(positions != null && positions.intersects(interval.positions)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+package notsotiny.lang.compiler.codegen.alloc;
+
+import java.util.Arrays;
+
+/**
+ * Bit set addressed by long, for the interference graph's triangular matrix.
+ * Bits are kept in fixed-size pages which are only allocated once a bit in them is set, so large
+ * graphs pay for the regions where interference exists rather than for the whole triangle.
+ */
+public class RABitMatrix {
+    
+    // Bits per page is 2^PAGE_SHIFT
+    private static final int PAGE_SHIFT = 12,
+                             WORD_SHIFT = 6,
+                             PAGE_WORDS = 1 << (PAGE_SHIFT - WORD_SHIFT);
+    
+    // null entries are all-zero pages
+    private long[][] pages;
+    
+    public RABitMatrix() {
+        this.pages = new long[16][];
+    }
+    
+    /**
+     * @param bit
+     * @return true if bit is set
+     */
+    public boolean get(long bit) {
+        long page = bit >>> PAGE_SHIFT;
+        
+        if(page >= this.pages.length || this.pages[(int) page] == null) {
+            return false;
+        }
+        
+        return (this.pages[(int) page][word(bit)] & (1L << bit)) != 0;
+    }
+    
+    /**
+     * Sets a bit
+     * @param bit
+     */
+    public void set(long bit) {
+        long page = bit >>> PAGE_SHIFT;
+        
+        if(page > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Bit " + bit + " is beyond the largest matrix");
+        }
+        
+        if(page >= this.pages.length) {
+            this.pages = Arrays.copyOf(this.pages, (int) Math.min(Math.max(page + 1, (long) this.pages.length * 2), Integer.MAX_VALUE - 8));
+        }
+        
+        long[] words = this.pages[(int) page];
+        
+        if(words == null) {
+            words = new long[PAGE_WORDS];
+            this.pages[(int) page] = words;
+        }
+        
+        words[word(bit)] |= 1L << bit;
+    }
+    
+    /**
+     * @param from
+     * @return Index of the first set bit at or after from, or -1 if there is none
+     */
+    public long nextSetBit(long from) {
+        long page = from >>> PAGE_SHIFT;
+        int w = word(from);
+        long mask = -1L << from;
+        
+        while(page < this.pages.length) {
+            long[] words = this.pages[(int) page];
+            
+            if(words != null) {
+                for(; w < PAGE_WORDS; w++) {
+                    long bits = words[w] & mask;
+                    
+                    if(bits != 0) {
+                        return (page << PAGE_SHIFT) + ((long) w << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+                    }
+                    
+                    mask = -1L;
+                }
+            }
+            
+            // Next page
+            page++;
+            w = 0;
+            mask = -1L;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * @return A copy of this matrix
+     */
+    public RABitMatrix copy() {
+        RABitMatrix copy = new RABitMatrix();
+        copy.pages = new long[this.pages.length][];
+        
+        for(int i = 0; i < this.pages.length; i++) {
+            if(this.pages[i] != null) {
+                copy.pages[i] = this.pages[i].clone();
+            }
+        }
+        
+        return copy;
+    }
+    
+    /**
+     * @param bit
+     * @return Index of the word holding bit within its page
+     */
+    private static int word(long bit) {
+        return (int) (bit >>> WORD_SHIFT) & (PAGE_WORDS - 1);
+    }
+    
+}
@@ -1,10 +1,11 @@
 package notsotiny.lang.compiler.codegen.alloc;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
 import notsotiny.sim.Register;
@@ -18,6 +19,9 @@ public class RAIGNode {
     // What local this represents
     private IRIdentifier identifier;
     
+    // Index in the interference graph
+    private int index;
+    
     // Register Class of the identifier
     private RARegisterClass rClass;
     
@@ -45,7 +49,8 @@ public class RAIGNode {
     private Register color;
     
     // The actual graph part
-    private Set<RAIGNode> interferingNodes;
+    // Adjacency list. The graph's bit matrix answers membership.
+    private List<RAIGNode> interferingNodes;
     
     // Moves involving this node
     private Set<RAMove> moves;
@@ -56,6 +61,9 @@ public class RAIGNode {
     private boolean isSpill;
     private float rawSpillCost;
     
+    // Spill cost multiplier per level of loop nesting
+    private static final float LOOP_WEIGHT = 10;
+    
     /**
      * Create a node
      * @param id
@@ -73,7 +81,7 @@ public class RAIGNode {
         this.availableColors = rClass.registers().size();
         this.precolored = false;
         this.color = Register.NONE;
-        this.interferingNodes = new HashSet<>();
+        this.interferingNodes = new ArrayList<>();
         this.moves = new HashSet<>();
         this.rawSpillCost = 0;
         
@@ -144,31 +152,15 @@ public class RAIGNode {
     }
     
     /**
-     * Adds an interference edge between this and other.
-     * Ensures interference exists from the perspective of both nodes.
-     * Updates this node's squeeze value.
+     * Adds other to this node's adjacency list and updates squeeze. Precolored nodes don't keep
+     * adjacency lists. Called by RAInterferenceGraph, which checks for existing interference.
      * @param other
      */
-    public void addInterference(RAIGNode other) {
-        //Objects.requireNonNull(other);
-        
-        // Are we already interfering
-        if(this.identifier.equals(other.identifier) || this.interferingNodes.contains(other)) {
-            return;
-        }
-        
+    void addAdjacent(RAIGNode other) {
         if(!this.precolored) {
-            // No. Interfere
             this.interferingNodes.add(other);
-            
-            // Update squeeze
             updateSqueeze(other.rClass, true);
         }
-        
-        // Ensure it goes both ways
-        if(!other.precolored) {
-            other.addInterference(this);
-        }
     }
     
     /**
@@ -264,16 +256,27 @@ public class RAIGNode {
     
     /**
      * Add the cost of a use to this node
+     * @param loopDepth Loop nesting depth of the use
      */
-    public void addUseCost() {
-        this.rawSpillCost += 10;
+    public void addUseCost(int loopDepth) {
+        this.rawSpillCost += 10 * loopWeight(loopDepth);
     }
     
     /**
      * Add the cost of a def to this node
+     * @param loopDepth Loop nesting depth of the def
      */
-    public void addDefCost() {
-        this.rawSpillCost += 10;
+    public void addDefCost(int loopDepth) {
+        this.rawSpillCost += 10 * loopWeight(loopDepth);
+    }
+    
+    /**
+     * Code in a loop is assumed to run LOOP_WEIGHT times per run of the code around it
+     * @param loopDepth
+     * @return Relative execution frequency of code at the given loop depth
+     */
+    private static float loopWeight(int loopDepth) {
+        return (float) Math.pow(LOOP_WEIGHT, loopDepth);
     }
     
     /**
@@ -285,7 +288,17 @@ public class RAIGNode {
                (this.interferingNodes.size() + 1);
     }
     
+    /**
+     * Nodes are distinct objects, but hash by identifier so that iteration order doesn't depend on
+     * identity hashes
+     */
+    @Override
+    public int hashCode() {
+        return this.identifier.hashCode();
+    }
+    
     public IRIdentifier getIdentifier() { return this.identifier; }
+    public int getIndex() { return this.index; }
     public RARegisterClass getRegisterClass() { return this.rClass; }
     public int numAvailable() { return this.availableColors; }
     public RASet getSet() { return this.rSet; }
@@ -293,11 +306,12 @@ public class RAIGNode {
     public Set<Register> getExcludedColors() { return this.excluded; }
     public boolean isPrecolored() { return this.precolored; }
     public Register getColoring() { return this.color; }
-    public Set<RAIGNode> getInterferingNodes() { return this.interferingNodes; }
+    public List<RAIGNode> getInterferingNodes() { return this.interferingNodes; }
     public Set<RAMove> getMoves() { return this.moves; }
     public float getRawSpillCost() { return this.rawSpillCost; }
     public boolean isSpillLoad() { return this.isSpill; }
     
     public void setSet(RASet set) { this.rSet = set; }
+    public void setIndex(int index) { this.index = index; }
     public void setAlias(RAIGNode node) { this.alias = node; }
 }
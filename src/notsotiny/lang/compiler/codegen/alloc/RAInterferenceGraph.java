@@ -1,10 +1,11 @@
 package notsotiny.lang.compiler.codegen.alloc;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import notsotiny.sim.Register;
 import notsotiny.lang.compiler.aasm.AASMMachineRegister;
@@ -12,16 +13,31 @@ import notsotiny.lang.ir.parts.IRIdentifier;
 
 /**
  * A register allocation interference graph
+ *
+ * As in George & Appel, membership is a triangular bit matrix and iteration uses each node's adjacency
+ * list. The matrix is indexed by long and only allocates the pages edges fall in, so graphs past 65536
+ * nodes don't overflow it and sparse graphs don't pay for the whole triangle.
+ *
+ * Nodes are numbered densely in the order they're added, and liveness during construction is tracked with
+ * the same numbers. The function's identifier table isn't used for this: it also numbers BLOCKs and locals
+ * that instruction selection removed, it doesn't hold the machine registers, and it grows with every spill
+ * temporary. Graph numbers stay dense, and a rebuilt graph gives surviving locals the same numbers so that
+ * interference can be copied from the previous graph.
  */
 public class RAInterferenceGraph {
     
-    private Set<RAIGNode> allNodes;
+    // Nodes by index
+    private List<RAIGNode> allNodes;
     
     private Map<IRIdentifier, RAIGNode> identifierMap;
     
+    // Bit (i, j) for i > j is at i(i - 1)/2 + j. Rows only grow, so adding nodes doesn't move bits.
+    private RABitMatrix adjacencyMatrix;
+    
     public RAInterferenceGraph() {
-        this.allNodes = new HashSet<>();
+        this.allNodes = new ArrayList<>();
         this.identifierMap = new HashMap<>();
+        this.adjacencyMatrix = new RABitMatrix();
         
         initializeMachineRegisters();
     }
@@ -51,10 +67,11 @@ public class RAInterferenceGraph {
     }
     
     /**
-     * Add a node to the graph
+     * Add a node to the graph, giving it the next index
      * @param node
      */
     public void addNode(RAIGNode node) {
+        node.setIndex(this.allNodes.size());
         this.allNodes.add(node);
         this.identifierMap.put(node.getIdentifier(), node);
     }
@@ -68,39 +85,132 @@ public class RAInterferenceGraph {
         return this.identifierMap.get(id);
     }
     
+    /**
+     * Gets the node with the given index
+     * @param index
+     * @return
+     */
+    public RAIGNode getNode(int index) {
+        return this.allNodes.get(index);
+    }
+    
+    /**
+     * @return Number of nodes
+     */
+    public int size() {
+        return this.allNodes.size();
+    }
+    
     /**
      * Add the cost of a def to the given node
      * @param id
+     * @param loopDepth Loop nesting depth of the def
      */
-    public void addDefCost(IRIdentifier id) {
-        this.identifierMap.get(id).addDefCost();
+    public void addDefCost(IRIdentifier id, int loopDepth) {
+        this.identifierMap.get(id).addDefCost(loopDepth);
     }
     
     /**
      * Add the cost of a def to the given nodes
      * @param ids
+     * @param loopDepth Loop nesting depth of the defs
      */
-    public void addDefCost(Collection<IRIdentifier> ids) {
+    public void addDefCost(Collection<IRIdentifier> ids, int loopDepth) {
         for(IRIdentifier id : ids) {
-            addDefCost(id);
+            addDefCost(id, loopDepth);
         }
     }
     
     /**
      * Add the cost of a use to the given node
      * @param id
+     * @param loopDepth Loop nesting depth of the use
      */
-    public void addUseCost(IRIdentifier id) {
-        this.identifierMap.get(id).addUseCost();
+    public void addUseCost(IRIdentifier id, int loopDepth) {
+        this.identifierMap.get(id).addUseCost(loopDepth);
     }
     
     /**
      * Add the cost of a use to the given nodes
      * @param ids
+     * @param loopDepth Loop nesting depth of the uses
      */
-    public void addUseCost(Collection<IRIdentifier> ids) {
+    public void addUseCost(Collection<IRIdentifier> ids, int loopDepth) {
         for(IRIdentifier id : ids) {
-            addUseCost(id);
+            addUseCost(id, loopDepth);
+        }
+    }
+    
+    /**
+     * @param a
+     * @param b
+     * @return Position of the (a, b) bit in the matrix
+     */
+    private static long matrixIndex(int a, int b) {
+        long i = Math.max(a, b),
+             j = Math.min(a, b);
+        
+        return ((i * (i - 1)) / 2) + j;
+    }
+    
+    /**
+     * @param a
+     * @param b
+     * @return true if the nodes with indices a and b interfere
+     */
+    public boolean interferes(int a, int b) {
+        return a != b && this.adjacencyMatrix.get(matrixIndex(a, b));
+    }
+    
+    /**
+     * @param a
+     * @param b
+     * @return true if nodes a and b interfere
+     */
+    public boolean interferes(RAIGNode a, RAIGNode b) {
+        return interferes(a.getIndex(), b.getIndex());
+    }
+    
+    /**
+     * Adds interference between nodes a and b.
+     * Updates adjacency and squeeze of non-precolored nodes.
+     * @param a
+     * @param b
+     */
+    public void addInterference(RAIGNode a, RAIGNode b) {
+        if(a == b || a.getIdentifier().equals(b.getIdentifier())) {
+            return;
+        }
+        
+        long bit = matrixIndex(a.getIndex(), b.getIndex());
+        
+        // Are we already interfering
+        if(this.adjacencyMatrix.get(bit)) {
+            return;
+        }
+        
+        this.adjacencyMatrix.set(bit);
+        a.addAdjacent(b);
+        b.addAdjacent(a);
+    }
+    
+    /**
+     * Adds interference between nodes with indices a and b
+     * @param a
+     * @param b
+     */
+    public void addInterference(int a, int b) {
+        addInterference(this.allNodes.get(a), this.allNodes.get(b));
+    }
+    
+    /**
+     * Adds interference between the node with index a and each node in b
+     * @param a
+     * @param b Set of node indices
+     */
+    public void addInterference(int a, BitSet b) {
+        for(int i = b.nextSetBit(0); i >= 0; i = b.nextSetBit(i + 1)) {
+            addInterference(a, i);
         }
     }
     
@@ -110,10 +220,44 @@ public class RAInterferenceGraph {
      * @param b
      */
     public void addInterference(IRIdentifier a, IRIdentifier b) {
-        this.identifierMap.get(a).addInterference(this.identifierMap.get(b));
+        addInterference(this.identifierMap.get(a), this.identifierMap.get(b));
+    }
+    
+    /**
+     * Copies interference from a graph of an earlier version of the code. Nodes with the same index
+     * must represent the same local in both. Interference involving dirty nodes is not copied.
+     * @param edges Matrix from getMatrix of the earlier graph
+     * @param nodeCount Number of nodes in the earlier graph
+     * @param dirty Indices of nodes whose live ranges may have changed
+     */
+    public void copyInterference(RABitMatrix edges, int nodeCount, BitSet dirty) {
+        for(int i = 1; i < nodeCount; i++) {
+            if(dirty.get(i)) {
+                continue;
+            }
+            
+            // Row i holds interference with each j < i
+            long rowStart = matrixIndex(i, 0),
+                 rowEnd = rowStart + i;
+            
+            for(long bit = edges.nextSetBit(rowStart); bit >= 0 && bit < rowEnd; bit = edges.nextSetBit(bit + 1)) {
+                int j = (int) (bit - rowStart);
+                
+                if(!dirty.get(j)) {
+                    addInterference(i, j);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return A copy of the adjacency matrix
+     */
+    public RABitMatrix getMatrix() {
+        return this.adjacencyMatrix.copy();
     }
     
-    public Set<RAIGNode> getAllNodes() { return this.allNodes; }
+    public List<RAIGNode> getAllNodes() { return this.allNodes; }
     public Map<IRIdentifier, RAIGNode> getIDMap() { return this.identifierMap; }
     
 }
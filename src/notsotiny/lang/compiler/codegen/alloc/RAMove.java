@@ -9,7 +9,11 @@ import java.util.Objects;
  */
 public record RAMove(RAIGNode destination, RAIGNode source) {
     
-    public RAMove {
+    public RAMove(RAIGNode destination, RAIGNode source) {
+        // Fields are assigned first so that the nodes see a stable hash
+        this.destination = destination;
+        this.source = source;
+        
         destination.addMove(this);
         source.addMove(this);
     }
@@ -26,7 +30,7 @@ public record RAMove(RAIGNode destination, RAIGNode source) {
     
     @Override
     public int hashCode() {
-        return System.identityHashCode(this);
+        return Objects.hash(this.destination, this.source);
     }
     
 }
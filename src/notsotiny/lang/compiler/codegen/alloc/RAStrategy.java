@@ -0,0 +1,79 @@
+package notsotiny.lang.compiler.codegen.alloc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How the register allocator makes its choices. Allocation is deterministic for a given strategy.
+ * @param lifo Take nodes and moves from worklists newest-first rather than oldest-first
+ * @param coalescing How moves are coalesced
+ * @param spillHeuristic How nodes are chosen for potential spilling
+ * @param seed Seed for choosing among equally good colors. 0 picks the first allowed color.
+ */
+public record RAStrategy(boolean lifo, Coalescing coalescing, SpillHeuristic spillHeuristic, long seed) {
+    
+    /**
+     * Strategy for a single allocation
+     */
+    public static final RAStrategy DEFAULT = new RAStrategy(false, Coalescing.CONSERVATIVE, SpillHeuristic.COST_PER_DEGREE, 0);
+    
+    /**
+     * How moves are coalesced
+     */
+    public enum Coalescing {
+        CONSERVATIVE,   // Coalesce when the result is known to be colorable
+        AGGRESSIVE,     // Coalesce whenever the nodes don't interfere. Coloring resolves the consequences
+        NONE            // Don't coalesce. Biased coloring still prefers move-related colors
+    }
+    
+    /**
+     * How nodes are chosen for potential spilling. Lower is spilled first.
+     */
+    public enum SpillHeuristic {
+        COST_PER_DEGREE,    // Spill cost over number of interfering nodes
+        COST_PER_SQUEEZE,   // Spill cost over squeeze, which accounts for register aliasing
+        COST;               // Spill cost alone
+        
+        /**
+         * @param node
+         * @return Spill priority of node
+         */
+        public float priority(RAIGNode node) {
+            return switch(this) {
+                case COST_PER_DEGREE    -> node.getSpillCost();
+                case COST_PER_SQUEEZE   -> node.getSpillCost() * (node.getInterferingNodes().size() + 1) / (node.getSqueeze() + 1);
+                case COST               -> node.getSpillCost() * (node.getInterferingNodes().size() + 1);
+            };
+        }
+    }
+    
+    /**
+     * Creates a portfolio of distinct strategies, starting with DEFAULT's choices
+     * @param size Number of strategies
+     * @param seed Seed of the portfolio. The same size and seed give the same strategies.
+     * @return
+     */
+    public static List<RAStrategy> portfolio(int size, long seed) {
+        List<RAStrategy> strategies = new ArrayList<>(size);
+        
+        Coalescing[] coalescings = Coalescing.values();
+        SpillHeuristic[] heuristics = SpillHeuristic.values();
+        
+        for(int i = 0; i < size; i++) {
+            // Vary worklist order fastest, then spill heuristic, then coalescing. Later rounds vary colors.
+            int variant = i % (2 * heuristics.length * coalescings.length),
+                round = i / (2 * heuristics.length * coalescings.length);
+            
+            boolean lifo = (variant % 2) == 1;
+            SpillHeuristic heuristic = heuristics[(variant / 2) % heuristics.length];
+            Coalescing coalescing = coalescings[variant / (2 * heuristics.length)];
+            
+            // The first of each variant picks the first allowed color
+            long strategySeed = (round == 0 && seed == 0) ? 0 : (seed * 31 + i + 1);
+            
+            strategies.add(new RAStrategy(lifo, coalescing, heuristic, strategySeed));
+        }
+        
+        return strategies;
+    }
+}
@@ -2,16 +2,19 @@ package notsotiny.lang.compiler.codegen.alloc;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Random;
+import java.util.SequencedSet;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,6 +24,7 @@ import notsotiny.lang.compiler.aasm.AASMAbstractRegister;
 import notsotiny.lang.compiler.aasm.AASMCompileConstant;
 import notsotiny.lang.compiler.aasm.AASMInstruction;
 import notsotiny.lang.compiler.aasm.AASMLabel;
+import notsotiny.lang.compiler.aasm.AASMLinkConstant;
 import notsotiny.lang.compiler.aasm.AASMLiveSet;
 import notsotiny.lang.compiler.aasm.AASMMachineRegister;
 import notsotiny.lang.compiler.aasm.AASMMemory;
@@ -50,10 +54,10 @@ public class RegisterAllocator {
     private static class RAData {
         // Data structures as described in George & Appel A.1
         // A.1.1 Nodes
-        Set<RAIGNode> initial = new HashSet<>();
-        Set<RAIGNode> simplifyWorklist = new HashSet<>();
-        Set<RAIGNode> freezeWorklist = new HashSet<>();
-        Set<RAIGNode> spillWorklist = new HashSet<>();
+        SequencedSet<RAIGNode> initial = new LinkedHashSet<>();
+        SequencedSet<RAIGNode> simplifyWorklist = new LinkedHashSet<>();
+        SequencedSet<RAIGNode> freezeWorklist = new LinkedHashSet<>();
+        SequencedSet<RAIGNode> spillWorklist = new LinkedHashSet<>();
         Set<RAIGNode> spilledNodes = new HashSet<>();
         Set<RAIGNode> coalescedNodes = new HashSet<>();
         Set<RAIGNode> coloredNodes = new HashSet<>();
@@ -63,14 +67,26 @@ public class RegisterAllocator {
         Set<RAMove> coalescedMoves = new HashSet<>();
         Set<RAMove> constrainedMoves = new HashSet<>();
         Set<RAMove> frozenMoves = new HashSet<>();
-        Set<RAMove> worklistMoves = new HashSet<>();
+        SequencedSet<RAMove> worklistMoves = new LinkedHashSet<>();
         Set<RAMove> activeMoves = new HashSet<>();
+        
+        // The graph being colored
+        RAInterferenceGraph graph;
+        
+        // Choices
+        RAStrategy strategy;
+        Random random;
+        
+        RAData(RAStrategy strategy) {
+            this.strategy = strategy;
+            this.random = new Random(strategy.seed());
+        }
     }
     
     /**
      * Helper class for recording whether IJKL are used
      */
-    private static class CalleeSaveInfo {
+    static class CalleeSaveInfo {
         
         static final Set<Register> calleeSavedRegisters = EnumSet.of(Register.JI, Register.LK, Register.XP, Register.YP, Register.I, Register.J, Register.K, Register.L);
         
@@ -115,8 +131,24 @@ public class RegisterAllocator {
      * @throws CompilationException
      */
     public static AllocationResult allocateRegisters(List<List<AASMPart>> abstractCode, IRFunction sourceFunction, boolean showRAIGUncolored, boolean showRAIGColored) throws CompilationException {
+        return allocateRegisters(abstractCode, sourceFunction, RAStrategy.DEFAULT, () -> false, showRAIGUncolored, showRAIGColored);
+    }
+    
+    /**
+     * Allocates registers given abstract assembly, making choices according to a strategy.
+     * Safe to call concurrently for the same function.
+     * @param abstractCode
+     * @param sourceFunction
+     * @param strategy
+     * @param cancelled Checked between allocation iterations. If it returns true, allocation stops.
+     * @param showRAIGUncolored
+     * @param showRAIGColored
+     * @return Allocation result, or null if cancelled
+     * @throws CompilationException
+     */
+    public static AllocationResult allocateRegisters(List<List<AASMPart>> abstractCode, IRFunction sourceFunction, RAStrategy strategy, BooleanSupplier cancelled, boolean showRAIGUncolored, boolean showRAIGColored) throws CompilationException {
         
-        LOG.finer("Performing register allocation for " + sourceFunction.getID());
+        LOG.finer("Performing register allocation for " + sourceFunction.getID() + " with " + strategy);
         
         // Perform register class analysis
         Map<IRIdentifier, RARegisterClass> registerClassMap = new HashMap<>();  // Register class of each local
@@ -133,22 +165,38 @@ public class RegisterAllocator {
             }
         }
         
+        // Locals which can be recomputed instead of stored when spilled
+        Map<IRIdentifier, AASMPart> rematerializable = findRematerializable(abstractCode);
+        
         // Register allocation time!
         List<List<AASMPart>> currentCode = abstractCode;
         
         // Other information is contained in graph nodes
-        RAInterferenceGraph graph = new RAInterferenceGraph();
+        RAInterferenceGraph graph = null;
+        
+        // Interference as built by the previous iteration, before coalescing changed it
+        RABitMatrix builtInterference = null;
+        
+        // Indices of nodes spilled by the previous iteration
+        BitSet spilledIndices = new BitSet();
         
         int iteration = 0;
         
         while(true) {
             LOG.finest("RA iteration " + iteration);
             
+            if(cancelled.getAsBoolean()) {
+                LOG.finest("Allocation cancelled");
+                return null;
+            }
+            
             // Main RA algorithm
-            RAData data = new RAData();
+            RAData data = new RAData(strategy);
             
-            // Build interference graph
-            graph = buildInterferenceGraph(currentCode, registerClassMap, spillLoads, data);
+            // Build interference graph, updating the previous one if it exists
+            graph = buildInterferenceGraph(currentCode, registerClassMap, spillLoads, rematerializable, graph, builtInterference, spilledIndices, data);
+            builtInterference = graph.getMatrix();
+            data.graph = graph;
             
             if(showRAIGUncolored) {
                 RAIGRenderer.renderRAIG(graph, sourceFunction.getID() + " " + iteration);
@@ -262,7 +310,15 @@ public class RegisterAllocator {
             }
             
             // Something spilled. Not done.
-            currentCode = rewriteProgram(currentCode, data.spilledNodes, registerClassMap, stackSlotSizes, spillLoads, sourceFunction);
+            spilledIndices = new BitSet();
+            Set<IRIdentifier> spilledIDs = new HashSet<>();
+            
+            for(RAIGNode node : data.spilledNodes) {
+                spilledIndices.set(node.getIndex());
+                spilledIDs.add(node.getIdentifier());
+            }
+            
+            currentCode = rewriteProgram(currentCode, spilledIDs, registerClassMap, stackSlotSizes, spillLoads, rematerializable, sourceFunction);
             iteration++;
         }
         
@@ -283,6 +339,19 @@ public class RegisterAllocator {
             registerMapping.put(node.getIdentifier(), r);
         }
         
+        return realize(currentCode, registerMapping, preexistingStackSlots, stackSlotSizes, sourceFunction);
+    }
+    
+    /**
+     * Allocates stack slots and converts allocated code to concrete form
+     * @param currentCode
+     * @param registerMapping Register of each local
+     * @param preexistingStackSlots
+     * @param stackSlotSizes
+     * @param sourceFunction
+     * @return
+     */
+    static AllocationResult realize(List<List<AASMPart>> currentCode, Map<IRIdentifier, Register> registerMapping, Set<IRIdentifier> preexistingStackSlots, Map<IRIdentifier, Integer> stackSlotSizes, IRFunction sourceFunction) {
         // Allocate stack slots
         Map<IRIdentifier, Integer> stackMapping = StackAllocator.allocateStackSlots(currentCode, preexistingStackSlots, stackSlotSizes, sourceFunction);
         
@@ -344,23 +413,156 @@ public class RegisterAllocator {
     }
     
     /**
-     * Rewrites the program to spill spilled nodes
+     * Finds locals which can be recomputed at their uses instead of being stored to the stack when
+     * spilled. These are locals whose every definition is a full MOV of the same constant or argument.
+     * Arguments are only included if nothing may write to them, directly or through an address derived
+     * from BP.
+     * @param code
+     * @return Map from local to the value it can be recomputed from
+     */
+    static Map<IRIdentifier, AASMPart> findRematerializable(List<List<AASMPart>> code) {
+        Map<IRIdentifier, AASMPart> rematerializable = new HashMap<>();
+        Set<IRIdentifier> excluded = new HashSet<>();
+        boolean argumentsWritten = false;
+        
+        for(List<AASMPart> group : code) {
+            for(AASMPart part : group) {
+                if(!(part instanceof AASMInstruction inst)) {
+                    continue;
+                }
+                
+                if(mayWriteArguments(inst)) {
+                    argumentsWritten = true;
+                }
+                
+                // XCHG also defines its source
+                if(inst.getOp() == AASMOperation.XCHG && inst.getSource() instanceof AASMAbstractRegister areg) {
+                    excluded.add(areg.id());
+                }
+                
+                if(inst.getOp().definesDestination() && inst.getDestination() instanceof AASMAbstractRegister areg) {
+                    AASMPart source = inst.getSource();
+                    AASMPart existing = rematerializable.get(areg.id());
+                    
+                    boolean recomputable = inst.getOp() == AASMOperation.MOV && !areg.half() && switch(source) {
+                        case AASMCompileConstant _  -> true;
+                        case AASMLinkConstant _     -> true;
+                        case AASMMemory mem         -> isArgument(mem);
+                        default                     -> false;
+                    };
+                    
+                    if(recomputable && (existing == null || sameValue(existing, source))) {
+                        rematerializable.put(areg.id(), source);
+                    } else {
+                        excluded.add(areg.id());
+                    }
+                }
+            }
+        }
+        
+        rematerializable.keySet().removeAll(excluded);
+        
+        if(argumentsWritten) {
+            rematerializable.values().removeIf(source -> source instanceof AASMMemory);
+        }
+        
+        return rematerializable;
+    }
+    
+    /**
+     * @param inst
+     * @return true if inst may write to an argument, either by storing to BP-relative memory that could
+     *         overlap the arguments or by exposing an address derived from BP which could later be written
+     *         through
+     */
+    private static boolean mayWriteArguments(AASMInstruction inst) {
+        // Stores, including the source of XCHG
+        if(inst.getDestination() instanceof AASMMemory mem && mayOverlapArguments(mem)) {
+            return true;
+        }
+        
+        if(inst.getOp() == AASMOperation.XCHG && inst.getSource() instanceof AASMMemory mem && mayOverlapArguments(mem)) {
+            return true;
+        }
+        
+        // Addresses derived from BP
+        for(AASMPart operand : new AASMPart[] { inst.getDestination(), inst.getSource() }) {
+            if(isBP(operand)) {
+                return true;
+            }
+            
+            if(operand instanceof AASMMemory mem && (isBP(mem.getIndex()) || (inst.getOp() == AASMOperation.LEA && isBP(mem.getBase())))) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * @param mem
+     * @return true if mem is relative to BP and not entirely below it
+     */
+    private static boolean mayOverlapArguments(AASMMemory mem) {
+        if(!isBP(mem.getBase())) {
+            return false;
+        }
+        
+        return !(mem.getIndex() == null && mem.getType() != null && mem.getOffset() instanceof AASMCompileConstant offset && offset.value() + mem.getType().getSize() <= 0);
+    }
+    
+    /**
+     * @param part
+     * @return true if part is BP
+     */
+    private static boolean isBP(AASMPart part) {
+        return part instanceof AASMMachineRegister mr && mr.reg() == Register.BP;
+    }
+    
+    /**
+     * @param mem
+     * @return true if mem is a function argument, [BP + offset]
+     */
+    private static boolean isArgument(AASMMemory mem) {
+        return isBP(mem.getBase()) &&
+               mem.getIndex() == null &&
+               mem.getOffset() instanceof AASMCompileConstant offset && offset.value() > 0;
+    }
+    
+    /**
+     * @param a
+     * @param b
+     * @return true if rematerializable sources a and b are the same value
+     */
+    private static boolean sameValue(AASMPart a, AASMPart b) {
+        if(a instanceof AASMMemory memA && b instanceof AASMMemory memB) {
+            return memA.getOffset().equals(memB.getOffset()) && memA.getType() == memB.getType();
+        } else {
+            return a.equals(b);
+        }
+    }
+    
+    /**
+     * Rewrites the program to spill spilled locals.
+     * Rematerializable locals are recomputed before each use and their definitions removed rather than
+     * being given a stack slot.
      * @param program
-     * @param spilledNodes
+     * @param spilledIDs
      * @param registerClassMap
      * @param stackSlotSizes
+     * @param spillLoads IDs loaded to by spilled locals. New loads are added.
+     * @param rematerializable From findRematerializable
      * @param sourceFunction
      * @return
      */
-    private static List<List<AASMPart>> rewriteProgram(List<List<AASMPart>> program, Set<RAIGNode> spilledNodes, Map<IRIdentifier, RARegisterClass> registerClassMap, Map<IRIdentifier, Integer> stackSlotSizes, Set<IRIdentifier> spillLoads, IRFunction sourceFunction) {
+    static List<List<AASMPart>> rewriteProgram(List<List<AASMPart>> program, Set<IRIdentifier> spilledIDs, Map<IRIdentifier, RARegisterClass> registerClassMap, Map<IRIdentifier, Integer> stackSlotSizes, Set<IRIdentifier> spillLoads, Map<IRIdentifier, AASMPart> rematerializable, IRFunction sourceFunction) {
         LOG.finest("Rewriting with spills");
         
-        // Create stack slots for spilled node
-        Set<IRIdentifier> spilledIDs = new HashSet<>();
-        
-        for(RAIGNode spilled : spilledNodes) {
-            stackSlotSizes.put(spilled.getIdentifier(), spilled.getRegisterClass().type().getSize());
-            spilledIDs.add(spilled.getIdentifier());
+        // Create stack slots for spilled locals
+        for(IRIdentifier spilled : spilledIDs) {
+            if(!rematerializable.containsKey(spilled)) {
+                stackSlotSizes.put(spilled, registerClassMap.get(spilled).type().getSize());
+            }
         }
         
         List<List<AASMPart>> newProgram = new ArrayList<>();
@@ -372,12 +574,13 @@ public class RegisterAllocator {
                               defdInGroup = new HashSet<>();
             Map<IRIdentifier, IRIdentifier> loadedBeforeGroup = new HashMap<>();
             
-            findSpilledInGroup(group, usedInGroup, defdInGroup, spilledIDs);
+            findSpilledInGroup(group, usedInGroup, defdInGroup, spilledIDs, rematerializable);
             
             // Create loads for each loaded spilled value
             for(IRIdentifier id : usedInGroup) {
-                // Create new ID
-                IRIdentifier loadID = sourceFunction.getFUID(id.getName());
+                // Create new ID. Numbered by this allocation rather than the function so that concurrent
+                // allocations name things the same way
+                IRIdentifier loadID = sourceFunction.getIdentifier(id.getName() + "%spill" + spillLoads.size(), IRIdentifierClass.LOCAL);
                 loadedBeforeGroup.put(id, loadID);
                 spillLoads.add(loadID);
                 
@@ -388,12 +591,12 @@ public class RegisterAllocator {
                 // And give it to the new ID
                 registerClassMap.put(loadID, rClass);
                 
-                // Add instruction group to load the local
+                // Add instruction group to load or recompute the local
                 newProgram.add(List.of(
                     new AASMInstruction(
                         AASMOperation.MOV,
                         new AASMAbstractRegister(loadID, type),
-                        new AASMStackSlot(id, type.getSize())
+                        rematerializable.containsKey(id) ? rematerializable.get(id) : new AASMStackSlot(id, type.getSize())
                     )
                 ));
             }
@@ -402,20 +605,31 @@ public class RegisterAllocator {
             List<AASMPart> newGroup = new ArrayList<>();
             
             for(AASMPart part : group) {
-                newGroup.add(copyPart(part, loadedBeforeGroup, spilledIDs));
+                // Definitions of rematerialized locals are no longer needed
+                if(part instanceof AASMInstruction inst && inst.getOp().definesDestination() && inst.getDestination() instanceof AASMAbstractRegister areg && spilledIDs.contains(areg.id()) && rematerializable.containsKey(areg.id())) {
+                    continue;
+                }
+            
+                newGroup.add(copyPart(part, loadedBeforeGroup, spilledIDs, rematerializable));
             }
             
-            newProgram.add(newGroup);
+            if(!newGroup.isEmpty()) {
+                newProgram.add(newGroup);
+            }
             
-            // Create stores for each defd spilled value
+            // Create stores for each defd spilled value. If it was loaded, the group defined the loaded local.
             for(IRIdentifier id : defdInGroup) {
+                if(rematerializable.containsKey(id)) {
+                    continue;
+                }
+                
                 IRType type = registerClassMap.get(id).type();
                 
                 newProgram.add(List.of(
                     new AASMInstruction(
                         AASMOperation.MOV,
                         new AASMStackSlot(id, type.getSize()),
-                        new AASMAbstractRegister(id, type)
+                        new AASMAbstractRegister(loadedBeforeGroup.getOrDefault(id, id), type)
                     )
                 ));
             }
@@ -443,9 +657,11 @@ public class RegisterAllocator {
      * Copies an AASMPart, replacing values in the loadedInGroup map
      * @param part
      * @param loadedInGroup
+     * @param spilledIDs
+     * @param rematerializable
      * @return
      */
-    private static AASMPart copyPart(AASMPart part, Map<IRIdentifier, IRIdentifier> loadedBeforeGroup, Set<IRIdentifier> spilledIDs) {
+    private static AASMPart copyPart(AASMPart part, Map<IRIdentifier, IRIdentifier> loadedBeforeGroup, Set<IRIdentifier> spilledIDs, Map<IRIdentifier, AASMPart> rematerializable) {
         if(part == null) {
             return part;
         }
@@ -458,15 +674,15 @@ public class RegisterAllocator {
             
             case AASMInstruction inst: {
                 // Recurse for sub-parts
-                AASMPart destination = copyPart(inst.getDestination(), loadedBeforeGroup, spilledIDs),
+                AASMPart destination = copyPart(inst.getDestination(), loadedBeforeGroup, spilledIDs, rematerializable),
                          source;
                 
                 if(inst.getSource() instanceof AASMAbstractRegister areg && spilledIDs.contains(areg.id()) && !loadedBeforeGroup.containsKey(areg.id())) {
-                    // Source is a spilled register which is not loaded
-                    source = new AASMStackSlot(areg.id(), areg.type().getSize());
+                    // Source is a spilled register which is not loaded. Read it from where it lives.
+                    source = rematerializable.containsKey(areg.id()) ? rematerializable.get(areg.id()) : new AASMStackSlot(areg.id(), areg.type().getSize());
                 } else {
                     // Source treated normally
-                    source = copyPart(inst.getSource(), loadedBeforeGroup, spilledIDs);
+                    source = copyPart(inst.getSource(), loadedBeforeGroup, spilledIDs, rematerializable);
                 }
                 
                 return new AASMInstruction(
@@ -478,26 +694,26 @@ public class RegisterAllocator {
             }
             
             case AASMLiveSet ls: {
-                // Move spilled IDs from local set to stack set
+                // Move spilled IDs from local set to stack set. Rematerialized IDs are in neither.
                 Set<IRIdentifier> localSet = new HashSet<>(),
                                   stackSet = new HashSet<>(ls.stackSet());
                 
                 for(IRIdentifier id : ls.localSet()) {
-                    if(spilledIDs.contains(id)) {
-                        stackSet.add(id);
-                    } else {
+                    if(!spilledIDs.contains(id)) {
                         localSet.add(id);
+                    } else if(!rematerializable.containsKey(id)) {
+                        stackSet.add(id);
                     }
                 }
                 
-                return new AASMLiveSet(localSet, stackSet, ls.isDef());
+                return new AASMLiveSet(localSet, stackSet, ls.isDef(), ls.loopDepth());
             }
             
             case AASMMemory mem: {
                 // Recurse for sub-parts
                 return new AASMMemory(
-                    copyPart(mem.getBase(), loadedBeforeGroup, spilledIDs),
-                    copyPart(mem.getIndex(), loadedBeforeGroup, spilledIDs),
+                    copyPart(mem.getBase(), loadedBeforeGroup, spilledIDs, rematerializable),
+                    copyPart(mem.getIndex(), loadedBeforeGroup, spilledIDs, rematerializable),
                     mem.getScale(),
                     mem.getOffset(),
                     mem.getType()
@@ -516,10 +732,11 @@ public class RegisterAllocator {
      * @param spilledUsed Set of spilled IDs used which must be loaded
      * @param spilledDefd Set of spilled IDs defined
      * @param spilledIDs
+     * @param rematerializable
      */
-    private static void findSpilledInGroup(List<AASMPart> group, Set<IRIdentifier> spilledUsed, Set<IRIdentifier> spilledDefd, Set<IRIdentifier> spilledIDs) {
+    private static void findSpilledInGroup(List<AASMPart> group, Set<IRIdentifier> spilledUsed, Set<IRIdentifier> spilledDefd, Set<IRIdentifier> spilledIDs, Map<IRIdentifier, AASMPart> rematerializable) {
         for(AASMPart part : group) {
-            findSpilledInPart(part, spilledUsed, spilledDefd, spilledIDs);
+            findSpilledInPart(part, spilledUsed, spilledDefd, spilledIDs, rematerializable);
         }
     }
     
@@ -529,16 +746,18 @@ public class RegisterAllocator {
      * @param spilledUsed
      * @param spilledDefd
      * @param spilledIDs
+     * @param rematerializable
      */
-    private static void findSpilledInPart(AASMPart part, Set<IRIdentifier> spilledUsed, Set<IRIdentifier> spilledDefd, Set<IRIdentifier> spilledIDs) {
+    private static void findSpilledInPart(AASMPart part, Set<IRIdentifier> spilledUsed, Set<IRIdentifier> spilledDefd, Set<IRIdentifier> spilledIDs, Map<IRIdentifier, AASMPart> rematerializable) {
         if(part == null) {
             return;
         }
         
         switch(part) {
             case AASMAbstractRegister areg: {
-                // Abstract register, might be spilled
-                if(spilledIDs.contains(areg.id())) {
+                // Abstract register, might be spilled. Uses after a def in the same group read the def,
+                // unless the def is removed by rematerialization.
+                if(spilledIDs.contains(areg.id()) && (!spilledDefd.contains(areg.id()) || rematerializable.containsKey(areg.id()))) {
                     spilledUsed.add(areg.id());
                 }
                 break;
@@ -547,25 +766,20 @@ public class RegisterAllocator {
             case AASMInstruction inst: {
                 // Instruction, operands can have spilled
                 // Register source may be substitutable with memory access
-                if(!(inst.getSource() instanceof AASMAbstractRegister areg && !(areg.half() && areg.upper()) && (inst.getDestination() instanceof AASMRegister || inst.getDestination() == null))) {
+                if(!(inst.getSource() instanceof AASMAbstractRegister areg && !(areg.half() && areg.upper()) && (inst.getDestination() instanceof AASMRegister || inst.getDestination() == null) &&
+                     (!rematerializable.containsKey(areg.id()) || (rematerializable.get(areg.id()) instanceof AASMMemory && !areg.half())))) {
                     // Source isn't a register, or source is an upper half (not representable from stackslot atm), or destination doesn't allow memory source
-                    findSpilledInPart(inst.getSource(), spilledUsed, spilledDefd, spilledIDs);
+                    // Rematerializable sources are only substitutable if they're memory of the same size
+                    findSpilledInPart(inst.getSource(), spilledUsed, spilledDefd, spilledIDs, rematerializable);
                 }
                 
-                findSpilledInPart(inst.getDestination(), spilledUsed, spilledDefd, spilledIDs);
+                // Register destination only counts as a use if the operation reads it
+                if(!(inst.getDestination() instanceof AASMRegister) || inst.getOp().usesDestination()) {
+                    findSpilledInPart(inst.getDestination(), spilledUsed, spilledDefd, spilledIDs, rematerializable);
+                }
                 
-                // Register destination doesn't count as a use
-                // Remove unilaterally from Used as this is a def
-                if(inst.getDestination() instanceof AASMRegister reg) {
-                    if(inst.getOp().definesDestination()) {
-                        spilledUsed.remove(reg.id());
-                        
-                        if(spilledIDs.contains(reg.id())) {
-                            spilledDefd.add(reg.id());
-                        }
-                    } else if(!inst.getOp().usesDestination()) {
-                        spilledUsed.remove(reg.id());
-                    }
+                if(inst.getDestination() instanceof AASMRegister reg && inst.getOp().definesDestination() && spilledIDs.contains(reg.id())) {
+                    spilledDefd.add(reg.id());
                 }
                 
                 break;
@@ -573,8 +787,8 @@ public class RegisterAllocator {
             
             case AASMMemory mem: {
                 // Memory, base/index can be spilled
-                findSpilledInPart(mem.getBase(), spilledUsed, spilledDefd, spilledIDs);
-                findSpilledInPart(mem.getIndex(), spilledUsed, spilledDefd, spilledIDs);
+                findSpilledInPart(mem.getBase(), spilledUsed, spilledDefd, spilledIDs, rematerializable);
+                findSpilledInPart(mem.getIndex(), spilledUsed, spilledDefd, spilledIDs, rematerializable);
                 break;
             }
             
@@ -627,7 +841,7 @@ public class RegisterAllocator {
                 
                 if(desirable.isEmpty()) {
                     // sadge
-                    Register color = colorFrom(node, okColors);
+                    Register color = colorFrom(node, okColors, data);
                     
                     // Used register is no longer undesirable
                     undesirable.remove(color);
@@ -636,7 +850,7 @@ public class RegisterAllocator {
                         undesirable.remove(MachineRegisters.lowerHalf(color));
                     } catch(IllegalArgumentException e) {}
                 } else {
-                    colorFrom(node, desirable);
+                    colorFrom(node, desirable, data);
                 }
                 
                 LOG.finest(node.getIdentifier() + " = " + node.getColoring());
@@ -653,9 +867,10 @@ public class RegisterAllocator {
      * Color a node from the given set of colors
      * @param node
      * @param colors
+     * @param data
      * @return Color used
      */
-    private static Register colorFrom(RAIGNode node, Set<Register> colors) {
+    private static Register colorFrom(RAIGNode node, Set<Register> colors, RAData data) {
         // Biased coloring
         // Something's up with the coalescing criteria
         // It either misses things biased coloring catches, or causes extra spills
@@ -674,9 +889,15 @@ public class RegisterAllocator {
             }
         }
         
-        Register color = (biased.size() > 0) ? get(biased) : get(colors);
+        Set<Register> candidates = (biased.size() > 0) ? biased : colors;
+        Register color;
+        
+        if(data.strategy.seed() == 0) {
+            color = get(candidates);
+        } else {
+            color = candidates.stream().skip(data.random.nextInt(candidates.size())).findFirst().get();
+        }
         
-        //Register color = get(colors);
         node.setColor(color);
         return color;
     }
@@ -687,13 +908,17 @@ public class RegisterAllocator {
      */
     private static void selectSpill(RAData data) {
         // Find the node in the spill list with the lowest cost
+        // Loop weighting can make costs arbitrarily large, so spill loads are avoided outright rather
+        // than by cost
         RAIGNode node = null;
-        float cost = Integer.MAX_VALUE;
+        float cost = Float.POSITIVE_INFINITY;
         
         for(RAIGNode candidate : data.spillWorklist) {
-            float candCost = candidate.getSpillCost();
+            float candCost = data.strategy.spillHeuristic().priority(candidate);
             
-            if(candCost < cost) {
+            if(node == null ||
+               (node.isSpillLoad() && !candidate.isSpillLoad()) ||
+               (node.isSpillLoad() == candidate.isSpillLoad() && candCost < cost)) {
                 node = candidate;
                 cost = candCost;
             }
@@ -716,7 +941,7 @@ public class RegisterAllocator {
      */
     private static void freeze(RAData data) {
         // Move node from freeze to simplify
-        RAIGNode node = get(data.freezeWorklist);
+        RAIGNode node = pick(data.freezeWorklist, data);
         data.freezeWorklist.remove(node);
         node.setSet(RASet.SIMPLIFY);
         data.simplifyWorklist.add(node);
@@ -763,7 +988,7 @@ public class RegisterAllocator {
      */
     private static void coalesce(RAData data) {
         // Pick a move from the worklist
-        RAMove move = get(data.worklistMoves);
+        RAMove move = pick(data.worklistMoves, data);
         data.worklistMoves.remove(move);
         
         RAIGNode x = move.source().getAlias();
@@ -796,8 +1021,9 @@ public class RegisterAllocator {
         // - merge and retained interfere
         // - retain is precolored and its color is excluded by merge
         if(merge.isPrecolored() ||
+           data.strategy.coalescing() == RAStrategy.Coalescing.NONE ||
            (retain.isPrecolored() && merge.getExcludedColors().contains(retain.getColoring())) ||
-           (merge.getInterferingNodes().contains(retain))) {
+           data.graph.interferes(merge, retain)) {
             //LOG.finest("Constrained");
             
             // A 4th check of if the classes are disjoint is potentially necessary.
@@ -821,14 +1047,14 @@ public class RegisterAllocator {
             for(RAIGNode adj : mergeAdj) {
                 if(!(adj.getSqueeze() < adj.numAvailable() ||
                      adj.isPrecolored() ||
-                     adj.getInterferingNodes().contains(retain))) {
+                     data.graph.interferes(adj, retain))) {
                     // OK failed
                     //LOG.finest("OK failed");
                     data.activeMoves.add(move);
                     return;
                 }
             }
-        } else {
+        } else if(data.strategy.coalescing() == RAStrategy.Coalescing.CONSERVATIVE) {
             // Conservative coalescing heuristic
             Set<RAIGNode> retainAdj = adjacent(retain, data);
             Set<RAIGNode> allNeighbors = new HashSet<>(retainAdj);
@@ -874,7 +1100,7 @@ public class RegisterAllocator {
         retain.addExclusions(merge.getExcludedColors());
         
         for(RAIGNode adj : adjacent(merge, data)) {
-            retain.addInterference(adj);
+            data.graph.addInterference(retain, adj);
             reduceSqueeze(adj, merge, data);
         }
         
@@ -907,7 +1133,7 @@ public class RegisterAllocator {
      */
     private static void simplify(RAData data) {
         // Pick a node, any node
-        RAIGNode node = get(data.simplifyWorklist);
+        RAIGNode node = pick(data.simplifyWorklist, data);
         data.simplifyWorklist.remove(node);
         
         LOG.finest("Simplifying " + node.getIdentifier());
@@ -929,9 +1155,14 @@ public class RegisterAllocator {
      * @return
      */
     private static Set<RAIGNode> adjacent(RAIGNode node, RAData data) {
-        Set<RAIGNode> adj = new HashSet<>(node.getInterferingNodes());
-        adj.removeAll(data.selectStack);
-        adj.removeAll(data.coalescedNodes);
+        // adjList \ (selectStack U coalescedNodes), using the set each node is in
+        Set<RAIGNode> adj = new HashSet<>();
+        
+        for(RAIGNode neighbor : node.getInterferingNodes()) {
+            if(neighbor.getSet() != RASet.SELECT && neighbor.getSet() != RASet.COALESCED) {
+                adj.add(neighbor);
+            }
+        }
         
         return adj;
     }
@@ -1002,7 +1233,7 @@ public class RegisterAllocator {
         // For each node
         while(data.initial.size() > 0) {
             // Move from initial to appropriate worklist
-            RAIGNode node = get(data.initial);
+            RAIGNode node = data.initial.getFirst();
             data.initial.remove(node);
             
             if(node.getSqueeze() >= node.numAvailable()) {
@@ -1068,26 +1299,57 @@ public class RegisterAllocator {
     }
     
     /**
-     * Builds the interference graph
+     * Builds the interference graph.
+     * After a spill, interference between locals whose live ranges didn't change is copied from the
+     * previous graph rather than recomputed. Only spilled locals and new spill loads are dirty.
      * @param code
      * @param registerClassMap
+     * @param spillLoads
+     * @param rematerializable
+     * @param previous Graph of the previous iteration, or null
+     * @param previousInterference Interference matrix of previous as it was built
+     * @param spilled Indices of nodes spilled in previous
      * @param data
      * @return
      */
-    private static RAInterferenceGraph buildInterferenceGraph(List<List<AASMPart>> code, Map<IRIdentifier, RARegisterClass> registerClassMap, Set<IRIdentifier> spillLoads, RAData data) {
-        LOG.finest("Building interference graph");
+    private static RAInterferenceGraph buildInterferenceGraph(List<List<AASMPart>> code, Map<IRIdentifier, RARegisterClass> registerClassMap, Set<IRIdentifier> spillLoads, Map<IRIdentifier, AASMPart> rematerializable, RAInterferenceGraph previous, RABitMatrix previousInterference, BitSet spilled, RAData data) {
+        LOG.finest((previous == null) ? "Building interference graph" : "Updating interference graph");
         
         RAInterferenceGraph graph = new RAInterferenceGraph();
         
         // Initialize graph with a node for each local
-        for(Entry<IRIdentifier, RARegisterClass> entry : registerClassMap.entrySet()) {
-            RAIGNode node = new RAIGNode(entry.getKey(), entry.getValue(), RASet.INITIAL, spillLoads.contains(entry.getKey()));
-            graph.addNode(node);
-            data.initial.add(node);
+        // Locals of the previous graph keep their indices
+        if(previous != null) {
+            for(RAIGNode oldNode : previous.getAllNodes()) {
+                if(!oldNode.isPrecolored()) {
+                    addLocalNode(oldNode.getIdentifier(), registerClassMap, spillLoads, graph, data);
+                }
+            }
+        }
+        
+        for(IRIdentifier id : registerClassMap.keySet()) {
+            if(graph.getNode(id) == null) {
+                addLocalNode(id, registerClassMap, spillLoads, graph, data);
+            }
+        }
+        
+        // Nodes whose interference must be computed
+        BitSet dirty = new BitSet(graph.size());
+        
+        if(previous == null) {
+            dirty.set(0, graph.size());
+        } else {
+            dirty.or(spilled);
+            dirty.set(previous.size(), graph.size());
+            graph.copyInterference(previousInterference, previous.size(), dirty);
         }
         
         // For each instruction in reverse order
-        Set<IRIdentifier> currentlyLive = new HashSet<>();
+        BitSet currentlyLive = new BitSet(graph.size()),
+               scratch = new BitSet(graph.size());
+        
+        // Spill costs are weighted by the loop depth of the block being walked
+        int loopDepth = 0;
         
         for(int g = code.size() - 1; g >= 0; g--) {
             List<AASMPart> group = code.get(g);
@@ -1096,23 +1358,28 @@ public class RegisterAllocator {
                 switch(group.get(i)) {
                     case AASMLiveSet ls: {
                         // Liveness set. Set currentlyLive accordingly
+                        loopDepth = ls.loopDepth();
+                        
                         if(ls.isDef()) {
                             // Live-in/def
                             //graph.addDefCost(ls.localSet());
-                            currentlyLive.addAll(ls.localSet());
+                            for(IRIdentifier def : ls.localSet()) {
+                                setLive(def, currentlyLive, graph);
+                            }
                             
                             // For each define, add an edge to each live
                             for(IRIdentifier def : ls.localSet()) {
-                                for(IRIdentifier live : currentlyLive) {
-                                    graph.addInterference(live, def);
-                                }
+                                addDefInterference(def, currentlyLive, dirty, scratch, graph);
                             }
                         } else {
                             // Live-out/use
                             //graph.addUseCost(ls.localSet());
                             
                             currentlyLive.clear();
-                            currentlyLive.addAll(ls.localSet());
+                            
+                            for(IRIdentifier live : ls.localSet()) {
+                                setLive(live, currentlyLive, graph);
+                            }
                         }
                         break;
                     }
@@ -1122,7 +1389,7 @@ public class RegisterAllocator {
                         // NOTE - some code (coalesce) relies on not having more nuanced exclusions
                         // Update that if different exclusions can happen
                         if(inst.getOp() == AASMOperation.CALL || inst.getOp() == AASMOperation.CALLA) {
-                            for(IRIdentifier live : currentlyLive) {
+                            for(int live = currentlyLive.nextSetBit(0); live >= 0; live = currentlyLive.nextSetBit(live + 1)) {
                                 graph.getNode(live).addExclusion(RARegisterClass.I16_HALF);
                             }
                         }
@@ -1159,15 +1426,13 @@ public class RegisterAllocator {
                                 // so don't count them as such
                             } else {
                                 // actual moves
-                                IRIdentifier src = srcReg.id();
-                                IRIdentifier dst = dstReg.id();
-                                RAIGNode srcNode = graph.getNode(src);
-                                RAIGNode dstNode = graph.getNode(dst);
+                                RAIGNode srcNode = graph.getNode(srcReg.id());
+                                RAIGNode dstNode = graph.getNode(dstReg.id());
                                 
-                                //LOG.info(src + " -> " + dst + "\t\t" + srcNode + " -> " + dstNode);
+                                //LOG.info(srcReg.id() + " -> " + dstReg.id() + "\t\t" + srcNode + " -> " + dstNode);
                                 
                                 // Remove use from live set
-                                currentlyLive.remove(src);
+                                currentlyLive.clear(srcNode.getIndex());
                                 
                                 // Associate move with each node
                                 RAMove move = new RAMove(dstNode, srcNode);
@@ -1179,18 +1444,20 @@ public class RegisterAllocator {
                         
                         // normal use/def handling
                         if(defined != null && !defined.equals(MachineRegisters.ID_SP)) {
-                            graph.addDefCost(defined);
-                            
-                            for(IRIdentifier live : currentlyLive) {
-                                //LOG.info(live + " " + defined);
-                                graph.addInterference(live, defined);
+                            // Defs of rematerializable locals are removed when they're spilled, so they cost nothing
+                            if(!rematerializable.containsKey(defined)) {
+                                graph.addDefCost(defined, loopDepth);
                             }
                             
-                            currentlyLive.remove(defined);
+                            addDefInterference(defined, currentlyLive, dirty, scratch, graph);
+                            currentlyLive.clear(graph.getNode(defined).getIndex());
                         }
                         
-                        graph.addUseCost(used);
-                        currentlyLive.addAll(used);
+                        graph.addUseCost(used, loopDepth);
+                        
+                        for(IRIdentifier use : used) {
+                            setLive(use, currentlyLive, graph);
+                        }
                         break;
                     }
                     
@@ -1200,15 +1467,107 @@ public class RegisterAllocator {
             }
         }
         
+        // With assertions enabled, check the update against building from scratch
+        assert previous == null || matchesRebuild(graph, code, registerClassMap, spillLoads, rematerializable, data.strategy) : "Updated interference graph differs from a full rebuild";
+        
         return graph;
     }
     
+    /**
+     * Checks that an interference graph built incrementally has the same interference as one built from
+     * scratch for the same code
+     * @param graph
+     * @param code
+     * @param registerClassMap
+     * @param spillLoads
+     * @param rematerializable
+     * @param strategy
+     * @return true if they match
+     */
+    private static boolean matchesRebuild(RAInterferenceGraph graph, List<List<AASMPart>> code, Map<IRIdentifier, RARegisterClass> registerClassMap, Set<IRIdentifier> spillLoads, Map<IRIdentifier, AASMPart> rematerializable, RAStrategy strategy) {
+        RAInterferenceGraph rebuilt = buildInterferenceGraph(code, registerClassMap, spillLoads, rematerializable, null, null, null, new RAData(strategy));
+        
+        if(rebuilt.size() != graph.size()) {
+            LOG.severe("Updated interference graph has " + graph.size() + " nodes, rebuilt has " + rebuilt.size());
+            return false;
+        }
+        
+        // Indices differ between the two, so compare by identifier
+        List<RAIGNode> nodes = graph.getAllNodes();
+        
+        for(int i = 0; i < nodes.size(); i++) {
+            RAIGNode a = nodes.get(i),
+                     rebuiltA = rebuilt.getNode(a.getIdentifier());
+            
+            for(int j = 0; j < i; j++) {
+                RAIGNode b = nodes.get(j);
+                
+                if(graph.interferes(a, b) != rebuilt.interferes(rebuiltA, rebuilt.getNode(b.getIdentifier()))) {
+                    LOG.severe("Interference between " + a.getIdentifier() + " and " + b.getIdentifier() + " differs from a full rebuild");
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Adds a node for a local to the graph and the initial set
+     * @param id
+     * @param registerClassMap
+     * @param spillLoads
+     * @param graph
+     * @param data
+     */
+    private static void addLocalNode(IRIdentifier id, Map<IRIdentifier, RARegisterClass> registerClassMap, Set<IRIdentifier> spillLoads, RAInterferenceGraph graph, RAData data) {
+        RAIGNode node = new RAIGNode(id, registerClassMap.get(id), RASet.INITIAL, spillLoads.contains(id));
+        graph.addNode(node);
+        data.initial.add(node);
+    }
+    
+    /**
+     * Marks a local as live
+     * @param id
+     * @param live
+     * @param graph
+     */
+    private static void setLive(IRIdentifier id, BitSet live, RAInterferenceGraph graph) {
+        RAIGNode node = graph.getNode(id);
+        
+        if(node != null) {
+            live.set(node.getIndex());
+        }
+    }
+    
+    /**
+     * Adds interference between a defined local and each live local. If the defined local isn't dirty,
+     * only interference with dirty locals is new.
+     * @param defined
+     * @param live
+     * @param dirty
+     * @param scratch
+     * @param graph
+     */
+    private static void addDefInterference(IRIdentifier defined, BitSet live, BitSet dirty, BitSet scratch, RAInterferenceGraph graph) {
+        int def = graph.getNode(defined).getIndex();
+        
+        if(dirty.get(def)) {
+            graph.addInterference(def, live);
+        } else {
+            scratch.clear();
+            scratch.or(live);
+            scratch.and(dirty);
+            graph.addInterference(def, scratch);
+        }
+    }
+    
     /**
      * Adds the uses of part to used
      * @param part
      * @param used
      */
-    private static void addUses(AASMPart part, Set<IRIdentifier> used) {
+    static void addUses(AASMPart part, Set<IRIdentifier> used) {
         if(part != null) {
             switch(part) {
                 case AASMRegister reg: {
@@ -1303,7 +1662,7 @@ public class RegisterAllocator {
      * @param stackSlotSizes
      * @throws CompilationException
      */
-    private static void assessRegisterClasses(AASMPart part, Map<IRIdentifier, RARegisterClass> registerClassMap, Set<IRIdentifier> preexistingStackSlots, Map<IRIdentifier, Integer> stackSlotSizes) throws CompilationException {
+    static void assessRegisterClasses(AASMPart part, Map<IRIdentifier, RARegisterClass> registerClassMap, Set<IRIdentifier> preexistingStackSlots, Map<IRIdentifier, Integer> stackSlotSizes) throws CompilationException {
         if(part == null) {
             return;
         }
@@ -1390,4 +1749,15 @@ public class RegisterAllocator {
         //return set.stream().skip(new Random().nextInt(set.size())).findFirst().get();
     }
     
+    /**
+     * Gets the next element of a worklist according to the strategy
+     * @param <T>
+     * @param worklist
+     * @param data
+     * @return
+     */
+    private static <T> T pick(SequencedSet<T> worklist, RAData data) {
+        return data.strategy.lifo() ? worklist.getLast() : worklist.getFirst();
+    }
+    
 }
@@ -1,7 +1,7 @@
 package notsotiny.lang.compiler.codegen.alloc;
 
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -17,7 +17,7 @@ public class SAInterferenceGraph {
     private Map<IRIdentifier, SAIGNode> identifierMap;
     
     public SAInterferenceGraph() {
-        this.allNodes = new HashSet<>();
+        this.allNodes = new LinkedHashSet<>();
         this.identifierMap = new HashMap<>();
     }
     
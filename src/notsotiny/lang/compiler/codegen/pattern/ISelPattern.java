@@ -128,5 +128,7 @@ public class ISelPattern {
     public ISelPatternNode getRoot() { return this.pattern; }
     public List<AASMPart> getTemplate() { return this.template; }
     public Map<String, ISelPatternNode> getSubpatternMap() { return this.subpatternMap; }
+    public String getGroupIdentifier() { return this.groupIdentifier; }
+    public int getPatternNumber() { return this.patternNumber; }
     
 }
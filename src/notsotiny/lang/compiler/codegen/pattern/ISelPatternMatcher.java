@@ -48,7 +48,6 @@ import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRIdentifierClass;
 import notsotiny.lang.ir.parts.IRType;
 import notsotiny.lang.ir.parts.IRValue;
-import notsotiny.lib.util.MapUtil;
 
 /**
  * Performs pattern matching on ISelDAGs
@@ -71,54 +70,16 @@ public class ISelPatternMatcher {
     static {
         // Load selection patterns
         try {
-            patternGroupMap = new HashMap<>();
+            ISelPatternTable table = ISelPatternTable.load();
             
-            List<String> patternFiles = List.of(
-                    "patterns basic.txt",
-                    "memory patterns.txt",
-                    "constant patterns.txt",
-                    "argument patterns.txt",
-                    "special patterns.txt",
-                    "" // placeholder to allow trailing comma
-            );
-            
-            for(String fileName : patternFiles) {
-                if(!fileName.equals("")) {
-                    patternGroupMap.putAll(ISelPatternCompiler.compilePatterns(ISelPatternMatcher.class.getResourceAsStream("resources/" + fileName), fileName));
-                }
-            }
+            patternGroupMap = table.getGroupMap();
+            patternRootMap = table.getRootMap();
+            patternStoreMap = table.getStoreMap();
         } catch(IOException | NullPointerException | CompilationException e) {
             LOG.severe(e.getClass().getName() + ": " + e.getMessage());
             e.printStackTrace();
             throw new MissingResourceException(e.getMessage(), CodeGenV1.class.getName(), "instruction selection patterns file");
         }
-        
-        // Build pattern root maps
-        patternRootMap = new HashMap<>();
-        patternStoreMap = new HashMap<>();
-        
-        for(List<ISelPattern> group : patternGroupMap.values()) {
-            for(ISelPattern pattern : group) {
-                if(pattern.getRoot() instanceof ISelPatternNodeNode node) {
-                    ISelDAGOperation op = node.getOperation();
-                    
-                    if(op == ISelDAGTerminatorOperation.STORE) {
-                        // Store has its own map
-                        if(node.getArgumentNodes().get(0) instanceof ISelPatternNodeNode storedNode) {
-                            ISelDAGOperation storedOp = storedNode.getOperation();
-                            
-                            MapUtil.getOrCreateList(patternStoreMap, storedOp).add(pattern);
-                        } else {
-                            // With non nodes going in the general map
-                            MapUtil.getOrCreateList(patternRootMap, op).add(pattern);
-                        }
-                    } else {
-                        // General map
-                        MapUtil.getOrCreateList(patternRootMap, op).add(pattern);
-                    }
-                }
-            }
-        }
     }
     
     /**
@@ -582,7 +543,8 @@ public class ISelPatternMatcher {
             List<ISelPattern> potentialPatterns = patternRootMap.getOrDefault(node.getOp(), new ArrayList<>());
             
             if(node.getOp() == ISelDAGTerminatorOperation.STORE) {
-                // Store has its own map according to stored node
+                // Store has its own map according to stored node. Copy so the shared table isn't modified
+                potentialPatterns = new ArrayList<>(potentialPatterns);
                 potentialPatterns.addAll(patternStoreMap.getOrDefault(node.getInputNodes().get(0).getOp(), new ArrayList<>()));
             }
             
@@ -0,0 +1,732 @@
+package notsotiny.lang.compiler.codegen.pattern;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Logger;
+
+import notsotiny.sim.Register;
+import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.aasm.AASMCompileConstant;
+import notsotiny.lang.compiler.aasm.AASMInstruction;
+import notsotiny.lang.compiler.aasm.AASMMachineRegister;
+import notsotiny.lang.compiler.aasm.AASMMemory;
+import notsotiny.lang.compiler.aasm.AASMOperation;
+import notsotiny.lang.compiler.aasm.AASMPart;
+import notsotiny.lang.compiler.aasm.AASMPatternIndex;
+import notsotiny.lang.compiler.aasm.AASMPatternReference;
+import notsotiny.lang.compiler.codegen.dag.ISelDAGOperation;
+import notsotiny.lang.compiler.codegen.dag.ISelDAGTerminatorOperation;
+import notsotiny.lang.ir.parts.IRCondition;
+import notsotiny.lang.ir.parts.IRType;
+import notsotiny.lib.util.MapUtil;
+
+/**
+ * Compiled instruction selection patterns and their lookup indexes.
+ *
+ * The pattern text files are compiled ahead of time into a binary table by running main. At startup the
+ * table is mapped and decoded directly, skipping the pattern parser. The table records a hash of the text
+ * files it was built from; if the table is missing, unreadable, or its hash doesn't match the current text
+ * files, the text files are compiled instead.
+ *
+ * Table format
+ * header:      int magic, int version, SHA-256 of the pattern sources
+ * strings:     int count, (int length, UTF-8 bytes)*
+ * groups:      int count, (string name, int count, pattern*)*
+ * root index:  int count, (string operation, int count, (string group, int index)*)*
+ * store index: same as root index
+ * pattern:     int number, node, int count, part*
+ *
+ * Strings are stored as indices into the string table, with -1 for null.
+ */
+public class ISelPatternTable {
+    
+    private static Logger LOG = Logger.getLogger(ISelPatternTable.class.getName());
+    
+    // Pattern sources, relative to this class
+    public static final List<String> PATTERN_FILES = List.of(
+            "resources/patterns basic.txt",
+            "resources/memory patterns.txt",
+            "resources/constant patterns.txt",
+            "resources/argument patterns.txt",
+            "resources/special patterns.txt"
+    );
+    
+    public static final String TABLE_FILE = "resources/patterns.bin";
+    
+    private static final int MAGIC = 0x4E535450,   // NSTP
+                             VERSION = 2;
+    
+    // Node tags
+    private static final byte NODE_NODE = 0,
+                              NODE_PATTERN = 1,
+                              NODE_LOCAL = 2,
+                              NODE_ARGUMENT = 3,
+                              NODE_CONSTANT = 4,
+                              NODE_REFERENCE = 5;
+    
+    // Template part tags
+    private static final byte PART_NULL = 0,
+                              PART_INSTRUCTION = 1,
+                              PART_MEMORY = 2,
+                              PART_INDEX = 3,
+                              PART_REFERENCE = 4,
+                              PART_REGISTER = 5,
+                              PART_CONSTANT = 6;
+    
+    // Maps group name to group
+    private Map<String, List<ISelPattern>> groupMap;
+    
+    // Maps root node operation to patterns
+    private Map<ISelDAGOperation, List<ISelPattern>> rootMap;
+    
+    // For (STORE (OP ...)), maps OP to patterns
+    private Map<ISelDAGOperation, List<ISelPattern>> storeMap;
+    
+    private ISelPatternTable(Map<String, List<ISelPattern>> groupMap, Map<ISelDAGOperation, List<ISelPattern>> rootMap, Map<ISelDAGOperation, List<ISelPattern>> storeMap) {
+        this.groupMap = groupMap;
+        this.rootMap = rootMap;
+        this.storeMap = storeMap;
+    }
+    
+    /**
+     * Writes the compiled pattern table for the current text files
+     * @param args output file
+     * @throws IOException
+     * @throws CompilationException
+     */
+    public static void main(String[] args) throws IOException, CompilationException {
+        if(args.length != 1) {
+            System.out.println("Usage: ISelPatternTable <output file>");
+            System.out.println("The output should be placed at " + TABLE_FILE + " alongside the pattern sources");
+            return;
+        }
+        
+        Path outputFile = Paths.get(args[0]);
+        
+        // Write then move so a running compiler never maps a partial table
+        Path tempFile = outputFile.resolveSibling(outputFile.getFileName() + ".tmp");
+        Files.write(tempFile, compile().toBytes(hashSources()));
+        Files.move(tempFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        LOG.info("Wrote pattern table " + outputFile);
+    }
+    
+    /**
+     * Loads the pattern table, preferring the precompiled binary
+     * @return
+     * @throws IOException
+     * @throws CompilationException
+     */
+    public static ISelPatternTable load() throws IOException, CompilationException {
+        URL tableURL = ISelPatternTable.class.getResource(TABLE_FILE);
+        
+        if(tableURL == null) {
+            LOG.fine("No precompiled pattern table, compiling patterns");
+            return compile();
+        }
+        
+        try {
+            return decode(mapResource(tableURL), hashSources());
+        } catch(IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | NullPointerException e) {
+            LOG.warning("Could not read pattern table: " + e.getMessage() + ", compiling patterns");
+            return compile();
+        }
+    }
+    
+    /**
+     * Compiles the pattern table from the text files
+     * @return
+     * @throws IOException
+     * @throws CompilationException
+     */
+    public static ISelPatternTable compile() throws IOException, CompilationException {
+        Map<String, List<ISelPattern>> groupMap = new HashMap<>();
+        
+        for(String fileName : PATTERN_FILES) {
+            InputStream patternStream = ISelPatternTable.class.getResourceAsStream(fileName);
+            
+            if(patternStream == null) {
+                throw new IOException("Missing pattern file " + fileName);
+            }
+            
+            try(patternStream) {
+                groupMap.putAll(ISelPatternCompiler.compilePatterns(patternStream, fileName.substring(fileName.lastIndexOf('/') + 1)));
+            }
+        }
+        
+        // Build pattern root maps
+        Map<ISelDAGOperation, List<ISelPattern>> rootMap = new HashMap<>();
+        Map<ISelDAGOperation, List<ISelPattern>> storeMap = new HashMap<>();
+        
+        for(List<ISelPattern> group : groupMap.values()) {
+            for(ISelPattern pattern : group) {
+                if(pattern.getRoot() instanceof ISelPatternNodeNode node) {
+                    ISelDAGOperation op = node.getOperation();
+                    
+                    if(op == ISelDAGTerminatorOperation.STORE) {
+                        // Store has its own map
+                        if(node.getArgumentNodes().get(0) instanceof ISelPatternNodeNode storedNode) {
+                            ISelDAGOperation storedOp = storedNode.getOperation();
+                            
+                            MapUtil.getOrCreateList(storeMap, storedOp).add(pattern);
+                        } else {
+                            // With non nodes going in the general map
+                            MapUtil.getOrCreateList(rootMap, op).add(pattern);
+                        }
+                    } else {
+                        // General map
+                        MapUtil.getOrCreateList(rootMap, op).add(pattern);
+                    }
+                }
+            }
+        }
+        
+        return new ISelPatternTable(groupMap, rootMap, storeMap);
+    }
+    
+    /**
+     * Hashes the pattern text files, in order
+     * @return SHA-256 of the pattern sources
+     * @throws IOException
+     */
+    private static byte[] hashSources() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            // Every platform is required to have SHA-256
+            throw new IllegalStateException(e);
+        }
+        
+        for(String fileName : PATTERN_FILES) {
+            try(InputStream patternStream = ISelPatternTable.class.getResourceAsStream(fileName)) {
+                if(patternStream == null) {
+                    throw new IOException("Missing pattern file " + fileName);
+                }
+                
+                digest.update(patternStream.readAllBytes());
+            }
+        }
+        
+        return digest.digest();
+    }
+    
+    /**
+     * Maps a resource into memory. Resources inside jars are read instead.
+     * @param url
+     * @return
+     * @throws IOException
+     */
+    private static ByteBuffer mapResource(URL url) throws IOException {
+        if(url.getProtocol().equals("file")) {
+            try(FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch(URISyntaxException e) {
+                throw new IOException(e);
+            }
+        } else {
+            try(InputStream in = url.openStream()) {
+                return ByteBuffer.wrap(in.readAllBytes());
+            }
+        }
+    }
+    
+    /**
+     * Decodes a binary pattern table
+     * @param buffer
+     * @param sourceHash Hash of the current pattern sources
+     * @return
+     * @throws IOException If the table is malformed or was built from different sources
+     */
+    private static ISelPatternTable decode(ByteBuffer buffer, byte[] sourceHash) throws IOException {
+        if(buffer.getInt() != MAGIC) {
+            throw new IOException("not a pattern table");
+        }
+        
+        int version = buffer.getInt();
+        if(version != VERSION) {
+            throw new IOException("unsupported pattern table version " + version);
+        }
+        
+        byte[] tableHash = new byte[sourceHash.length];
+        buffer.get(tableHash);
+        
+        if(!Arrays.equals(tableHash, sourceHash)) {
+            throw new IOException("table was built from different pattern sources");
+        }
+        
+        // Strings
+        String[] strings = new String[buffer.getInt()];
+        
+        for(int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        Decoder decoder = new Decoder(buffer, strings);
+        
+        // Groups
+        Map<String, List<ISelPattern>> groupMap = new HashMap<>();
+        int groupCount = buffer.getInt();
+        
+        for(int i = 0; i < groupCount; i++) {
+            String groupName = decoder.readString();
+            int patternCount = buffer.getInt();
+            List<ISelPattern> patterns = new ArrayList<>(patternCount);
+            
+            for(int j = 0; j < patternCount; j++) {
+                int patternNumber = buffer.getInt();
+                ISelPatternNode root = decoder.readNode();
+                
+                int partCount = buffer.getInt();
+                List<AASMPart> template = new ArrayList<>(partCount);
+                
+                for(int k = 0; k < partCount; k++) {
+                    template.add(decoder.readPart());
+                }
+                
+                ISelPattern pattern = new ISelPattern(root, template, groupName, patternNumber);
+                root.setAsRoot(pattern);
+                patterns.add(pattern);
+            }
+            
+            groupMap.put(groupName, patterns);
+        }
+        
+        // Indexes
+        Map<ISelDAGOperation, List<ISelPattern>> rootMap = decoder.readIndex(groupMap);
+        Map<ISelDAGOperation, List<ISelPattern>> storeMap = decoder.readIndex(groupMap);
+        
+        return new ISelPatternTable(groupMap, rootMap, storeMap);
+    }
+    
+    /**
+     * Encodes this table in the binary format
+     * @param sourceHash Hash of the pattern sources the table was compiled from
+     * @return
+     * @throws IOException
+     */
+    public byte[] toBytes(byte[] sourceHash) throws IOException {
+        Encoder encoder = new Encoder();
+        
+        // Groups
+        Map<ISelPattern, String> patternGroups = new IdentityHashMap<>();
+        Map<ISelPattern, Integer> patternIndices = new IdentityHashMap<>();
+        
+        encoder.out.writeInt(this.groupMap.size());
+        
+        for(Entry<String, List<ISelPattern>> entry : this.groupMap.entrySet()) {
+            List<ISelPattern> patterns = entry.getValue();
+            
+            encoder.writeString(entry.getKey());
+            encoder.out.writeInt(patterns.size());
+            
+            for(int i = 0; i < patterns.size(); i++) {
+                ISelPattern pattern = patterns.get(i);
+                patternGroups.put(pattern, entry.getKey());
+                patternIndices.put(pattern, i);
+                
+                encoder.out.writeInt(pattern.getPatternNumber());
+                encoder.writeNode(pattern.getRoot());
+                encoder.out.writeInt(pattern.getTemplate().size());
+                
+                for(AASMPart part : pattern.getTemplate()) {
+                    encoder.writePart(part);
+                }
+            }
+        }
+        
+        // Indexes
+        encoder.writeIndex(this.rootMap, patternGroups, patternIndices);
+        encoder.writeIndex(this.storeMap, patternGroups, patternIndices);
+        
+        // Header and string table go before the body
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(sourceHash);
+        out.writeInt(encoder.strings.size());
+        
+        for(String s : encoder.strings.keySet()) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        
+        encoder.out.flush();
+        encoder.body.writeTo(out);
+        out.flush();
+        
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Writes pattern table contents
+     */
+    private static class Encoder {
+        
+        private Map<String, Integer> strings = new LinkedHashMap<>();
+        
+        private ByteArrayOutputStream body = new ByteArrayOutputStream();
+        
+        private DataOutputStream out = new DataOutputStream(this.body);
+        
+        /**
+         * Writes a string as its string table index
+         * @param s
+         * @throws IOException
+         */
+        private void writeString(String s) throws IOException {
+            if(s == null) {
+                this.out.writeInt(-1);
+            } else {
+                this.out.writeInt(this.strings.computeIfAbsent(s, k -> this.strings.size()));
+            }
+        }
+        
+        /**
+         * Writes an enum constant by name
+         * @param e
+         * @throws IOException
+         */
+        private void writeEnum(Enum<?> e) throws IOException {
+            writeString(e == null ? null : e.name());
+        }
+        
+        /**
+         * Writes a pattern node and its children
+         * @param node
+         * @throws IOException
+         */
+        private void writeNode(ISelPatternNode node) throws IOException {
+            switch(node) {
+                case ISelPatternNodeNode nn:
+                    this.out.writeByte(NODE_NODE);
+                    writeString(nn.getIdentifier());
+                    writeEnum(nn.getProducedType());
+                    writeEnum((Enum<?>) nn.getOperation());
+                    this.out.writeInt(nn.getArgumentNodes().size());
+                    
+                    for(ISelPatternNode arg : nn.getArgumentNodes()) {
+                        writeNode(arg);
+                    }
+                    break;
+                
+                case ISelPatternNodePattern pn:
+                    this.out.writeByte(NODE_PATTERN);
+                    writeString(pn.getNodeIdentifier());
+                    writeString(pn.getPatternName());
+                    break;
+                
+                case ISelPatternNodeLocal ln:
+                    this.out.writeByte(NODE_LOCAL);
+                    writeString(ln.getIdentifier());
+                    writeEnum(ln.getType());
+                    break;
+                
+                case ISelPatternNodeArgument an:
+                    this.out.writeByte(NODE_ARGUMENT);
+                    writeString(an.getIdentifier());
+                    writeEnum(an.getType());
+                    break;
+                
+                case ISelPatternNodeConstant cn:
+                    this.out.writeByte(NODE_CONSTANT);
+                    writeString(cn.getIdentifier());
+                    this.out.writeInt(cn.getValue());
+                    writeEnum(cn.getType());
+                    this.out.writeBoolean(cn.isWildcard());
+                    break;
+                
+                case ISelPatternNodeReference rn:
+                    this.out.writeByte(NODE_REFERENCE);
+                    writeString(rn.getReferencedIdentifier());
+                    break;
+                
+                default:
+                    throw new IllegalArgumentException("Cannot encode pattern node " + node);
+            }
+        }
+        
+        /**
+         * Writes a template part and its children
+         * @param part
+         * @throws IOException
+         */
+        private void writePart(AASMPart part) throws IOException {
+            switch(part) {
+                case null:
+                    this.out.writeByte(PART_NULL);
+                    break;
+                
+                case AASMInstruction inst:
+                    this.out.writeByte(PART_INSTRUCTION);
+                    writeEnum(inst.getOp());
+                    writeEnum(inst.getCondition());
+                    writePart(inst.getDestination());
+                    writePart(inst.getSource());
+                    break;
+                
+                case AASMMemory mem:
+                    this.out.writeByte(PART_MEMORY);
+                    writePart(mem.getBase());
+                    writePart(mem.getIndex());
+                    writePart(mem.getScale());
+                    writePart(mem.getOffset());
+                    writeEnum(mem.getType());
+                    break;
+                
+                case AASMPatternIndex idx:
+                    this.out.writeByte(PART_INDEX);
+                    writePart(idx.index());
+                    this.out.writeInt(idx.scale());
+                    break;
+                
+                case AASMPatternReference ref:
+                    this.out.writeByte(PART_REFERENCE);
+                    this.out.writeInt(ref.identifiers().size());
+                    
+                    for(String id : ref.identifiers()) {
+                        writeString(id);
+                    }
+                    break;
+                
+                case AASMMachineRegister reg:
+                    this.out.writeByte(PART_REGISTER);
+                    writeEnum(reg.reg());
+                    break;
+                
+                case AASMCompileConstant cc:
+                    this.out.writeByte(PART_CONSTANT);
+                    this.out.writeInt(cc.value());
+                    writeEnum(cc.type());
+                    break;
+                
+                default:
+                    throw new IllegalArgumentException("Cannot encode template part " + part);
+            }
+        }
+        
+        /**
+         * Writes a root index as (group, index) references into the groups
+         * @param index
+         * @param patternGroups
+         * @param patternIndices
+         * @throws IOException
+         */
+        private void writeIndex(Map<ISelDAGOperation, List<ISelPattern>> index, Map<ISelPattern, String> patternGroups, Map<ISelPattern, Integer> patternIndices) throws IOException {
+            this.out.writeInt(index.size());
+            
+            for(Entry<ISelDAGOperation, List<ISelPattern>> entry : index.entrySet()) {
+                writeEnum((Enum<?>) entry.getKey());
+                this.out.writeInt(entry.getValue().size());
+                
+                for(ISelPattern pattern : entry.getValue()) {
+                    writeString(patternGroups.get(pattern));
+                    this.out.writeInt(patternIndices.get(pattern));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads pattern table contents
+     */
+    private static class Decoder {
+        
+        private ByteBuffer buffer;
+        
+        private String[] strings;
+        
+        private Decoder(ByteBuffer buffer, String[] strings) {
+            this.buffer = buffer;
+            this.strings = strings;
+        }
+        
+        /**
+         * Reads a string table reference
+         * @return
+         */
+        private String readString() {
+            int index = this.buffer.getInt();
+            return (index == -1) ? null : this.strings[index];
+        }
+        
+        /**
+         * Reads an enum constant by name
+         * @param <E>
+         * @param type
+         * @return
+         */
+        private <E extends Enum<E>> E readEnum(Class<E> type) {
+            String name = readString();
+            return (name == null) ? null : Enum.valueOf(type, name);
+        }
+        
+        /**
+         * Reads a pattern node and its children
+         * @return
+         * @throws IOException
+         */
+        private ISelPatternNode readNode() throws IOException {
+            byte tag = this.buffer.get();
+            
+            switch(tag) {
+                case NODE_NODE: {
+                    String identifier = readString();
+                    IRType type = readEnum(IRType.class);
+                    ISelDAGOperation op = ISelDAGOperation.fromString(readString());
+                    int argCount = this.buffer.getInt();
+                    List<ISelPatternNode> args = new ArrayList<>(argCount);
+                    
+                    for(int i = 0; i < argCount; i++) {
+                        args.add(readNode());
+                    }
+                    
+                    return new ISelPatternNodeNode(identifier, type, op, args);
+                }
+                
+                case NODE_PATTERN: {
+                    String nodeIdentifier = readString();
+                    return new ISelPatternNodePattern(nodeIdentifier, readString());
+                }
+                
+                case NODE_LOCAL: {
+                    String identifier = readString();
+                    return new ISelPatternNodeLocal(identifier, readEnum(IRType.class));
+                }
+                
+                case NODE_ARGUMENT: {
+                    String identifier = readString();
+                    return new ISelPatternNodeArgument(identifier, readEnum(IRType.class));
+                }
+                
+                case NODE_CONSTANT: {
+                    String identifier = readString();
+                    int value = this.buffer.getInt();
+                    IRType type = readEnum(IRType.class);
+                    return new ISelPatternNodeConstant(identifier, value, type, this.buffer.get() != 0);
+                }
+                
+                case NODE_REFERENCE:
+                    return new ISelPatternNodeReference(readString());
+                
+                default:
+                    throw new IOException("invalid pattern node tag " + tag);
+            }
+        }
+        
+        /**
+         * Reads a template part and its children
+         * @return
+         * @throws IOException
+         */
+        private AASMPart readPart() throws IOException {
+            byte tag = this.buffer.get();
+            
+            switch(tag) {
+                case PART_NULL:
+                    return null;
+                
+                case PART_INSTRUCTION: {
+                    AASMOperation op = readEnum(AASMOperation.class);
+                    IRCondition condition = readEnum(IRCondition.class);
+                    AASMPart destination = readPart();
+                    AASMPart source = readPart();
+                    return new AASMInstruction(op, destination, source, condition);
+                }
+                
+                case PART_MEMORY: {
+                    AASMPart base = readPart();
+                    AASMPart index = readPart();
+                    AASMPart scale = readPart();
+                    AASMPart offset = readPart();
+                    return new AASMMemory(base, index, scale, offset, readEnum(IRType.class));
+                }
+                
+                case PART_INDEX: {
+                    AASMPart index = readPart();
+                    return new AASMPatternIndex(index, this.buffer.getInt());
+                }
+                
+                case PART_REFERENCE: {
+                    int count = this.buffer.getInt();
+                    List<String> identifiers = new ArrayList<>(count);
+                    
+                    for(int i = 0; i < count; i++) {
+                        identifiers.add(readString());
+                    }
+                    
+                    return new AASMPatternReference(identifiers);
+                }
+                
+                case PART_REGISTER:
+                    return new AASMMachineRegister(readEnum(Register.class));
+                
+                case PART_CONSTANT: {
+                    int value = this.buffer.getInt();
+                    return new AASMCompileConstant(value, readEnum(IRType.class));
+                }
+                
+                default:
+                    throw new IOException("invalid template part tag " + tag);
+            }
+        }
+        
+        /**
+         * Reads a root index
+         * @param groupMap
+         * @return
+         */
+        private Map<ISelDAGOperation, List<ISelPattern>> readIndex(Map<String, List<ISelPattern>> groupMap) {
+            Map<ISelDAGOperation, List<ISelPattern>> index = new HashMap<>();
+            int opCount = this.buffer.getInt();
+            
+            for(int i = 0; i < opCount; i++) {
+                ISelDAGOperation op = ISelDAGOperation.fromString(readString());
+                int count = this.buffer.getInt();
+                List<ISelPattern> patterns = new ArrayList<>(count);
+                
+                for(int j = 0; j < count; j++) {
+                    String group = readString();
+                    patterns.add(groupMap.get(group).get(this.buffer.getInt()));
+                }
+                
+                index.put(op, patterns);
+            }
+            
+            return index;
+        }
+    }
+    
+    public Map<String, List<ISelPattern>> getGroupMap() { return this.groupMap; }
+    public Map<ISelDAGOperation, List<ISelPattern>> getRootMap() { return this.rootMap; }
+    public Map<ISelDAGOperation, List<ISelPattern>> getStoreMap() { return this.storeMap; }
+    
+}
@@ -10,6 +10,7 @@ import notsotiny.lang.ir.parts.IRBranchOperation;
 import notsotiny.lang.ir.parts.IRFunction;
 import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRIdentifierClass;
+import notsotiny.lang.ir.util.IRChange;
 
 /**
  * A pre-DAG transformation that moves conditional argument assignments into their own basic blocks
@@ -26,10 +27,11 @@ import notsotiny.lang.ir.parts.IRIdentifierClass;
 public class ISelPretransformConditionalArguments implements ISelPretransformer {
 
     @Override
-    public void transform(IRFunction function) {
+    public IRChange transform(IRFunction function) {
         // For each basic block
         // Copy of the list as we'll be adding BBs
         List<IRBasicBlock> basicBlocks = new ArrayList<>(function.getBasicBlockList());
+        boolean changed = false;
         
         for(IRBasicBlock bb : basicBlocks) {
             IRBranchInstruction branch = bb.getExitInstruction();
@@ -43,14 +45,18 @@ public class ISelPretransformConditionalArguments implements ISelPretransformer
                 if(branch.getTrueArgumentMapping().getMap().size() > 0) {
                     // The true target has mappings. Move them to their own BB
                     moveMapping(branch, branch.getTrueTargetBlock(), branch.getTrueArgumentMapping(), true, bb, function);
+                    changed = true;
                 }
                 
                 if(branch.getFalseArgumentMapping().getMap().size() > 0) {
                     // The false target has mappings. Move them to their own BB
                     moveMapping(branch, branch.getFalseTargetBlock(), branch.getFalseArgumentMapping(), false, bb, function);
+                    changed = true;
                 }
             }
         }
+        
+        return changed ? IRChange.CFG : IRChange.NONE;
     }
     
     /**
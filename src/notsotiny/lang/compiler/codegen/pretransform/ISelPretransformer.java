@@ -1,6 +1,7 @@
 package notsotiny.lang.compiler.codegen.pretransform;
 
 import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.util.IRChange;
 
 /**
  * A transformation to be performed on an IR function before generating its code
@@ -10,7 +11,8 @@ public interface ISelPretransformer {
     /**
      * Perform the transformer's transformation on a function
      * @param function
+     * @return What the transformation changed
      */
-    public void transform(IRFunction function);
+    public IRChange transform(IRFunction function);
     
 }
@@ -5,10 +5,13 @@ import java.nio.file.Path;
 import asmlib.util.FileLocator;
 import fr.cenotelie.hime.redist.ASTNode;
 import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.CompileProfiler;
 import notsotiny.lang.compiler.NSTCompiler;
 import notsotiny.lang.compiler.codegen.CodeGenerator;
 import notsotiny.lang.compiler.irgen.IRGenerator;
+import notsotiny.lang.compiler.irgen.TopLevelParser;
 import notsotiny.lang.compiler.optimization.IROptimizer;
+import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.nstasm.asmparts.ASMObject;
 
 /**
@@ -30,12 +33,64 @@ public class IRCompiler implements NSTCompiler {
 
     @Override
     public ASMObject compile(ASTNode astRoot, String defaultLibName, FileLocator locator) throws CompilationException {
-        return this.codegen.generate(this.optimizer.optimize(this.irgen.generate(astRoot, defaultLibName, locator)));
+        IRModule module;
+        try(CompileProfiler.Section s = CompileProfiler.section("irgen")) {
+            module = this.irgen.generate(astRoot, defaultLibName, locator);
+        }
+        
+        return optimizeAndGenerate(module);
     }
     
     @Override
     public ASMObject compile(ASTNode astRoot, String defaultLibName, FileLocator locator, Path sourcePath) throws CompilationException {
-        return this.codegen.generate(this.optimizer.optimize(this.irgen.generate(astRoot, defaultLibName, locator, sourcePath)));
+        IRModule module;
+        try(CompileProfiler.Section s = CompileProfiler.section("irgen")) {
+            module = this.irgen.generate(astRoot, defaultLibName, locator, sourcePath);
+        }
+        
+        return optimizeAndGenerate(module);
+    }
+    
+    /**
+     * Compiles a module whose source and headers have already been collected
+     * @param source
+     * @param sourcePath
+     * @return
+     * @throws CompilationException
+     */
+    public ASMObject compile(TopLevelParser.ModuleSource source, Path sourcePath) throws CompilationException {
+        IRModule module;
+        try(CompileProfiler.Section s = CompileProfiler.section("irgen")) {
+            module = this.irgen.generate(source, sourcePath);
+        }
+        
+        return optimizeAndGenerate(module);
+    }
+    
+    /**
+     * Runs the back end on a module which has already been optimized, such as one read from binary IR
+     * @param module
+     * @return
+     * @throws CompilationException
+     */
+    public ASMObject generate(IRModule module) throws CompilationException {
+        try(CompileProfiler.Section s = CompileProfiler.section("codegen")) {
+            return this.codegen.generate(module);
+        }
+    }
+    
+    /**
+     * Runs the middle and back ends on a generated module
+     * @param module
+     * @return
+     * @throws CompilationException
+     */
+    private ASMObject optimizeAndGenerate(IRModule module) throws CompilationException {
+        try(CompileProfiler.Section s = CompileProfiler.section("optimize")) {
+            module = this.optimizer.optimize(module);
+        }
+        
+        return generate(module);
     }
     
     
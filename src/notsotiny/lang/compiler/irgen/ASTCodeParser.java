@@ -114,7 +114,7 @@ public class ASTCodeParser {
          *          - If successor ASTBB has all predecessor ASTBBs done, seal successor IRBB
          *      - If IRBB doesn't exist, process it
          */
-        IRIdentifier irBBID = new IRIdentifier(sourceBB.getName(), IRIdentifierClass.BLOCK);
+        IRIdentifier irBBID = targetFunction.getIdentifier(sourceBB.getName(), IRIdentifierClass.BLOCK);
         IRBasicBlock irBB = new IRBasicBlock(irBBID, irModule, targetFunction, sourceBB.getSourceLine());
         targetFunction.addBasicBlock(irBB);
         
@@ -134,7 +134,7 @@ public class ASTCodeParser {
         if(sourceBB.getTrueSuccessor() != null) {
             // Get successor
             ASTBasicBlock trueSuccessor = sourceBB.getTrueSuccessor();
-            IRIdentifier tsID = new IRIdentifier(trueSuccessor.getName(), IRIdentifierClass.BLOCK);
+            IRIdentifier tsID = targetFunction.getIdentifier(trueSuccessor.getName(), IRIdentifierClass.BLOCK);
             IRBasicBlock tsBB = targetFunction.getBasicBlock(tsID);
             
             // If not found in targetFunction, process it
@@ -154,7 +154,7 @@ public class ASTCodeParser {
         if(sourceBB.getFalseSuccessor() != null) {
             // Get successor
             ASTBasicBlock falseSuccessor = sourceBB.getFalseSuccessor();
-            IRIdentifier fsID = new IRIdentifier(falseSuccessor.getName(), IRIdentifierClass.BLOCK);
+            IRIdentifier fsID = targetFunction.getIdentifier(falseSuccessor.getName(), IRIdentifierClass.BLOCK);
             IRBasicBlock fsBB = targetFunction.getBasicBlock(fsID);
             
             // If not found in targetFunction, process it
@@ -244,7 +244,7 @@ public class ASTCodeParser {
                 
             case UNCONDITIONAL:
                 // Just create the instruction
-                exitInst = new IRBranchInstruction(IRBranchOperation.JMP, new IRIdentifier(sourceBB.getTrueSuccessor().getName(), IRIdentifierClass.BLOCK), new IRArgumentMapping(), irBB, 0);
+                exitInst = new IRBranchInstruction(IRBranchOperation.JMP, targetFunction.getIdentifier(sourceBB.getTrueSuccessor().getName(), IRIdentifierClass.BLOCK), new IRArgumentMapping(), irBB, 0);
                 break;
             
             default:
@@ -274,8 +274,8 @@ public class ASTCodeParser {
         // Otherwise, compute the expression and use NE 0 as the condition
         ASTNode conditionNode = sourceBB.getExitCode();
         
-        IRIdentifier trueID = new IRIdentifier(sourceBB.getTrueSuccessor().getName(), IRIdentifierClass.BLOCK);
-        IRIdentifier falseID = new IRIdentifier(sourceBB.getFalseSuccessor().getName(), IRIdentifierClass.BLOCK);
+        IRIdentifier trueID = targetFunction.getIdentifier(sourceBB.getTrueSuccessor().getName(), IRIdentifierClass.BLOCK);
+        IRIdentifier falseID = targetFunction.getIdentifier(sourceBB.getFalseSuccessor().getName(), IRIdentifierClass.BLOCK);
         int lineNum = ASTUtil.getLineNumber(sourceBB.getExitCode());
         
         switch(conditionNode.getSymbol().getID()) {
@@ -461,7 +461,7 @@ public class ASTCodeParser {
             
             // String constants add globals
             if(val instanceof StringType st) {
-                irModule.addGlobal(new IRGlobal(new IRIdentifier(targetFunction.getID().getName() + "." + uniqueName, IRIdentifierClass.GLOBAL), IRType.I8, st.getValue(), true));
+                irModule.addGlobal(new IRGlobal(targetFunction.getIdentifier(targetFunction.getID().getName() + "." + uniqueName, IRIdentifierClass.GLOBAL), IRType.I8, st.getValue(), true));
             }
             
             LOG.finest("Added " + con + " to local context of " + sourceBB.getName());
@@ -668,9 +668,9 @@ public class ASTCodeParser {
                 }
                 
                 if(varType instanceof StructureType st) {
-                    parseStructureLiteralAssignment(valNode, new IRIdentifier(isGlobal ? varName : varUName, isGlobal ? IRIdentifierClass.GLOBAL : IRIdentifierClass.LOCAL), st, irBB, sourceBB, manager, targetFunction, sourceFunction, irModule);
+                    parseStructureLiteralAssignment(valNode, targetFunction.getIdentifier(isGlobal ? varName : varUName, isGlobal ? IRIdentifierClass.GLOBAL : IRIdentifierClass.LOCAL), st, irBB, sourceBB, manager, targetFunction, sourceFunction, irModule);
                 } else if(varType instanceof ArrayType at) {
-                    parseArrayLiteralAssignment(valNode, new IRIdentifier(isGlobal ? varName : varUName, isGlobal ? IRIdentifierClass.GLOBAL : IRIdentifierClass.LOCAL), at, irBB, sourceBB, manager, targetFunction, sourceFunction, irModule);
+                    parseArrayLiteralAssignment(valNode, targetFunction.getIdentifier(isGlobal ? varName : varUName, isGlobal ? IRIdentifierClass.GLOBAL : IRIdentifierClass.LOCAL), at, irBB, sourceBB, manager, targetFunction, sourceFunction, irModule);
                 } else {
                     // Integer
                     Pair<IRValue, NSTLType> valPair = VariableParser.parseIntegerExpression(valNode, manager.getUniqueLocalID(varUName).getName(), varType, irBB, manager, sourceBB.getContext(), sourceFunction.getParentModule(), targetFunction, irModule);
@@ -679,7 +679,7 @@ public class ASTCodeParser {
                     
                     if(isGlobal) {
                         // Global = write to memory
-                        IRLinearInstruction storeInst = new IRLinearInstruction(IRLinearOperation.STORE, val, new IRIdentifier(varName, IRIdentifierClass.GLOBAL), irBB, ASTUtil.getLineNumber(node));
+                        IRLinearInstruction storeInst = new IRLinearInstruction(IRLinearOperation.STORE, val, targetFunction.getIdentifier(varName, IRIdentifierClass.GLOBAL), irBB, ASTUtil.getLineNumber(node));
                         irBB.addInstruction(storeInst);
                     } else {
                         // Local = assign
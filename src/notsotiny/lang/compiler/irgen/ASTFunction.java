@@ -99,14 +99,14 @@ public class ASTFunction {
      */
     public IRFunction getHeaderIR(IRModule sourceModule) throws CompilationException {
         // Make object
-        IRFunction func = new IRFunction(new IRIdentifier(header.getName(), IRIdentifierClass.GLOBAL), this.header.getReturnType().getIRType(), this.external, this.fuid, sourceModule, ASTUtil.getPosition(header.getSource()).getLine());
+        IRFunction func = new IRFunction(sourceModule.getIdentifier(header.getName()), this.header.getReturnType().getIRType(), this.external, this.fuid, sourceModule, ASTUtil.getPosition(header.getSource()).getLine());
         
         // Add arguments
         List<String> argNames = this.header.getArgumentNames();
         List<NSTLType> argTypes = this.header.getArgumentTypes();
         
         for(int i = 0; i < argNames.size(); i++) {
-            IRIdentifier argID = new IRIdentifier(argNames.get(i), IRIdentifierClass.LOCAL);
+            IRIdentifier argID = func.getIdentifier(argNames.get(i), IRIdentifierClass.LOCAL);
             IRType argType = argTypes.get(i).getIRType();
             func.addArgument(argID, argType);
         }
@@ -22,6 +22,12 @@ public class EmptyIRGenerator implements IRGenerator {
         return null;
     }
 
+    @Override
+    public IRModule generate(TopLevelParser.ModuleSource source, Path sourcePath) throws CompilationException {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
     @Override
     public void setCFGVisualization(boolean ast, boolean ir) {
         // TODO Auto-generated method stub
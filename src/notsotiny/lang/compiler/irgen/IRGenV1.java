@@ -75,6 +75,15 @@ public class IRGenV1 implements IRGenerator {
         return module;
     }
     
+    @Override
+    public IRModule generate(TopLevelParser.ModuleSource source, Path sourcePath) throws CompilationException {
+        IRModule module = new IRModule(source.module().getName(), sourcePath);
+        
+        generate(TopLevelParser.parseTopLevel(source), module);
+        
+        return module;
+    }
+    
     /**
      * Generate the module
      * @param module
@@ -84,7 +93,16 @@ public class IRGenV1 implements IRGenerator {
      */
     private void generate(ASTNode code, IRModule irModule, FileLocator locator) throws CompilationException {
         // Parse the top level code
-        ASTModule astModule = TopLevelParser.parseTopLevel(irModule.getName(), code, locator);
+        generate(TopLevelParser.parseTopLevel(irModule.getName(), code, locator), irModule);
+    }
+    
+    /**
+     * Generate the module from its parsed top level
+     * @param astModule
+     * @param irModule
+     * @throws CompilationException 
+     */
+    private void generate(ASTModule astModule, IRModule irModule) throws CompilationException {
         irModule.getLibraryFileMap().putAll(astModule.getLibraryFileMap());
         
         LogPrinter logPrinter = new LogPrinter(LOG, Level.FINEST);
@@ -95,7 +113,7 @@ public class IRGenV1 implements IRGenerator {
         for(String name : astModule.getGlobalConstantMap().keySet()) {
             // Value and ID
             TypedValue tv = astModule.getGlobalConstantMap().get(name);
-            IRIdentifier irid = new IRIdentifier(name, IRIdentifierClass.GLOBAL);
+            IRIdentifier irid = irModule.getIdentifier(name);
             
             if(tv == null) {
                 LOG.severe("Null global constant: " + name);
@@ -118,7 +136,7 @@ public class IRGenV1 implements IRGenerator {
         for(String name : astModule.getGlobalVariableMap().keySet()) {
             // Value and ID
             TypedValue tv = astModule.getGlobalVariableMap().get(name);
-            IRIdentifier irid = new IRIdentifier(name, IRIdentifierClass.GLOBAL);
+            IRIdentifier irid = irModule.getIdentifier(name);
             
             if(tv == null) {
                 LOG.severe("Null global variable: " + name);
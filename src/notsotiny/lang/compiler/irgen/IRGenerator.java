@@ -34,6 +34,15 @@ public interface IRGenerator {
      */
     public IRModule generate(ASTNode astRoot, String defaultLibName, FileLocator locator, Path sourcePath) throws CompilationException;
     
+    /**
+     * Transform a module's collected source into an IRModule
+     * @param source
+     * @param sourcePath
+     * @return
+     * @throws CompilationException
+     */
+    public IRModule generate(TopLevelParser.ModuleSource source, Path sourcePath) throws CompilationException;
+    
     /**
      * Set whether to visualize the CFG of each function
      * @param ast Show AST CFG
@@ -124,7 +124,7 @@ public class ReferenceParser {
                 }
                 
                 // Load
-                IRIdentifier destID = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+                IRIdentifier destID = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
                 IRLinearInstruction irli = new IRLinearInstruction(IRLinearOperation.LOAD, destID, expectedType.getIRType(), subrefVal, irBB, ASTUtil.getLineNumber(node));
                 irBB.addInstruction(irli);
                 
@@ -188,7 +188,7 @@ public class ReferenceParser {
                             
                             NSTLType toType = new PointerType(sourceModule.getGlobalVariableMap().get(targetName).getType());
                             ParseUtils.ensureTypesMatch(expectedType, toType, false, subrefNode, ALOG, "from TO target");
-                            return new Pair<>(new IRIdentifier(targetName, IRIdentifierClass.GLOBAL), toType);
+                            return new Pair<>(func.getIdentifier(targetName, IRIdentifierClass.GLOBAL), toType);
                         }
                     } else if(context.constantExists(targetName)) {
                         // Local string constants can be pointed to
@@ -196,7 +196,7 @@ public class ReferenceParser {
                         TypedValue tv = acc.getValue();
                         
                         if(tv instanceof StringType) {
-                            return new Pair<>(new IRIdentifier(func.getID().getName() + "." + acc.getUniqueName(), IRIdentifierClass.GLOBAL), new PointerType(RawType.U8));
+                            return new Pair<>(func.getIdentifier(func.getID().getName() + "." + acc.getUniqueName(), IRIdentifierClass.GLOBAL), new PointerType(RawType.U8));
                         } else {
                             if(LOG.isLoggable(Level.FINEST)) {
                                 ALOG.finest(subrefNode, "Cannot point to non-string local constants: TO " + ASTUtil.detailed(subrefNode));
@@ -207,17 +207,17 @@ public class ReferenceParser {
                         // No variable, but a function does. Return it
                         LOG.finest("Found function " + targetName);
                         ParseUtils.ensureTypesMatch(expectedType, RawType.PTR, false, subrefNode, ALOG, "from TO target");
-                        return new Pair<>(new IRIdentifier(targetName, IRIdentifierClass.GLOBAL), RawType.PTR);
+                        return new Pair<>(func.getIdentifier(targetName, IRIdentifierClass.GLOBAL), RawType.PTR);
                     } else if(sourceModule.getGlobalConstantMap().containsKey(targetName) && sourceModule.getGlobalConstantMap().get(targetName) instanceof StringType st) {
                         // Not variable or function, but global constant. Strings can be pointed to
                         LOG.finest("Found global string " + targetName);
                         ParseUtils.ensureTypesMatch(expectedType, new PointerType(RawType.U8), false, subrefNode, ALOG, "from TO target");
-                        return new Pair<>(new IRIdentifier(targetName, IRIdentifierClass.GLOBAL), new PointerType(RawType.U8));
+                        return new Pair<>(func.getIdentifier(targetName, IRIdentifierClass.GLOBAL), new PointerType(RawType.U8));
                     } else if(targetName.contains(".")) {
                         // Refernces something from an import
                         LOG.finest("Found library reference " + targetName);
                         ParseUtils.ensureTypesMatch(expectedType, RawType.PTR, false, subrefNode, ALOG, "from TO target");
-                        return new Pair<>(new IRIdentifier(targetName, IRIdentifierClass.GLOBAL), RawType.PTR);
+                        return new Pair<>(func.getIdentifier(targetName, IRIdentifierClass.GLOBAL), RawType.PTR);
                     } else {
                         // No variable or function has this name
                         ALOG.severe(subrefNode, "Name " + targetName + " is not a variable or function");
@@ -264,7 +264,7 @@ public class ReferenceParser {
                 }
                 
                 // Load
-                IRIdentifier destID = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+                IRIdentifier destID = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
                 IRLinearInstruction irli = new IRLinearInstruction(IRLinearOperation.LOAD, destID, expectedType.getIRType(), ptrVal, irBB, ASTUtil.getLineNumber(node));
                 irBB.addInstruction(irli);
                 
@@ -308,7 +308,7 @@ public class ReferenceParser {
                 
                 // Get args and construct CALLR instruction
                 IRArgumentMapping argMap = VariableParser.parseFunctionArguments(argNode, irArgs, header, irBB, manager, context, sourceModule, func, irModule);
-                IRIdentifier destID = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+                IRIdentifier destID = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
                 IRLinearInstruction callInst = new IRLinearInstruction(IRLinearOperation.CALLR, destID, expectedType.getIRType(), refVal, argMap, irBB, ASTUtil.getLineNumber(node));
                 irBB.addInstruction(callInst);
                 
@@ -374,8 +374,8 @@ public class ReferenceParser {
                     
                     ParseUtils.ensureTypesMatch(expectedType, type, false, node, ALOG, "from global variable " + refName);
                     
-                    IRIdentifier globalID = new IRIdentifier(refName, IRIdentifierClass.GLOBAL);
-                    IRIdentifier localID = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+                    IRIdentifier globalID = func.getIdentifier(refName, IRIdentifierClass.GLOBAL);
+                    IRIdentifier localID = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
                     
                     // Arrays and structures yield pointers to their contents
                     if(type instanceof ArrayType || type instanceof StructureType) {
@@ -398,7 +398,7 @@ public class ReferenceParser {
         } else if(sourceModule.getFunctionMap().containsKey(refName)) {
             LOG.finest("Found function " + refName);
             ParseUtils.ensureTypesMatch(expectedType, RawType.PTR, false, node, ALOG, "from TO target");
-            return new Pair<>(new IRIdentifier(refName, IRIdentifierClass.GLOBAL), RawType.PTR);
+            return new Pair<>(func.getIdentifier(refName, IRIdentifierClass.GLOBAL), RawType.PTR);
         } else {
             // No.
             ALOG.severe(node, "Name " + refName + " is not a constant, variable, or function");
@@ -494,7 +494,7 @@ public class ReferenceParser {
             // Emit addition if needed
             int offset = st.getMemberOffset(memberName);
             if(offset != 0) {
-                IRIdentifier destID = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+                IRIdentifier destID = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
                 IRLinearInstruction irli = new IRLinearInstruction(IRLinearOperation.ADD, destID, IRType.I32, sourceValue, new IRConstant(offset, IRType.I32), irBB, ASTUtil.getLineNumber(node));
                 irBB.addInstruction(irli);
                 
@@ -568,7 +568,7 @@ public class ReferenceParser {
             }
             
             // Emit add
-            IRIdentifier destID = new IRIdentifier(destName, IRIdentifierClass.LOCAL); 
+            IRIdentifier destID = func.getIdentifier(destName, IRIdentifierClass.LOCAL); 
             IRLinearInstruction addInst = new IRLinearInstruction(IRLinearOperation.ADD, destID, IRType.I32, sourceValue, indexVal, irBB, ASTUtil.getLineNumber(node));
             irBB.addInstruction(addInst);
             
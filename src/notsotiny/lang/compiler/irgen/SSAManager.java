@@ -61,7 +61,7 @@ public class SSAManager {
         this.variableTypeMap= new HashMap<>();
         
         // Write arguments in entry
-        IRIdentifier entryID = new IRIdentifier("entry", IRIdentifierClass.BLOCK);
+        IRIdentifier entryID = targetFunction.getIdentifier("entry", IRIdentifierClass.BLOCK);
         
         List<IRIdentifier> argNames = targetFunction.getArguments().getNameList();
         List<IRType> argTypes = targetFunction.getArguments().getTypeList();
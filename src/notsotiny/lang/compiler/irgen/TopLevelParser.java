@@ -6,11 +6,15 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +47,24 @@ public class TopLevelParser {
     private static Logger LOG = Logger.getLogger(TopLevelParser.class.getName());
     private static ASTLogger ALOG = new ASTLogger(LOG);
     
+    /**
+     * Parsed header files, shared by every module compiled in this process.
+     * Keyed by canonical path, and only valid while the file's modification time matches.
+     * Parsed ASTs are only ever read, so they can be shared between threads.
+     */
+    private static final Map<Path, CachedHeader> headerCache = new ConcurrentHashMap<>();
+    
+    private record CachedHeader(FileTime modifiedTime, FutureTask<ASTNode> contents) {}
+    
+    /**
+     * A module's source and included headers, collected but not yet parsed
+     * @param module Module with its library inclusions recorded
+     * @param allCode Top level nodes of the source and headers
+     * @param headerPaths Header paths in the order they were included
+     * @param encounteredErrors true if errors were encountered while collecting
+     */
+    public record ModuleSource(ASTModule module, List<ASTNode> allCode, List<Path> headerPaths, boolean encounteredErrors) {}
+    
     /**
      * Parses a 'program' node into an ASTModule
      * Parses:
@@ -58,41 +80,24 @@ public class TopLevelParser {
      * @throws CompilationException 
      */
     public static ASTModule parseTopLevel(String name, ASTNode code, FileLocator locator) throws CompilationException {
+        return parseTopLevel(collectSource(name, code, locator));
+    }
+    
+    /**
+     * Parses a module's collected source into an ASTModule
+     * @param source
+     * @return
+     * @throws CompilationException 
+     */
+    public static ASTModule parseTopLevel(ModuleSource source) throws CompilationException {
         // Track errors. By not immediately failing, more issues can be detected per compilation attempt
-        boolean encounteredErrors = false;
+        boolean encounteredErrors = source.encounteredErrors();
         
-        LOG.fine("----Parsing top level code of " + name + "----");
-        ASTModule module = new ASTModule(name);
+        ASTModule module = source.module();
+        LOG.fine("----Parsing top level code of " + module.getName() + "----");
         
         // source + headers
-        List<ASTNode> allCode = new ArrayList<>();
-        allCode.addAll(code.getChildren());
-        
-        // Get own header
-        try {
-            ASTNode headerNode = getHeaderContents(Paths.get(name), name, locator);
-            allCode.addAll(headerNode.getChildren());
-        } catch(NoSuchFileException e) {
-            // no header
-        }
-        
-        // Do library inclusions
-        LOG.fine("Parsing library inclusions");
-        for(int i = 0; i < allCode.size(); i++) {
-            try {
-                ASTNode topNode = allCode.get(i);
-                
-                if(topNode.getSymbol().getID() == NstlgrammarParser.ID.VARIABLE_LIBRARY_INCLUSION) {
-                    ASTNode headerNode = includeLibrary(module, topNode, locator);
-                    
-                    if(headerNode != null) {
-                        allCode.addAll(headerNode.getChildren());
-                    }
-                }
-            } catch(CompilationException e) {
-                encounteredErrors = true;
-            }
-        }
+        List<ASTNode> allCode = source.allCode();
         
         // Determine global names (types, global variables, global constants, defines) 
         LOG.fine("Parsing global names");
@@ -561,14 +566,78 @@ public class TopLevelParser {
         }
     }
     
+    /**
+     * Collects the top level nodes of a module and the headers it depends on, whether included directly or through another header.
+     * Referenced libraries are added to the locator. The result can be used for cache keys before being passed to parseTopLevel.
+     * @param name
+     * @param code
+     * @param locator
+     * @return
+     * @throws CompilationException
+     */
+    public static ModuleSource collectSource(String name, ASTNode code, FileLocator locator) throws CompilationException {
+        ASTModule module = new ASTModule(name);
+        List<ASTNode> allCode = new ArrayList<>();
+        List<Path> headerPaths = new ArrayList<>();
+        
+        boolean encounteredErrors = collectCode(module, code, locator, allCode, headerPaths);
+        
+        return new ModuleSource(module, allCode, headerPaths, encounteredErrors);
+    }
+    
+    /**
+     * Collects the top level nodes of a module's source, its header, and the headers of included libraries
+     * @param module
+     * @param code
+     * @param locator
+     * @param allCode List to add top level nodes to
+     * @param headerPaths List to add the paths of read header files to
+     * @return true if errors were encountered
+     * @throws CompilationException If the module's own header could not be parsed
+     */
+    private static boolean collectCode(ASTModule module, ASTNode code, FileLocator locator, List<ASTNode> allCode, List<Path> headerPaths) throws CompilationException {
+        boolean encounteredErrors = false;
+        
+        allCode.addAll(code.getChildren());
+        
+        // Get own header
+        try {
+            ASTNode headerNode = getHeaderContents(Paths.get(module.getName()), module.getName(), locator, headerPaths);
+            allCode.addAll(headerNode.getChildren());
+        } catch(NoSuchFileException e) {
+            // no header
+        }
+        
+        // Do library inclusions
+        LOG.fine("Parsing library inclusions");
+        for(int i = 0; i < allCode.size(); i++) {
+            try {
+                ASTNode topNode = allCode.get(i);
+                
+                if(topNode.getSymbol().getID() == NstlgrammarParser.ID.VARIABLE_LIBRARY_INCLUSION) {
+                    ASTNode headerNode = includeLibrary(module, topNode, locator, headerPaths);
+                    
+                    if(headerNode != null) {
+                        allCode.addAll(headerNode.getChildren());
+                    }
+                }
+            } catch(CompilationException e) {
+                encounteredErrors = true;
+            }
+        }
+        
+        return encounteredErrors;
+    }
+    
     /**
      * Includes the contents of a library header. If a library has already been included, returns null.
      * @param topNode
      * @param locator
+     * @param headerPaths
      * @return
      * @throws CompilationException 
      */
-    private static ASTNode includeLibrary(ASTModule module, ASTNode topNode, FileLocator locator) throws CompilationException {
+    private static ASTNode includeLibrary(ASTModule module, ASTNode topNode, FileLocator locator, List<Path> headerPaths) throws CompilationException {
         /*
          * library_inclusion ->
          *   KW_LIBRARY! LNAME KW_IS! LNAME KW_FROM! STRING SEMI!   < Deprecate
@@ -625,7 +694,7 @@ public class TopLevelParser {
             
             LOG.finest("Included library " + localName + " from " + truePath);
             
-            return getHeaderContents(givenPath, localName, locator);
+            return getHeaderContents(givenPath, localName, locator, headerPaths);
         } catch(NoSuchFileException e) {
             ALOG.warning(topNode, "No header file for library " + localName + " from " + givenPath);
             // new CompilationException();
@@ -638,11 +707,12 @@ public class TopLevelParser {
      * @param givenPath
      * @param libName
      * @param locator
+     * @param headerPaths List to add the path of the header file to
      * @return
      * @throws NoSuchFileException 
      * @throws CompilationException 
      */
-    private static ASTNode getHeaderContents(Path givenPath, String libName, FileLocator locator) throws NoSuchFileException, CompilationException {
+    private static ASTNode getHeaderContents(Path givenPath, String libName, FileLocator locator, List<Path> headerPaths) throws NoSuchFileException, CompilationException {
         LOG.finest("Getting header file for " + libName + " from " + givenPath);
         
         Path headerPath;
@@ -654,6 +724,57 @@ public class TopLevelParser {
             throw e;
         }
         
+        headerPaths.add(headerPath);
+        
+        Path canonicalPath;
+        FileTime modifiedTime;
+        
+        try {
+            canonicalPath = headerPath.toRealPath();
+            modifiedTime = Files.getLastModifiedTime(canonicalPath);
+        } catch(IOException e) {
+            LOG.severe("IOException reading header file " + headerPath);
+            throw new CompilationException();
+        }
+        
+        // Get the cached header, or take responsibility for parsing it. If another thread is
+        // already parsing it, wait for that thread.
+        CachedHeader entry = headerCache.compute(canonicalPath, (path, existing) -> {
+            if(existing != null && existing.modifiedTime().equals(modifiedTime)) {
+                return existing;
+            }
+            
+            return new CachedHeader(modifiedTime, new FutureTask<>(() -> parseHeader(path)));
+        });
+        
+        entry.contents().run();
+        
+        try {
+            return entry.contents().get();
+        } catch(ExecutionException e) {
+            // Don't keep failures around, the file may be fixed without its time changing
+            headerCache.remove(canonicalPath, entry);
+            
+            if(e.getCause() instanceof CompilationException ce) {
+                throw ce;
+            }
+            
+            throw new IllegalStateException(e.getCause());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompilationException();
+        }
+    }
+    
+    /**
+     * Parses a header file
+     * @param headerPath
+     * @return
+     * @throws CompilationException
+     */
+    private static ASTNode parseHeader(Path headerPath) throws CompilationException {
+        LOG.finest("Parsing header file " + headerPath);
+        
         try {
             NstlgrammarLexer lexer = new NstlgrammarLexer(new InputStreamReader(Files.newInputStream(headerPath)));
             NstlgrammarParser parser = new NstlgrammarParser(lexer);
@@ -173,7 +173,7 @@ public class VariableParser {
         ParseUtils.ensureTypesMatch(expectedType, leftType, false, leftNode, ALOG, "from integer expression");
         ParseUtils.ensureTypesMatch(expectedType, rightType, false, rightNode, ALOG, "from integer expression");
         
-        IRIdentifier destID = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+        IRIdentifier destID = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
         boolean signed = expectedType.isSigned();
         
         // Comparisons use SELECT, which takes more arguments
@@ -262,7 +262,7 @@ public class VariableParser {
         NSTLType valType = valPair.b;
         
         // Do the op
-        IRIdentifier dest = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+        IRIdentifier dest = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
         IRType irType = valType.getIRType();
         IRLinearOperation op = (node.getSymbol().getID() == NstlgrammarLexer.ID.TERMINAL_OP_SUBTRACT) ? IRLinearOperation.NEG : IRLinearOperation.NOT;
         IRLinearInstruction inst = new IRLinearInstruction(op, dest, irType, valVal, irBB, ASTUtil.getLineNumber(node));
@@ -316,7 +316,7 @@ public class VariableParser {
         } else {
             // Do a cast
             IRType targetIRType = targetType.getIRType();
-            IRIdentifier targetID = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+            IRIdentifier targetID = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
             
             if(exprType.getSize() == targetType.getSize()) {
                 // No action. Return as is.
@@ -409,8 +409,8 @@ public class VariableParser {
             // Type is good. Get it.
             if(isGlobal) {
                 // Global = load to local
-                IRIdentifier globalID = new IRIdentifier(varName, IRIdentifierClass.GLOBAL);
-                IRIdentifier localID = new IRIdentifier(destName, IRIdentifierClass.LOCAL);
+                IRIdentifier globalID = func.getIdentifier(varName, IRIdentifierClass.GLOBAL);
+                IRIdentifier localID = func.getIdentifier(destName, IRIdentifierClass.LOCAL);
                 
                 LOG.finest("Loading " + globalID + " to local " + localID);
                 
@@ -521,7 +521,7 @@ public class VariableParser {
             List<IRIdentifier> ordering = new ArrayList<>(argNodes.size());
             
             for(int i = 0; i < argNodes.size(); i++) {
-                ordering.add(new IRIdentifier("arg" + i, IRIdentifierClass.LOCAL));
+                ordering.add(func.getIdentifier("arg" + i, IRIdentifierClass.LOCAL));
             }
             
             mapping = new IRArgumentMapping(ordering);
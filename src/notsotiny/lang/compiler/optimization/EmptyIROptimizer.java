@@ -20,12 +20,30 @@ public class EmptyIROptimizer implements IROptimizer {
         
     }
 
+    @Override
+    public void setPipeline(String pipeline) {
+        // TODO Auto-generated method stub
+        
+    }
+
+    @Override
+    public void setVerification(boolean verify) {
+        // TODO Auto-generated method stub
+        
+    }
+
     @Override
     public void setFileOutput(boolean output, Path directory) {
         // TODO Auto-generated method stub
         
     }
 
+    @Override
+    public void setBinaryOutput(boolean output, Path directory) {
+        // TODO Auto-generated method stub
+        
+    }
+
     @Override
     public void setIntermediateOutput(boolean output, Path directory) {
         // TODO Auto-generated method stub
@@ -38,4 +56,10 @@ public class EmptyIROptimizer implements IROptimizer {
         
     }
     
+    @Override
+    public void setParallelism(int threads) {
+        // TODO Auto-generated method stub
+        
+    }
+
 }
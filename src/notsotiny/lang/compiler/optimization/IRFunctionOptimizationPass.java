@@ -0,0 +1,31 @@
+package notsotiny.lang.compiler.optimization;
+
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.util.IRChange;
+
+/**
+ * An optimization pass which works on one function at a time.
+ * Function passes may only modify the function they are given, and only read other functions' cached
+ * purity, so that different functions can be optimized in parallel.
+ */
+public interface IRFunctionOptimizationPass extends IROptimizationPass {
+    
+    /**
+     * Performs some optimization on a function
+     * @param function
+     * @return What the pass changed. Passes which change a function and then undo it must leave its cached
+     *         analyses valid themselves.
+     */
+    public IRChange optimize(IRFunction function);
+    
+    @Override
+    public default IRModule optimize(IRModule module) {
+        for(IRFunction function : module.getInternalFunctions().values()) {
+            optimize(function);
+        }
+        
+        return module;
+    }
+    
+}
@@ -5,10 +5,19 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import notsotiny.lang.compiler.CompileProfiler;
 import notsotiny.lang.compiler.optimization.cse.IRPassLCSE;
 import notsotiny.lang.compiler.optimization.gvnpre.IRPassGVN;
 import notsotiny.lang.compiler.optimization.gvnpre.IRPassGVNPRE;
@@ -16,9 +25,13 @@ import notsotiny.lang.compiler.optimization.other.IRPassBasicBlockMerge;
 import notsotiny.lang.compiler.optimization.other.IRPassDebug;
 import notsotiny.lang.compiler.optimization.sccp.IRPassSCCP;
 import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.util.IRBinaryWriter;
 import notsotiny.lang.ir.util.IRCFGRenderer;
+import notsotiny.lang.ir.util.IRChange;
 import notsotiny.lang.ir.util.IRPrinter;
+import notsotiny.lang.ir.util.IRUtil;
 import notsotiny.lib.printing.LogPrinter;
 import notsotiny.lib.printing.StreamPrinter;
 
@@ -29,62 +42,93 @@ public class IROptV1 implements IROptimizer {
     
     private static Logger LOG = Logger.getLogger(IROptV1.class.getName());
     
-    private static List<IROptimizationPass> passes = new ArrayList<>();
+    // Maximum number of times a group of passes is repeated while it keeps changing a function, if not given
+    private static final int FIXED_POINT_ITERATIONS = 3;
     
-    static {
-        passes.add(new IRPassSCCP());
-        passes.add(new IRPassBasicBlockMerge()); // clean up empty blocks
-        //passes.add(new IRPassGVN());
-        passes.add(new IRPassGVNPRE());
-        passes.add(new IRPassBasicBlockMerge()); // clean up critical edge blocks
-        passes.add(new IRPassLCSE());
-        passes.add(new IRPassDebug());
-    }
+    // Passes by name, for pipeline descriptions. Passes are created per run so that concurrent runs don't
+    // share pass objects.
+    private static final Map<String, Supplier<IROptimizationPass>> NAMED_PASSES = Map.of(
+        "sccp",     IRPassSCCP::new,
+        "bbmerge",  IRPassBasicBlockMerge::new,
+        "gvn",      IRPassGVN::new,
+        "gvnpre",   IRPassGVNPRE::new,
+        "lcse",     IRPassLCSE::new,
+        "verify",   IRPassDebug::new
+    );
+    
+    /*
+     * Pipeline of each optimization level
+     * Passes are separated by commas. A parenthesized group of passes is repeated until it stops changing
+     * a function, at most *N times.
+     * 
+     * Constant propagation and redundancy elimination each expose work for the other. bbmerge cleans up
+     * empty blocks after sccp and critical edge blocks after gvnpre. The lower levels skip the expensive
+     * passes for faster debug builds. Level three is an alias of level two until there are passes that
+     * only belong at three.
+     */
+    private static final String LEVEL_TWO_PIPELINE = "(sccp,bbmerge,gvnpre,bbmerge)*3,lcse";
+    
+    public static final Map<IROptimizationLevel, String> LEVEL_PIPELINES = Map.of(
+        IROptimizationLevel.ZERO,   "bbmerge",
+        IROptimizationLevel.ONE,    "(sccp,bbmerge)*3,lcse",
+        IROptimizationLevel.TWO,    LEVEL_TWO_PIPELINE,
+        IROptimizationLevel.THREE,  LEVEL_TWO_PIPELINE
+    );
     
     private IROptimizationLevel level = IROptimizationLevel.ONE;
     
+    // Pass groups to run. From the level unless given explicitly.
+    private List<PassGroup> pipeline = parsePipeline(LEVEL_PIPELINES.get(IROptimizationLevel.ONE));
+    
+    private boolean explicitPipeline = false,
+                    verify = false;
+    
+    // Number of functions to optimize at once
+    private int parallelism = 1;
+    
     private boolean outputToFile = false,
+                    outputBinary = false,
                     outputIntermediate = false,
                     showIntermediateCFG = false,
                     showOptimizedCFG = false;
     
     private Path fileOutputDirectory = null,
+                 binaryOutputDirectory = null,
                  intermediateOutputDirectory = null;
 
     @Override
     public IRModule optimize(IRModule module) {
         LOG.fine("Optimizing " + module.getName());
         
-        int passNumber = 0;
+        List<Stage> stages = createStages();
         
-        for(IROptimizationPass pass : passes) {
-            if(this.level.isAbove(pass.level())) {
-                module = pass.optimize(module);
-                
-                // Render intermediate CFG if applicable
-                if(this.showIntermediateCFG) {
-                    for(IRFunction fun : module.getInternalFunctions().values()) {
-                        IRCFGRenderer.renderCFG(fun, "_inter" + passNumber + "_ir");
-                    }
-                }
+        // Purity is the only information passes read from other functions. Fix it for the duration of
+        // the pipeline so that results don't depend on the order functions are optimized in. Optimization
+        // doesn't add side effects, so pure functions stay pure.
+        Map<IRIdentifier, Boolean> purityMap = IRUtil.getFunctionPurityMap(module, false),
+                                   divisionPurityMap = IRUtil.getFunctionPurityMap(module, true);
+        
+        for(IRFunction fun : module.getInternalFunctions().values()) {
+            fun.getAnalyses().setVerification(this.verify);
+            fun.getAnalyses().fixPurity(purityMap.get(fun.getID()), divisionPurityMap.get(fun.getID()));
+            verifyFunction(fun);
+        }
                 
-                // Output intermediate to file if applicable
-                if(this.outputIntermediate) {
-                    // Get name, trim extension
-                    String sourceFileName = module.getSourceFile().getFileName().toString();
-                    sourceFileName = sourceFileName.substring(0, sourceFileName.lastIndexOf("."));
-                    Path outputFile = this.intermediateOutputDirectory.resolve(sourceFileName + "_" + passNumber + ".nir");
-                    
-                    LOG.info("Writing intermediate IR to " + outputFile);
-                    
-                    try(BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(outputFile))) {
-                        StreamPrinter filePrinter = new StreamPrinter(bos);
-                        IRPrinter.printModule(filePrinter, module, 0);
-                    } catch(IOException e) {}
-                }
+        // Function-major order runs every pass on a function before moving to the next, so that functions
+        // can be optimized in parallel. Intermediate output needs the whole module between passes.
+        boolean functionMajor = this.parallelism > 1 &&
+                                module.getInternalFunctions().size() > 1 &&
+                                !this.outputIntermediate && !this.showIntermediateCFG &&
+                                stages.stream().allMatch(stage -> stage.passes().stream().allMatch(pass -> pass instanceof IRFunctionOptimizationPass));
+        
+        if(functionMajor) {
+            optimizeFunctions(module);
+        } else {
+            module = optimizePasses(module, stages);
+        }
                 
-                passNumber++;
-            }
+        for(IRFunction fun : module.getInternalFunctions().values()) {
+            fun.getAnalyses().releasePurity();
         }
         
         // Render CFG if applicable
@@ -118,12 +162,341 @@ public class IROptV1 implements IROptimizer {
             } catch(IOException e) {}
         }
         
+        // Output binary IR if applicable
+        if(this.outputBinary) {
+            String sourceFileName = module.getSourceFile().getFileName().toString();
+            sourceFileName = sourceFileName.substring(0, sourceFileName.lastIndexOf("."));
+            Path outputFile = this.binaryOutputDirectory.resolve(sourceFileName + ".nirb");
+            
+            LOG.info("Writing optimized binary IR to " + outputFile);
+            
+            try {
+                IRBinaryWriter.write(module, outputFile);
+            } catch(IOException e) {
+                LOG.warning("Could not write binary IR to " + outputFile + ": " + e.getMessage());
+            }
+        }
+        
         return module;
     }
 
+    /**
+     * Creates the passes of the pipeline
+     * @return
+     */
+    private List<Stage> createStages() {
+        List<Stage> stages = new ArrayList<>();
+        
+        for(PassGroup group : this.pipeline) {
+            List<IROptimizationPass> passes = new ArrayList<>();
+        
+            for(Supplier<IROptimizationPass> supplier : group.passes()) {
+                passes.add(supplier.get());
+            }
+        
+            stages.add(new Stage(group.iterations(), passes));
+        }
+        
+        return stages;
+    }
+    
+    /**
+     * Runs each pass on the whole module in turn
+     * @param module
+     * @param stages
+     * @return
+     */
+    private IRModule optimizePasses(IRModule module, List<Stage> stages) {
+        Map<IRFunction, FunctionState> states = new HashMap<>();
+        int passNumber = 0;
+        
+        for(Stage stage : stages) {
+            // Functions which haven't reached a fixed point
+            Set<IRFunction> active = new LinkedHashSet<>(module.getInternalFunctions().values());
+            
+            for(int i = 0; i < stage.iterations() && !active.isEmpty(); i++) {
+                Map<IRFunction, IRChange> changes = new HashMap<>();
+                
+                for(IROptimizationPass pass : stage.passes()) {
+                    try(CompileProfiler.Section s = CompileProfiler.section(passNumber + " " + pass.getClass().getSimpleName())) {
+                        if(pass instanceof IRFunctionOptimizationPass functionPass) {
+                            for(IRFunction fun : active) {
+                                changes.merge(fun, runPass(fun, functionPass, states.computeIfAbsent(fun, f -> new FunctionState())), IRChange::combine);
+                            }
+                        } else {
+                            module = pass.optimize(module);
+        
+                            // Module passes don't report changes, so assume everything changed
+                            for(IRFunction fun : module.getInternalFunctions().values()) {
+                                invalidateAnalyses(fun, pass);
+                                verifyFunction(fun);
+                                states.computeIfAbsent(fun, f -> new FunctionState()).version++;
+                                changes.put(fun, IRChange.CFG);
+                            }
+                            
+                            active = new LinkedHashSet<>(module.getInternalFunctions().values());
+                        }
+                    }
+        
+                    // Render intermediate CFG if applicable
+                    if(this.showIntermediateCFG) {
+                        for(IRFunction fun : module.getInternalFunctions().values()) {
+                            IRCFGRenderer.renderCFG(fun, "_inter" + passNumber + "_ir");
+                        }
+                    }
+            
+                    // Output intermediate to file if applicable
+                    if(this.outputIntermediate) {
+                        // Get name, trim extension
+                        String sourceFileName = module.getSourceFile().getFileName().toString();
+                        sourceFileName = sourceFileName.substring(0, sourceFileName.lastIndexOf("."));
+                        Path outputFile = this.intermediateOutputDirectory.resolve(sourceFileName + "_" + passNumber + ".nir");
+                
+                        LOG.info("Writing intermediate IR to " + outputFile);
+                
+                        try(BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(outputFile))) {
+                            StreamPrinter filePrinter = new StreamPrinter(bos);
+                            IRPrinter.printModule(filePrinter, module, 0);
+                        } catch(IOException e) {}
+                    }
+            
+                    passNumber++;
+                }
+                
+                // Functions the group didn't change have reached a fixed point
+                active.removeIf(fun -> changes.getOrDefault(fun, IRChange.NONE) == IRChange.NONE);
+            }
+        }
+        
+        return module;
+    }
+    
+    /**
+     * Runs the whole pipeline on each function, in parallel
+     * @param module
+     */
+    private void optimizeFunctions(IRModule module) {
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            
+            for(IRFunction fun : module.getInternalFunctions().values()) {
+                tasks.add(pool.submit(() -> optimizeFunction(fun)));
+            }
+            
+            // Wait for everything, rethrowing failures in function order
+            for(ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Runs the whole pipeline on a function
+     * @param fun
+     */
+    private void optimizeFunction(IRFunction fun) {
+        LOG.finer("Optimizing " + fun.getID());
+        
+        try(CompileProfiler.Section fs = CompileProfiler.section("function " + fun.getModule().getName() + "." + fun.getID().getName())) {
+            FunctionState state = new FunctionState();
+            int passNumber = 0;
+            
+            // Each task gets its own pass objects
+            for(Stage stage : createStages()) {
+                for(int i = 0; i < stage.iterations(); i++) {
+                    IRChange change = IRChange.NONE;
+                    
+                    for(IROptimizationPass pass : stage.passes()) {
+                        try(CompileProfiler.Section s = CompileProfiler.section(passNumber + " " + pass.getClass().getSimpleName())) {
+                            change = change.combine(runPass(fun, (IRFunctionOptimizationPass) pass, state));
+                        }
+                
+                        passNumber++;
+                    }
+                    
+                    // Stop at a fixed point
+                    if(change == IRChange.NONE) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Runs a function pass, unless it's idempotent and the function hasn't changed since it last ran, and
+     * discards the cached analyses its changes invalidate
+     * @param fun
+     * @param pass
+     * @param state
+     * @return What the pass changed
+     */
+    private IRChange runPass(IRFunction fun, IRFunctionOptimizationPass pass, FunctionState state) {
+        if(pass.isIdempotent() && state.lastRun.getOrDefault(pass.getClass(), -1) == state.version) {
+            if(LOG.isLoggable(Level.FINEST)) {
+                LOG.finest("Skipping " + pass.getClass().getSimpleName() + " on unchanged " + fun.getID());
+            }
+            
+            return IRChange.NONE;
+        }
+        
+        IRChange change = pass.optimize(fun);
+        fun.getAnalyses().invalidate(change, pass.preservedAnalyses());
+        
+        if(change != IRChange.NONE) {
+            state.version++;
+            verifyFunction(fun);
+        }
+        
+        if(pass.isIdempotent()) {
+            state.lastRun.put(pass.getClass(), state.version);
+        }
+        
+        return change;
+    }
+    
+    /**
+     * Checks that a function is well formed, if verification is enabled
+     * @param fun
+     */
+    private void verifyFunction(IRFunction fun) {
+        if(this.verify) {
+            new IRPassDebug().optimize(fun);
+        }
+    }
+    
+    /**
+     * Discards cached analyses of a function which may have been invalidated by a pass which doesn't report
+     * its changes
+     * @param fun
+     * @param pass
+     */
+    private void invalidateAnalyses(IRFunction fun, IROptimizationPass pass) {
+        fun.getAnalyses().setVerification(this.verify);
+        fun.getAnalyses().invalidate(IRChange.CFG, pass.preservedAnalyses());
+    }
+    
+    /**
+     * Creates a pass by name
+     * @param name
+     * @return
+     */
+    public static IROptimizationPass createPass(String name) {
+        return getPassSupplier(name).get();
+    }
+    
+    /**
+     * @param name Pass name, case-insensitive
+     * @return Supplier of the named pass
+     */
+    private static Supplier<IROptimizationPass> getPassSupplier(String name) {
+        Supplier<IROptimizationPass> pass = NAMED_PASSES.get(name.trim().toLowerCase());
+        
+        if(pass == null) {
+            throw new IllegalArgumentException("Unknown pass: " + name.trim() + ". Known passes: " + new TreeSet<>(NAMED_PASSES.keySet()));
+        }
+        
+        return pass;
+    }
+        
+    /**
+     * Parses a pipeline description
+     * @param description e.g. "(sccp,bbmerge)*2,lcse". Blank or "none" for no passes.
+     * @return
+     */
+    private static List<PassGroup> parsePipeline(String description) {
+        List<PassGroup> groups = new ArrayList<>();
+        
+        if(description.isBlank() || description.trim().equalsIgnoreCase("none")) {
+            return groups;
+        }
+        
+        int i = 0;
+        
+        while(i < description.length()) {
+            char c = description.charAt(i);
+            
+            if(c == ',' || Character.isWhitespace(c)) {
+                i++;
+            } else if(c == '(') {
+                // Group, with optional iteration limit
+                int close = description.indexOf(')', i);
+                
+                if(close == -1) {
+                    throw new IllegalArgumentException("Unclosed group in pipeline: " + description);
+                }
+                
+                List<Supplier<IROptimizationPass>> passes = new ArrayList<>();
+                
+                for(String name : description.substring(i + 1, close).split(",")) {
+                    passes.add(getPassSupplier(name));
+                }
+                
+                int iterations = FIXED_POINT_ITERATIONS;
+                i = close + 1;
+                
+                if(i < description.length() && description.charAt(i) == '*') {
+                    int end = i + 1;
+                    
+                    while(end < description.length() && Character.isDigit(description.charAt(end))) {
+                        end++;
+                    }
+                    
+                    if(end == i + 1) {
+                        throw new IllegalArgumentException("Expected iteration count after * in pipeline: " + description);
+                    }
+                    
+                    iterations = Integer.parseInt(description.substring(i + 1, end));
+                    i = end;
+                }
+                
+                groups.add(new PassGroup(iterations, passes));
+            } else {
+                // Single pass
+                int end = description.indexOf(',', i);
+                end = (end == -1) ? description.length() : end;
+                
+                groups.add(new PassGroup(1, getPassSupplier(description.substring(i, end))));
+                i = end;
+            }
+        }
+        
+        return groups;
+    }
+    
+    @Override
+    public void setPipeline(String description) {
+        if(description == null) {
+            this.explicitPipeline = false;
+            this.pipeline = parsePipeline(LEVEL_PIPELINES.get(this.level));
+        } else {
+            // Parse first so that a bad description leaves the pipeline as it was
+            this.pipeline = parsePipeline(description);
+            this.explicitPipeline = true;
+        }
+    }
+    
+    @Override
+    public void setParallelism(int threads) {
+        this.parallelism = threads;
+    }
+    
     @Override
     public void setLevel(IROptimizationLevel level) {
         this.level = level;
+        
+        if(!this.explicitPipeline) {
+            this.pipeline = parsePipeline(LEVEL_PIPELINES.get(level));
+        }
+    }
+    
+    @Override
+    public void setVerification(boolean verify) {
+        this.verify = verify;
     }
     
     @Override
@@ -132,6 +505,12 @@ public class IROptV1 implements IROptimizer {
         this.fileOutputDirectory = directory;
     }
     
+    @Override
+    public void setBinaryOutput(boolean output, Path directory) {
+        this.outputBinary = output;
+        this.binaryOutputDirectory = directory;
+    }
+    
     @Override
     public void setIntermediateOutput(boolean output, Path directory) {
         this.outputIntermediate = output;
@@ -143,4 +522,36 @@ public class IROptV1 implements IROptimizer {
         this.showIntermediateCFG = iir;
         this.showOptimizedCFG = oir;
     }
+    
+    /**
+     * Passes run in order, repeated while they change a function
+     * @param iterations Maximum number of times the passes are run
+     * @param passes
+     */
+    private record PassGroup(int iterations, List<Supplier<IROptimizationPass>> passes) {
+        
+        @SafeVarargs
+        private PassGroup(int iterations, Supplier<IROptimizationPass>... passes) {
+            this(iterations, List.of(passes));
+        }
+    }
+    
+    /**
+     * A pass group's passes, created for a run
+     * @param iterations
+     * @param passes
+     */
+    private record Stage(int iterations, List<IROptimizationPass> passes) {}
+    
+    /**
+     * Tracks changes to a function during a run, so that idempotent passes with nothing to do can be skipped
+     */
+    private static class FunctionState {
+        
+        // Incremented whenever a pass changes the function
+        private int version = 0;
+        
+        // Version of the function each idempotent pass last ran on
+        private Map<Class<?>, Integer> lastRun = new HashMap<>();
+    }
 }
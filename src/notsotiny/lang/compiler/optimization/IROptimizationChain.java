@@ -1,8 +1,11 @@
 package notsotiny.lang.compiler.optimization;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.util.IRAnalysis;
 
 public class IROptimizationChain implements IROptimizationPass {
     
@@ -38,4 +41,16 @@ public class IROptimizationChain implements IROptimizationPass {
         return module;
     }
     
+    @Override
+    public Set<IRAnalysis> preservedAnalyses() {
+        // Only what every pass preserves
+        Set<IRAnalysis> preserved = EnumSet.allOf(IRAnalysis.class);
+        
+        for(IROptimizationPass pass : this.chain) {
+            preserved.retainAll(pass.preservedAnalyses());
+        }
+
+        return preserved;
+    }
+    
 }
@@ -1,6 +1,10 @@
 package notsotiny.lang.compiler.optimization;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.util.IRAnalysis;
 
 /**
  * An optimization pass
@@ -19,4 +23,21 @@ public interface IROptimizationPass {
      */
     public IRModule optimize(IRModule module);
     
+    /**
+     * @return true if running this pass again on a function it hasn't changed since would do nothing, so
+     *         that it can be skipped
+     */
+    public default boolean isIdempotent() {
+        return false;
+    }
+    
+    /**
+     * Analyses which remain valid after this pass, even if it changes a function. Cached analyses not listed
+     * are discarded from functions the pass changes.
+     * @return
+     */
+    public default Set<IRAnalysis> preservedAnalyses() {
+        return EnumSet.noneOf(IRAnalysis.class);
+    }
+
 }
@@ -23,12 +23,33 @@ public interface IROptimizer {
      */
     public void setLevel(IROptimizationLevel level);
     
+    /**
+     * Sets the passes to run instead of those of the optimization level
+     * @param pipeline Pipeline description. null to use the optimization level's.
+     * @throws IllegalArgumentException if the description is invalid
+     */
+    public void setPipeline(String pipeline);
+    
+    /**
+     * Set whether to check that the IR is well formed before optimization and after each change
+     * @param verify
+     */
+    public void setVerification(boolean verify);
+    
     /**
      * Set whether to output optimized IR to a file
      * @param output
      */
     public void setFileOutput(boolean output, Path directory);
     
+    /**
+     * Set whether to output optimized IR to a file in the binary format, which can be read back to restart
+     * code generation
+     * @param output
+     * @param directory
+     */
+    public void setBinaryOutput(boolean output, Path directory);
+    
     /**
      * Set whether to output intermediate IR to a file between passes
      * @param output
@@ -42,4 +63,10 @@ public interface IROptimizer {
      * @param oir Show optimized IR CFG
      */
     public void setCFGVisualization(boolean iir, boolean oir); 
+    
+    /**
+     * Set how many functions may be optimized at once
+     * @param threads
+     */
+    public void setParallelism(int threads);
 }
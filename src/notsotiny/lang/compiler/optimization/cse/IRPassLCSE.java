@@ -2,23 +2,22 @@ package notsotiny.lang.compiler.optimization.cse;
 
 import java.util.ArrayList;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import notsotiny.lang.compiler.optimization.IRFunctionOptimizationPass;
 import notsotiny.lang.compiler.optimization.IROptimizationLevel;
-import notsotiny.lang.compiler.optimization.IROptimizationPass;
 import notsotiny.lang.ir.parts.IRBasicBlock;
 import notsotiny.lang.ir.parts.IRDefinition;
 import notsotiny.lang.ir.parts.IRFunction;
 import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRLinearInstruction;
 import notsotiny.lang.ir.parts.IRLinearOperation;
-import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lang.ir.util.IRAnalysis;
+import notsotiny.lang.ir.util.IRChange;
 import notsotiny.lang.ir.util.IRUtil;
 
 /**
@@ -26,7 +25,7 @@ import notsotiny.lang.ir.util.IRUtil;
  * This pass is still useful in the face of GVN-PRE as it can
  * eliminate common subexpressions involving LOADs and STOREs 
  */
-public class IRPassLCSE implements IROptimizationPass {
+public class IRPassLCSE implements IRFunctionOptimizationPass {
     
     private static Logger LOG = Logger.getLogger(IRPassLCSE.class.getName());
 
@@ -36,22 +35,22 @@ public class IRPassLCSE implements IROptimizationPass {
     }
 
     @Override
-    public IRModule optimize(IRModule module) {
-        LOG.finer("Performing local CSE on " + module.getName());
-        
-        // Track purity as needed in module
-        Map<IRIdentifier, Boolean> functionPurityMap = new HashMap<>();
-        
-        // In each function
-        for(IRFunction func : module.getInternalFunctions().values()) {
-            LOG.finest("Performing local CSE on " + func.getID());
+    public IRChange optimize(IRFunction func) {
+        LOG.finest("Performing local CSE on " + func.getID());
             
-            for(IRBasicBlock bb : func.getBasicBlockList()) {
-                doCSE(bb, functionPurityMap);
-            }
+        boolean changed = false;
+        
+        for(IRBasicBlock bb : func.getBasicBlockList()) {
+            changed |= doCSE(bb);
         }
         
-        return module;
+        return changed ? IRChange.CODE : IRChange.NONE;
+    }
+    
+    @Override
+    public Set<IRAnalysis> preservedAnalyses() {
+        // Replacement within blocks doesn't affect control flow
+        return EnumSet.of(IRAnalysis.REVERSE_POSTORDER, IRAnalysis.PREORDER, IRAnalysis.DOMINATORS, IRAnalysis.POSTDOMINATORS, IRAnalysis.LOOP_NESTING_FOREST);
     }
     
     private static final Set<IRLinearOperation> LOAD_EFFECTORS = EnumSet.of(IRLinearOperation.STORE, IRLinearOperation.CALLR, IRLinearOperation.CALLN);
@@ -59,11 +58,12 @@ public class IRPassLCSE implements IROptimizationPass {
     /**
      * Does CSE on a basic block
      * @param bb
-     * @param functionPurityMap
+     * @return true if anything was replaced
      */
-    private void doCSE(IRBasicBlock bb, Map<IRIdentifier, Boolean> functionPurityMap) {
+    private boolean doCSE(IRBasicBlock bb) {
         // Track definitions
         List<IRDefinition> visibleDefinitions = new ArrayList<>();
+        boolean changed = false;
         
         for(int i = 0; i < bb.getInstructions().size(); i++) {
             IRLinearInstruction li = bb.getInstructions().get(i);
@@ -74,7 +74,7 @@ public class IRPassLCSE implements IROptimizationPass {
             boolean liPure = false;
             
             if(li.getOp() == IRLinearOperation.CALLR && bb.getModule().getInternalFunctions().containsKey(li.getCallTarget())) {
-                liPure = IRUtil.isFunctionPure(bb.getModule().getInternalFunctions().get(li.getCallTarget()), true, functionPurityMap);
+                liPure = bb.getModule().getInternalFunctions().get(li.getCallTarget()).getAnalyses().isPure(true);
             }
             
             // Search for matching defs
@@ -164,11 +164,14 @@ public class IRPassLCSE implements IROptimizationPass {
             }
             
             if(replaced) {
+                changed = true;
                 i--;
             } else {
                 visibleDefinitions.add(currentDef);
             }
         }
+        
+        return changed;
     }
     
 }
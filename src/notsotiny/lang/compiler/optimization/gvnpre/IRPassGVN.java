@@ -1,7 +1,6 @@
 package notsotiny.lang.compiler.optimization.gvnpre;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -11,20 +10,19 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import notsotiny.lang.compiler.optimization.IRFunctionOptimizationPass;
 import notsotiny.lang.compiler.optimization.IROptimizationLevel;
-import notsotiny.lang.compiler.optimization.IROptimizationPass;
 import notsotiny.lang.ir.parts.IRBasicBlock;
 import notsotiny.lang.ir.parts.IRFunction;
 import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRLinearInstruction;
-import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.lang.ir.parts.IRType;
 import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lang.ir.util.IRChange;
+import notsotiny.lang.ir.util.IRDominatorTree;
 import notsotiny.lang.ir.util.IRUtil;
 import notsotiny.lib.data.Pair;
-import notsotiny.lib.data.TreeNode;
 import notsotiny.lib.data.Triple;
-import notsotiny.lib.util.MapUtil;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -47,57 +45,52 @@ import notsotiny.lib.data.Triple;
  * Global Value Numbering pass
  * Just GVN on its own
  */
-public class IRPassGVN implements IROptimizationPass {
+public class IRPassGVN implements IRFunctionOptimizationPass {
 
     private static Logger LOG = Logger.getLogger(IRPassGVN.class.getName());
     
+    // Whether anything has been replaced in the current function
+    private boolean changed;
+    
     @Override
     public IROptimizationLevel level() {
         return IROptimizationLevel.ONE;
     }
 
     @Override
-    public IRModule optimize(IRModule module) {
-        LOG.finer("Performing GVN on " + module.getName());
+    public IRChange optimize(IRFunction func) {
+        LOG.finest("Performing GVN on " + func.getID());
         
-        // In each function
-        for(IRFunction func : module.getInternalFunctions().values()) {
-            LOG.finest("Performing GVN on " + func.getID());
+        this.changed = false;
             
-            // Get metadata
-            List<IRIdentifier> reversePostorderList = IRUtil.getReversePostorderList(func);
-            Map<IRIdentifier, Integer> reversePostorderMap = MapUtil.listToMap(reversePostorderList);
-            Map<IRIdentifier, IRIdentifier> dominatorMap = IRUtil.getDominatorMap(func, reversePostorderList);
-            Map<IRIdentifier, TreeNode<IRIdentifier>> dominatorTreeMap = MapUtil.mapToForest(dominatorMap);
+        // Get metadata
+        IRDominatorTree dominatorTree = func.getAnalyses().getDominatorTree();
             
-            // Get function args in value table
-            PGVNValueTable valueTable = new PGVNValueTable();
+        // Get function args in value table
+        PGVNValueTable valueTable = new PGVNValueTable();
             
-            for(IRIdentifier argID : func.getArguments().getNameList()) {
-                int number = valueTable.addIRValue(argID).a;
+        for(IRIdentifier argID : func.getArguments().getNameList()) {
+            int number = valueTable.addIRValue(argID).a;
                 
-                if(LOG.isLoggable(Level.FINEST)) {
-                    LOG.finest("Got number " + number + " for function arg " + argID);
-                }
+            if(LOG.isLoggable(Level.FINEST)) {
+                LOG.finest("Got number " + number + " for function arg " + argID);
             }
-            
-            // Get GVNing
-            doGVN(dominatorTreeMap.get(func.getEntryBlock().getID()), func, valueTable, new HashMap<>(), reversePostorderMap);
         }
+            
+        // Get GVNing
+        doGVN(dominatorTree.getRoot(), dominatorTree, func, valueTable);
         
-        return module;
+        return this.changed ? IRChange.CODE : IRChange.NONE;
     }
     
     /**
      * Do GVN given a node in the dominator tree
-     * @param domTreeNode
+     * @param bbID
+     * @param dominatorTree
      * @param func
      * @param valueTable
-     * @param functionPurityMap
-     * @param reversePostorderIndexMap A map from BB ID to reverse postorder number
      */
-    private void doGVN(TreeNode<IRIdentifier> domTreeNode, IRFunction func, PGVNValueTable valueTable, Map<IRIdentifier, Boolean> functionPurityMap, Map<IRIdentifier, Integer> reversePostorderIndexMap) {
-        IRIdentifier bbID = domTreeNode.getElement();
+    private void doGVN(IRIdentifier bbID, IRDominatorTree dominatorTree, IRFunction func, PGVNValueTable valueTable) {
         IRBasicBlock bb = func.getBasicBlock(bbID);
         
         if(LOG.isLoggable(Level.FINEST)) {
@@ -125,6 +118,7 @@ public class IRPassGVN implements IROptimizationPass {
                 
                 // Replace arg with representative
                 IRUtil.replaceInFunction(func, argID, representative);
+                this.changed = true;
             } else {
                 if(LOG.isLoggable(Level.FINEST)) {
                     LOG.finest("Got number " + number + " for bb arg " + argID);
@@ -142,7 +136,7 @@ public class IRPassGVN implements IROptimizationPass {
                 case CALLR:
                     // Numberable if the target is pure
                     if(func.getModule().getInternalFunctions().containsKey(li.getCallTarget())) {
-                        if(!IRUtil.isFunctionPure(func.getModule().getInternalFunctions().get(li.getCallTarget()), false, functionPurityMap)) {
+                        if(!func.getModule().getInternalFunctions().get(li.getCallTarget()).getAnalyses().isPure(false)) {
                             // impure
                             int number = valueTable.addIRValue(li.getDestinationID()).a;
                             
@@ -178,6 +172,7 @@ public class IRPassGVN implements IROptimizationPass {
                         }
                         
                         IRUtil.replaceInFunction(func, li.getDestinationID(), representative);
+                        this.changed = true;
                         continue;
                     } else {
                         if(LOG.isLoggable(Level.FINEST)) {
@@ -204,11 +199,8 @@ public class IRPassGVN implements IROptimizationPass {
         
         // Recurse on dominator tree children, in reverse postorder
         // Doing so in this order ensures no numberable bb args are missed
-        List<TreeNode<IRIdentifier>> domChildren = new ArrayList<>(domTreeNode.getChildren());
-        Collections.sort(domChildren, (a, b) -> reversePostorderIndexMap.get(a.getElement()) - reversePostorderIndexMap.get(b.getElement()));
-        
-        for(TreeNode<IRIdentifier> domChild : domChildren) {
-            doGVN(domChild, func, valueTable, functionPurityMap, reversePostorderIndexMap);
+        for(IRIdentifier domChild : dominatorTree.getChildren(bbID)) {
+            doGVN(domChild, dominatorTree, func, valueTable);
         }
         
         // Remove any values made available in this BB
@@ -15,8 +15,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
+import notsotiny.lang.compiler.optimization.IRFunctionOptimizationPass;
 import notsotiny.lang.compiler.optimization.IROptimizationLevel;
-import notsotiny.lang.compiler.optimization.IROptimizationPass;
 import notsotiny.lang.compiler.optimization.transforms.IRTransformCriticalEdgeRemoval;
 import notsotiny.lang.ir.parts.IRArgumentMapping;
 import notsotiny.lang.ir.parts.IRBasicBlock;
@@ -29,14 +29,16 @@ import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRIdentifierClass;
 import notsotiny.lang.ir.parts.IRLinearInstruction;
 import notsotiny.lang.ir.parts.IRLinearOperation;
-import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.lang.ir.parts.IRType;
 import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lang.ir.util.IRAnalysis;
+import notsotiny.lang.ir.util.IRAnalysisManager;
+import notsotiny.lang.ir.util.IRChange;
+import notsotiny.lang.ir.util.IRDominatorTree;
 import notsotiny.lang.ir.util.IRPrinter;
 import notsotiny.lang.ir.util.IRUtil;
 import notsotiny.lib.data.ComputedMap;
 import notsotiny.lib.data.Pair;
-import notsotiny.lib.data.TreeNode;
 import notsotiny.lib.printing.LogPrinter;
 import notsotiny.lib.util.MapUtil;
 
@@ -45,7 +47,7 @@ import notsotiny.lib.util.MapUtil;
  * as described in VanDrunen & Hosking Value-Based Partial Redundancy Elimination
  * and based on the implementation by I-mikan-I in https://github.com/I-mikan-I/ssa-compiler/blob/main/src/ssa.rs
  */
-public class IRPassGVNPRE implements IROptimizationPass {
+public class IRPassGVNPRE implements IRFunctionOptimizationPass {
     
     private static Logger LOG = Logger.getLogger(IRPassGVNPRE.class.getName());
     
@@ -59,57 +61,69 @@ public class IRPassGVNPRE implements IROptimizationPass {
         IRLinearOperation.NOT, IRLinearOperation.NEG
     );
 
+    // Whether Insert or Eliminate have changed the current function
+    private boolean changed;
+
     @Override
     public IROptimizationLevel level() {
         return IROptimizationLevel.TWO;
     }
 
     @Override
-    public IRModule optimize(IRModule module) {
-        LOG.finer("Performing GVN-PRE on " + module.getName());
-        
-        // In each function
-        for(IRFunction func : module.getInternalFunctions().values()) {
-            LOG.finest("Performing GVN-PRE on " + func.getID());
+    public IRChange optimize(IRFunction func) {
+        LOG.finest("Performing GVN-PRE on " + func.getID());
             
-            // Do necessary transformations
-            IRUtil.inferNoneTypes(func);
+        this.changed = false;
             
-            /*
-             * TODO: Loop rotation
-             */
+        // Do necessary transformations
+        // Inferred types only make constants' types explicit, which no analysis depends on
+        boolean inferredTypes = IRUtil.inferNoneTypes(func, func.getAnalyses().getTypeMap());
             
-            IRTransformCriticalEdgeRemoval.removeCriticalEdges(func);
+        /*
+         * TODO: Loop rotation
+         */
             
-            // Get necessary information
-            IRIdentifier exitID = func.getFUID("exit", IRIdentifierClass.BLOCK);
-             
-            List<IRIdentifier> reversePostorderList = IRUtil.getReversePostorderList(func);
-            Map<IRIdentifier, IRIdentifier> dominatorMap = IRUtil.getDominatorMap(func, reversePostorderList);
-            Map<IRIdentifier, IRIdentifier> postdominatorMap = IRUtil.getPostdominatorMap(func, exitID);
+        List<IRIdentifier> splitBBs = IRTransformCriticalEdgeRemoval.removeCriticalEdges(func);
             
-            Map<IRIdentifier, TreeNode<IRIdentifier>> dominatorTreeMap = MapUtil.mapToForest(dominatorMap);
-            Map<IRIdentifier, TreeNode<IRIdentifier>> postdominatorTreeMap = MapUtil.mapToForest(postdominatorMap);
+        // Get necessary information
+        IRAnalysisManager analyses = func.getAnalyses();
+        if(!splitBBs.isEmpty()) {
+            analyses.invalidate(IRChange.CFG, EnumSet.of(IRAnalysis.TYPES)); // Neither transformation changes the types of locals
+        }
+             
+        List<IRIdentifier> reversePostorderList = analyses.getReversePostorderList();
+        IRDominatorTree dominatorTree = analyses.getDominatorTree();
+        IRDominatorTree postdominatorTree = analyses.getPostdominatorTree();
             
-            // Local type map + treat GLOBAL and BLOCk ids as pointers
-            Map<IRIdentifier, IRType> typeMap = new ComputedMap<>(IRUtil.getTypeMap(func), id -> id.getIDClass() == IRIdentifierClass.LOCAL ? IRType.NONE : IRType.I32); 
+        // Local type map + treat GLOBAL and BLOCk ids as pointers
+        Map<IRIdentifier, IRType> typeMap = new ComputedMap<>(new HashMap<>(analyses.getTypeMap()), id -> id.getIDClass() == IRIdentifierClass.LOCAL ? IRType.NONE : IRType.I32); 
             
-            // Do GVN-PRE
-            // Generate initial value table
-            Map<IRIdentifier, Boolean> functionPurityMap = new HashMap<>();
-            GVNValueTable valueTable = generateInitialTable(func, reversePostorderList, functionPurityMap, typeMap);
+        // Do GVN-PRE
+        // Generate initial value table
+        Map<IRIdentifier, Boolean> functionPurityMap = new HashMap<>();
+        GVNValueTable valueTable = generateInitialTable(func, reversePostorderList, functionPurityMap, typeMap);
             
-            // Produced by BuildSets
-            Map<IRIdentifier, Map<Integer, IRValue>> leaderSets = new HashMap<>();                  // Map bbID -> map value# -> leader (earliest IRValue containing value#)
-            Map<IRIdentifier, List<Pair<Integer, GVNElement>>> antileaderSets = new HashMap<>();    // Map bbID -> topological sorted set of value# with their antileader (anticipated local or expression for value#)
-            Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets = new HashMap<>();             // Map bbID -> map value# -> phi destination id
+        // Produced by BuildSets
+        Map<IRIdentifier, Map<Integer, IRValue>> leaderSets = new HashMap<>();                  // Map bbID -> map value# -> leader (earliest IRValue containing value#)
+        Map<IRIdentifier, List<Pair<Integer, GVNElement>>> antileaderSets = new HashMap<>();    // Map bbID -> topological sorted set of value# with their antileader (anticipated local or expression for value#)
+        Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets = new HashMap<>();             // Map bbID -> map value# -> phi destination id
             
-            buildSets(phiGenSets, leaderSets, antileaderSets, valueTable, func, functionPurityMap, dominatorTreeMap.get(func.getEntryBlock().getID()), postdominatorTreeMap.get(exitID), typeMap);
-            insert(leaderSets, antileaderSets, phiGenSets, valueTable, func, dominatorTreeMap.get(func.getEntryBlock().getID()), typeMap);
-            eliminate(leaderSets, valueTable, func, dominatorMap);
+        buildSets(phiGenSets, leaderSets, antileaderSets, valueTable, func, functionPurityMap, dominatorTree, postdominatorTree, typeMap);
+        insert(leaderSets, antileaderSets, phiGenSets, valueTable, func, dominatorTree, typeMap);
+        eliminate(leaderSets, valueTable, func, dominatorTree);
+        
+        if(this.changed) {
+            return splitBBs.isEmpty() ? IRChange.CODE : IRChange.CFG;
         }
         
-        return module;
+        // Nothing was found. Put critical edges back so that the function is unchanged, rather than leaving
+        // empty blocks for BasicBlockMerge to remove.
+        if(!splitBBs.isEmpty()) {
+            IRTransformCriticalEdgeRemoval.restoreCriticalEdges(func, splitBBs);
+            analyses.invalidate(IRChange.CFG, EnumSet.of(IRAnalysis.TYPES));
+        }
+        
+        return inferredTypes ? IRChange.CODE : IRChange.NONE;
     }
     
     /**
@@ -118,9 +132,9 @@ public class IRPassGVNPRE implements IROptimizationPass {
      * @param leaderSets
      * @param valueTable
      * @param func
-     * @param dominatorMap
+     * @param dominatorTree
      */
-    private void eliminate(Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, GVNValueTable valueTable, IRFunction func, Map<IRIdentifier, IRIdentifier> dominatorMap) {
+    private void eliminate(Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, GVNValueTable valueTable, IRFunction func, IRDominatorTree dominatorTree) {
         for(IRBasicBlock bb : func.getBasicBlockList()) {
             IRIdentifier bbID = bb.getID();
             
@@ -130,7 +144,7 @@ public class IRPassGVNPRE implements IROptimizationPass {
             
             
             Map<Integer, IRValue> leaders = leaderSets.getOrDefault(bbID, new HashMap<>());
-            Map<Integer, IRValue> leadersIn = new HashMap<>(leaderSets.getOrDefault(dominatorMap.get(bbID), new HashMap<>()));
+            Map<Integer, IRValue> leadersIn = new HashMap<>(leaderSets.getOrDefault(dominatorTree.getImmediateDominator(bbID), new HashMap<>()));
             
             // Handle args
             for(IRIdentifier argID : new ArrayList<>(bb.getArgumentList().getNameList())) {
@@ -144,6 +158,7 @@ public class IRPassGVNPRE implements IROptimizationPass {
                     }
                     
                     IRUtil.replaceInFunction(func, argID, leader);
+                    this.changed = true;
                 }
                 
                 
@@ -164,6 +179,7 @@ public class IRPassGVNPRE implements IROptimizationPass {
                         }
                         
                         IRUtil.replaceInFunction(func, dest, leader);
+                        this.changed = true;
                     }
                     
                     leadersIn.put(destVN, leader);
@@ -181,10 +197,10 @@ public class IRPassGVNPRE implements IROptimizationPass {
      * @param phiGenSets
      * @param valueTable
      * @param func
-     * @param dominatorTreeRoot
+     * @param dominatorTree
      * @param typeMap
      */
-    private void insert(Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> antileaderSets, Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, GVNValueTable valueTable, IRFunction func, TreeNode<IRIdentifier> dominatorTreeRoot, Map<IRIdentifier, IRType> typeMap) {
+    private void insert(Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> antileaderSets, Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, GVNValueTable valueTable, IRFunction func, IRDominatorTree dominatorTree, Map<IRIdentifier, IRType> typeMap) {
         // Because of the way our IR does constants, they won't show up in the leader set on their own
         for(Entry<IRIdentifier, List<Pair<Integer, GVNElement>>> anticEntry : antileaderSets.entrySet()) {
             IRIdentifier bbID = anticEntry.getKey();
@@ -203,13 +219,14 @@ public class IRPassGVNPRE implements IROptimizationPass {
         
         // According to paper, not more than 3 iterations
         Map<IRIdentifier, Set<Integer>> newExprs = new HashMap<>();
-        while(insertRecursive(dominatorTreeRoot, newExprs, leaderSets, antileaderSets, phiGenSets, valueTable, func, typeMap));
+        while(insertRecursive(dominatorTree.getRoot(), dominatorTree, newExprs, leaderSets, antileaderSets, phiGenSets, valueTable, func, typeMap));
     }
     
     /**
      * Recursive part of the Insert phase
      * Performs insert for the given node, then recurses on its dominated nodes
-     * @param domTreeNode
+     * @param bbID
+     * @param dominatorTree
      * @param newExprs
      * @param leaderSets
      * @param antileaderSets
@@ -219,11 +236,10 @@ public class IRPassGVNPRE implements IROptimizationPass {
      * @param typeMap
      * @return
      */
-    private boolean insertRecursive(TreeNode<IRIdentifier> domTreeNode, Map<IRIdentifier, Set<Integer>> newExprs, Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> antileaderSets, Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, GVNValueTable valueTable, IRFunction func, Map<IRIdentifier, IRType> typeMap) {
+    private boolean insertRecursive(IRIdentifier bbID, IRDominatorTree dominatorTree, Map<IRIdentifier, Set<Integer>> newExprs, Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> antileaderSets, Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, GVNValueTable valueTable, IRFunction func, Map<IRIdentifier, IRType> typeMap) {
         boolean changed = false;
         
         // Get bb info
-        IRIdentifier bbID = domTreeNode.getElement();
         IRBasicBlock bb = func.getBasicBlock(bbID);
         
         Set<Integer> bbNew = MapUtil.getOrCreateSet(newExprs, bbID);        
@@ -339,6 +355,7 @@ public class IRPassGVNPRE implements IROptimizationPass {
                 IRIdentifier argID = func.getFUID(inheritedName);
                 bb.addArgument(argID, elem.type());
                 indexIDMap.put(idx, argID);
+                this.changed = true;
                 typeMap.put(argID, elem.type());
                 
                 if(LOG.isLoggable(Level.FINEST)) { 
@@ -463,10 +480,8 @@ public class IRPassGVNPRE implements IROptimizationPass {
         }
         
         // recurse on dominated nodes
-        for(TreeNode<IRIdentifier> domChild : domTreeNode.getChildren()) {
+        for(IRIdentifier domID : dominatorTree.getChildren(bbID)) {
             // Update child leaders & new sets 
-            IRIdentifier domID = domChild.getElement();
-            
             Map<Integer, IRValue> childLeaders = leaderSets.get(domID);
             
             for(int newVN : bbNew) {
@@ -476,7 +491,7 @@ public class IRPassGVNPRE implements IROptimizationPass {
             MapUtil.getOrCreateSet(newExprs, domID).addAll(bbNew);
             
             // Then recurse on child
-            changed |= insertRecursive(domChild, newExprs, leaderSets, antileaderSets, phiGenSets, valueTable, func, typeMap);
+            changed |= insertRecursive(domID, dominatorTree, newExprs, leaderSets, antileaderSets, phiGenSets, valueTable, func, typeMap);
         }
         
         return changed;
@@ -490,11 +505,11 @@ public class IRPassGVNPRE implements IROptimizationPass {
      * @param valueTable
      * @param func
      * @param functionPurityMap
-     * @param dominatorTreeRoot
-     * @param postdominatorTreeRoot
+     * @param dominatorTree
+     * @param postdominatorTree
      * @param typeMap
      */
-    private void buildSets(Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> antileaderSets, GVNValueTable valueTable, IRFunction func, Map<IRIdentifier, Boolean> functionPurityMap, TreeNode<IRIdentifier> dominatorTreeRoot, TreeNode<IRIdentifier> postdominatorTreeRoot, Map<IRIdentifier, IRType> typeMap) {
+    private void buildSets(Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> antileaderSets, GVNValueTable valueTable, IRFunction func, Map<IRIdentifier, Boolean> functionPurityMap, IRDominatorTree dominatorTree, IRDominatorTree postdominatorTree, Map<IRIdentifier, IRType> typeMap) {
         if(LOG.isLoggable(Level.FINEST)) {
             LOG.finest("Running BuildSets for " + func.getID());
         }
@@ -504,7 +519,7 @@ public class IRPassGVNPRE implements IROptimizationPass {
         Map<IRIdentifier, Set<IRIdentifier>> tmpGenSets = new HashMap<>();
         
         // Initialize leaders for entry with function args
-        IRIdentifier domRootID = dominatorTreeRoot.getElement();
+        IRIdentifier domRootID = dominatorTree.getRoot();
         Map<Integer, IRValue> initialLeaders = new HashMap<>();
         
         for(IRIdentifier argID : func.getArguments().getNameList()) {
@@ -514,7 +529,7 @@ public class IRPassGVNPRE implements IROptimizationPass {
         leaderSets.put(domRootID, initialLeaders);
         
         // Do phase 1
-        buildSetsPhase1(dominatorTreeRoot, expGenSets, phiGenSets, tmpGenSets, leaderSets, valueTable, func, functionPurityMap, typeMap);
+        buildSetsPhase1(domRootID, dominatorTree, expGenSets, phiGenSets, tmpGenSets, leaderSets, valueTable, func, functionPurityMap, typeMap);
         
         // Phase 2
         Map<IRIdentifier, List<Pair<Integer, GVNElement>>> anticOutSets = new HashMap<>();
@@ -532,8 +547,8 @@ public class IRPassGVNPRE implements IROptimizationPass {
             iters++;
             
             // The root of the postdominator tree is an identifier without a real block
-            for(TreeNode<IRIdentifier> postdomChild : postdominatorTreeRoot.getChildren()) {
-                changed |= buildSetsPhase2(postdomChild, antileaderSets, anticOutSets, expGenSets, phiGenSets, tmpGenSets, valueTable, func);
+            for(IRIdentifier postdomChild : postdominatorTree.getChildren(postdominatorTree.getRoot())) {
+                changed |= buildSetsPhase2(postdomChild, postdominatorTree, antileaderSets, anticOutSets, expGenSets, phiGenSets, tmpGenSets, valueTable, func);
             }
         }
         
@@ -556,7 +571,8 @@ public class IRPassGVNPRE implements IROptimizationPass {
     /**
      * Performs phase 2 of BuildSets
      * Phase 2 performs top-down traversals of the postdominator tree with the goal of computing the final sets and iterates until convergence
-     * @param postdomTreeNode
+     * @param bbID
+     * @param postdominatorTree
      * @param anticInSets
      * @param anticOutSets
      * @param expGenSets
@@ -566,9 +582,8 @@ public class IRPassGVNPRE implements IROptimizationPass {
      * @param func
      * @return true if changed
      */
-    private boolean buildSetsPhase2(TreeNode<IRIdentifier> postdomTreeNode, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> anticInSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> anticOutSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> expGenSets, Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, Map<IRIdentifier, Set<IRIdentifier>> tmpGenSets, GVNValueTable valueTable, IRFunction func) {
+    private boolean buildSetsPhase2(IRIdentifier bbID, IRDominatorTree postdominatorTree, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> anticInSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> anticOutSets, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> expGenSets, Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, Map<IRIdentifier, Set<IRIdentifier>> tmpGenSets, GVNValueTable valueTable, IRFunction func) {
         boolean changed = false;
-        IRIdentifier bbID = postdomTreeNode.getElement();
         IRBasicBlock bb = func.getBasicBlock(bbID);
         
         if(LOG.isLoggable(Level.FINEST)) {
@@ -711,8 +726,8 @@ public class IRPassGVNPRE implements IROptimizationPass {
         }
         
         // Run on predominated BBs
-        for(TreeNode<IRIdentifier> postdomChild : postdomTreeNode.getChildren()) {
-            changed |= buildSetsPhase2(postdomChild, anticInSets, anticOutSets, expGenSets, phiGenSets, tmpGenSets, valueTable, func);
+        for(IRIdentifier postdomChild : postdominatorTree.getChildren(bbID)) {
+            changed |= buildSetsPhase2(postdomChild, postdominatorTree, anticInSets, anticOutSets, expGenSets, phiGenSets, tmpGenSets, valueTable, func);
         }
         
         return changed;
@@ -789,7 +804,8 @@ public class IRPassGVNPRE implements IROptimizationPass {
     /**
      * Perform phase 1 of BuildSets.
      * Phase 1 is a top-down traversal of the dominator tree where the various sets are first built for each block
-     * @param domTreeNode
+     * @param bbID
+     * @param dominatorTree
      * @param expGenSets
      * @param phiGenSets phi_translate uses the value number so both it and the id matter for PHI_GEN
      * @param tmpGenSets Only the presence of an id matters for TMP_GEN
@@ -799,8 +815,7 @@ public class IRPassGVNPRE implements IROptimizationPass {
      * @param functionPurityMap
      * @param typeMap
      */
-    private void buildSetsPhase1(TreeNode<IRIdentifier> domTreeNode, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> expGenSets, Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, Map<IRIdentifier, Set<IRIdentifier>> tmpGenSets, Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, GVNValueTable valueTable, IRFunction func, Map<IRIdentifier, Boolean> functionPurityMap, Map<IRIdentifier, IRType> typeMap) {
-        IRIdentifier bbID = domTreeNode.getElement();
+    private void buildSetsPhase1(IRIdentifier bbID, IRDominatorTree dominatorTree, Map<IRIdentifier, List<Pair<Integer, GVNElement>>> expGenSets, Map<IRIdentifier, Map<Integer, IRIdentifier>> phiGenSets, Map<IRIdentifier, Set<IRIdentifier>> tmpGenSets, Map<IRIdentifier, Map<Integer, IRValue>> leaderSets, GVNValueTable valueTable, IRFunction func, Map<IRIdentifier, Boolean> functionPurityMap, Map<IRIdentifier, IRType> typeMap) {
         IRBasicBlock bb = func.getBasicBlock(bbID);
         
         if(LOG.isLoggable(Level.FINEST)) {
@@ -843,9 +858,9 @@ public class IRPassGVNPRE implements IROptimizationPass {
         }
         
         // Run on dominated BBs
-        for(TreeNode<IRIdentifier> domChild : domTreeNode.getChildren()) {
-            leaderSets.put(domChild.getElement(), new HashMap<>(leaders));
-            buildSetsPhase1(domChild, expGenSets, phiGenSets, tmpGenSets, leaderSets, valueTable, func, functionPurityMap, typeMap);
+        for(IRIdentifier domChild : dominatorTree.getChildren(bbID)) {
+            leaderSets.put(domChild, new HashMap<>(leaders));
+            buildSetsPhase1(domChild, dominatorTree, expGenSets, phiGenSets, tmpGenSets, leaderSets, valueTable, func, functionPurityMap, typeMap);
         }
     }
     
@@ -908,8 +923,9 @@ public class IRPassGVNPRE implements IROptimizationPass {
                             num = valueTable.addInstruction(li, dummyExpGen, dummyAdded, typeMap);
                         }
                     } else if(func.getModule().getInternalFunctions().containsKey(target) &&
-                              IRUtil.isFunctionPure(func.getModule().getInternalFunctions().get(target), false, functionPurityMap)) {
+                              func.getModule().getInternalFunctions().get(target).getAnalyses().isPure(false)) {
                         // newly pure
+                        functionPurityMap.put((IRIdentifier) target, true);
                         num = valueTable.addInstruction(li, dummyExpGen, dummyAdded, typeMap);
                     }
                     
@@ -3,8 +3,9 @@ package notsotiny.lang.compiler.optimization.other;
 import java.util.List;
 import java.util.logging.Logger;
 
+import notsotiny.lang.compiler.optimization.IRFunctionOptimizationPass;
 import notsotiny.lang.compiler.optimization.IROptimizationLevel;
-import notsotiny.lang.compiler.optimization.IROptimizationPass;
+import notsotiny.lang.ir.parts.IRArgumentList;
 import notsotiny.lang.ir.parts.IRArgumentMapping;
 import notsotiny.lang.ir.parts.IRBasicBlock;
 import notsotiny.lang.ir.parts.IRBranchInstruction;
@@ -12,14 +13,14 @@ import notsotiny.lang.ir.parts.IRBranchOperation;
 import notsotiny.lang.ir.parts.IRFunction;
 import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRLinearInstruction;
-import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lang.ir.util.IRChange;
 import notsotiny.lang.ir.util.IRUtil;
 
 /**
  * Eliminates empty basic blocks
  */
-public class IRPassBasicBlockMerge implements IROptimizationPass {
+public class IRPassBasicBlockMerge implements IRFunctionOptimizationPass {
     
     private static Logger LOG = Logger.getLogger(IRPassBasicBlockMerge.class.getName());
 
@@ -29,39 +30,43 @@ public class IRPassBasicBlockMerge implements IROptimizationPass {
     }
 
     @Override
-    public IRModule optimize(IRModule module) {
-        LOG.finer("Minimizing basic blocks in " + module.getName());
-        
-        // In each function
-        for(IRFunction func : module.getInternalFunctions().values()) {
-            boolean changed = false;
-            int passes = 0;
+    public IRChange optimize(IRFunction func) {
+        boolean changed = false,
+                anyChanged = false;
+        int passes = 0;
             
-            do {
-                LOG.finest("Minimizing " + func.getID() + ", pass " + passes++);
+        do {
+            LOG.finest("Minimizing " + func.getID() + ", pass " + passes++);
                 
-                changed = false;
+            changed = false;
                 
-                // Check each BB
-                List<IRBasicBlock> bbs = func.getBasicBlockList();
+            // Check each BB
+            List<IRBasicBlock> bbs = func.getBasicBlockList();
                 
-                for(int i = 0; i < bbs.size(); i++) {
-                    IRBasicBlock bb = bbs.get(i);
+            for(int i = 0; i < bbs.size(); i++) {
+                IRBasicBlock bb = bbs.get(i);
                     
-                    if(canRemoveBB(bb)) {
-                        removeBB(bb, func);
-                        changed = true;
-                        i--;
-                    } else if(canMergeBB(bb, func)) {
-                        mergeBB(bb, func);
-                        changed = true;
-                        i--;
-                    }
+                if(canRemoveBB(bb)) {
+                    removeBB(bb, func);
+                    changed = true;
+                    i--;
+                } else if(canMergeBB(bb, func)) {
+                    mergeBB(bb, func);
+                    changed = true;
+                    i--;
                 }
-            } while(changed);
-        }
+            }
+            
+            anyChanged |= changed;
+        } while(changed);
         
-        return module;
+        return anyChanged ? IRChange.CFG : IRChange.NONE;
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        // Merges until nothing can be merged
+        return true;
     }
     
     @Override
@@ -154,7 +159,11 @@ public class IRPassBasicBlockMerge implements IROptimizationPass {
         IRArgumentMapping mapping = bb.getExitInstruction().getTrueArgumentMapping();
         
         // Move our arguments to target args
-        targetBB.getArgumentList().addAll(bb.getArgumentList());
+        IRArgumentList args = bb.getArgumentList();
+        
+        for(int i = 0; i < args.getArgumentCount(); i++) {
+            targetBB.addArgument(args.getName(i), args.getType(i));
+        }
         
         for(IRIdentifier predID : bb.getPredecessorBlocks()) {
             IRBasicBlock predBB = func.getBasicBlock(predID);
@@ -200,14 +209,16 @@ public class IRPassBasicBlockMerge implements IROptimizationPass {
         }
         
         // Transfer instructions
-        for(IRLinearInstruction li : bb.getInstructions()) {
+        IRBranchInstruction bbExit = bb.getExitInstruction();
+        bb.setExitInstruction(null);
+        
+        for(IRLinearInstruction li : bb.removeAllInstructions()) {
             predBB.addInstruction(li);
         }
         
-        predBB.setExitInstruction(bb.getExitInstruction());
+        predBB.setExitInstruction(bbExit);
         
         // Move predecessor information
-        IRBranchInstruction bbExit = bb.getExitInstruction();
         IRIdentifier trueID = bbExit.getTrueTargetBlock();
         IRIdentifier falseID = bbExit.getFalseTargetBlock();
         
@@ -1,46 +1,48 @@
 package notsotiny.lang.compiler.optimization.other;
 
+import java.util.EnumSet;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import notsotiny.lang.compiler.CompilationException;
+import notsotiny.lang.compiler.optimization.IRFunctionOptimizationPass;
 import notsotiny.lang.compiler.optimization.IROptimizationLevel;
-import notsotiny.lang.compiler.optimization.IROptimizationPass;
 import notsotiny.lang.ir.parts.IRBasicBlock;
 import notsotiny.lang.ir.parts.IRFunction;
 import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRIdentifierClass;
 import notsotiny.lang.ir.parts.IRLinearInstruction;
-import notsotiny.lang.ir.parts.IRModule;
-import notsotiny.lang.ir.util.IRUtil;
-import notsotiny.lib.data.TreeNode;
-import notsotiny.lib.util.MapUtil;
+import notsotiny.lang.ir.util.IRAnalysis;
+import notsotiny.lang.ir.util.IRChange;
 
 /**
- * Outputs debugging information or w/e
+ * Verifies that a function is in SSA form
  */
-public class IRPassDebug implements IROptimizationPass {
+public class IRPassDebug implements IRFunctionOptimizationPass {
     
     private static Logger LOG = Logger.getLogger(IRPassDebug.class.getName());
 
     @Override
     public IROptimizationLevel level() {
-        // TODO Auto-generated method stub
-        return null;
+        // Not part of any level's pipeline. Runs when verification is requested or the pass is named.
+        return IROptimizationLevel.ZERO;
     }
 
     @Override
-    public IRModule optimize(IRModule module) {
-        //LOG.finer("Doing debug for " + module.getName());
-        
-        for(IRFunction func : module.getInternalFunctions().values()) {
-            checkSSA(func);
-        }
-        
-        return module;
+    public IRChange optimize(IRFunction func) {
+        checkSSA(func);
+        return IRChange.NONE;
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+    
+    @Override
+    public Set<IRAnalysis> preservedAnalyses() {
+        // Only inspects
+        return EnumSet.allOf(IRAnalysis.class);
     }
     
     /**
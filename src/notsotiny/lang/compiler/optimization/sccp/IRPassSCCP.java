@@ -13,8 +13,8 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import notsotiny.lang.compiler.optimization.IRFunctionOptimizationPass;
 import notsotiny.lang.compiler.optimization.IROptimizationLevel;
-import notsotiny.lang.compiler.optimization.IROptimizationPass;
 import notsotiny.lang.ir.parts.IRBasicBlock;
 import notsotiny.lang.ir.parts.IRBranchInstruction;
 import notsotiny.lang.ir.parts.IRBranchOperation;
@@ -28,9 +28,9 @@ import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRIdentifierClass;
 import notsotiny.lang.ir.parts.IRLinearInstruction;
 import notsotiny.lang.ir.parts.IRLinearOperation;
-import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.lang.ir.parts.IRType;
 import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lang.ir.util.IRChange;
 import notsotiny.lang.ir.util.IRUtil;
 import notsotiny.lib.data.Triple;
 
@@ -38,7 +38,7 @@ import notsotiny.lib.data.Triple;
  * Performs Sparse Conditional Constant Propagation
  * https://www.cs.wustl.edu/~cytron/531Pages/f11/Resources/Papers/cprop.pdf
  */
-public class IRPassSCCP implements IROptimizationPass {
+public class IRPassSCCP implements IRFunctionOptimizationPass {
 
     private static Logger LOG = Logger.getLogger(IRPassSCCP.class.getName());
     
@@ -48,23 +48,22 @@ public class IRPassSCCP implements IROptimizationPass {
     }
 
     @Override
-    public IRModule optimize(IRModule module) {
-        LOG.finer("Performing SCCP on " + module.getName());
-        
-        // In each function
-        for(IRFunction func : module.getInternalFunctions().values()) {
-            // Throw it in the SCCP
-            runSCCP(func);
-        }
-        
-        return module;
+    public IRChange optimize(IRFunction func) {
+        // Throw it in the SCCP
+        return runSCCP(func);
+    }
+    
+    @Override
+    public boolean isIdempotent() {
+        return true;
     }
     
     /**
      * Runs SCCP on a function
      * @param func
+     * @return What was changed
      */
-    private void runSCCP(IRFunction func) {
+    private IRChange runSCCP(IRFunction func) {
         LOG.finest("Running SCCP on " + func.getID());
         /**
          * how SCCP works
@@ -103,9 +102,8 @@ public class IRPassSCCP implements IROptimizationPass {
          */
         
         // 'SSA graph'
-        List<IRDefinition> defList = IRUtil.getDefinitionList(func);
-        Map<IRIdentifier, IRDefinition> defMap = IRUtil.getDefinitionMap(defList);
-        Map<IRIdentifier, List<IRDefinition>> useMap = IRUtil.getUseMap(func, defList);
+        Map<IRIdentifier, IRDefinition> defMap = func.getAnalyses().getDefinitionMap();
+        Map<IRIdentifier, List<IRDefinition>> useMap = func.getAnalyses().getUseMap();
         
         // Lattice
         Map<IRIdentifier, SCCPLatticeElement> lattice = new HashMap<>();
@@ -200,6 +198,8 @@ public class IRPassSCCP implements IROptimizationPass {
         }
         
         // Use the results of SCCP to optimize
+        IRChange change = IRChange.NONE;
+        
         // Substitute constants
         for(Entry<IRIdentifier, SCCPLatticeElement> latticeEntry : lattice.entrySet()) {
             if(latticeEntry.getValue().getType() != Type.BOTTOM && latticeEntry.getKey().getIDClass() == IRIdentifierClass.LOCAL) {
@@ -208,6 +208,7 @@ public class IRPassSCCP implements IROptimizationPass {
                 }
                 
                 IRUtil.replaceInFunction(func, latticeEntry.getKey(), latticeEntry.getValue().getValue());
+                change = IRChange.CODE;
             }
         }
         
@@ -238,6 +239,7 @@ public class IRPassSCCP implements IROptimizationPass {
                     
                     IRBranchInstruction jmpInst = new IRBranchInstruction(IRBranchOperation.JMP, trueID, bbExit.getTrueArgumentMapping(), bb, bbExit.getSourceLineNumber());
                     bb.setExitInstruction(jmpInst);
+                    change = IRChange.CFG;
                 } else if(falseEdgeExecutable && !trueEdgeExecutable) {
                     if(LOG.isLoggable(Level.FINEST)) {
                         LOG.finest("Eliminating flow edge " + trueTriple);
@@ -250,6 +252,7 @@ public class IRPassSCCP implements IROptimizationPass {
                     
                     IRBranchInstruction jmpInst = new IRBranchInstruction(IRBranchOperation.JMP, falseID, bbExit.getFalseArgumentMapping(), bb, bbExit.getSourceLineNumber());
                     bb.setExitInstruction(jmpInst);
+                    change = IRChange.CFG;
                 }
             }
         }
@@ -298,11 +301,13 @@ public class IRPassSCCP implements IROptimizationPass {
                 
                 // Remove
                 func.removeBasicBlock(bb.getID());
+                change = IRChange.CFG;
                 i--;
             }
         }
         
         // TODO
+        return change;
     }
     
     /**
@@ -28,14 +28,14 @@ public class IRTransformCriticalEdgeRemoval {
     /**
      * Removes critical edges from the given function
      * @param func
-     * @return true if any modifications were made to the function
+     * @return IDs of the inserted BBs. Empty if no modifications were made to the function
      */
-    public static boolean removeCriticalEdges(IRFunction func) {
+    public static List<IRIdentifier> removeCriticalEdges(IRFunction func) {
         if(LOG.isLoggable(Level.FINEST)) {
             LOG.finest("Removing critical edges from " + func.getID());
         }
         
-        boolean changed = false;
+        List<IRIdentifier> newBBs = new ArrayList<>();
         
         // Copy of the block list so we can modify it and skip checking new blocks 
         List<IRBasicBlock> originalBBs = new ArrayList<>(func.getBasicBlockList());
@@ -79,7 +79,7 @@ public class IRTransformCriticalEdgeRemoval {
                     trueBlock.removePredecessor(fromID);
                     trueBlock.addPredecessor(newID);
                     
-                    changed = true;
+                    newBBs.add(newID);
                 }
                 
                 // Check false successor
@@ -109,12 +109,47 @@ public class IRTransformCriticalEdgeRemoval {
                     falseBlock.removePredecessor(fromID);
                     falseBlock.addPredecessor(newID);
                     
-                    changed = true;
+                    newBBs.add(newID);
                 }
             }
         }
         
-        return changed;
+        return newBBs;
+    }
+    
+    /**
+     * Undoes removeCriticalEdges, removing BBs it inserted. The BBs must not have been modified.
+     * @param func
+     * @param newBBs IDs of the inserted BBs
+     */
+    public static void restoreCriticalEdges(IRFunction func, List<IRIdentifier> newBBs) {
+        for(IRIdentifier newID : newBBs) {
+            IRBasicBlock newBB = func.getBasicBlock(newID);
+            IRBranchInstruction newExit = newBB.getExitInstruction();
+            IRIdentifier fromID = newBB.getPredecessorBlocks().get(0),
+                         toID = newExit.getTrueTargetBlock();
+            IRBranchInstruction branch = func.getBasicBlock(fromID).getExitInstruction();
+            
+            if(LOG.isLoggable(Level.FINEST)) {
+                LOG.finest("Restoring critical edge " + fromID + " -> " + toID);
+            }
+            
+            // Redirect original branch back to the successor with the original argument mapping
+            if(newID.equals(branch.getTrueTargetBlock())) {
+                branch.setTrueTargetBlock(toID);
+                branch.setTrueArgumentMapping(newExit.getTrueArgumentMapping());
+            } else {
+                branch.setFalseTargetBlock(toID);
+                branch.setFalseArgumentMapping(newExit.getTrueArgumentMapping());
+            }
+            
+            // Update predecessor information
+            IRBasicBlock toBB = func.getBasicBlock(toID);
+            toBB.removePredecessor(newID);
+            toBB.addPredecessor(fromID);
+            
+            func.removeBasicBlock(newID);
+        }
     }
     
 }
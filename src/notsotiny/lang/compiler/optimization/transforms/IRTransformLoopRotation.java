@@ -2,9 +2,9 @@ package notsotiny.lang.compiler.optimization.transforms;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -17,8 +17,8 @@ import notsotiny.lang.ir.parts.IRFunction;
 import notsotiny.lang.ir.parts.IRIdentifier;
 import notsotiny.lang.ir.parts.IRIdentifierClass;
 import notsotiny.lang.ir.parts.IRType;
-import notsotiny.lang.ir.util.IRUtil;
-import notsotiny.lib.data.Pair;
+import notsotiny.lang.ir.util.IRAnalysis;
+import notsotiny.lang.ir.util.IRChange;
 import notsotiny.lib.data.TreeNode;
 import notsotiny.lib.data.UnionFindForest;
 
@@ -43,11 +43,7 @@ public class IRTransformLoopRotation {
      */
     public static boolean rotateLoops(IRFunction func) {
         // Gather information
-        Pair<List<IRIdentifier>, Map<Integer, Integer>> preorderInfo = IRUtil.getPreorderInfo(func);
-        List<IRIdentifier> preorderList = preorderInfo.a;
-        Map<Integer, Integer> preorderAncestryMap = preorderInfo.b;
-        
-        UnionFindForest<IRIdentifier> loopNestingForest = IRUtil.getLoopNestingForest(func, preorderList, preorderAncestryMap);
+        UnionFindForest<IRIdentifier> loopNestingForest = func.getAnalyses().getLoopNestingForest();
         
         boolean changed = false;
         
@@ -56,6 +52,11 @@ public class IRTransformLoopRotation {
             changed |= rotateLoop(loopHeaderNode, func, loopNestingForest.getElementNodeMap());
         }
         
+        // Drop analyses of the old CFG
+        if(changed) {
+            func.getAnalyses().invalidate(IRChange.CFG, EnumSet.noneOf(IRAnalysis.class));
+        }
+        
         return changed;
     }
     
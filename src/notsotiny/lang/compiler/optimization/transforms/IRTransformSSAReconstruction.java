@@ -8,7 +8,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import notsotiny.lang.ir.parts.IRArgumentList;
 import notsotiny.lang.ir.parts.IRBasicBlock;
 import notsotiny.lang.ir.parts.IRBranchInstruction;
 import notsotiny.lang.ir.parts.IRDefinition;
@@ -80,8 +79,8 @@ public class IRTransformSSAReconstruction {
             if(def.getType() == IRDefinitionType.BBARG) {
                 // Defined by BB arg
                 // Replace in arg list
-                IRArgumentList argList = def.getBB().getArgumentList(); 
-                argList.replaceArgument(def.getID(), newID, argList.getType(def.getID()));
+                IRBasicBlock defBB = def.getBB();
+                defBB.replaceArgument(def.getID(), newID, defBB.getArgumentList().getType(def.getID()));
                 
                 // Replace in arg mappings
                 IRIdentifier defBBID = def.getBB().getID();
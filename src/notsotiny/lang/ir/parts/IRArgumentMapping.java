@@ -1,6 +1,7 @@
 package notsotiny.lang.ir.parts;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,12 +18,20 @@ public class IRArgumentMapping {
     
     private Map<IRIdentifier, IRValue> args;
     
+    // Read-only view of args
+    private Map<IRIdentifier, IRValue> argsView;
+    
+    // Instructions with this mapping which are attached to def-use chains
+    private IRUserSet users;
+    
     /**
      * @param args
      */
     public IRArgumentMapping(Map<IRIdentifier, IRValue> args, List<IRIdentifier> ordering) {
         this.ordering = ordering;
         this.args = args;
+        this.argsView = Collections.unmodifiableMap(args);
+        this.users = new IRUserSet();
     }
     
     public IRArgumentMapping(List<IRIdentifier> ordering) {
@@ -54,7 +63,8 @@ public class IRArgumentMapping {
             this.ordering.add(id);
         }
         
-        this.args.put(id, arg);
+        IRValue prev = this.args.put(id, arg);
+        replaceUse(prev, arg);
     }
     
     /**
@@ -63,7 +73,22 @@ public class IRArgumentMapping {
      */
     public void removeArgument(IRIdentifier id) {
         this.ordering.remove(id);
-        this.args.remove(id);
+        IRValue prev = this.args.remove(id);
+        replaceUse(prev, null);
+    }
+    
+    /**
+     * Replace every mapping to from with a mapping to to
+     * @param from
+     * @param to
+     */
+    public void replaceValue(IRValue from, IRValue to) {
+        for(Entry<IRIdentifier, IRValue> entry : this.args.entrySet()) {
+            if(from.equals(entry.getValue())) {
+                entry.setValue(to);
+                replaceUse(from, to);
+            }
+        }
     }
     
     /**
@@ -81,6 +106,38 @@ public class IRArgumentMapping {
         this.args.put(newID, this.args.remove(prevID));
     }
     
+    /**
+     * Record an instruction using this mapping
+     * @param user
+     */
+    void addUser(IRInstruction user) {
+        this.users.add(user);
+    }
+    
+    /**
+     * Remove an instruction using this mapping. Instructions are compared by identity.
+     * @param user
+     */
+    void removeUser(IRInstruction user) {
+        this.users.remove(user);
+    }
+    
+    /**
+     * Updates the def-use chains of each user after a mapped value changes
+     * @param oldValue
+     * @param newValue
+     */
+    private void replaceUse(IRValue oldValue, IRValue newValue) {
+        for(IRInstruction user : this.users.getUsers()) {
+            IRUseChains chains = IRUseChains.of(user);
+            
+            // A user may have this mapping more than once
+            for(int i = 0; i < this.users.getUseCount(user); i++) {
+                chains.replaceUse(oldValue, newValue, user);
+            }
+        }
+    }
+    
     /**
      * Add all mappings in map to this
      * @param map
@@ -92,7 +149,7 @@ public class IRArgumentMapping {
     }
     
     public List<IRIdentifier> getOrdering() { return this.ordering; }
-    public Map<IRIdentifier, IRValue> getMap() { return this.args; }
+    public Map<IRIdentifier, IRValue> getMap() { return this.argsView; }
     
     @Override
     public boolean equals(Object o) {
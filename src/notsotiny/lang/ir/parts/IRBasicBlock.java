@@ -2,9 +2,8 @@ package notsotiny.lang.ir.parts;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A basic block
@@ -22,6 +21,9 @@ public class IRBasicBlock implements IRSourceInfo {
     // Contents
     private List<IRLinearInstruction> instructions;
     
+    // Read-only view of the contents
+    private List<IRLinearInstruction> instructionsView;
+    
     // Exit instruction
     private IRBranchInstruction exitInstruction;
     
@@ -39,6 +41,9 @@ public class IRBasicBlock implements IRSourceInfo {
     // Line number of the function's header
     private int sourceLineNumber;
     
+    // Def-use chains of the function, if they've been created
+    private IRUseChains useChains;
+    
     /**
      * Full constructor
      * @param id
@@ -52,6 +57,7 @@ public class IRBasicBlock implements IRSourceInfo {
         this.id = id;
         this.arguments = args;
         this.instructions = instructions;
+        this.instructionsView = Collections.unmodifiableList(instructions);
         this.exitInstruction = exitInstruction;
         this.predecessorBlocks = predecessors;
         this.function = sourceFunction;
@@ -75,6 +81,71 @@ public class IRBasicBlock implements IRSourceInfo {
      */
     public void addInstruction(IRLinearInstruction inst) { 
         this.instructions.add(inst);
+        
+        if(this.useChains != null) {
+            this.useChains.attach(inst, this);
+        }
+    }
+    
+    /**
+     * Insert a linear instruction at the given index
+     * @param index
+     * @param inst
+     */
+    public void insertInstruction(int index, IRLinearInstruction inst) {
+        this.instructions.add(index, inst);
+        
+        if(this.useChains != null) {
+            this.useChains.attach(inst, this);
+        }
+    }
+    
+    /**
+     * Remove the linear instruction at the given index
+     * @param index
+     * @return
+     */
+    public IRLinearInstruction removeInstruction(int index) {
+        IRLinearInstruction inst = this.instructions.remove(index);
+        
+        if(this.useChains != null) {
+            this.useChains.detach(inst);
+        }
+        
+        return inst;
+    }
+    
+    /**
+     * Remove a linear instruction. Instructions are compared by identity.
+     * @param inst
+     * @return true if the instruction was in the block
+     */
+    public boolean removeInstruction(IRLinearInstruction inst) {
+        for(int i = 0; i < this.instructions.size(); i++) {
+            if(this.instructions.get(i) == inst) {
+                removeInstruction(i);
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Remove all linear instructions
+     * @return The removed instructions, in order
+     */
+    public List<IRLinearInstruction> removeAllInstructions() {
+        List<IRLinearInstruction> removed = new ArrayList<>(this.instructions);
+        
+        if(this.useChains != null) {
+            for(IRLinearInstruction inst : removed) {
+                this.useChains.detach(inst);
+            }
+        }
+        
+        this.instructions.clear();
+        return removed;
     }
     
     /**
@@ -82,9 +153,27 @@ public class IRBasicBlock implements IRSourceInfo {
      * @param inst
      */
     public void setExitInstruction(IRBranchInstruction inst) {
+        if(this.useChains != null) {
+            if(this.exitInstruction != null) {
+                this.useChains.detach(this.exitInstruction);
+            }
+            
+            if(inst != null) {
+                this.useChains.attach(inst, this);
+            }
+        }
+        
         this.exitInstruction = inst;
     }
     
+    /**
+     * Set the def-use chains the contents of this block are attached to
+     * @param chains
+     */
+    void setUseChains(IRUseChains chains) {
+        this.useChains = chains;
+    }
+    
     /**
      * Add a basic block as a predecessor
      * @param bb
@@ -108,6 +197,47 @@ public class IRBasicBlock implements IRSourceInfo {
      */
     public void addArgument(IRIdentifier name, IRType type) {
         this.arguments.addArgument(name, type);
+        
+        if(this.useChains != null) {
+            this.useChains.attachArgument(name, this);
+        }
+    }
+    
+    /**
+     * Remove an argument from the block
+     * @param name
+     * @return True if found & removed
+     */
+    public boolean removeArgument(IRIdentifier name) {
+        if(!this.arguments.removeArgument(name)) {
+            return false;
+        }
+        
+        if(this.useChains != null) {
+            this.useChains.detachArgument(name, this);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Replace an argument of the block
+     * @param prevName
+     * @param newName
+     * @param newType
+     * @return True if found and replaced
+     */
+    public boolean replaceArgument(IRIdentifier prevName, IRIdentifier newName, IRType newType) {
+        if(!this.arguments.replaceArgument(prevName, newName, newType)) {
+            return false;
+        }
+        
+        if(this.useChains != null) {
+            this.useChains.detachArgument(prevName, this);
+            this.useChains.attachArgument(newName, this);
+        }
+        
+        return true;
     }
     
     /**
@@ -134,7 +264,7 @@ public class IRBasicBlock implements IRSourceInfo {
     
     public IRIdentifier getID() { return this.id; }
     public IRArgumentList getArgumentList() { return this.arguments; }
-    public List<IRLinearInstruction> getInstructions() { return this.instructions; }
+    public List<IRLinearInstruction> getInstructions() { return this.instructionsView; }
     public IRBranchInstruction getExitInstruction() { return this.exitInstruction; }
     public List<IRIdentifier> getPredecessorBlocks() { return this.predecessorBlocks; }
     public IRFunction getFunction() { return this.function; }
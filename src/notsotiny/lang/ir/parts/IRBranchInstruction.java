@@ -7,7 +7,7 @@ import java.nio.file.Path;
  * 
  * @author Mechafinch
  */
-public class IRBranchInstruction implements IRSourceInfo {
+public class IRBranchInstruction implements IRInstruction {
     
     // Operation
     private IRBranchOperation op;
@@ -39,6 +39,9 @@ public class IRBranchInstruction implements IRSourceInfo {
     // Containing basic block
     private IRBasicBlock bb;
     
+    // Def-use chains of the containing function, if this instruction is attached to them
+    private IRUseChains useChains;
+    
     // Line number of the function's header
     private int sourceLineNumber;
     
@@ -120,13 +123,82 @@ public class IRBranchInstruction implements IRSourceInfo {
         return this.sourceLineNumber;
     }
     
-    public void setCompareLeft(IRValue v) { this.compareA = v; }
-    public void setCompareRight(IRValue v) { this.compareB = v; }
-    public void setReturnValue(IRValue v) { this.returnValue = v; }
+    /**
+     * Set the left side of the JCC comparison
+     * @param v
+     */
+    public void setCompareLeft(IRValue v) {
+        if(this.useChains != null) {
+            this.useChains.replaceUse(this.compareA, v, this);
+        }
+        
+        this.compareA = v;
+    }
+    
+    /**
+     * Set the right side of the JCC comparison
+     * @param v
+     */
+    public void setCompareRight(IRValue v) {
+        if(this.useChains != null) {
+            this.useChains.replaceUse(this.compareB, v, this);
+        }
+        
+        this.compareB = v;
+    }
+    
+    /**
+     * Set the return value
+     * @param v
+     */
+    public void setReturnValue(IRValue v) {
+        if(this.useChains != null) {
+            this.useChains.replaceUse(this.returnValue, v, this);
+        }
+        
+        this.returnValue = v;
+    }
+    
+    /**
+     * Set the true argument mapping
+     * @param map
+     */
+    public void setTrueArgumentMapping(IRArgumentMapping map) {
+        if(this.useChains != null) {
+            this.useChains.detachMapping(this.trueMapping, this);
+            this.useChains.attachMapping(map, this);
+        }
+        
+        this.trueMapping = map;
+    }
+    
+    /**
+     * Set the false argument mapping
+     * @param map
+     */
+    public void setFalseArgumentMapping(IRArgumentMapping map) {
+        if(this.useChains != null) {
+            this.useChains.detachMapping(this.falseMapping, this);
+            this.useChains.attachMapping(map, this);
+        }
+        
+        this.falseMapping = map;
+    }
+    
+    /**
+     * Set the def-use chains this instruction is attached to, and the block containing it
+     * @param chains
+     * @param bb
+     */
+    void setUseChains(IRUseChains chains, IRBasicBlock bb) {
+        this.useChains = chains;
+        this.bb = bb;
+    }
+    
+    IRUseChains getUseChains() { return this.useChains; }
+    
     public void setTrueTargetBlock(IRIdentifier id) { this.trueBlock = id; }
     public void setFalseTargetBlock(IRIdentifier id) { this.falseBlock = id; }
-    public void setTrueArgumentMapping(IRArgumentMapping map) { this.trueMapping = map; }
-    public void setFalseArgumentMapping(IRArgumentMapping map) { this.falseMapping = map; }
     
     public IRBranchOperation getOp() { return this.op; }
     public IRCondition getCondition() { return this.cond; }
@@ -137,6 +209,8 @@ public class IRBranchInstruction implements IRSourceInfo {
     public IRIdentifier getFalseTargetBlock() { return this.falseBlock; }
     public IRArgumentMapping getTrueArgumentMapping() { return this.trueMapping; }
     public IRArgumentMapping getFalseArgumentMapping() { return this.falseMapping; }
+    
+    @Override
     public IRBasicBlock getBasicBlock() { return this.bb; }
     
     @Override
@@ -8,6 +8,8 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import notsotiny.lang.ir.util.IRAnalysisManager;
+
 /**
  * A function.
  * 
@@ -47,6 +49,15 @@ public class IRFunction implements IRSourceInfo {
     // Function-unique ID number, used to create unique identifiers
     private int fuid;
     
+    // Interned LOCALs and BLOCKs
+    private final IRIdentifierTable identifierTable;
+    
+    // Cached analyses, created when first needed
+    private IRAnalysisManager analyses = null;
+    
+    // Def-use chains, created when first needed and maintained from then on
+    private IRUseChains useChains = null;
+    
     /**
      * Full constructor w/ external possibility
      * @param id
@@ -67,6 +78,7 @@ public class IRFunction implements IRSourceInfo {
         this.module = sourceModule;
         this.sourceLineNumber = sourceLineNumber;
         this.fuid = fuid;
+        this.identifierTable = new IRIdentifierTable();
         
         // Build basic block map
         this.blockNameMap = new HashMap<>();
@@ -147,6 +159,10 @@ public class IRFunction implements IRSourceInfo {
     public void addBasicBlock(IRBasicBlock bb) {
         this.basicBlocks.add(bb);
         this.blockNameMap.put(bb.getID(), bb);
+        
+        if(this.useChains != null) {
+            this.useChains.attachBlock(bb);
+        }
     }
     
     /**
@@ -185,6 +201,11 @@ public class IRFunction implements IRSourceInfo {
             // Remove from us
             IRBasicBlock bb = this.blockNameMap.remove(id);
             this.basicBlocks.remove(bb);
+            
+            if(this.useChains != null) {
+                this.useChains.detachBlock(bb);
+            }
+            
             return bb;
         } else {
             return null;
@@ -206,7 +227,7 @@ public class IRFunction implements IRSourceInfo {
      * Get a name that is unique within this function, based on the given name
      * @return
      */
-    public String getFUName(String name) {
+    public synchronized String getFUName(String name) {
         int id = this.fuid++;
         
         if(name.equals("")) {
@@ -233,7 +254,21 @@ public class IRFunction implements IRSourceInfo {
      * @return
      */
     public IRIdentifier getFUID(String name, IRIdentifierClass idClass) {
-        return new IRIdentifier(getFUName(name), idClass);
+        return getIdentifier(getFUName(name), idClass);
+    }
+    
+    /**
+     * Get the interned identifier with the given name and class.
+     * LOCALs and BLOCKs are interned in this function's table, others in the module's.
+     * @param name
+     * @param idClass
+     * @return
+     */
+    public IRIdentifier getIdentifier(String name, IRIdentifierClass idClass) {
+        return switch(idClass) {
+            case LOCAL, BLOCK   -> this.identifierTable.intern(name, idClass);
+            default             -> (this.module == null) ? new IRIdentifier(name, idClass) : this.module.getIdentifierTable().intern(name, idClass);
+        };
     }
     
     /**
@@ -245,6 +280,46 @@ public class IRFunction implements IRSourceInfo {
         return getFUID(name, IRIdentifierClass.LOCAL);
     }
     
+    /**
+     * Get the analysis manager of this function
+     * @return
+     */
+    public synchronized IRAnalysisManager getAnalyses() {
+        if(this.analyses == null) {
+            this.analyses = new IRAnalysisManager(this);
+        }
+        
+        return this.analyses;
+    }
+    
+    /**
+     * Get the def-use chains of this function. Once created, they are kept up to date as the function changes.
+     * @return
+     */
+    public synchronized IRUseChains getUseChains() {
+        if(this.useChains == null) {
+            this.useChains = new IRUseChains(this);
+        }
+        
+        return this.useChains;
+    }
+    
+    /**
+     * @return Next function-unique ID number
+     */
+    public synchronized int getFUIDCounter() {
+        return this.fuid;
+    }
+    
+    /**
+     * Set the next function-unique ID number. Used when reading IR, so that new names don't collide with
+     * ones that were read.
+     * @param fuid
+     */
+    public synchronized void setFUIDCounter(int fuid) {
+        this.fuid = fuid;
+    }
+    
     @Override
     public Path getSourceFile() {
         return module.getSourceFile();
@@ -259,6 +334,7 @@ public class IRFunction implements IRSourceInfo {
     public IRType getReturnType() { return this.returnType; }
     public IRArgumentList getArguments() { return this.arguments; }
     public List<IRBasicBlock> getBasicBlockList() { return this.basicBlocks; }
+    public IRIdentifierTable getIdentifierTable() { return this.identifierTable; }
     public boolean isExternal() { return this.isExternal; }
     public IRModule getModule() { return this.module; }
     
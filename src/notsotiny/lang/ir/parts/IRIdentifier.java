@@ -18,18 +18,43 @@ public class IRIdentifier extends IRValue {
      */
     private IRIdentifierClass idclass;
     
+    // Cached hash code
+    private final int hash;
+    
+    // Table this identifier is interned in, if any
+    private final IRIdentifierTable table;
+    
+    // Index in the table, or -1 if not interned
+    private final int index;
+    
     /**
      * Full constructor
      * @param name
      * @param idclass
      */
     public IRIdentifier(String name, IRIdentifierClass idclass) {
+        this(name, idclass, null, -1);
+    }
+    
+    /**
+     * Interned constructor
+     * @param name
+     * @param idclass
+     * @param table
+     * @param index
+     */
+    IRIdentifier(String name, IRIdentifierClass idclass, IRIdentifierTable table, int index) {
         this.name = name;
         this.idclass = idclass;
+        this.hash = (idclass.getPrefix() + name).hashCode();
+        this.table = table;
+        this.index = index;
     }
     
     public String getName() { return this.name; }
     public IRIdentifierClass getIDClass() { return this.idclass; }
+    public IRIdentifierTable getTable() { return this.table; }
+    public int getIndex() { return this.index; }
     
     @Override
     public String toString() {
@@ -38,13 +63,22 @@ public class IRIdentifier extends IRValue {
     
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        return this.hash;
     }
     
     @Override
     public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        
         if(o instanceof IRIdentifier iro) {
-            return iro.idclass == this.idclass && this.name.equals(iro.name);
+            if(this.table != null && iro.table == this.table) {
+                // Interned in the same table, so distinct
+                return false;
+            }
+            
+            return iro.hash == this.hash && iro.idclass == this.idclass && this.name.equals(iro.name);
         }
         
         return false;
@@ -0,0 +1,115 @@
+package notsotiny.lang.ir.parts;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns identifiers, giving each a dense index.
+ * Functions have a table for their LOCALs and BLOCKs, modules have a table for their GLOBALs.
+ * 
+ * Interned identifiers carry their index and compare by reference against others from the same table.
+ * Identifiers created directly are still valid everywhere, they're just looked up by hash.
+ * 
+ * @author Mechafinch
+ */
+public class IRIdentifierTable {
+    
+    // Class -> name -> interned identifier
+    private Map<IRIdentifierClass, Map<String, IRIdentifier>> internMaps;
+    
+    // Index -> interned identifier
+    private List<IRIdentifier> identifiers;
+    
+    /**
+     * Empty constructor
+     */
+    public IRIdentifierTable() {
+        this.internMaps = new EnumMap<>(IRIdentifierClass.class);
+        this.identifiers = new ArrayList<>();
+    }
+    
+    /**
+     * Get the interned identifier with the given name and class
+     * @param name
+     * @param idClass
+     * @return
+     */
+    public synchronized IRIdentifier intern(String name, IRIdentifierClass idClass) {
+        Map<String, IRIdentifier> names = this.internMaps.get(idClass);
+        
+        if(names == null) {
+            names = new HashMap<>();
+            this.internMaps.put(idClass, names);
+        }
+        
+        IRIdentifier interned = names.get(name);
+        
+        if(interned == null) {
+            interned = new IRIdentifier(name, idClass, this, this.identifiers.size());
+            this.identifiers.add(interned);
+            names.put(name, interned);
+        }
+        
+        return interned;
+    }
+    
+    /**
+     * Get the interned identifier equal to id
+     * @param id
+     * @return
+     */
+    public synchronized IRIdentifier intern(IRIdentifier id) {
+        if(id.getTable() == this) {
+            return id;
+        }
+        
+        return intern(id.getName(), id.getIDClass());
+    }
+    
+    /**
+     * Get the index of an identifier, interning it if needed
+     * @param id
+     * @return
+     */
+    public int indexOf(IRIdentifier id) {
+        if(id.getTable() == this) {
+            return id.getIndex();
+        }
+        
+        return intern(id).getIndex();
+    }
+    
+    /**
+     * Get the index of an identifier without interning it
+     * @param id
+     * @return The index, or -1 if the identifier isn't in this table
+     */
+    public synchronized int find(IRIdentifier id) {
+        if(id.getTable() == this) {
+            return id.getIndex();
+        }
+        
+        Map<String, IRIdentifier> names = this.internMaps.get(id.getIDClass());
+        IRIdentifier interned = (names == null) ? null : names.get(id.getName());
+        return (interned == null) ? -1 : interned.getIndex();
+    }
+    
+    /**
+     * Get the identifier with the given index
+     * @param index
+     * @return
+     */
+    public synchronized IRIdentifier get(int index) {
+        return this.identifiers.get(index);
+    }
+    
+    /**
+     * @return Number of identifiers interned. Indices are less than this.
+     */
+    public synchronized int size() {
+        return this.identifiers.size();
+    }
+}
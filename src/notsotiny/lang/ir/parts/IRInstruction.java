@@ -0,0 +1,15 @@
+package notsotiny.lang.ir.parts;
+
+/**
+ * An instruction, linear or branch
+ * 
+ * @author Mechafinch
+ */
+public interface IRInstruction extends IRSourceInfo {
+    
+    /**
+     * Gets the basic block containing this instruction
+     * @return
+     */
+    public IRBasicBlock getBasicBlock();
+}
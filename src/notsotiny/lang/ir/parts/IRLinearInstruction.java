@@ -7,7 +7,7 @@ import java.nio.file.Path;
  * 
  * @author Mechafinch
  */
-public class IRLinearInstruction implements IRSourceInfo {
+public class IRLinearInstruction implements IRInstruction {
     
     // Operation
     private IRLinearOperation op;
@@ -39,6 +39,9 @@ public class IRLinearInstruction implements IRSourceInfo {
     // Containing basic block
     private IRBasicBlock bb;
     
+    // Def-use chains of the containing function, if this instruction is attached to them
+    private IRUseChains useChains;
+    
     // Line number of the function's header
     private int sourceLineNumber;
     
@@ -224,11 +227,77 @@ public class IRLinearInstruction implements IRSourceInfo {
     public int getSourceCount() { return this.op.getSourceCount(); }
     public boolean hasDestination() { return this.op.hasDestination(); }
     
-    public void setDestination(IRIdentifier d) { this.destination = d; }
-    public void setLeftSourceValue(IRValue v) { this.sourceA = v; }
-    public void setRightSourceValue(IRValue v) { this.sourceB = v; }
-    public void setLeftComparisonValue(IRValue v) { this.compareA = v; }
-    public void setRightComparisonValue(IRValue v) { this.compareB = v; }
+    /**
+     * Set the destination
+     * @param d
+     */
+    public void setDestination(IRIdentifier d) {
+        if(this.useChains != null) {
+            this.useChains.replaceDefinition(this.destination, d, this);
+        }
+        
+        this.destination = d;
+    }
+    
+    /**
+     * Set the left source
+     * @param v
+     */
+    public void setLeftSourceValue(IRValue v) {
+        if(this.useChains != null) {
+            this.useChains.replaceUse(this.sourceA, v, this);
+        }
+        
+        this.sourceA = v;
+    }
+    
+    /**
+     * Set the right source
+     * @param v
+     */
+    public void setRightSourceValue(IRValue v) {
+        if(this.useChains != null) {
+            this.useChains.replaceUse(this.sourceB, v, this);
+        }
+        
+        this.sourceB = v;
+    }
+    
+    /**
+     * Set the left side of the SELECT comparison
+     * @param v
+     */
+    public void setLeftComparisonValue(IRValue v) {
+        if(this.useChains != null) {
+            this.useChains.replaceUse(this.compareA, v, this);
+        }
+        
+        this.compareA = v;
+    }
+    
+    /**
+     * Set the right side of the SELECT comparison
+     * @param v
+     */
+    public void setRightComparisonValue(IRValue v) {
+        if(this.useChains != null) {
+            this.useChains.replaceUse(this.compareB, v, this);
+        }
+        
+        this.compareB = v;
+    }
+    
+    /**
+     * Set the def-use chains this instruction is attached to, and the block containing it
+     * @param chains
+     * @param bb
+     */
+    void setUseChains(IRUseChains chains, IRBasicBlock bb) {
+        this.useChains = chains;
+        this.bb = bb;
+    }
+    
+    IRUseChains getUseChains() { return this.useChains; }
     
     public IRLinearOperation getOp() { return this.op; }
     public IRIdentifier getDestinationID() { return this.destination; }
@@ -240,6 +309,8 @@ public class IRLinearInstruction implements IRSourceInfo {
     public IRValue getLeftComparisonValue() { return this.compareA; }
     public IRValue getRightComparisonValue() { return this.compareB; }
     public IRArgumentMapping getCallArgumentMapping() { return this.callMapping; }
+    
+    @Override
     public IRBasicBlock getBasicBlock() { return this.bb; }
         
 }
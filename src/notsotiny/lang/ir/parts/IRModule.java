@@ -26,6 +26,9 @@ public class IRModule implements IRSourceInfo {
     // Globals
     private Map<IRIdentifier, IRGlobal> globals;
     
+    // Interned GLOBALs
+    private final IRIdentifierTable identifierTable;
+    
     /**
      * Full constructor
      * @param name
@@ -39,6 +42,7 @@ public class IRModule implements IRSourceInfo {
         this.functions = functions;
         this.globals = globals;
         this.sourcePath = sourcePath;
+        this.identifierTable = new IRIdentifierTable();
         
         this.internalFunctions = new HashMap<>();
         this.externalFunctions = new HashMap<>();
@@ -101,6 +105,15 @@ public class IRModule implements IRSourceInfo {
         this.globals.put(global.getID(), global);
     }
     
+    /**
+     * Get the interned GLOBAL with the given name
+     * @param name
+     * @return
+     */
+    public IRIdentifier getIdentifier(String name) {
+        return this.identifierTable.intern(name, IRIdentifierClass.GLOBAL);
+    }
+    
     /**
      * Add information about referenced libraries
      * @param path
@@ -126,6 +139,7 @@ public class IRModule implements IRSourceInfo {
     public Map<IRIdentifier, IRFunction> getInternalFunctions() { return this.internalFunctions; }
     public Map<IRIdentifier, IRFunction> getExternalFunctions() { return this.externalFunctions; }
     public Map<IRIdentifier, IRGlobal> getGlobals() { return this.globals; }
+    public IRIdentifierTable getIdentifierTable() { return this.identifierTable; }
     
     @Override
     public String toString() {
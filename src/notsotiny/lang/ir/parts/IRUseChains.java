@@ -0,0 +1,316 @@
+package notsotiny.lang.ir.parts;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Def-use chains of a function.
+ * 
+ * Once created, chains are kept up to date by the IR parts as instructions are added to and removed from
+ * the function's basic blocks and as their operands change. An instruction can only be in one block at a
+ * time. Argument mappings can be shared by several branches.
+ * 
+ * @author Mechafinch
+ */
+public class IRUseChains {
+    
+    // Value -> instructions which use it
+    private Map<IRIdentifier, IRUserSet> uses;
+    
+    // Local -> linear instruction which defines it
+    private Map<IRIdentifier, IRLinearInstruction> definitions;
+    
+    // Local -> basic block which defines it as an argument
+    private Map<IRIdentifier, IRBasicBlock> argumentDefinitions;
+    
+    /**
+     * Builds chains for the current contents of a function
+     * @param function
+     */
+    IRUseChains(IRFunction function) {
+        this.uses = new HashMap<>();
+        this.definitions = new HashMap<>();
+        this.argumentDefinitions = new HashMap<>();
+        
+        for(IRBasicBlock bb : function.getBasicBlockList()) {
+            attachBlock(bb);
+        }
+    }
+    
+    /**
+     * Gets the instructions which use a value. Instructions appear once, however many times they use it.
+     * @param id
+     * @return
+     */
+    public List<IRInstruction> getUses(IRIdentifier id) {
+        IRUserSet users = this.uses.get(id);
+        return (users == null) ? List.of() : users.getUsers();
+    }
+    
+    /**
+     * Gets the linear instruction which defines a value, if any
+     * @param id
+     * @return
+     */
+    public IRLinearInstruction getDefinition(IRIdentifier id) {
+        return this.definitions.get(id);
+    }
+    
+    /**
+     * Gets the basic block which defines a value as an argument, if any
+     * @param id
+     * @return
+     */
+    public IRBasicBlock getArgumentDefinition(IRIdentifier id) {
+        return this.argumentDefinitions.get(id);
+    }
+    
+    /**
+     * @return The set of values with uses
+     */
+    public Iterable<IRIdentifier> getUsedValues() {
+        return Collections.unmodifiableSet(this.uses.keySet());
+    }
+    
+    /**
+     * Adds the contents of a basic block
+     * @param bb
+     */
+    void attachBlock(IRBasicBlock bb) {
+        bb.setUseChains(this);
+        
+        for(IRIdentifier arg : bb.getArgumentList().getNameList()) {
+            attachArgument(arg, bb);
+        }
+        
+        for(IRLinearInstruction li : bb.getInstructions()) {
+            attach(li, bb);
+        }
+        
+        if(bb.getExitInstruction() != null) {
+            attach(bb.getExitInstruction(), bb);
+        }
+    }
+    
+    /**
+     * Removes the contents of a basic block
+     * @param bb
+     */
+    void detachBlock(IRBasicBlock bb) {
+        for(IRLinearInstruction li : bb.getInstructions()) {
+            detach(li);
+        }
+        
+        if(bb.getExitInstruction() != null) {
+            detach(bb.getExitInstruction());
+        }
+        
+        for(IRIdentifier arg : bb.getArgumentList().getNameList()) {
+            detachArgument(arg, bb);
+        }
+        
+        bb.setUseChains(null);
+    }
+    
+    /**
+     * Records that bb defines an argument
+     * @param arg
+     * @param bb
+     */
+    void attachArgument(IRIdentifier arg, IRBasicBlock bb) {
+        this.argumentDefinitions.put(arg, bb);
+    }
+    
+    /**
+     * Removes an argument defined by bb
+     * @param arg
+     * @param bb
+     */
+    void detachArgument(IRIdentifier arg, IRBasicBlock bb) {
+        if(this.argumentDefinitions.get(arg) == bb) {
+            this.argumentDefinitions.remove(arg);
+        }
+    }
+    
+    /**
+     * Adds a linear instruction placed in a basic block
+     * @param li
+     * @param bb
+     */
+    void attach(IRLinearInstruction li, IRBasicBlock bb) {
+        if(li.getUseChains() != null) {
+            throw new IllegalStateException("Instruction is already in basic block " + li.getBasicBlock().getID());
+        }
+        
+        li.setUseChains(this, bb);
+        
+        addUse(li.getLeftSourceValue(), li);
+        addUse(li.getRightSourceValue(), li);
+        addUse(li.getLeftComparisonValue(), li);
+        addUse(li.getRightComparisonValue(), li);
+        attachMapping(li.getCallArgumentMapping(), li);
+        
+        if(li.getDestinationID() != null) {
+            this.definitions.put(li.getDestinationID(), li);
+        }
+    }
+    
+    /**
+     * Adds a branch instruction placed in a basic block
+     * @param bi
+     * @param bb
+     */
+    void attach(IRBranchInstruction bi, IRBasicBlock bb) {
+        if(bi.getUseChains() != null) {
+            throw new IllegalStateException("Instruction is already in basic block " + bi.getBasicBlock().getID());
+        }
+        
+        bi.setUseChains(this, bb);
+        
+        addUse(bi.getCompareLeft(), bi);
+        addUse(bi.getCompareRight(), bi);
+        addUse(bi.getReturnValue(), bi);
+        attachMapping(bi.getTrueArgumentMapping(), bi);
+        attachMapping(bi.getFalseArgumentMapping(), bi);
+    }
+    
+    /**
+     * Removes a linear instruction
+     * @param li
+     */
+    void detach(IRLinearInstruction li) {
+        removeUse(li.getLeftSourceValue(), li);
+        removeUse(li.getRightSourceValue(), li);
+        removeUse(li.getLeftComparisonValue(), li);
+        removeUse(li.getRightComparisonValue(), li);
+        detachMapping(li.getCallArgumentMapping(), li);
+        
+        if(li.getDestinationID() != null && this.definitions.get(li.getDestinationID()) == li) {
+            this.definitions.remove(li.getDestinationID());
+        }
+        
+        li.setUseChains(null, li.getBasicBlock());
+    }
+    
+    /**
+     * Removes a branch instruction
+     * @param bi
+     */
+    void detach(IRBranchInstruction bi) {
+        removeUse(bi.getCompareLeft(), bi);
+        removeUse(bi.getCompareRight(), bi);
+        removeUse(bi.getReturnValue(), bi);
+        detachMapping(bi.getTrueArgumentMapping(), bi);
+        detachMapping(bi.getFalseArgumentMapping(), bi);
+        
+        bi.setUseChains(null, bi.getBasicBlock());
+    }
+    
+    /**
+     * Adds the uses of an argument mapping belonging to an instruction
+     * @param mapping
+     * @param user
+     */
+    void attachMapping(IRArgumentMapping mapping, IRInstruction user) {
+        if(mapping == null) {
+            return;
+        }
+        
+        mapping.addUser(user);
+        
+        for(IRValue v : mapping.getMap().values()) {
+            addUse(v, user);
+        }
+    }
+    
+    /**
+     * Removes the uses of an argument mapping belonging to an instruction
+     * @param mapping
+     * @param user
+     */
+    void detachMapping(IRArgumentMapping mapping, IRInstruction user) {
+        if(mapping == null) {
+            return;
+        }
+        
+        mapping.removeUser(user);
+        
+        for(IRValue v : mapping.getMap().values()) {
+            removeUse(v, user);
+        }
+    }
+    
+    /**
+     * Records that user now uses newValue in place of oldValue
+     * @param oldValue
+     * @param newValue
+     * @param user
+     */
+    void replaceUse(IRValue oldValue, IRValue newValue, IRInstruction user) {
+        removeUse(oldValue, user);
+        addUse(newValue, user);
+    }
+    
+    /**
+     * Records that li now defines newID in place of oldID
+     * @param oldID
+     * @param newID
+     * @param li
+     */
+    void replaceDefinition(IRIdentifier oldID, IRIdentifier newID, IRLinearInstruction li) {
+        if(oldID != null && this.definitions.get(oldID) == li) {
+            this.definitions.remove(oldID);
+        }
+        
+        if(newID != null) {
+            this.definitions.put(newID, li);
+        }
+    }
+    
+    /**
+     * Records a use
+     * @param v
+     * @param user
+     */
+    private void addUse(IRValue v, IRInstruction user) {
+        if(v instanceof IRIdentifier id) {
+            this.uses.computeIfAbsent(id, k -> new IRUserSet()).add(user);
+        }
+    }
+    
+    /**
+     * Removes one use. Instructions are compared by identity.
+     * @param v
+     * @param user
+     */
+    private void removeUse(IRValue v, IRInstruction user) {
+        if(v instanceof IRIdentifier id) {
+            IRUserSet users = this.uses.get(id);
+            
+            if(users == null) {
+                return;
+            }
+            
+            users.remove(user);
+            
+            if(users.isEmpty()) {
+                this.uses.remove(id);
+            }
+        }
+    }
+    
+    /**
+     * Gets the chains an instruction is attached to
+     * @param user
+     * @return
+     */
+    static IRUseChains of(IRInstruction user) {
+        if(user instanceof IRLinearInstruction li) {
+            return li.getUseChains();
+        } else {
+            return ((IRBranchInstruction) user).getUseChains();
+        }
+    }
+}
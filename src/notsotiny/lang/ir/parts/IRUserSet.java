@@ -0,0 +1,83 @@
+package notsotiny.lang.ir.parts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Instructions which use a value or an argument mapping, counted once per use.
+ * 
+ * Instructions are compared by identity and each is stored once, so adding and removing a use takes
+ * constant time.
+ * 
+ * @author Mechafinch
+ */
+class IRUserSet {
+    
+    // Distinct users. Removing a user moves the last user into its place.
+    private List<IRInstruction> users;
+    
+    // Read-only view of users
+    private List<IRInstruction> usersView;
+    
+    // User -> { index in users, number of uses }
+    private Map<IRInstruction, int[]> entries;
+    
+    IRUserSet() {
+        this.users = new ArrayList<>(1);
+        this.usersView = Collections.unmodifiableList(this.users);
+        this.entries = new IdentityHashMap<>(2);
+    }
+    
+    /**
+     * Records one use by user
+     * @param user
+     */
+    void add(IRInstruction user) {
+        int[] entry = this.entries.get(user);
+        
+        if(entry == null) {
+            this.entries.put(user, new int[] { this.users.size(), 1 });
+            this.users.add(user);
+        } else {
+            entry[1]++;
+        }
+    }
+    
+    /**
+     * Removes one use by user, if it has any
+     * @param user
+     */
+    void remove(IRInstruction user) {
+        int[] entry = this.entries.get(user);
+        
+        if(entry == null || --entry[1] != 0) {
+            return;
+        }
+        
+        // Last use, move the last user into its place
+        this.entries.remove(user);
+        IRInstruction last = this.users.remove(this.users.size() - 1);
+        
+        if(last != user) {
+            this.users.set(entry[0], last);
+            this.entries.get(last)[0] = entry[0];
+        }
+    }
+    
+    /**
+     * Gets the number of uses by user
+     * @param user
+     * @return
+     */
+    int getUseCount(IRInstruction user) {
+        int[] entry = this.entries.get(user);
+        return (entry == null) ? 0 : entry[1];
+    }
+    
+    boolean isEmpty() { return this.users.isEmpty(); }
+    List<IRInstruction> getUsers() { return this.usersView; }
+    
+}
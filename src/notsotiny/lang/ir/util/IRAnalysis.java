@@ -0,0 +1,40 @@
+package notsotiny.lang.ir.util;
+
+/**
+ * An analysis of a function which can be cached by its IRAnalysisManager
+ */
+public enum IRAnalysis {
+    REVERSE_POSTORDER   (true, false),  // Reverse postorder list of BBs
+    PREORDER            (true, false),  // Preorder list and ancestry map of the DFS spanning tree
+    DOMINATORS          (true, false),  // Dominator tree
+    POSTDOMINATORS      (true, false),  // Postdominator tree
+    LOOP_NESTING_FOREST (true, false),  // Loop-nesting forest
+    LIVENESS            (true, true),   // Live-in and live-out sets of each BB
+    DEFINITIONS         (false, true),  // Definition list & map
+    USES                (false, true),  // Use map
+    TYPES               (false, true),  // Type map
+    PURITY              (false, true),  // Whether the function is pure. Also depends on called functions.
+    ;
+    
+    private boolean dependsOnCFG,
+                    dependsOnCode;
+    
+    private IRAnalysis(boolean dependsOnCFG, boolean dependsOnCode) {
+        this.dependsOnCFG = dependsOnCFG;
+        this.dependsOnCode = dependsOnCode;
+    }
+    
+    /**
+     * @return true if this analysis is invalidated by changes to control flow
+     */
+    public boolean dependsOnCFG() {
+        return this.dependsOnCFG;
+    }
+    
+    /**
+     * @return true if this analysis is invalidated by changes to instructions or BB arguments
+     */
+    public boolean dependsOnCode() {
+        return this.dependsOnCode;
+    }
+}
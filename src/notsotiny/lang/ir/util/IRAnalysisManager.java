@@ -0,0 +1,471 @@
+package notsotiny.lang.ir.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import notsotiny.lang.ir.parts.IRArgumentMapping;
+import notsotiny.lang.ir.parts.IRBasicBlock;
+import notsotiny.lang.ir.parts.IRBranchInstruction;
+import notsotiny.lang.ir.parts.IRBranchOperation;
+import notsotiny.lang.ir.parts.IRCondition;
+import notsotiny.lang.ir.parts.IRDefinition;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRIdentifier;
+import notsotiny.lang.ir.parts.IRIdentifierClass;
+import notsotiny.lang.ir.parts.IRLinearInstruction;
+import notsotiny.lang.ir.parts.IRLinearOperation;
+import notsotiny.lang.ir.parts.IRType;
+import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lib.data.Pair;
+import notsotiny.lib.data.UnionFindForest;
+
+/**
+ * Lazily computes and caches the analyses of a function.
+ *
+ * Cached analyses are valid for the function as it was when they were computed. Code which modifies the
+ * function must report what it changed to invalidate() before requesting analyses again, which discards the
+ * analyses affected. Analyses known to still be correct can be kept by listing them as preserved.
+ *
+ * With verification enabled, a snapshot of the function is taken when the cache is filled and compared
+ * against the function whenever a change is reported. Unreported changes are logged and treated as though
+ * they had been reported.
+ *
+ * Returned structures are shared and must not be modified, unless the caller is the last user of the
+ * analysis and invalidates it first.
+ */
+public class IRAnalysisManager {
+    
+    private static Logger LOG = Logger.getLogger(IRAnalysisManager.class.getName());
+    
+    private IRFunction function;
+    
+    // Check reported changes against snapshots
+    private boolean verify = false;
+    
+    // Function as it was when cached analyses were computed, or null if nothing is cached or verification is disabled
+    private Snapshot snapshot = null;
+    
+    // Analyses that are currently cached
+    private Set<IRAnalysis> cached = EnumSet.noneOf(IRAnalysis.class);
+    
+    // Cached analyses
+    private List<IRIdentifier> reversePostorderList;
+    private Pair<List<IRIdentifier>, Map<Integer, Integer>> preorderInfo;
+    private IRDominatorTree dominatorTree;
+    private IRDominatorTree postdominatorTree;
+    private UnionFindForest<IRIdentifier> loopNestingForest;
+    private Map<Boolean, IRLiveness> liveness = new HashMap<>();
+    private List<IRDefinition> definitionList;
+    private Map<IRIdentifier, IRDefinition> definitionMap;
+    private Map<IRIdentifier, List<IRDefinition>> useMap;
+    private Map<IRIdentifier, IRType> typeMap;
+    private Map<Boolean, Boolean> purity = new HashMap<>();
+    
+    // Purity fixed by a running pipeline, or null. Kept apart from the cache so that no reported change can discard it.
+    private Map<Boolean, Boolean> fixedPurity = null;
+    
+    // ID of the virtual exit block used for postdominators. Never a real block, so it stays valid.
+    private IRIdentifier exitID = null;
+    
+    /**
+     * @param function
+     */
+    public IRAnalysisManager(IRFunction function) {
+        this.function = function;
+    }
+    
+    /**
+     * Sets whether to check reported changes against snapshots of the function
+     * @param verify
+     */
+    public synchronized void setVerification(boolean verify) {
+        this.verify = verify;
+        this.snapshot = (verify && !this.cached.isEmpty()) ? new Snapshot(this.function) : null;
+    }
+    
+    /**
+     * Discards cached analyses invalidated by a change reported by a transformation
+     * @param change
+     * @param preserved Analyses known to be valid regardless of changes
+     */
+    public synchronized void invalidate(IRChange change, Set<IRAnalysis> preserved) {
+        if(this.snapshot != null) {
+            change = change.combine(checkChange(change));
+        }
+        
+        if(change == IRChange.NONE) {
+            return;
+        }
+        
+        for(IRAnalysis analysis : IRAnalysis.values()) {
+            if(!preserved.contains(analysis) && change.invalidates(analysis)) {
+                invalidate(analysis);
+            }
+        }
+        
+        if(LOG.isLoggable(Level.FINEST)) {
+            LOG.finest(this.function.getID() + " changed (" + change + "), keeping " + this.cached);
+        }
+        
+        // Later checks compare against the function as the remaining analyses see it
+        this.snapshot = (this.verify && !this.cached.isEmpty()) ? new Snapshot(this.function) : null;
+    }
+    
+    /**
+     * Compares the function against the snapshot, logging changes that weren't reported
+     * @param reported
+     * @return What actually changed
+     */
+    private IRChange checkChange(IRChange reported) {
+        Snapshot current = new Snapshot(this.function);
+        boolean cfgChanged = !current.cfg().equals(this.snapshot.cfg()),
+                codeChanged = !current.code().equals(this.snapshot.code());
+        
+        IRChange actual = cfgChanged ? IRChange.CFG : (codeChanged ? IRChange.CODE : IRChange.NONE);
+        
+        if(reported.combine(actual) != reported) {
+            LOG.severe(this.function.getID() + " changed (cfg: " + cfgChanged + ", code: " + codeChanged + ") but " + reported + " was reported");
+        }
+        
+        return actual;
+    }
+    
+    /**
+     * Discards the given analyses
+     * @param analyses
+     */
+    public synchronized void invalidate(IRAnalysis... analyses) {
+        for(IRAnalysis analysis : analyses) {
+            switch(analysis) {
+                case REVERSE_POSTORDER      -> this.reversePostorderList = null;
+                case PREORDER               -> this.preorderInfo = null;
+                case DOMINATORS             -> this.dominatorTree = null;
+                case POSTDOMINATORS         -> this.postdominatorTree = null;
+                case LOOP_NESTING_FOREST    -> this.loopNestingForest = null;
+                case LIVENESS               -> this.liveness.clear();
+                case DEFINITIONS            -> {
+                    this.definitionList = null;
+                    this.definitionMap = null;
+                }
+                case USES                   -> this.useMap = null;
+                case TYPES                  -> this.typeMap = null;
+                case PURITY                 -> this.purity.clear();
+            }
+            
+            this.cached.remove(analysis);
+        }
+        
+        if(this.cached.isEmpty()) {
+            this.snapshot = null;
+        }
+    }
+    
+    /**
+     * Discards all cached analyses
+     */
+    public synchronized void invalidateAll() {
+        invalidate(IRAnalysis.values());
+    }
+    
+    /**
+     * @param analysis
+     * @return true if the analysis is cached
+     */
+    public synchronized boolean isCached(IRAnalysis analysis) {
+        return this.cached.contains(analysis);
+    }
+    
+    /**
+     * Records that an analysis was computed
+     * @param analysis
+     */
+    private void cache(IRAnalysis analysis) {
+        if(this.verify && this.snapshot == null) {
+            this.snapshot = new Snapshot(this.function);
+        }
+        
+        this.cached.add(analysis);
+    }
+    
+    /**
+     * @return Reverse postorder list of BBs
+     */
+    public synchronized List<IRIdentifier> getReversePostorderList() {
+        if(this.reversePostorderList == null) {
+            this.reversePostorderList = IRUtil.getReversePostorderList(this.function);
+            cache(IRAnalysis.REVERSE_POSTORDER);
+        }
+        
+        return this.reversePostorderList;
+    }
+    
+    /**
+     * @return Preorder list of BBs and map from list indices to the index of that BB's last descendant
+     */
+    public synchronized Pair<List<IRIdentifier>, Map<Integer, Integer>> getPreorderInfo() {
+        if(this.preorderInfo == null) {
+            this.preorderInfo = IRUtil.getPreorderInfo(this.function);
+            cache(IRAnalysis.PREORDER);
+        }
+        
+        return this.preorderInfo;
+    }
+    
+    /**
+     * @return Dominator tree
+     */
+    public synchronized IRDominatorTree getDominatorTree() {
+        if(this.dominatorTree == null) {
+            this.dominatorTree = IRDominatorTree.dominators(this.function, getReversePostorderList());
+            cache(IRAnalysis.DOMINATORS);
+        }
+        
+        return this.dominatorTree;
+    }
+    
+    /**
+     * @return Postdominator tree, rooted at getExitID()
+     */
+    public synchronized IRDominatorTree getPostdominatorTree() {
+        if(this.postdominatorTree == null) {
+            this.postdominatorTree = IRDominatorTree.postdominators(this.function, getExitID());
+            cache(IRAnalysis.POSTDOMINATORS);
+        }
+        
+        return this.postdominatorTree;
+    }
+    
+    /**
+     * @return Map from BB to its immediate dominator
+     */
+    public synchronized Map<IRIdentifier, IRIdentifier> getDominatorMap() {
+        return getDominatorTree().getImmediateDominatorMap();
+    }
+    
+    /**
+     * @return Map from BB to its immediate postdominator. RET blocks are postdominated by getExitID()
+     */
+    public synchronized Map<IRIdentifier, IRIdentifier> getPostdominatorMap() {
+        return getPostdominatorTree().getImmediateDominatorMap();
+    }
+    
+    /**
+     * @return ID of the virtual exit block used as the root of the postdominator tree
+     */
+    public synchronized IRIdentifier getExitID() {
+        if(this.exitID == null) {
+            this.exitID = this.function.getFUID("exit", IRIdentifierClass.BLOCK);
+        }
+        
+        return this.exitID;
+    }
+    
+    /**
+     * @return Loop-nesting forest
+     */
+    public synchronized UnionFindForest<IRIdentifier> getLoopNestingForest() {
+        if(this.loopNestingForest == null) {
+            Pair<List<IRIdentifier>, Map<Integer, Integer>> dfsInfo = getPreorderInfo();
+            this.loopNestingForest = IRUtil.getLoopNestingForest(this.function, dfsInfo.a, dfsInfo.b);
+            cache(IRAnalysis.LOOP_NESTING_FOREST);
+        }
+        
+        return this.loopNestingForest;
+    }
+    
+    /**
+     * @param argAssignmentsAreLiveOut If true, values assigned to the arguments of successors are considered live-out
+     * @return Bitset liveness of the function's locals
+     */
+    private IRLiveness getLiveness(boolean argAssignmentsAreLiveOut) {
+        IRLiveness live = this.liveness.get(argAssignmentsAreLiveOut);
+        
+        if(live == null) {
+            Pair<List<IRIdentifier>, Map<Integer, Integer>> dfsInfo = getPreorderInfo();
+            live = new IRLiveness(this.function, argAssignmentsAreLiveOut, getLoopNestingForest(), dfsInfo.a, dfsInfo.b);
+            this.liveness.put(argAssignmentsAreLiveOut, live);
+            cache(IRAnalysis.LIVENESS);
+        }
+        
+        return live;
+    }
+    
+    /**
+     * @param argAssignmentsAreLiveOut If true, values assigned to the arguments of successors are considered live-out
+     * @return Map from BB ID to Pair<Live-In set, Live-Out set>. The sets are read-only views of the cached liveness.
+     */
+    public synchronized Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> getLivenessSets(boolean argAssignmentsAreLiveOut) {
+        Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> sets = getLiveness(argAssignmentsAreLiveOut).getLivenessSets();
+        sets.replaceAll((bbID, pair) -> new Pair<>(Collections.unmodifiableSet(pair.a), Collections.unmodifiableSet(pair.b)));
+        return Collections.unmodifiableMap(sets);
+    }
+    
+    /**
+     * @param argAssignmentsAreLiveOut If true, values assigned to the arguments of successors are considered live-out
+     * @param id
+     * @param li
+     * @return true if the local is live both before and after the instruction
+     */
+    public synchronized boolean isLiveAcross(boolean argAssignmentsAreLiveOut, IRIdentifier id, IRLinearInstruction li) {
+        return getLiveness(argAssignmentsAreLiveOut).isLiveAcross(id, li);
+    }
+    
+    /**
+     * @return List of definitions
+     */
+    public synchronized List<IRDefinition> getDefinitionList() {
+        if(this.definitionList == null) {
+            this.definitionList = IRUtil.getDefinitionList(this.function);
+            this.definitionMap = IRUtil.getDefinitionMap(this.definitionList);
+            cache(IRAnalysis.DEFINITIONS);
+        }
+        
+        return this.definitionList;
+    }
+    
+    /**
+     * @return Map from local ID to its definition
+     */
+    public synchronized Map<IRIdentifier, IRDefinition> getDefinitionMap() {
+        getDefinitionList();
+        return this.definitionMap;
+    }
+    
+    /**
+     * @return Map from local ID to the definitions which use it
+     */
+    public synchronized Map<IRIdentifier, List<IRDefinition>> getUseMap() {
+        if(this.useMap == null) {
+            this.useMap = IRUtil.getUseMap(this.function);
+            cache(IRAnalysis.USES);
+        }
+        
+        return this.useMap;
+    }
+    
+    /**
+     * @return Map from local ID to its type
+     */
+    public synchronized Map<IRIdentifier, IRType> getTypeMap() {
+        if(this.typeMap == null) {
+            this.typeMap = IRUtil.getTypeMap(this.function);
+            cache(IRAnalysis.TYPES);
+        }
+        
+        return this.typeMap;
+    }
+    
+    /**
+     * @param divisionIsPure
+     * @return true if the function is pure
+     */
+    public synchronized boolean isPure(boolean divisionIsPure) {
+        if(this.fixedPurity != null) {
+            return this.fixedPurity.get(divisionIsPure);
+        }
+        
+        Boolean pure = this.purity.get(divisionIsPure);
+        
+        if(pure == null) {
+            pure = IRUtil.isFunctionPure(this.function, divisionIsPure);
+            this.purity.put(divisionIsPure, pure);
+            cache(IRAnalysis.PURITY);
+        }
+        
+        return pure;
+    }
+    
+    /**
+     * Fixes the purity of the function, as computed for the whole module, until releasePurity() is called.
+     * Fixed purity is not discarded by invalidation.
+     * @param pure Purity when division isn't pure
+     * @param divisionPure Purity when division is pure
+     */
+    public synchronized void fixPurity(boolean pure, boolean divisionPure) {
+        this.fixedPurity = Map.of(false, pure, true, divisionPure);
+    }
+    
+    /**
+     * Releases purity fixed by fixPurity(), and discards any cached purity
+     */
+    public synchronized void releasePurity() {
+        this.fixedPurity = null;
+        invalidate(IRAnalysis.PURITY);
+    }
+    
+    /**
+     * @return true if the purity of the function is fixed by a running pipeline
+     */
+    public synchronized boolean isPurityFixed() {
+        return this.fixedPurity != null;
+    }
+    
+    /**
+     * The parts of a function that analyses depend on, for checking reported changes by comparison
+     */
+    private record Snapshot(List<BlockCFG> cfg, List<Object> code) {
+        
+        /**
+         * Captures the current state of a function
+         * @param function
+         */
+        public Snapshot(IRFunction function) {
+            this(new ArrayList<>(), new ArrayList<>());
+            
+            this.code.add(new ArrayList<>(function.getArguments().getNameList()));
+            this.code.add(new ArrayList<>(function.getArguments().getTypeList()));
+            
+            for(IRBasicBlock bb : function.getBasicBlockList()) {
+                IRBranchInstruction exit = bb.getExitInstruction();
+                this.cfg.add(new BlockCFG(bb.getID(), exit == null ? List.of() : bb.getSuccessorBlocks(), new ArrayList<>(bb.getPredecessorBlocks())));
+                
+                this.code.add(bb.getID());
+                this.code.add(new ArrayList<>(bb.getArgumentList().getNameList()));
+                this.code.add(new ArrayList<>(bb.getArgumentList().getTypeList()));
+                
+                for(IRLinearInstruction li : bb.getInstructions()) {
+                    this.code.add(new LinearImage(li, li.getOp(), li.getDestinationID(), li.getDestinationType(), li.getLeftSourceValue(), li.getRightSourceValue(), li.getSelectCondition(), li.getLeftComparisonValue(), li.getRightComparisonValue(), copyMapping(li.getCallArgumentMapping())));
+                }
+                
+                if(exit != null) {
+                    this.code.add(new BranchImage(exit, exit.getOp(), exit.getCondition(), exit.getCompareLeft(), exit.getCompareRight(), exit.getTrueTargetBlock(), copyMapping(exit.getTrueArgumentMapping()), exit.getFalseTargetBlock(), copyMapping(exit.getFalseArgumentMapping()), exit.getReturnValue()));
+                }
+            }
+        }
+        
+        /**
+         * Copies the contents of an argument mapping
+         * @param mapping
+         * @return
+         */
+        private static Object copyMapping(IRArgumentMapping mapping) {
+            if(mapping == null) {
+                return null;
+            }
+            
+            return List.of(new ArrayList<>(mapping.getOrdering()), new HashMap<>(mapping.getMap()));
+        }
+    }
+    
+    /**
+     * Control flow of a BB
+     */
+    private record BlockCFG(IRIdentifier id, List<IRIdentifier> successors, List<IRIdentifier> predecessors) {}
+    
+    /**
+     * Contents of a linear instruction. Instructions are compared by identity as well as contents.
+     */
+    private record LinearImage(IRLinearInstruction li, IRLinearOperation op, IRIdentifier dest, IRType destType, IRValue sourceA, IRValue sourceB, IRCondition cond, IRValue compareA, IRValue compareB, Object mapping) {}
+    
+    /**
+     * Contents of a branch instruction
+     */
+    private record BranchImage(IRBranchInstruction bi, IRBranchOperation op, IRCondition cond, IRValue compareA, IRValue compareB, IRIdentifier trueBlock, Object trueMapping, IRIdentifier falseBlock, Object falseMapping, IRValue returnValue) {}
+}
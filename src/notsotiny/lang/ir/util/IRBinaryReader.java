@@ -0,0 +1,392 @@
+package notsotiny.lang.ir.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import notsotiny.lang.ir.parts.IRArgumentList;
+import notsotiny.lang.ir.parts.IRArgumentMapping;
+import notsotiny.lang.ir.parts.IRBasicBlock;
+import notsotiny.lang.ir.parts.IRBranchInstruction;
+import notsotiny.lang.ir.parts.IRBranchOperation;
+import notsotiny.lang.ir.parts.IRCondition;
+import notsotiny.lang.ir.parts.IRConstant;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRGlobal;
+import notsotiny.lang.ir.parts.IRIdentifier;
+import notsotiny.lang.ir.parts.IRIdentifierClass;
+import notsotiny.lang.ir.parts.IRLinearInstruction;
+import notsotiny.lang.ir.parts.IRLinearOperation;
+import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.parts.IRType;
+import notsotiny.lang.ir.parts.IRValue;
+
+/**
+ * Reads IR written by IRBinaryWriter. See IRBinaryWriter for the format.
+ *
+ * Identifiers are interned into the tables of the module and function being read.
+ */
+public class IRBinaryReader {
+    
+    /**
+     * Identifier as written, before being interned
+     * @param idClass
+     * @param name
+     */
+    private record IdentifierEntry(IRIdentifierClass idClass, String name) {}
+    
+    private DataInputStream in;
+    
+    private List<String> strings;
+    
+    private List<IdentifierEntry> identifiers;
+    
+    // Module and function being read
+    private IRModule module;
+    private IRFunction function;
+    
+    /**
+     * @param in
+     */
+    public IRBinaryReader(InputStream in) {
+        this.in = new DataInputStream(in);
+        this.strings = new ArrayList<>();
+        this.identifiers = new ArrayList<>();
+    }
+    
+    /**
+     * Reads a module from a file
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static IRModule read(Path file) throws IOException {
+        try(BufferedInputStream bis = new BufferedInputStream(Files.newInputStream(file))) {
+            return new IRBinaryReader(bis).readModule();
+        }
+    }
+    
+    /**
+     * Reads a module with its header
+     * @return
+     * @throws IOException
+     */
+    public IRModule readModule() throws IOException {
+        if(this.in.readInt() != IRBinaryWriter.MAGIC) {
+            throw new IOException("Not a binary IR file");
+        }
+        
+        int version = this.in.readInt();
+        if(version != IRBinaryWriter.VERSION) {
+            throw new IOException("Unsupported binary IR version " + version);
+        }
+        
+        String name = readString(),
+               source = readString();
+        
+        this.module = new IRModule(name, source == null ? null : Paths.get(source));
+        
+        // Libraries
+        int libraryCount = readVar();
+        
+        for(int i = 0; i < libraryCount; i++) {
+            Path path = Paths.get(readString());
+            this.module.addLibrary(path, readString());
+        }
+        
+        // Globals
+        int globalCount = readVar();
+        
+        for(int i = 0; i < globalCount; i++) {
+            this.module.addGlobal(readGlobal());
+        }
+        
+        // Functions
+        int functionCount = readVar();
+        
+        for(int i = 0; i < functionCount; i++) {
+            this.module.addFunction(readFunction(this.module));
+        }
+        
+        return this.module;
+    }
+    
+    /**
+     * Reads a global. Identifiers are interned into the module being read, if any.
+     * @return
+     * @throws IOException
+     */
+    public IRGlobal readGlobal() throws IOException {
+        this.function = null;
+        
+        IRIdentifier id = readIdentifier();
+        boolean constant = this.in.readBoolean();
+        int count = readVar();
+        List<IRValue> contents = new ArrayList<>(count);
+        
+        for(int i = 0; i < count; i++) {
+            contents.add(readValue());
+        }
+        
+        return new IRGlobal(id, contents, constant);
+    }
+    
+    /**
+     * Reads a function
+     * @param module Module the function belongs to
+     * @return
+     * @throws IOException
+     */
+    public IRFunction readFunction(IRModule module) throws IOException {
+        this.module = module;
+        this.function = null;
+        
+        IRIdentifier id = readIdentifier();
+        IRType returnType = readEnum(IRType.class);
+        boolean external = this.in.readBoolean();
+        int fuid = readVar(),
+            line = readVar();
+        
+        this.function = new IRFunction(id, returnType, external, fuid, module, line);
+        IRArgumentList args = readArguments();
+        
+        for(int i = 0; i < args.getArgumentCount(); i++) {
+            this.function.addArgument(args.getName(i), args.getType(i));
+        }
+        
+        if(!external) {
+            int blockCount = readVar();
+            
+            for(int i = 0; i < blockCount; i++) {
+                this.function.addBasicBlock(readBasicBlock());
+            }
+        }
+        
+        IRFunction f = this.function;
+        this.function = null;
+        return f;
+    }
+    
+    /**
+     * Reads a basic block of the current function
+     * @return
+     * @throws IOException
+     */
+    private IRBasicBlock readBasicBlock() throws IOException {
+        IRIdentifier id = readIdentifier();
+        IRBasicBlock bb = new IRBasicBlock(id, this.module, this.function, readVar());
+        IRArgumentList args = readArguments();
+        
+        for(int i = 0; i < args.getArgumentCount(); i++) {
+            bb.addArgument(args.getName(i), args.getType(i));
+        }
+        
+        int predCount = readVar();
+        
+        for(int i = 0; i < predCount; i++) {
+            bb.addPredecessor(readIdentifier());
+        }
+        
+        int instCount = readVar();
+        
+        for(int i = 0; i < instCount; i++) {
+            IRLinearOperation op = readEnum(IRLinearOperation.class);
+            IRIdentifier dest = readIdentifier();
+            IRType type = readEnum(IRType.class);
+            IRValue a = readValue(),
+                    b = readValue();
+            IRCondition cond = readEnum(IRCondition.class);
+            IRValue ca = readValue(),
+                    cb = readValue();
+            IRArgumentMapping mapping = readMapping();
+            
+            bb.addInstruction(new IRLinearInstruction(op, dest, type, a, b, cond, ca, cb, mapping, bb, readVar()));
+        }
+        
+        IRBranchOperation op = readEnum(IRBranchOperation.class);
+        IRCondition cond = readEnum(IRCondition.class);
+        IRValue ca = readValue(),
+                cb = readValue();
+        IRIdentifier trueBlock = readIdentifier();
+        IRArgumentMapping trueMapping = readMapping();
+        IRIdentifier falseBlock = readIdentifier();
+        IRArgumentMapping falseMapping = readMapping();
+        IRValue ret = readValue();
+        
+        bb.setExitInstruction(new IRBranchInstruction(op, cond, ca, cb, trueBlock, trueMapping, falseBlock, falseMapping, ret, bb, readVar()));
+        
+        return bb;
+    }
+    
+    /**
+     * Reads an argument list
+     * @return
+     * @throws IOException
+     */
+    private IRArgumentList readArguments() throws IOException {
+        IRArgumentList args = new IRArgumentList();
+        int count = readVar();
+        
+        for(int i = 0; i < count; i++) {
+            IRIdentifier name = readIdentifier();
+            args.addArgument(name, readEnum(IRType.class));
+        }
+        
+        return args;
+    }
+    
+    /**
+     * Reads an argument mapping
+     * @return
+     * @throws IOException
+     */
+    private IRArgumentMapping readMapping() throws IOException {
+        int count = readVar() - 1;
+        
+        if(count < 0) {
+            return null;
+        }
+        
+        Map<IRIdentifier, IRValue> map = new HashMap<>();
+        List<IRIdentifier> ordering = new ArrayList<>(count);
+        
+        for(int i = 0; i < count; i++) {
+            IRIdentifier name = readIdentifier();
+            IRValue value = readValue();
+            ordering.add(name);
+            
+            if(value != null) {
+                map.put(name, value);
+            }
+        }
+        
+        return new IRArgumentMapping(map, ordering);
+    }
+    
+    /**
+     * @return
+     * @throws IOException
+     */
+    private IRIdentifier readIdentifier() throws IOException {
+        IRValue v = readValue();
+        
+        if(v == null || v instanceof IRIdentifier) {
+            return (IRIdentifier) v;
+        }
+        
+        throw new IOException("Expected identifier, got " + v);
+    }
+    
+    /**
+     * Reads a value, interning identifiers in the current function or module
+     * @return
+     * @throws IOException
+     */
+    private IRValue readValue() throws IOException {
+        int tag = readVar();
+        
+        switch(tag) {
+            case 0:
+                return null;
+            
+            case 1: {
+                IRType type = readEnum(IRType.class);
+                int zz = readVar();
+                return new IRConstant((zz >>> 1) ^ -(zz & 1), type, false);
+            }
+            
+            case 2: {
+                IRIdentifierClass idClass = readEnum(IRIdentifierClass.class);
+                IdentifierEntry entry = new IdentifierEntry(idClass, readString());
+                this.identifiers.add(entry);
+                return intern(entry);
+            }
+            
+            default:
+                if(tag < 0 || tag - 3 >= this.identifiers.size()) {
+                    throw new IOException("Invalid identifier reference " + (tag - 3));
+                }
+                
+                return intern(this.identifiers.get(tag - 3));
+        }
+    }
+    
+    /**
+     * @param entry
+     * @return The identifier, interned in the current function or module
+     */
+    private IRIdentifier intern(IdentifierEntry entry) {
+        if(this.function != null) {
+            return this.function.getIdentifier(entry.name(), entry.idClass());
+        } else if(this.module != null) {
+            return this.module.getIdentifierTable().intern(entry.name(), entry.idClass());
+        } else {
+            return new IRIdentifier(entry.name(), entry.idClass());
+        }
+    }
+    
+    /**
+     * Reads an enum constant by name
+     * @param <T>
+     * @param type
+     * @return
+     * @throws IOException
+     */
+    private <T extends Enum<T>> T readEnum(Class<T> type) throws IOException {
+        String name = readString();
+        
+        try {
+            return (name == null) ? null : Enum.valueOf(type, name);
+        } catch(IllegalArgumentException e) {
+            throw new IOException("Unknown " + type.getSimpleName() + " " + name);
+        }
+    }
+    
+    /**
+     * @return
+     * @throws IOException
+     */
+    private String readString() throws IOException {
+        int tag = readVar();
+        
+        if(tag == 0) {
+            return null;
+        } else if(tag == 1) {
+            String s = this.in.readUTF();
+            this.strings.add(s);
+            return s;
+        } else if(tag > 0 && tag - 2 < this.strings.size()) {
+            return this.strings.get(tag - 2);
+        }
+        
+        throw new IOException("Invalid string reference " + (tag - 2));
+    }
+    
+    /**
+     * Reads an unsigned LEB128 integer
+     * @return
+     * @throws IOException
+     */
+    private int readVar() throws IOException {
+        int v = 0;
+        
+        for(int shift = 0; shift < 35; shift += 7) {
+            int b = this.in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            
+            if((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        
+        throw new IOException("Malformed integer");
+    }
+}
@@ -0,0 +1,304 @@
+package notsotiny.lang.ir.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import notsotiny.lang.ir.parts.IRArgumentList;
+import notsotiny.lang.ir.parts.IRArgumentMapping;
+import notsotiny.lang.ir.parts.IRBasicBlock;
+import notsotiny.lang.ir.parts.IRBranchInstruction;
+import notsotiny.lang.ir.parts.IRConstant;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRGlobal;
+import notsotiny.lang.ir.parts.IRIdentifier;
+import notsotiny.lang.ir.parts.IRLinearInstruction;
+import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.parts.IRValue;
+
+/**
+ * Writes IR in a compact binary format, read by IRBinaryReader.
+ *
+ * Format
+ * header:      int magic, int version
+ * module:      string name, string source, var count, (string path, string name)*, var count, global*, var count, function*
+ * global:      value id, boolean constant, var count, value*
+ * function:    value id, enum return type, boolean external, var fuid, var line, arguments, (var count, block*) if internal
+ * block:       value id, var line, arguments, var count, value*, var count, linear*, branch
+ * linear:      enum op, value destination, enum type, value a, value b, enum condition, value compare a, value compare b, mapping, var line
+ * branch:      enum op, enum condition, value compare a, value compare b, value true, mapping, value false, mapping, value return, var line
+ * arguments:   var count, (value name, enum type)*
+ * mapping:     var 0 if null, otherwise var count + 1, (value name, value)*. Values are null for names without one.
+ *
+ * Integers marked var are unsigned LEB128. Strings and identifiers are written in full the first time they
+ * appear and referenced by index afterwards, so the output can be streamed without a table up front.
+ * string:      var 0 = null, 1 = new (UTF), n = string n - 2
+ * value:       var 0 = null, 1 = constant (enum type, zigzag var value), 2 = new identifier (enum class, string name),
+ *              n = identifier n - 3
+ * Enums are strings of their names.
+ */
+public class IRBinaryWriter {
+    
+    public static final int MAGIC = 0x4E495242, // NIRB
+                            VERSION = 1;
+    
+    private DataOutputStream out;
+    
+    private Map<String, Integer> strings;
+    
+    private Map<IRIdentifier, Integer> identifiers;
+    
+    /**
+     * @param out
+     */
+    public IRBinaryWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+        this.strings = new HashMap<>();
+        this.identifiers = new HashMap<>();
+    }
+    
+    /**
+     * Writes a module to a file
+     * @param module
+     * @param file
+     * @throws IOException
+     */
+    public static void write(IRModule module, Path file) throws IOException {
+        try(BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(file))) {
+            new IRBinaryWriter(bos).writeModule(module);
+        }
+    }
+    
+    /**
+     * Writes a module with its header
+     * @param module
+     * @throws IOException
+     */
+    public void writeModule(IRModule module) throws IOException {
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        
+        writeString(module.getName());
+        writeString(module.getSourceFile() == null ? null : module.getSourceFile().toString());
+        
+        // Libraries
+        writeVar(module.getLibraryFileMap().size());
+        
+        for(Entry<Path, String> e : module.getLibraryFileMap().entrySet()) {
+            writeString(e.getKey().toString());
+            writeString(e.getValue());
+        }
+        
+        // Globals
+        writeVar(module.getGlobals().size());
+        
+        for(IRGlobal global : module.getGlobals().values()) {
+            writeGlobal(global);
+        }
+        
+        // Functions
+        writeVar(module.getFunctions().size());
+        
+        for(IRFunction function : module.getFunctions().values()) {
+            writeFunction(function);
+        }
+        
+        this.out.flush();
+    }
+    
+    /**
+     * Writes a global
+     * @param global
+     * @throws IOException
+     */
+    public void writeGlobal(IRGlobal global) throws IOException {
+        writeValue(global.getID());
+        this.out.writeBoolean(global.isConstant());
+        writeVar(global.getContents().size());
+        
+        for(IRValue v : global.getContents()) {
+            writeValue(v);
+        }
+    }
+    
+    /**
+     * Writes a function
+     * @param function
+     * @throws IOException
+     */
+    public void writeFunction(IRFunction function) throws IOException {
+        writeValue(function.getID());
+        writeEnum(function.getReturnType());
+        this.out.writeBoolean(function.isExternal());
+        writeVar(function.getFUIDCounter());
+        writeVar(function.getSourceLineNumber());
+        writeArguments(function.getArguments());
+        
+        if(function.isExternal()) {
+            return;
+        }
+        
+        List<IRBasicBlock> blocks = function.getBasicBlockList();
+        writeVar(blocks.size());
+        
+        for(IRBasicBlock bb : blocks) {
+            writeBasicBlock(bb);
+        }
+    }
+    
+    /**
+     * Writes a basic block
+     * @param bb
+     * @throws IOException
+     */
+    private void writeBasicBlock(IRBasicBlock bb) throws IOException {
+        writeValue(bb.getID());
+        writeVar(bb.getSourceLineNumber());
+        writeArguments(bb.getArgumentList());
+        
+        writeVar(bb.getPredecessorBlocks().size());
+        
+        for(IRIdentifier pred : bb.getPredecessorBlocks()) {
+            writeValue(pred);
+        }
+        
+        writeVar(bb.getInstructions().size());
+        
+        for(IRLinearInstruction li : bb.getInstructions()) {
+            writeEnum(li.getOp());
+            writeValue(li.getDestinationID());
+            writeEnum(li.getDestinationType());
+            writeValue(li.getLeftSourceValue());
+            writeValue(li.getRightSourceValue());
+            writeEnum(li.getSelectCondition());
+            writeValue(li.getLeftComparisonValue());
+            writeValue(li.getRightComparisonValue());
+            writeMapping(li.getCallArgumentMapping());
+            writeVar(li.getSourceLineNumber());
+        }
+        
+        IRBranchInstruction bi = bb.getExitInstruction();
+        writeEnum(bi.getOp());
+        writeEnum(bi.getCondition());
+        writeValue(bi.getCompareLeft());
+        writeValue(bi.getCompareRight());
+        writeValue(bi.getTrueTargetBlock());
+        writeMapping(bi.getTrueArgumentMapping());
+        writeValue(bi.getFalseTargetBlock());
+        writeMapping(bi.getFalseArgumentMapping());
+        writeValue(bi.getReturnValue());
+        writeVar(bi.getSourceLineNumber());
+    }
+    
+    /**
+     * Writes an argument list
+     * @param args
+     * @throws IOException
+     */
+    private void writeArguments(IRArgumentList args) throws IOException {
+        writeVar(args.getArgumentCount());
+        
+        for(int i = 0; i < args.getArgumentCount(); i++) {
+            writeValue(args.getName(i));
+            writeEnum(args.getType(i));
+        }
+    }
+    
+    /**
+     * Writes an argument mapping
+     * @param mapping
+     * @throws IOException
+     */
+    private void writeMapping(IRArgumentMapping mapping) throws IOException {
+        if(mapping == null) {
+            writeVar(0);
+            return;
+        }
+        
+        writeVar(mapping.getOrdering().size() + 1);
+        
+        for(IRIdentifier name : mapping.getOrdering()) {
+            writeValue(name);
+            writeValue(mapping.getMapping(name));
+        }
+    }
+    
+    /**
+     * Writes a value, introducing identifiers the first time they're seen
+     * @param v
+     * @throws IOException
+     */
+    private void writeValue(IRValue v) throws IOException {
+        if(v == null) {
+            writeVar(0);
+        } else if(v instanceof IRConstant c) {
+            writeVar(1);
+            writeEnum(c.getType());
+            writeVar((c.getValue() << 1) ^ (c.getValue() >> 31));
+        } else {
+            IRIdentifier id = (IRIdentifier) v;
+            Integer index = this.identifiers.get(id);
+            
+            if(index == null) {
+                this.identifiers.put(id, this.identifiers.size());
+                writeVar(2);
+                writeEnum(id.getIDClass());
+                writeString(id.getName());
+            } else {
+                writeVar(index + 3);
+            }
+        }
+    }
+    
+    /**
+     * Writes an enum constant by name
+     * @param e
+     * @throws IOException
+     */
+    private void writeEnum(Enum<?> e) throws IOException {
+        writeString(e == null ? null : e.name());
+    }
+    
+    /**
+     * Writes a string, introducing it the first time it's seen
+     * @param s
+     * @throws IOException
+     */
+    private void writeString(String s) throws IOException {
+        if(s == null) {
+            writeVar(0);
+            return;
+        }
+        
+        Integer index = this.strings.get(s);
+        
+        if(index == null) {
+            this.strings.put(s, this.strings.size());
+            writeVar(1);
+            this.out.writeUTF(s);
+        } else {
+            writeVar(index + 2);
+        }
+    }
+    
+    /**
+     * Writes an unsigned LEB128 integer
+     * @param v
+     * @throws IOException
+     */
+    private void writeVar(int v) throws IOException {
+        while((v & ~0x7F) != 0) {
+            this.out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        
+        this.out.writeByte(v);
+    }
+}
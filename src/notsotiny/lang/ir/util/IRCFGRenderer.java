@@ -1,6 +1,10 @@
 package notsotiny.lang.ir.util;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -52,49 +56,69 @@ public class IRCFGRenderer {
     
     /**
      * Add a bb and its successors to the graph
-     * @param irbb
+     * @param entryBB
      * @param g
      * @param inGraph
      */
-    private static void addToGraph(IRBasicBlock irbb, Graph g, Set<IRIdentifier> inGraph) {
-        IRIdentifier bbID = irbb.getID();
-        String bbn = bbID.toString();
+    private static void addToGraph(IRBasicBlock entryBB, Graph g, Set<IRIdentifier> inGraph) {
+        // Add reachable nodes. Explicit stack, so that large functions don't overflow the call stack
+        List<IRBasicBlock> added = new ArrayList<>();
+        Deque<IRBasicBlock> stack = new ArrayDeque<>();
+        stack.push(entryBB);
         
-        if(inGraph.contains(bbID)) {
-            return;
-        }
+        while(!stack.isEmpty()) {
+            IRBasicBlock irbb = stack.pop();
+            IRIdentifier bbID = irbb.getID();
+            String bbn = bbID.toString();
         
-        LOG.finest(bbn);
+            if(inGraph.contains(bbID)) {
+                continue;
+            }
         
-        inGraph.add(bbID);
+            LOG.finest(bbn);
         
-        g.addNode(bbn).setAttribute("ui.label", bbn);
+            inGraph.add(bbID);
+            added.add(irbb);
         
-        IRBranchInstruction exit = irbb.getExitInstruction();
+            g.addNode(bbn).setAttribute("ui.label", bbn);
         
-        IRIdentifier tsID = exit.getTrueTargetBlock(),
-                     fsID = exit.getFalseTargetBlock();
+            IRBranchInstruction exit = irbb.getExitInstruction();
         
-        if(tsID != null) {
-            String tsn = tsID.toString();
-            IRBasicBlock tsBB = irbb.getFunction().getBasicBlock(tsID);
-            
-            addToGraph(tsBB, g, inGraph);
+            IRIdentifier tsID = exit.getTrueTargetBlock(),
+                         fsID = exit.getFalseTargetBlock();
+        
+            if(fsID != null) {
+                stack.push(irbb.getFunction().getBasicBlock(fsID));
+            }
             
-            try {
-                g.addEdge(bbn + tsn, bbn, tsn, true);
-            } catch(Exception e) {}
+            if(tsID != null) {
+                stack.push(irbb.getFunction().getBasicBlock(tsID));
+            }
         }
         
-        if(fsID != null) {
-            String fsn = fsID.toString();
-            IRBasicBlock fsBB = irbb.getFunction().getBasicBlock(fsID);
+        // Add edges once their nodes exist
+        for(IRBasicBlock irbb : added) {
+            String bbn = irbb.getID().toString();
+            IRBranchInstruction exit = irbb.getExitInstruction();
             
-            addToGraph(fsBB, g, inGraph);
+            IRIdentifier tsID = exit.getTrueTargetBlock(),
+                         fsID = exit.getFalseTargetBlock();
+            
+            if(tsID != null) {
+                String tsn = tsID.toString();
+            
+                try {
+                    g.addEdge(bbn + tsn, bbn, tsn, true);
+                } catch(Exception e) {}
+            }
+        
+            if(fsID != null) {
+                String fsn = fsID.toString();
             
-            try {
-                g.addEdge(bbn + fsn, bbn, fsn, true);
-            } catch(Exception e) {}
+                try {
+                    g.addEdge(bbn + fsn, bbn, fsn, true);
+                } catch(Exception e) {}
+            }
         }
     }
 }
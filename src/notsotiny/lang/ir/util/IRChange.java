@@ -0,0 +1,49 @@
+package notsotiny.lang.ir.util;
+
+/**
+ * What a transformation changed in a function, from least to most disruptive
+ */
+public enum IRChange {
+    NONE    (false, false), // Nothing changed
+    CODE    (false, true),  // Instructions or BB arguments changed, control flow did not
+    CFG     (true, true),   // Control flow changed
+    ;
+    
+    private boolean cfgChanged,
+                    codeChanged;
+    
+    private IRChange(boolean cfgChanged, boolean codeChanged) {
+        this.cfgChanged = cfgChanged;
+        this.codeChanged = codeChanged;
+    }
+    
+    /**
+     * @param analysis
+     * @return true if this change invalidates the analysis
+     */
+    public boolean invalidates(IRAnalysis analysis) {
+        return (this.cfgChanged && analysis.dependsOnCFG()) || (this.codeChanged && analysis.dependsOnCode());
+    }
+    
+    /**
+     * @param other
+     * @return The change made by this change and other together
+     */
+    public IRChange combine(IRChange other) {
+        return (other.ordinal() > this.ordinal()) ? other : this;
+    }
+    
+    /**
+     * @return true if control flow changed
+     */
+    public boolean cfgChanged() {
+        return this.cfgChanged;
+    }
+    
+    /**
+     * @return true if anything changed
+     */
+    public boolean codeChanged() {
+        return this.codeChanged;
+    }
+}
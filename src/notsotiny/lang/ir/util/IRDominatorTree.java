@@ -0,0 +1,347 @@
+package notsotiny.lang.ir.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import notsotiny.lang.ir.parts.IRBasicBlock;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRIdentifier;
+
+/**
+ * Dominator or postdominator tree of a function.
+ *
+ * Blocks reachable from the root are numbered in reverse postorder and immediate dominators are stored as an
+ * int[] of those numbers, computed as described by Cooper et al. A Simple, Fast Dominance Algorithm. Each node
+ * also has preorder and postorder numbers in the tree, so dominates() is two comparisons.
+ *
+ * Postdominator trees are rooted at a virtual exit block which is the successor of every RET block.
+ */
+public class IRDominatorTree {
+    
+    private IRFunction function;
+    
+    private boolean isPostdominatorTree;
+    
+    // Reachable blocks in reverse postorder, and their numbers
+    private List<IRIdentifier> nodes;
+    private Map<IRIdentifier, Integer> numbers;
+    
+    // Immediate dominator of each node. The root is its own immediate dominator.
+    private int[] idom;
+    
+    // Children of node n are children[childStart[n]] to children[childStart[n + 1] - 1], in reverse postorder
+    private int[] childStart,
+                  children;
+    
+    // Preorder and postorder numbers in the tree
+    private int[] preorder,
+                  postorder;
+    
+    // Map form, created on request
+    private Map<IRIdentifier, IRIdentifier> idomMap = null;
+    
+    /**
+     * @param function
+     * @param reversePostorderList Reachable blocks in reverse postorder of the (reversed, for postdominators) CFG, root first
+     * @param isPostdominatorTree
+     */
+    private IRDominatorTree(IRFunction function, List<IRIdentifier> reversePostorderList, boolean isPostdominatorTree) {
+        this.function = function;
+        this.isPostdominatorTree = isPostdominatorTree;
+        this.nodes = reversePostorderList;
+        this.numbers = new HashMap<>();
+        
+        for(int i = 0; i < this.nodes.size(); i++) {
+            this.numbers.put(this.nodes.get(i), i);
+        }
+        
+        computeDominators();
+        computeTree();
+    }
+    
+    /**
+     * Computes the dominator tree of a function
+     * @param function
+     * @param reversePostorderList
+     * @return
+     */
+    public static IRDominatorTree dominators(IRFunction function, List<IRIdentifier> reversePostorderList) {
+        return new IRDominatorTree(function, reversePostorderList, false);
+    }
+    
+    /**
+     * Computes the postdominator tree of a function
+     * @param function
+     * @param exitID ID used as virtual exit block
+     * @return
+     */
+    public static IRDominatorTree postdominators(IRFunction function, IRIdentifier exitID) {
+        return new IRDominatorTree(function, IRUtil.getReversedCFGReversePostorderList(function, exitID), true);
+    }
+    
+    /**
+     * Computes immediate dominators
+     */
+    private void computeDominators() {
+        int n = this.nodes.size();
+        
+        // Predecessor numbers of each node, in the CFG being dominated
+        int[][] preds = new int[n][];
+        
+        for(int i = 0; i < n; i++) {
+            List<IRIdentifier> predIDs = getPredecessors(this.nodes.get(i));
+            int[] p = new int[predIDs.size()];
+            int count = 0;
+            
+            for(IRIdentifier predID : predIDs) {
+                Integer num = this.numbers.get(predID);
+                
+                // Unreachable predecessors don't affect dominance
+                if(num != null) {
+                    p[count++] = num;
+                }
+            }
+            
+            preds[i] = (count == p.length) ? p : Arrays.copyOf(p, count);
+        }
+        
+        // Iterate until converged
+        this.idom = new int[n];
+        Arrays.fill(this.idom, -1);
+        this.idom[0] = 0;
+        
+        boolean changed = true;
+        
+        while(changed) {
+            changed = false;
+            
+            // All nodes except the root in reverse postorder
+            for(int b = 1; b < n; b++) {
+                int newIDom = -1;
+                
+                for(int p : preds[b]) {
+                    // If the predecessor's dominator has been calculated, update via intersection
+                    if(this.idom[p] != -1) {
+                        newIDom = (newIDom == -1) ? p : intersect(p, newIDom);
+                    }
+                }
+                
+                if(newIDom != this.idom[b]) {
+                    this.idom[b] = newIDom;
+                    changed = true;
+                }
+            }
+        }
+    }
+    
+    /**
+     * intersect function used by the dominators finding algorithm.
+     * In the paper, < is used since it is comparing postorder numbers. We are comparing reverse postorder
+     * numbers, so we use >
+     * @param a
+     * @param b
+     * @return
+     */
+    private int intersect(int a, int b) {
+        while(a != b) {
+            while(a > b) {
+                a = this.idom[a];
+            }
+            
+            while(b > a) {
+                b = this.idom[b];
+            }
+        }
+        
+        return a;
+    }
+    
+    /**
+     * Builds child arrays and tree numbering
+     */
+    private void computeTree() {
+        int n = this.nodes.size();
+        
+        // Count children, then place them. Iterating in order keeps children in reverse postorder.
+        this.childStart = new int[n + 1];
+        
+        for(int b = 1; b < n; b++) {
+            this.childStart[this.idom[b] + 1]++;
+        }
+        
+        for(int i = 0; i < n; i++) {
+            this.childStart[i + 1] += this.childStart[i];
+        }
+        
+        this.children = new int[Math.max(n - 1, 0)];
+        int[] fill = Arrays.copyOf(this.childStart, n);
+        
+        for(int b = 1; b < n; b++) {
+            this.children[fill[this.idom[b]]++] = b;
+        }
+        
+        // Number the tree with an explicit stack
+        this.preorder = new int[n];
+        this.postorder = new int[n];
+        
+        if(n == 0) {
+            return;
+        }
+        
+        int[] nextChild = Arrays.copyOf(this.childStart, n);
+        Deque<Integer> stack = new ArrayDeque<>();
+        int preCount = 0,
+            postCount = 0;
+        
+        stack.push(0);
+        this.preorder[0] = preCount++;
+        
+        while(!stack.isEmpty()) {
+            int node = stack.peek();
+            
+            if(nextChild[node] < this.childStart[node + 1]) {
+                int child = this.children[nextChild[node]++];
+                this.preorder[child] = preCount++;
+                stack.push(child);
+            } else {
+                stack.pop();
+                this.postorder[node] = postCount++;
+            }
+        }
+    }
+    
+    /**
+     * @param id
+     * @return Predecessors of a block in the CFG being dominated
+     */
+    private List<IRIdentifier> getPredecessors(IRIdentifier id) {
+        if(!this.isPostdominatorTree) {
+            return this.function.getBasicBlock(id).getPredecessorBlocks();
+        }
+        
+        // Reversed CFG. The virtual exit has no predecessors and precedes every RET block.
+        IRBasicBlock bb = this.function.getBasicBlock(id);
+        
+        if(bb == null) {
+            return List.of();
+        }
+        
+        List<IRIdentifier> successors = bb.getSuccessorBlocks();
+        return successors.isEmpty() ? List.of(getRoot()) : successors;
+    }
+    
+    /**
+     * @param id
+     * @return Number of the node, or -1 if it isn't reachable from the root
+     */
+    private int number(IRIdentifier id) {
+        Integer num = this.numbers.get(id);
+        return (num == null) ? -1 : num;
+    }
+    
+    /**
+     * @param a
+     * @param b
+     * @return true if a dominates b. Every block dominates itself. Blocks unreachable from the root dominate nothing and are dominated by nothing.
+     */
+    public boolean dominates(IRIdentifier a, IRIdentifier b) {
+        int na = number(a),
+            nb = number(b);
+        
+        if(na == -1 || nb == -1) {
+            return false;
+        }
+        
+        return this.preorder[na] <= this.preorder[nb] && this.postorder[nb] <= this.postorder[na];
+    }
+    
+    /**
+     * @param a
+     * @param b
+     * @return true if a dominates b and a is not b
+     */
+    public boolean strictlyDominates(IRIdentifier a, IRIdentifier b) {
+        return !a.equals(b) && dominates(a, b);
+    }
+    
+    /**
+     * @param id
+     * @return Immediate dominator of the block. The root is its own immediate dominator. null if the block isn't reachable from the root.
+     */
+    public IRIdentifier getImmediateDominator(IRIdentifier id) {
+        int num = number(id);
+        return (num == -1) ? null : this.nodes.get(this.idom[num]);
+    }
+    
+    /**
+     * @param id
+     * @return Blocks immediately dominated by the block, in reverse postorder
+     */
+    public List<IRIdentifier> getChildren(IRIdentifier id) {
+        int num = number(id);
+        
+        if(num == -1) {
+            return List.of();
+        }
+        
+        List<IRIdentifier> list = new ArrayList<>(this.childStart[num + 1] - this.childStart[num]);
+        
+        for(int i = this.childStart[num]; i < this.childStart[num + 1]; i++) {
+            list.add(this.nodes.get(this.children[i]));
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @return Map from each block of the function to its immediate dominator, null if unreachable from the root.
+     * The root maps to itself.
+     */
+    public synchronized Map<IRIdentifier, IRIdentifier> getImmediateDominatorMap() {
+        if(this.idomMap == null) {
+            Map<IRIdentifier, IRIdentifier> map = new HashMap<>();
+            
+            for(IRBasicBlock bb : this.function.getBasicBlockList()) {
+                map.put(bb.getID(), null);
+            }
+            
+            for(int i = 0; i < this.nodes.size(); i++) {
+                map.put(this.nodes.get(i), this.nodes.get(this.idom[i]));
+            }
+            
+            this.idomMap = map;
+        }
+        
+        return this.idomMap;
+    }
+    
+    /**
+     * @param id
+     * @return true if the block is reachable from the root
+     */
+    public boolean contains(IRIdentifier id) {
+        return this.numbers.containsKey(id);
+    }
+    
+    /**
+     * @return Root of the tree. The entry block, or the virtual exit block of a postdominator tree.
+     */
+    public IRIdentifier getRoot() {
+        return this.nodes.get(0);
+    }
+    
+    /**
+     * @return Reachable blocks in reverse postorder
+     */
+    public List<IRIdentifier> getReversePostorderList() {
+        return Collections.unmodifiableList(this.nodes);
+    }
+    
+    public boolean isPostdominatorTree() { return this.isPostdominatorTree; }
+}
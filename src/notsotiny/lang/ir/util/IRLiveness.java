@@ -0,0 +1,643 @@
+package notsotiny.lang.ir.util;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import notsotiny.lang.ir.parts.IRArgumentMapping;
+import notsotiny.lang.ir.parts.IRBasicBlock;
+import notsotiny.lang.ir.parts.IRBranchInstruction;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRIdentifier;
+import notsotiny.lang.ir.parts.IRIdentifierClass;
+import notsotiny.lang.ir.parts.IRIdentifierTable;
+import notsotiny.lang.ir.parts.IRLinearInstruction;
+import notsotiny.lang.ir.parts.IRLinearOperation;
+import notsotiny.lang.ir.parts.IRValue;
+import notsotiny.lib.data.Pair;
+import notsotiny.lib.data.TreeNode;
+import notsotiny.lib.data.UnionFindForest;
+import notsotiny.lib.util.MapUtil;
+
+/**
+ * Liveness of the LOCALs of a function.
+ *
+ * LOCALs are numbered by their index in the function's identifier table, and the live-in and live-out sets
+ * of each basic block are stored as bitsets over those indices. Each bitset only holds the range of words it
+ * has had bits in, so large functions whose values are short-lived don't need blocks * locals bits.
+ * Computed non-iteratively: a postorder pass over the forward edges followed by propagation through the
+ * loop-nesting forest. Requires a reducible CFG.
+ *
+ * getLivenessSets() provides the sets as modifiable views backed by the bitsets. isLiveAcross() answers
+ * per-instruction queries from live-after sets of one block at a time.
+ */
+public class IRLiveness {
+    
+    private IRFunction function;
+    
+    // Numbers locals
+    private IRIdentifierTable table;
+    
+    // BB ID -> index into the bitset arrays
+    private Map<IRIdentifier, Integer> blockIndexMap;
+    
+    // Bitsets of each BB
+    private Bits[] liveIn,
+                   liveOut,
+                   blockArgs;
+    
+    // Live-after sets of the most recently queried BB, for isLiveAcross
+    private IRBasicBlock liveAfterBlock = null;
+    private Bits[] liveAfter;
+    
+    /**
+     * Computes liveness, given the loop nesting forest and preorder DFS information
+     * @param function
+     * @param argAssignmentsAreLiveOut If true, values assigned to the arguments of successors are considered live-out
+     * @param loopNestingForest
+     * @param dfsOrderList
+     * @param dfsAncestryMap
+     */
+    public IRLiveness(IRFunction function, boolean argAssignmentsAreLiveOut, UnionFindForest<IRIdentifier> loopNestingForest, List<IRIdentifier> dfsOrderList, Map<Integer, Integer> dfsAncestryMap) {
+        this.function = function;
+        this.table = function.getIdentifierTable();
+        this.blockIndexMap = new HashMap<>();
+        
+        List<IRBasicBlock> blocks = function.getBasicBlockList();
+        
+        // Number blocks and allocate bitsets
+        this.liveIn = new Bits[blocks.size()];
+        this.liveOut = new Bits[blocks.size()];
+        this.blockArgs = new Bits[blocks.size()];
+        
+        for(int i = 0; i < blocks.size(); i++) {
+            IRBasicBlock bb = blocks.get(i);
+            this.blockIndexMap.put(bb.getID(), i);
+            this.liveIn[i] = new Bits();
+            this.liveOut[i] = new Bits();
+            this.blockArgs[i] = new Bits();
+            
+            for(IRIdentifier id : bb.getArgumentList().getNameList()) {
+                this.blockArgs[i].set(indexOf(id));
+            }
+        }
+        
+        // Postorder partial liveness
+        partialLivenessDFS(function.getEntryBlock().getID(), argAssignmentsAreLiveOut, new boolean[blocks.size()], MapUtil.listToMap(dfsOrderList), dfsAncestryMap);
+        
+        // Propagate liveness through loops
+        for(TreeNode<IRIdentifier> loopHeaderNode : loopNestingForest.getRoots()) {
+            propagateLoops(loopHeaderNode);
+        }
+    }
+    
+    /**
+     * A block on the stack of partialLivenessDFS
+     * @param id
+     * @param next Remaining successors to search
+     */
+    private record DFSFrame(IRIdentifier id, Iterator<IRIdentifier> next) {}
+    
+    /**
+     * Computes partial liveness information via a DFS. Iterative, so that large functions don't overflow the stack.
+     * @param entryID
+     * @param argAssignmentsAreLiveOut
+     * @param processed
+     * @param dfsIndexMap
+     * @param dfsAncestryMap
+     */
+    private void partialLivenessDFS(IRIdentifier entryID, boolean argAssignmentsAreLiveOut, boolean[] processed, Map<IRIdentifier, Integer> dfsIndexMap, Map<Integer, Integer> dfsAncestryMap) {
+        Deque<DFSFrame> stack = new ArrayDeque<>();
+        stack.push(new DFSFrame(entryID, this.function.getBasicBlock(entryID).getSuccessorBlocks().iterator()));
+        
+        while(!stack.isEmpty()) {
+            DFSFrame frame = stack.peek();
+            
+            if(frame.next().hasNext()) {
+                // Process each unprocessed successor that isn't a backedge
+                IRIdentifier successorID = frame.next().next();
+                
+                if(!IRUtil.isBackedge(frame.id(), successorID, dfsIndexMap, dfsAncestryMap) && !processed[this.blockIndexMap.get(successorID)]) {
+                    stack.push(new DFSFrame(successorID, this.function.getBasicBlock(successorID).getSuccessorBlocks().iterator()));
+                }
+            } else {
+                // Successors done, process this block
+                stack.pop();
+                computePartialLiveness(frame.id(), argAssignmentsAreLiveOut, dfsIndexMap, dfsAncestryMap);
+                processed[this.blockIndexMap.get(frame.id())] = true;
+            }
+        }
+    }
+    
+    /**
+     * Computes partial liveness information of a block whose non-backedge successors have been processed
+     * @param bbID
+     * @param argAssignmentsAreLiveOut
+     * @param dfsIndexMap
+     * @param dfsAncestryMap
+     */
+    private void computePartialLiveness(IRIdentifier bbID, boolean argAssignmentsAreLiveOut, Map<IRIdentifier, Integer> dfsIndexMap, Map<Integer, Integer> dfsAncestryMap) {
+        IRBasicBlock bb = this.function.getBasicBlock(bbID);
+        int bbIndex = this.blockIndexMap.get(bbID);
+        
+        Bits live = new Bits();
+        
+        IRBranchInstruction bbExit = bb.getExitInstruction();
+        
+        // Initialize 'currently live' with variables assigned to BB args if applicable
+        if(argAssignmentsAreLiveOut) {
+            addMappingUses(live, bbExit.getTrueArgumentMapping());
+            addMappingUses(live, bbExit.getFalseArgumentMapping());
+        }
+        
+        // Include non-bbarg live-ins of non-backedge successors in live set
+        for(IRIdentifier successorID : bb.getSuccessorBlocks()) {
+            if(!IRUtil.isBackedge(bbID, successorID, dfsIndexMap, dfsAncestryMap)) {
+                int successorIndex = this.blockIndexMap.get(successorID);
+                live.orAndNot(this.liveIn[successorIndex], this.blockArgs[successorIndex]);
+            }
+        }
+        
+        // Record current live set as live-outs for this bb
+        this.liveOut[bbIndex].orAndNot(live, null);
+        
+        // If assignments are not considered live-out, add them to the live set here
+        if(!argAssignmentsAreLiveOut) {
+            addMappingUses(live, bbExit.getTrueArgumentMapping());
+            addMappingUses(live, bbExit.getFalseArgumentMapping());
+        }
+        
+        // Go through the BB's code backwards, updating liveness accordingly
+        addBranchUses(live, bbExit);
+        
+        List<IRLinearInstruction> instructions = bb.getInstructions();
+        for(int i = instructions.size() - 1; i >= 0; i--) {
+            transfer(live, instructions.get(i));
+        }
+        
+        // Live-in = live set + arguments
+        live.orAndNot(this.blockArgs[bbIndex], null);
+        this.liveIn[bbIndex].orAndNot(live, null);
+    }
+    
+    /**
+     * Completes liveness information by propagating through loops
+     * @param rootNode
+     */
+    private void propagateLoops(TreeNode<IRIdentifier> rootNode) {
+        // Parents are handled before their children, so a worklist suffices
+        Deque<TreeNode<IRIdentifier>> worklist = new ArrayDeque<>();
+        worklist.push(rootNode);
+        
+        while(!worklist.isEmpty()) {
+            TreeNode<IRIdentifier> loopNode = worklist.pop();
+            IRIdentifier headerID = loopNode.getElement();
+        
+            // Is this a loop header -> has body or is a self-loop
+            if(loopNode.getChildren().size() != 0 || this.function.getBasicBlock(headerID).getSuccessorBlocks().contains(headerID)) {
+                int headerIndex = this.blockIndexMap.get(headerID);
+            
+                // Live in loop = live in(header) - header args
+                Bits liveInLoop = new Bits();
+                liveInLoop.orAndNot(this.liveIn[headerIndex], this.blockArgs[headerIndex]);
+            
+                // Add liveInLoop to loop header's live-out
+                this.liveOut[headerIndex].orAndNot(liveInLoop, null);
+            
+                // Add liveInLoop to live-in and live-out of all children
+                for(TreeNode<IRIdentifier> child : loopNode.getChildren()) {
+                    int childIndex = this.blockIndexMap.get(child.getElement());
+                    this.liveIn[childIndex].orAndNot(liveInLoop, null);
+                    this.liveOut[childIndex].orAndNot(liveInLoop, null);
+                
+                    // and continue with the child
+                    worklist.push(child);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Updates a live set to before an instruction, given the live set after it
+     * @param live
+     * @param li
+     */
+    private void transfer(Bits live, IRLinearInstruction li) {
+        // Remove defined variable
+        if(li.hasDestination()) {
+            live.clear(indexOf(li.getDestinationID()));
+        }
+        
+        // Add used variables
+        // Sources
+        switch(li.getSourceCount()) {
+            // This switch uses fall-through to reduce code repetition
+            case 4:
+                // All four
+                addUse(live, li.getLeftComparisonValue());
+                addUse(live, li.getRightComparisonValue());
+            
+            case 2:
+                // left & right
+                addUse(live, li.getRightSourceValue());
+            
+            case 1:
+                // left
+                addUse(live, li.getLeftSourceValue());
+                break;
+            
+            default:
+                throw new IllegalArgumentException("Linear op with 0 arguments: " + li + " in " + li.getBasicBlock().getID() + " in " + this.function.getID() + " in " + this.function.getModule().getName());
+        }
+        
+        // Argument mappings
+        if(li.getOp() == IRLinearOperation.CALLN || li.getOp() == IRLinearOperation.CALLR) {
+            for(IRValue argMapVal : li.getCallArgumentMapping().getMap().values()) {
+                addUse(live, argMapVal);
+            }
+        }
+    }
+    
+    /**
+     * Adds the values used by a branch, excluding argument mappings
+     * @param live
+     * @param bi
+     */
+    private void addBranchUses(Bits live, IRBranchInstruction bi) {
+        switch(bi.getOp()) {
+            case JCC:
+                // Uses comparison arguments
+                addUse(live, bi.getCompareLeft());
+                addUse(live, bi.getCompareRight());
+                break;
+            
+            case RET:
+                // Uses the return value
+                addUse(live, bi.getReturnValue());
+                break;
+            
+            default:
+                // JMP, no use
+        }
+    }
+    
+    /**
+     * Adds the values mapped by an argument mapping
+     * @param live
+     * @param mapping
+     */
+    private void addMappingUses(Bits live, IRArgumentMapping mapping) {
+        if(mapping != null) {
+            for(IRValue v : mapping.getMap().values()) {
+                addUse(live, v);
+            }
+        }
+    }
+    
+    /**
+     * Adds v to live if it's a local
+     * @param live
+     * @param v
+     */
+    private void addUse(Bits live, IRValue v) {
+        if(v instanceof IRIdentifier id && id.getIDClass() == IRIdentifierClass.LOCAL) {
+            live.set(indexOf(id));
+        }
+    }
+    
+    /**
+     * Determines whether a local is live across an instruction, i.e. live both before and after it.
+     * Values defined by the instruction are not live across it.
+     * @param id
+     * @param li
+     * @return
+     */
+    public synchronized boolean isLiveAcross(IRIdentifier id, IRLinearInstruction li) {
+        int index = this.table.find(id);
+        
+        if(index == -1 || id.equals(li.getDestinationID())) {
+            return false;
+        }
+        
+        IRBasicBlock bb = li.getBasicBlock();
+        List<IRLinearInstruction> instructions = bb.getInstructions();
+        
+        // Compute live-after sets of the block if they aren't cached
+        if(bb != this.liveAfterBlock) {
+            Bits live = new Bits();
+            IRBranchInstruction exit = bb.getExitInstruction();
+            
+            live.orAndNot(this.liveOut[this.blockIndexMap.get(bb.getID())], null);
+            addBranchUses(live, exit);
+            addMappingUses(live, exit.getTrueArgumentMapping());
+            addMappingUses(live, exit.getFalseArgumentMapping());
+            
+            this.liveAfter = new Bits[instructions.size()];
+            
+            for(int i = instructions.size() - 1; i >= 0; i--) {
+                this.liveAfter[i] = new Bits();
+                this.liveAfter[i].orAndNot(live, null);
+                transfer(live, instructions.get(i));
+            }
+            
+            this.liveAfterBlock = bb;
+        }
+        
+        for(int i = 0; i < instructions.size(); i++) {
+            if(instructions.get(i) == li) {
+                return this.liveAfter[i].get(index);
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Gets liveness as a map from BB ID to Pair<Live-In set, Live-Out set>.
+     * The sets are modifiable views of the bitsets.
+     * @return
+     */
+    public Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> getLivenessSets() {
+        Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSetMap = new HashMap<>();
+        
+        for(Map.Entry<IRIdentifier, Integer> entry : this.blockIndexMap.entrySet()) {
+            int bbIndex = entry.getValue();
+            livenessSetMap.put(entry.getKey(), new Pair<>(new LiveSet(this.liveIn[bbIndex]), new LiveSet(this.liveOut[bbIndex])));
+        }
+        
+        return livenessSetMap;
+    }
+    
+    /**
+     * Gets the index of a local, interning it if needed
+     * @param id
+     * @return
+     */
+    private int indexOf(IRIdentifier id) {
+        return this.table.indexOf(id);
+    }
+    
+    /**
+     * A bitset holding only the words from its lowest to its highest set bit, give or take growth
+     */
+    private static class Bits {
+        
+        private static final long[] EMPTY = new long[0];
+        
+        // Index of the first word held
+        private int base = 0;
+        
+        private long[] words = EMPTY;
+        
+        /**
+         * @param index
+         * @return Whether the bit is set
+         */
+        boolean get(int index) {
+            int w = (index >>> 6) - this.base;
+            return w >= 0 && w < this.words.length && (this.words[w] & (1l << index)) != 0;
+        }
+        
+        /**
+         * Sets a bit
+         * @param index
+         */
+        void set(int index) {
+            int w = index >>> 6;
+            cover(w, w + 1);
+            this.words[w - this.base] |= 1l << index;
+        }
+        
+        /**
+         * Clears a bit
+         * @param index
+         */
+        void clear(int index) {
+            int w = (index >>> 6) - this.base;
+            
+            if(w >= 0 && w < this.words.length) {
+                this.words[w] &= ~(1l << index);
+            }
+        }
+        
+        /**
+         * this |= src & ~mask
+         * @param src
+         * @param mask null for no mask
+         */
+        void orAndNot(Bits src, Bits mask) {
+            // Skip zero words at the ends of src
+            int first = 0,
+                last = src.words.length - 1;
+            
+            while(first <= last && src.words[first] == 0) {
+                first++;
+            }
+            
+            while(last >= first && src.words[last] == 0) {
+                last--;
+            }
+            
+            if(first > last) {
+                return;
+            }
+            
+            cover(src.base + first, src.base + last + 1);
+            
+            for(int i = first; i <= last; i++) {
+                int w = src.base + i;
+                long bits = (mask == null) ? src.words[i] : (src.words[i] & ~mask.word(w));
+                this.words[w - this.base] |= bits;
+            }
+        }
+        
+        /**
+         * Clears all bits
+         */
+        void clearAll() {
+            Arrays.fill(this.words, 0);
+        }
+        
+        /**
+         * @return Number of bits set
+         */
+        int count() {
+            int count = 0;
+            
+            for(long w : this.words) {
+                count += Long.bitCount(w);
+            }
+            
+            return count;
+        }
+        
+        /**
+         * Finds the next set bit at or after from
+         * @param from
+         * @return index, or -1 if none
+         */
+        int nextSetBit(int from) {
+            int w = Math.max((from >>> 6) - this.base, 0);
+            
+            if(w >= this.words.length) {
+                return -1;
+            }
+            
+            long word = this.words[w] & (((from >>> 6) - this.base == w) ? (-1l << from) : -1l);
+            
+            while(true) {
+                if(word != 0) {
+                    return ((this.base + w) << 6) + Long.numberOfTrailingZeros(word);
+                }
+                
+                if(++w == this.words.length) {
+                    return -1;
+                }
+                
+                word = this.words[w];
+            }
+        }
+        
+        /**
+         * @param w
+         * @return Word w, or 0 if it isn't held
+         */
+        private long word(int w) {
+            int i = w - this.base;
+            return (i >= 0 && i < this.words.length) ? this.words[i] : 0;
+        }
+        
+        /**
+         * Extends the words held to include words from to to-1. Grows by at least the current size so that
+         * repeated growth is amortized.
+         * @param from
+         * @param to
+         */
+        private void cover(int from, int to) {
+            int end = this.base + this.words.length;
+            
+            if(this.words.length == 0) {
+                this.base = from;
+                this.words = new long[to - from];
+                return;
+            } else if(from >= this.base && to <= end) {
+                return;
+            }
+            
+            int newBase = (from < this.base) ? Math.max(0, Math.min(from, this.base - this.words.length)) : this.base,
+                newEnd = (to > end) ? Math.max(to, end + this.words.length) : end;
+            
+            long[] newWords = new long[newEnd - newBase];
+            System.arraycopy(this.words, 0, newWords, this.base - newBase, this.words.length);
+            this.base = newBase;
+            this.words = newWords;
+        }
+    }
+    
+    /**
+     * A live-in or live-out set viewed as a Set. Only adding numbers identifiers not in the function's table.
+     */
+    private class LiveSet extends AbstractSet<IRIdentifier> {
+        
+        private Bits bits;
+        
+        public LiveSet(Bits bits) {
+            this.bits = bits;
+        }
+        
+        @Override
+        public boolean contains(Object o) {
+            if(o instanceof IRIdentifier id) {
+                int index = IRLiveness.this.table.find(id);
+                return index != -1 && this.bits.get(index);
+            }
+            
+            return false;
+        }
+        
+        @Override
+        public boolean add(IRIdentifier id) {
+            if(id.getIDClass() != IRIdentifierClass.LOCAL) {
+                throw new IllegalArgumentException("Only LOCALs can be live: " + id);
+            }
+            
+            int index = indexOf(id);
+            
+            if(this.bits.get(index)) {
+                return false;
+            }
+            
+            this.bits.set(index);
+            return true;
+        }
+        
+        @Override
+        public boolean remove(Object o) {
+            if(o instanceof IRIdentifier id) {
+                int index = IRLiveness.this.table.find(id);
+                
+                if(index != -1 && this.bits.get(index)) {
+                    this.bits.clear(index);
+                    return true;
+                }
+            }
+            
+            return false;
+        }
+        
+        @Override
+        public void clear() {
+            this.bits.clearAll();
+        }
+        
+        @Override
+        public int size() {
+            return this.bits.count();
+        }
+        
+        @Override
+        public Iterator<IRIdentifier> iterator() {
+            return new Iterator<>() {
+                
+                // Index of the next set bit, or -1
+                private int next = LiveSet.this.bits.nextSetBit(0);
+                
+                // Index last returned
+                private int last = -1;
+                
+                @Override
+                public boolean hasNext() {
+                    return this.next != -1;
+                }
+                
+                @Override
+                public IRIdentifier next() {
+                    if(this.next == -1) {
+                        throw new NoSuchElementException();
+                    }
+                    
+                    this.last = this.next;
+                    this.next = LiveSet.this.bits.nextSetBit(this.next + 1);
+                    return IRLiveness.this.table.get(this.last);
+                }
+                
+                @Override
+                public void remove() {
+                    if(this.last == -1) {
+                        throw new IllegalStateException();
+                    }
+                    
+                    LiveSet.this.bits.clear(this.last);
+                    this.last = -1;
+                }
+            };
+        }
+    }
+}
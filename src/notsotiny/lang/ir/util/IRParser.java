@@ -0,0 +1,702 @@
+package notsotiny.lang.ir.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import notsotiny.lang.ir.parts.IRArgumentList;
+import notsotiny.lang.ir.parts.IRArgumentMapping;
+import notsotiny.lang.ir.parts.IRBasicBlock;
+import notsotiny.lang.ir.parts.IRBranchInstruction;
+import notsotiny.lang.ir.parts.IRBranchOperation;
+import notsotiny.lang.ir.parts.IRCondition;
+import notsotiny.lang.ir.parts.IRConstant;
+import notsotiny.lang.ir.parts.IRFunction;
+import notsotiny.lang.ir.parts.IRGlobal;
+import notsotiny.lang.ir.parts.IRIdentifier;
+import notsotiny.lang.ir.parts.IRIdentifierClass;
+import notsotiny.lang.ir.parts.IRLinearInstruction;
+import notsotiny.lang.ir.parts.IRLinearOperation;
+import notsotiny.lang.ir.parts.IRModule;
+import notsotiny.lang.ir.parts.IRType;
+import notsotiny.lang.ir.parts.IRValue;
+
+/**
+ * Parses IR in the format written by IRPrinter.
+ *
+ * The printed format leaves some things out, which are reconstructed:
+ * - Predecessors are rebuilt from branch targets, in block order
+ * - Argument mappings are ordered by the target block's or function's argument list
+ * - Source line numbers are lines of the parsed text
+ * - Each function's unique name counter continues past the largest number its names use
+ * - Libraries are not recorded
+ */
+public class IRParser {
+    
+    private static final Pattern PATTERN_MODULE = Pattern.compile("Module (.*) \\{"),
+                                 PATTERN_FUNCTION = Pattern.compile("(external )?func (\\w+) (\\S+?)\\((.*)\\)( \\{)?"),
+                                 PATTERN_BLOCK = Pattern.compile("(\\$\\S*?)\\((.*)\\):"),
+                                 PATTERN_GLOBAL = Pattern.compile("(const )?(\\w+)(\\[\\])? (\\S+): (.*)"),
+                                 PATTERN_MIXED_GLOBAL = Pattern.compile("(const )?(\\S+):"),
+                                 PATTERN_MIXED_ENTRY = Pattern.compile("(\\w+) (\\S+)"),
+                                 PATTERN_FUNAME = Pattern.compile("(?:.*%)?(\\d+)");
+    
+    // Characters which end a word
+    private static final String DELIMITERS = ",():={}";
+    
+    /**
+     * A mapping whose ordering is fixed once every block and function is known
+     * @param mapping
+     * @param target Target block or function
+     * @param function Function containing the mapping
+     */
+    private record PendingMapping(IRArgumentMapping mapping, IRValue target, IRFunction function) {}
+    
+    private IRModule module;
+    private IRFunction function;
+    private IRBasicBlock block;
+    private IRGlobal mixedGlobal;
+    
+    private List<PendingMapping> pendingMappings;
+    
+    // Current line
+    private int lineNumber;
+    private List<String> tokens;
+    private int position;
+    
+    /**
+     * Empty constructor
+     */
+    private IRParser() {
+        this.module = null;
+        this.pendingMappings = new ArrayList<>();
+    }
+    
+    /**
+     * Parses a .nir file
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static IRModule parse(Path file) throws IOException {
+        return parse(Files.readString(file), file);
+    }
+    
+    /**
+     * Parses IR text
+     * @param text
+     * @param sourcePath Path to use as the module's source file
+     * @return
+     */
+    public static IRModule parse(String text, Path sourcePath) {
+        IRParser parser = new IRParser();
+        String[] lines = text.split("\\R");
+        
+        for(int i = 0; i < lines.length; i++) {
+            parser.lineNumber = i + 1;
+            parser.parseLine(lines[i].trim(), sourcePath);
+        }
+        
+        if(parser.module == null) {
+            throw new IllegalArgumentException("No module found");
+        }
+        
+        parser.finish();
+        return parser.module;
+    }
+    
+    /**
+     * Parses a line
+     * @param line Trimmed line
+     * @param sourcePath
+     */
+    private void parseLine(String line, Path sourcePath) {
+        if(line.isEmpty()) {
+            return;
+        }
+        
+        Matcher m;
+        
+        // Module header
+        if(this.module == null) {
+            if(!(m = PATTERN_MODULE.matcher(line)).matches()) {
+                throw error("Expected module header");
+            }
+            
+            this.module = new IRModule(m.group(1), sourcePath);
+            return;
+        }
+        
+        // Function body
+        if(this.function != null) {
+            if(line.equals("}")) {
+                this.function = null;
+                this.block = null;
+            } else if(line.startsWith(IRIdentifierClass.BLOCK.getPrefix()) && (m = PATTERN_BLOCK.matcher(line)).matches()) {
+                startBlock(m);
+            } else if(this.block == null) {
+                throw error("Instruction outside of a basic block");
+            } else {
+                parseInstruction(line);
+            }
+            
+            return;
+        }
+        
+        // Module level
+        if(line.equals("}")) {
+            this.mixedGlobal = null;
+        } else if((m = PATTERN_FUNCTION.matcher(line)).matches()) {
+            this.mixedGlobal = null;
+            startFunction(m);
+        } else if((m = PATTERN_GLOBAL.matcher(line)).matches()) {
+            this.mixedGlobal = null;
+            parseGlobal(m);
+        } else if((m = PATTERN_MIXED_GLOBAL.matcher(line)).matches()) {
+            this.mixedGlobal = new IRGlobal(moduleIdentifier(m.group(2)), m.group(1) != null);
+            this.module.addGlobal(this.mixedGlobal);
+        } else if(this.mixedGlobal != null && (m = PATTERN_MIXED_ENTRY.matcher(line)).matches()) {
+            IRType type = parseType(m.group(1));
+            this.mixedGlobal.addValue(parseGlobalValue(m.group(2), type));
+        } else {
+            throw error("Unexpected line");
+        }
+    }
+    
+    /**
+     * Parses a single-value, array, or string global
+     * @param m
+     */
+    private void parseGlobal(Matcher m) {
+        boolean constant = m.group(1) != null,
+                array = m.group(3) != null;
+        IRType type = parseType(m.group(2));
+        IRIdentifier id = moduleIdentifier(m.group(4));
+        String contents = m.group(5);
+        
+        IRGlobal global = new IRGlobal(id, constant);
+        
+        if(!array) {
+            global.addValue(parseGlobalValue(contents, type));
+        } else if(contents.startsWith("\"") && contents.endsWith("\"") && contents.length() >= 2) {
+            // Printable string
+            for(int i = 1; i < contents.length() - 1; i++) {
+                global.addValue(new IRConstant(contents.charAt(i), type, false));
+            }
+        } else {
+            for(String v : contents.split(", ")) {
+                global.addValue(parseGlobalValue(v.trim(), type));
+            }
+        }
+        
+        this.module.addGlobal(global);
+    }
+    
+    /**
+     * @param s Number or identifier
+     * @param type Type of numbers
+     * @return
+     */
+    private IRValue parseGlobalValue(String s, IRType type) {
+        if(isIdentifier(s)) {
+            return moduleIdentifier(s);
+        }
+        
+        return new IRConstant(parseInt(s), type, false);
+    }
+    
+    /**
+     * Starts a function from its header
+     * @param m
+     */
+    private void startFunction(Matcher m) {
+        boolean external = m.group(1) != null;
+        IRType returnType = parseType(m.group(2));
+        IRIdentifier id = moduleIdentifier(m.group(3));
+        
+        IRFunction func = new IRFunction(id, returnType, external, 0, this.module, this.lineNumber);
+        
+        // Arguments are interned in the function
+        this.function = func;
+        IRArgumentList args = parseArgumentList(m.group(4));
+        
+        for(int i = 0; i < args.getArgumentCount(); i++) {
+            func.addArgument(args.getName(i), args.getType(i));
+        }
+        
+        this.module.addFunction(func);
+        
+        if(external) {
+            if(m.group(5) != null) {
+                throw error("External function with a body");
+            }
+            
+            this.function = null;
+        } else if(m.group(5) == null) {
+            throw error("Expected function body");
+        }
+    }
+    
+    /**
+     * Starts a basic block from its header
+     * @param m
+     */
+    private void startBlock(Matcher m) {
+        if(this.block != null && this.block.getExitInstruction() == null) {
+            throw error("Basic block " + this.block.getID() + " has no exit instruction");
+        }
+        
+        IRIdentifier id = parseIdentifier(m.group(1));
+        
+        if(this.function.getBasicBlock(id) != null) {
+            throw error("Duplicate basic block " + id);
+        }
+        
+        this.block = new IRBasicBlock(id, this.module, this.function, this.lineNumber);
+        IRArgumentList args = parseArgumentList(m.group(2));
+        
+        for(int i = 0; i < args.getArgumentCount(); i++) {
+            this.block.addArgument(args.getName(i), args.getType(i));
+        }
+        
+        this.function.addBasicBlock(this.block);
+    }
+    
+    /**
+     * Parses an argument list without parentheses
+     * @param s
+     * @return
+     */
+    private IRArgumentList parseArgumentList(String s) {
+        IRArgumentList args = new IRArgumentList();
+        
+        if(s.isBlank()) {
+            return args;
+        }
+        
+        for(String arg : s.split(",")) {
+            String[] parts = arg.trim().split(" ");
+            
+            if(parts.length != 2) {
+                throw error("Malformed argument " + arg.trim());
+            }
+            
+            args.addArgument(parseIdentifier(parts[1]), parseType(parts[0]));
+        }
+        
+        return args;
+    }
+    
+    /**
+     * Parses a linear or branch instruction into the current block
+     * @param line
+     */
+    private void parseInstruction(String line) {
+        if(this.block.getExitInstruction() != null) {
+            throw error("Instruction after exit instruction");
+        }
+        
+        tokenize(line);
+        String first = next();
+        
+        // Branches
+        switch(first) {
+            case "JMP": {
+                IRIdentifier target = parseIdentifier(next());
+                IRArgumentMapping mapping = parseMapping(target);
+                end();
+                
+                this.block.setExitInstruction(new IRBranchInstruction(IRBranchOperation.JMP, target, mapping, this.block, this.lineNumber));
+                return;
+            }
+            
+            case "JCC": {
+                IRValue ca = parseValue();
+                IRCondition cond = parseCondition(next());
+                IRValue cb = parseValue();
+                expect(",");
+                IRIdentifier trueTarget = parseIdentifier(next());
+                IRArgumentMapping trueMapping = parseMapping(trueTarget);
+                expect(",");
+                IRIdentifier falseTarget = parseIdentifier(next());
+                IRArgumentMapping falseMapping = parseMapping(falseTarget);
+                end();
+                
+                this.block.setExitInstruction(new IRBranchInstruction(IRBranchOperation.JCC, cond, ca, cb, trueTarget, trueMapping, falseTarget, falseMapping, this.block, this.lineNumber));
+                return;
+            }
+            
+            case "RET": {
+                IRValue v = parseValue();
+                end();
+                
+                this.block.setExitInstruction(new IRBranchInstruction(IRBranchOperation.RET, v, this.block, this.lineNumber));
+                return;
+            }
+        }
+        
+        // Linear instructions without destinations
+        IRIdentifier dest = null;
+        IRType type = null;
+        String opName = first;
+        
+        if(!first.equals("STORE") && !first.equals("CALLN")) {
+            type = parseType(first);
+            dest = parseIdentifier(next());
+            expect("=");
+            opName = next();
+        }
+        
+        IRLinearOperation op;
+        
+        try {
+            op = IRLinearOperation.valueOf(opName);
+        } catch(IllegalArgumentException e) {
+            throw error("Unknown operation " + opName);
+        }
+        
+        if(op.hasDestination() != (dest != null)) {
+            throw error(op + (op.hasDestination() ? " requires" : " cannot have") + " a destination");
+        }
+        
+        IRValue a = null,
+                b = null,
+                ca = null,
+                cb = null;
+        IRCondition cond = null;
+        IRArgumentMapping mapping = null;
+        
+        switch(op) {
+            case STORE:
+                a = parseValue();
+                expect("->");
+                b = parseValue();
+                break;
+            
+            case SELECT:
+                ca = parseValue();
+                cond = parseCondition(next());
+                cb = parseValue();
+                expect(",");
+                a = parseValue();
+                expect(",");
+                b = parseValue();
+                break;
+            
+            case CALLR, CALLN:
+                a = parseValue();
+                mapping = parseMapping(a);
+                break;
+            
+            default:
+                a = parseValue();
+                
+                if(op.getSourceCount() == 2) {
+                    expect(",");
+                    b = parseValue();
+                }
+        }
+        
+        end();
+        this.block.addInstruction(new IRLinearInstruction(op, dest, type, a, b, cond, ca, cb, mapping, this.block, this.lineNumber));
+    }
+    
+    /**
+     * Parses an argument mapping, including parentheses
+     * @param target Target block or function, for ordering
+     * @return
+     */
+    private IRArgumentMapping parseMapping(IRValue target) {
+        expect("(");
+        
+        if(peek("null")) {
+            next();
+            expect(")");
+            return null;
+        }
+        
+        IRArgumentMapping mapping = new IRArgumentMapping();
+        
+        while(!peek(")")) {
+            IRIdentifier name = parseIdentifier(next());
+            expect("=");
+            mapping.addMapping(name, parseValue());
+            
+            if(!peek(")")) {
+                expect(",");
+            }
+        }
+        
+        expect(")");
+        
+        this.pendingMappings.add(new PendingMapping(mapping, target, this.function));
+        return mapping;
+    }
+    
+    /**
+     * Parses a value from the current tokens
+     * @return
+     */
+    private IRValue parseValue() {
+        String tok = next();
+        
+        if(tok.equals("null")) {
+            return null;
+        } else if(isIdentifier(tok)) {
+            return parseIdentifier(tok);
+        }
+        
+        IRType type = parseType(tok);
+        return new IRConstant(parseInt(next()), type, false);
+    }
+    
+    /**
+     * Fixes up what the printed format leaves out
+     */
+    private void finish() {
+        for(IRFunction func : this.module.getInternalFunctions().values()) {
+            if(func.getBasicBlockList().isEmpty()) {
+                throw new IllegalArgumentException("Function " + func.getID() + " has no basic blocks");
+            }
+            
+            int maxNumber = -1;
+            
+            for(IRBasicBlock bb : func.getBasicBlockList()) {
+                if(bb.getExitInstruction() == null) {
+                    throw new IllegalArgumentException("Basic block " + bb.getID() + " of " + func.getID() + " has no exit instruction");
+                }
+                
+                // Predecessors
+                for(IRIdentifier succ : new LinkedHashSet<>(bb.getSuccessorBlocks())) {
+                    IRBasicBlock succBB = func.getBasicBlock(succ);
+                    
+                    if(succBB == null) {
+                        throw new IllegalArgumentException("Unknown basic block " + succ + " targeted from " + bb.getID() + " of " + func.getID());
+                    }
+                    
+                    succBB.addPredecessor(bb.getID());
+                }
+            }
+            
+            // Unique name counter
+            for(int i = 0; i < func.getIdentifierTable().size(); i++) {
+                Matcher m = PATTERN_FUNAME.matcher(func.getIdentifierTable().get(i).getName());
+                
+                if(m.matches() && m.group(1).length() < 10) {
+                    maxNumber = Math.max(maxNumber, Integer.parseInt(m.group(1)));
+                }
+            }
+            
+            func.setFUIDCounter(maxNumber + 1);
+        }
+        
+        // Order mappings by their target's arguments
+        for(PendingMapping pm : this.pendingMappings) {
+            List<IRIdentifier> argNames = null;
+            
+            if(pm.target() instanceof IRIdentifier targetID) {
+                if(targetID.getIDClass() == IRIdentifierClass.BLOCK) {
+                    IRBasicBlock bb = pm.function().getBasicBlock(targetID);
+                    argNames = (bb == null) ? null : bb.getArgumentList().getNameList();
+                } else {
+                    IRFunction func = this.module.getFunctions().get(targetID);
+                    argNames = (func == null) ? null : func.getArguments().getNameList();
+                }
+            }
+            
+            if(argNames != null) {
+                Map<IRIdentifier, Integer> positions = new HashMap<>();
+                
+                for(int i = 0; i < argNames.size(); i++) {
+                    positions.put(argNames.get(i), i);
+                }
+                
+                // Stable, so unknown names keep their printed order at the end
+                pm.mapping().getOrdering().sort(Comparator.comparingInt(name -> positions.getOrDefault(name, Integer.MAX_VALUE)));
+            }
+        }
+    }
+    
+    /**
+     * Splits a line into tokens
+     * @param line
+     */
+    private void tokenize(String line) {
+        this.tokens = new ArrayList<>();
+        this.position = 0;
+        
+        int i = 0;
+        
+        while(i < line.length()) {
+            char c = line.charAt(i);
+            
+            if(Character.isWhitespace(c)) {
+                i++;
+            } else if(DELIMITERS.indexOf(c) != -1) {
+                this.tokens.add(String.valueOf(c));
+                i++;
+            } else if(line.startsWith("->", i)) {
+                this.tokens.add("->");
+                i += 2;
+            } else {
+                int start = i;
+                
+                while(i < line.length() && !Character.isWhitespace(line.charAt(i)) && DELIMITERS.indexOf(line.charAt(i)) == -1) {
+                    i++;
+                }
+                
+                this.tokens.add(line.substring(start, i));
+            }
+        }
+    }
+    
+    /**
+     * @return The next token
+     */
+    private String next() {
+        if(this.position >= this.tokens.size()) {
+            throw error("Unexpected end of line");
+        }
+        
+        return this.tokens.get(this.position++);
+    }
+    
+    /**
+     * @param s
+     * @return true if the next token is s
+     */
+    private boolean peek(String s) {
+        return this.position < this.tokens.size() && this.tokens.get(this.position).equals(s);
+    }
+    
+    /**
+     * Consumes a token which must be s
+     * @param s
+     */
+    private void expect(String s) {
+        String tok = next();
+        
+        if(!tok.equals(s)) {
+            throw error("Expected " + s + ", got " + tok);
+        }
+    }
+    
+    /**
+     * Checks that the line has been consumed
+     */
+    private void end() {
+        if(this.position != this.tokens.size()) {
+            throw error("Unexpected " + this.tokens.get(this.position));
+        }
+    }
+    
+    /**
+     * @param s
+     * @return true if s starts with an identifier prefix
+     */
+    private static boolean isIdentifier(String s) {
+        return getIDClass(s) != null;
+    }
+    
+    /**
+     * @param s
+     * @return Class of an identifier from its prefix, or null if it isn't one
+     */
+    private static IRIdentifierClass getIDClass(String s) {
+        for(IRIdentifierClass idClass : IRIdentifierClass.values()) {
+            if(s.startsWith(idClass.getPrefix()) && s.length() > idClass.getPrefix().length()) {
+                return idClass;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Parses an identifier, interned in the current function
+     * @param s
+     * @return
+     */
+    private IRIdentifier parseIdentifier(String s) {
+        IRIdentifierClass idClass = getIDClass(s);
+        
+        if(idClass == null) {
+            throw error("Expected identifier, got " + s);
+        }
+        
+        String name = s.substring(idClass.getPrefix().length());
+        
+        if(this.function != null) {
+            return this.function.getIdentifier(name, idClass);
+        }
+        
+        return this.module.getIdentifierTable().intern(name, idClass);
+    }
+    
+    /**
+     * Parses an identifier interned in the module
+     * @param s
+     * @return
+     */
+    private IRIdentifier moduleIdentifier(String s) {
+        IRIdentifierClass idClass = getIDClass(s);
+        
+        if(idClass == null) {
+            throw error("Expected identifier, got " + s);
+        }
+        
+        return this.module.getIdentifierTable().intern(s.substring(idClass.getPrefix().length()), idClass);
+    }
+    
+    /**
+     * @param s
+     * @return
+     */
+    private IRType parseType(String s) {
+        try {
+            return IRType.valueOf(s);
+        } catch(IllegalArgumentException e) {
+            throw error("Unknown type " + s);
+        }
+    }
+    
+    /**
+     * @param s
+     * @return
+     */
+    private IRCondition parseCondition(String s) {
+        try {
+            return IRCondition.valueOf(s);
+        } catch(IllegalArgumentException e) {
+            throw error("Unknown condition " + s);
+        }
+    }
+    
+    /**
+     * @param s
+     * @return
+     */
+    private int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch(NumberFormatException e) {
+            throw error("Expected number, got " + s);
+        }
+    }
+    
+    /**
+     * @param message
+     * @return An exception describing a problem with the current line
+     */
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Line " + this.lineNumber + ": " + message);
+    }
+}
@@ -6,11 +6,11 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import notsotiny.lang.ir.parts.IRArgumentList;
@@ -24,11 +24,12 @@ import notsotiny.lang.ir.parts.IRDefinition;
 import notsotiny.lang.ir.parts.IRFunction;
 import notsotiny.lang.ir.parts.IRGlobal;
 import notsotiny.lang.ir.parts.IRIdentifier;
-import notsotiny.lang.ir.parts.IRIdentifierClass;
+import notsotiny.lang.ir.parts.IRInstruction;
 import notsotiny.lang.ir.parts.IRLinearInstruction;
 import notsotiny.lang.ir.parts.IRLinearOperation;
 import notsotiny.lang.ir.parts.IRModule;
 import notsotiny.lang.ir.parts.IRType;
+import notsotiny.lang.ir.parts.IRUseChains;
 import notsotiny.lang.ir.parts.IRValue;
 import notsotiny.lib.data.Pair;
 import notsotiny.lib.data.TreeNode;
@@ -51,10 +52,20 @@ public class IRUtil {
      * @return
      */
     public static Map<IRIdentifier, IRIdentifier> getPostdominatorMap(IRFunction func, IRIdentifier exitID) {
-        // Compute reverse postorder list of reversed-edge CFG
+        return IRDominatorTree.postdominators(func, exitID).getImmediateDominatorMap();
+    }
+    
+    /**
+     * Gets a reverse postorder list of the reversed-edge CFG, starting from a virtual exit block which is the
+     * successor of every RET block
+     * @param func
+     * @param exitID ID used as virtual exit block
+     * @return
+     */
+    public static List<IRIdentifier> getReversedCFGReversePostorderList(IRFunction func, IRIdentifier exitID) {
         List<IRIdentifier> postorderList = new ArrayList<>();
         
-        // Get all RET BBs, emulate postorderDFSReversed called on a node with them as its predecessors
+        // Get all RET BBs, emulate a reverse DFS called on a node with them as its predecessors
         List<IRIdentifier> retBBs = new ArrayList<>();
         
         for(IRBasicBlock bb : func.getBasicBlockList()) {
@@ -68,101 +79,13 @@ public class IRUtil {
         visited.add(exitID);
         
         for(IRIdentifier id : retBBs) {
-            postorderDFSReverse(id, postorderList, visited, func);
+            depthFirstSearch(id, true, postorderList, null, null, false, visited, func);
         }
         
         postorderList.add(exitID);
         
-        // Get reverse postorder information
-        List<IRIdentifier> reversePostorderList = postorderList;
-        Collections.reverse(reversePostorderList);
-        Map<IRIdentifier, Integer> reversePostorderNumbers = MapUtil.listToMap(reversePostorderList);
-        
-        // Initialize postdominator map
-        Map<IRIdentifier, IRIdentifier> pdomMap = new HashMap<>();
-        
-        for(IRBasicBlock bb : func.getBasicBlockList()) {
-            pdomMap.put(bb.getID(), null);
-        }
-        
-        pdomMap.put(exitID, exitID);
-        
-        // Iterate until converged
-        boolean changed = true;
-        
-        while(changed) {
-            changed = false;
-            
-            // For each node in reverse postorder, except exit
-            for(IRIdentifier bbID : reversePostorderList) {
-                if(bbID.equals(exitID)) {
-                    continue;
-                }
-                
-                // Get arbitrary processed successor
-                IRBasicBlock bb = func.getBasicBlock(bbID);
-                List<IRIdentifier> successors = bb.getSuccessorBlocks();
-                
-                IRIdentifier firstSucc = null;
-                
-                if(successors.size() == 0) {
-                    firstSucc = exitID;
-                } else {
-                    for(IRIdentifier succID : successors) {
-                        if(pdomMap.get(succID) != null) {
-                            firstSucc = succID;
-                            break;
-                        }
-                    }
-                }
-                
-                IRIdentifier newIPDom = firstSucc;
-                
-                // For all other successors
-                for(IRIdentifier succID : successors) {
-                    if(succID.equals(firstSucc)) {
-                        continue;
-                    }
-                    
-                    // If successor's postdominator has been calculated, update with intersect
-                    if(pdomMap.get(succID) != null) {
-                        newIPDom = intersectDominators(succID, newIPDom, pdomMap, reversePostorderNumbers);
-                    }
-                }
-                
-                // Update if changed
-                if(!newIPDom.equals(pdomMap.get(bbID))) {
-                    pdomMap.put(bbID, newIPDom);
-                    changed = true;
-                }
-            }
-        }
-        
-        return pdomMap;
-    }
-    
-    /**
-     * Depth-first search of the reversed CFG, creating a postorder list
-     * @param id
-     * @param list
-     * @param visited
-     * @param function
-     */
-    private static void postorderDFSReverse(IRIdentifier id, List<IRIdentifier> list, Set<IRIdentifier> visited, IRFunction function) {
-        // mark visited
-        visited.add(id);
-        
-        // postorder depth-first (reverse)
-        List<IRIdentifier> predecessors = function.getBasicBlock(id).getPredecessorBlocks();
-        
-        for(IRIdentifier pred : predecessors) {
-            if(!visited.contains(pred)) {
-                postorderDFSReverse(pred, list, visited, function);
-            }
-        }
-        
-        // add to list
-        list.add(id);
+        Collections.reverse(postorderList);
+        return postorderList;
     }
     
     /**
@@ -181,94 +104,7 @@ public class IRUtil {
      * @return
      */
     public static Map<IRIdentifier, IRIdentifier> getDominatorMap(IRFunction func, List<IRIdentifier> reversePostorderList) {
-        // Determine dominators as described by Cooper et al. A Simple, Fast Dominance Algorithm
-        // Recover (reverse) postorder numbers
-        Map<IRIdentifier, Integer> reversePostorderNumbers = MapUtil.listToMap(reversePostorderList);
-        
-        // Initialize dominator map
-        Map<IRIdentifier, IRIdentifier> domMap = new HashMap<>();
-        
-        for(IRBasicBlock bb : func.getBasicBlockList()) {
-            domMap.put(bb.getID(), null);
-        }
-        
-        IRIdentifier start = func.getEntryBlock().getID();
-        domMap.put(start, start);
-        
-        // Iterate until converged
-        boolean changed = true;
-        
-        while(changed) {
-            changed = false;
-            
-            // All nodes except start node in reverse postorder
-            for(IRIdentifier bbID : reversePostorderList) {
-                if(bbID.equals(start)) {
-                    continue;
-                }
-                
-                // Get arbitrary processed predecessor
-                IRBasicBlock bb = func.getBasicBlock(bbID);
-                IRIdentifier firstPred = null;
-                
-                for(IRIdentifier predID : bb.getPredecessorBlocks()) {
-                    if(domMap.get(predID) != null) {
-                        firstPred = predID;
-                        break;
-                    }
-                }
-                
-                IRIdentifier newIDomID = firstPred;
-                
-                // Iterate each other predecessor
-                for(IRIdentifier predID : bb.getPredecessorBlocks()) {
-                    if(predID.equals(firstPred)) {
-                        continue;
-                    }
-                    
-                    // If the predecessor's dominator has been calculated, update via intersection
-                    if(domMap.get(predID) != null) {
-                        newIDomID = intersectDominators(predID, newIDomID, domMap, reversePostorderNumbers);
-                    }
-                }
-                
-                // Update if changed
-                if(!newIDomID.equals(domMap.get(bbID))) {
-                    domMap.put(bbID, newIDomID);
-                    changed = true;
-                }
-            }
-        }
-        
-        return domMap;
-    }
-    
-    /**
-     * intersect function used by the dominators finding algorithm
-     * @param id1
-     * @param id2
-     * @param domMap
-     * @param reversePostorderNumbers
-     * @return
-     */
-    private static IRIdentifier intersectDominators(IRIdentifier id1, IRIdentifier id2, Map<IRIdentifier, IRIdentifier> domMap, Map<IRIdentifier, Integer> reversePostorderNumbers) {
-        while(!id1.equals(id2)) {
-            int num = reversePostorderNumbers.get(id2);
-            
-            // In the paper, < is used since it is comparing postorder numbers.
-            // We are comparing reverse postorder numbers, so we use >
-            while(reversePostorderNumbers.get(id1) > num) {
-                id1 = domMap.get(id1);
-            }
-            
-            num = reversePostorderNumbers.get(id1);
-            
-            while(reversePostorderNumbers.get(id2) > num) {
-                id2 = domMap.get(id2);
-            }
-        }
-        
-        return id1;
+        return IRDominatorTree.dominators(func, reversePostorderList).getImmediateDominatorMap();
     }
     
     /**
@@ -303,6 +139,11 @@ public class IRUtil {
             return purityMap.get(func.getID());
         }
         
+        // While a pipeline runs, other functions may be being modified in parallel
+        if(func.getAnalyses().isPurityFixed()) {
+            throw new IllegalStateException("Purity of " + func.getID() + " recomputed while fixed by a running pipeline");
+        }
+        
         // Consider indirect recursion impure, so that called functions are not incorrectly marked pure
         purityMap.put(func.getID(), false);
         
@@ -383,28 +224,36 @@ public class IRUtil {
     /**
      * Where possible, replace NONE with a concrete type in the given function
      * @param func
+     * @return true if any type was replaced
      */
-    public static void inferNoneTypes(IRFunction func) {
-        inferNoneTypes(func, getTypeMap(func));
+    public static boolean inferNoneTypes(IRFunction func) {
+        return inferNoneTypes(func, getTypeMap(func));
     }
     
     /**
      * Where possible, replace NONE with a concrete type in the given function
      * @param func
      * @param typeMap
+     * @return true if any type was replaced
      */
-    public static void inferNoneTypes(IRFunction func, Map<IRIdentifier, IRType> typeMap) {
+    public static boolean inferNoneTypes(IRFunction func, Map<IRIdentifier, IRType> typeMap) {
+        boolean changed = false;
+        
         for(IRBasicBlock bb : func.getBasicBlockList()) {
-            inferNoneTypes(bb, typeMap);
+            changed |= inferNoneTypes(bb, typeMap);
         }
+        
+        return changed;
     }
     
     /**
      * Where possible, replaces NONE with a concrete type in the given bb
      * @param bb
      * @param typeMap
+     * @return true if any type was replaced
      */
-    public static void inferNoneTypes(IRBasicBlock bb, Map<IRIdentifier, IRType> typeMap) {
+    public static boolean inferNoneTypes(IRBasicBlock bb, Map<IRIdentifier, IRType> typeMap) {
+        boolean changed = false;
         boolean modifiedTypes;
         do {
             modifiedTypes = false;
@@ -440,6 +289,7 @@ public class IRUtil {
                             }
                             
                             inst.setLeftComparisonValue(new IRConstant(irc.getValue(), inferredType));
+                            changed |= inferredType != IRType.NONE;
                         }
                         
                         if(inst.getRightComparisonValue() instanceof IRConstant irc && irc.getType() == IRType.NONE) {
@@ -452,6 +302,7 @@ public class IRUtil {
                             }
                             
                             inst.setRightComparisonValue(new IRConstant(irc.getValue(), inferredType));
+                            changed |= inferredType != IRType.NONE;
                         }
                     
                     case ADD, SUB, MULU, MULS, DIVU, DIVS, REMU, REMS,
@@ -507,6 +358,7 @@ public class IRUtil {
                     // infer from return type
                     if(exit.getReturnValue() instanceof IRConstant irc && irc.getType() == IRType.NONE) {
                         exit.setReturnValue(new IRConstant(irc.getValue(), bb.getFunction().getReturnType()));
+                        changed |= bb.getFunction().getReturnType() != IRType.NONE;
                     }
                     break;
                 
@@ -522,6 +374,7 @@ public class IRUtil {
                         }
                         
                         exit.setCompareLeft(new IRConstant(irc.getValue(), inferredType));
+                        changed |= inferredType != IRType.NONE;
                     }
                     
                     if(exit.getCompareRight() instanceof IRConstant irc && irc.getType() == IRType.NONE) {
@@ -534,11 +387,16 @@ public class IRUtil {
                         }
                         
                         exit.setCompareRight(new IRConstant(irc.getValue(), inferredType));
+                        changed |= inferredType != IRType.NONE;
                     }
                 
                 default:
             }
+            
+            changed |= modifiedTypes;
         } while(modifiedTypes);
+        
+        return changed;
     }
     
     /**
@@ -629,220 +487,7 @@ public class IRUtil {
      * @return Map from BB ID to Pair<Live-In set, Live-Out set>
      */
     public static Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> getLivenessSets(IRFunction function, boolean argAssignmentsAreLiveOut, UnionFindForest<IRIdentifier> loopNestingForest, List<IRIdentifier> dfsOrderList, Map<Integer, Integer> dfsAncestryMap) {
-        Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSetMap = new HashMap<>();
-        
-        // Initialize map
-        for(IRBasicBlock bb : function.getBasicBlockList()) {
-            livenessSetMap.put(bb.getID(), new Pair<>(new HashSet<>(), new HashSet<>()));
-        }
-        
-        // Postorder partial liveness
-        glsPartialLivenessDFS(function.getEntryBlock().getID(), argAssignmentsAreLiveOut, livenessSetMap, new HashSet<>(), function, MapUtil.listToMap(dfsOrderList), dfsAncestryMap);
-        
-        // Propagate liveness through loops
-        //LOG.info(loopNestingForest.getRoots() + "");
-        for(TreeNode<IRIdentifier> loopHeaderNode : loopNestingForest.getRoots()) {
-            //loopHeaderNode.logTree(LOG, Level.FINEST);
-            glsPropagateLoops(loopHeaderNode, livenessSetMap, function);
-        }
-        
-        return livenessSetMap;
-    }
-    
-    /**
-     * Computes partial liveness information via a DFS
-     * @param bbID
-     * @param argAssignmentsAreLiveOut If true, values assigned to the arguments of successors are considered live-out
-     * @param livenessSetMap
-     * @param function
-     * @param dfsOrderList
-     * @param dfsAncestryMap
-     */
-    private static void glsPartialLivenessDFS(IRIdentifier bbID, boolean argAssignmentsAreLiveOut, Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSetMap, Set<IRIdentifier> processed, IRFunction function, Map<IRIdentifier, Integer> dfsIndexMap, Map<Integer, Integer> dfsAncestryMap) {
-        IRBasicBlock bb = function.getBasicBlock(bbID);
-        
-        Pair<Set<IRIdentifier>, Set<IRIdentifier>> livenessSetPair = livenessSetMap.get(bbID);
-        Set<IRIdentifier> liveInSet = livenessSetPair.a,
-                          liveOutSet = livenessSetPair.b;
-        
-        // Process each unprocessed successor that isn't a backedge
-        for(IRIdentifier successorID : bb.getSuccessorBlocks()) {
-            if(!isBackedge(bbID, successorID, dfsIndexMap, dfsAncestryMap) && !processed.contains(successorID)) {
-                glsPartialLivenessDFS(successorID, argAssignmentsAreLiveOut, livenessSetMap, processed, function, dfsIndexMap, dfsAncestryMap);
-            }
-        }
-        
-        // Initialize 'currently live' with variables assigned to BB args if applicable
-        Set<IRIdentifier> liveSet = new HashSet<>();
-        
-        IRBranchInstruction bbExit = bb.getExitInstruction();
-        IRArgumentMapping trueMapping = bbExit.getTrueArgumentMapping(),
-                          falseMapping = bbExit.getFalseArgumentMapping();
-        
-        if(argAssignmentsAreLiveOut) {
-            if(trueMapping != null) {
-                trueMapping.getMap().values().forEach(irv -> {
-                    if(irv instanceof IRIdentifier id && id.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(id);
-                    }
-                });
-            }
-            
-            if(falseMapping != null) {
-                falseMapping.getMap().values().forEach(irv -> {
-                    if(irv instanceof IRIdentifier id && id.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(id);
-                    }
-                });
-            }
-        }
-        
-        // Include non-bbarg live-ins of non-backedge successors in live set
-        for(IRIdentifier successorID : bb.getSuccessorBlocks()) {
-            if(!isBackedge(bbID, successorID, dfsIndexMap, dfsAncestryMap)) {
-                IRBasicBlock successorBB = function.getBasicBlock(successorID);
-                List<IRIdentifier> successorArgs = successorBB.getArgumentList().getNameList();
-                
-                for(IRIdentifier successorLiveIn : livenessSetMap.get(successorID).a) {
-                    if(!successorArgs.contains(successorLiveIn)) {
-                        liveSet.add(successorLiveIn);
-                    }
-                }
-            }
-        }
-        
-        // Record current live set as live-outs for this bb
-        liveOutSet.addAll(liveSet);
-        
-        // If assignments are not considered live-out, add them to the live set here
-        if(!argAssignmentsAreLiveOut) {
-            if(trueMapping != null) {
-                trueMapping.getMap().values().forEach(irv -> {
-                    if(irv instanceof IRIdentifier id && id.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(id);
-                    }
-                });
-            }
-            
-            if(falseMapping != null) {
-                falseMapping.getMap().values().forEach(irv -> {
-                    if(irv instanceof IRIdentifier id && id.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(id);
-                    }
-                });
-            }
-        }
-        
-        // Go through the BB's code backwards, updating liveness accordingly
-        // For each instruction, remove variables that are defined and add variables being used to/from the live set
-        switch(bbExit.getOp()) {
-            case JCC:
-                // Uses comparison arguments
-                if(bbExit.getCompareLeft() instanceof IRIdentifier leftID && leftID.getIDClass() == IRIdentifierClass.LOCAL) {
-                    liveSet.add(leftID);
-                }
-                
-                if(bbExit.getCompareRight() instanceof IRIdentifier rightID && rightID.getIDClass() == IRIdentifierClass.LOCAL) {
-                    liveSet.add(rightID);
-                }
-                break;
-                
-            case RET:
-                // Uses the return value
-                if(bbExit.getReturnValue() instanceof IRIdentifier retID && retID.getIDClass() == IRIdentifierClass.LOCAL) {
-                    liveSet.add(retID);
-                }
-                break;
-            
-            default:
-                // JMP, no use
-        }
-        
-        for(int i = bb.getInstructions().size() - 1; i >= 0; i--) {
-            IRLinearInstruction inst = bb.getInstructions().get(i);
-            
-            // Remove defined variable
-            if(inst.hasDestination()) {
-                liveSet.remove(inst.getDestinationID());
-            }
-            
-            // Add used variables
-            // Sources
-            switch(inst.getSourceCount()) {
-                // This switch uses fall-through to reduce code repetition
-                case 4:
-                    // All four
-                    if(inst.getLeftComparisonValue() instanceof IRIdentifier lcid && lcid.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(lcid);
-                    }
-                    
-                    if(inst.getRightComparisonValue() instanceof IRIdentifier rcid && rcid.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(rcid);
-                    }
-                
-                case 2:
-                    // left & right
-                    if(inst.getRightSourceValue() instanceof IRIdentifier rsid && rsid.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(rsid);
-                    }
-                    
-                case 1:
-                    // left
-                    if(inst.getLeftSourceValue() instanceof IRIdentifier lsid && lsid.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(lsid);
-                    }
-                    break;
-                
-                default:
-                    throw new IllegalArgumentException("Linear op with 0 arguments: " + inst + " in " + bb.getID() + " in " + function.getID() + " in " + function.getModule().getName());
-            }
-            
-            // Argument mappings
-            if(inst.getOp() == IRLinearOperation.CALLN || inst.getOp() == IRLinearOperation.CALLR) {
-                for(IRValue argMapVal : inst.getCallArgumentMapping().getMap().values()) {
-                    if(argMapVal instanceof IRIdentifier argMapID && argMapID.getIDClass() == IRIdentifierClass.LOCAL) {
-                        liveSet.add(argMapID);
-                    }
-                }
-            }
-        }
-        
-        // Live-in = live set + arguments
-        liveInSet.addAll(liveSet);
-        liveInSet.addAll(bb.getArgumentList().getNameList());
-        processed.add(bbID);
-    }
-    
-    /**
-     * Completes liveness information by propagating through loops
-     * @param loopNode
-     * @param livenessSetMap
-     * @param function
-     */
-    private static void glsPropagateLoops(TreeNode<IRIdentifier> loopNode, Map<IRIdentifier, Pair<Set<IRIdentifier>, Set<IRIdentifier>>> livenessSetMap, IRFunction function) {
-        // Is this a loop header -> has body or is a self-loop
-        if(loopNode.getChildren().size() != 0 || function.getBasicBlock(loopNode.getElement()).getSuccessorBlocks().contains(loopNode.getElement())) {
-            IRIdentifier headerID = loopNode.getElement();
-            
-            // Live in loop = live in(header) - header args
-            Set<IRIdentifier> liveInLoop = new HashSet<>(livenessSetMap.get(headerID).a);
-            liveInLoop.removeAll(function.getBasicBlock(headerID).getArgumentList().getNameList());
-            
-            // Add liveInLoop to loop header's live-out
-            livenessSetMap.get(headerID).b.addAll(liveInLoop);
-            
-            // Add liveInLoop to live-in and live-out of all children
-            for(TreeNode<IRIdentifier> child : loopNode.getChildren()) {
-                IRIdentifier childID = child.getElement();
-                Pair<Set<IRIdentifier>, Set<IRIdentifier>> livenessPair = livenessSetMap.get(childID);
-                
-                livenessPair.a.addAll(liveInLoop);
-                livenessPair.b.addAll(liveInLoop);
-                
-                // and recurse
-                glsPropagateLoops(child, livenessSetMap, function);
-            }
-        }
+        return new IRLiveness(function, argAssignmentsAreLiveOut, loopNestingForest, dfsOrderList, dfsAncestryMap).getLivenessSets();
     }
     
     /**
@@ -943,6 +588,35 @@ public class IRUtil {
         }
     }
     
+    /**
+     * Determines the loop nesting depth of each basic block from the loop-nesting forest.
+     * A block is nested in each loop whose header is itself or an ancestor in the forest. Headers are
+     * blocks with a body or a self-loop, as in liveness.
+     * @param function
+     * @param loopNestingForest
+     * @return map from BB ID to the number of loops containing it
+     */
+    public static Map<IRIdentifier, Integer> getLoopDepths(IRFunction function, UnionFindForest<IRIdentifier> loopNestingForest) {
+        Map<IRIdentifier, Integer> depths = new HashMap<>();
+        Map<IRIdentifier, TreeNode<IRIdentifier>> nodeMap = loopNestingForest.getElementNodeMap();
+        
+        for(IRBasicBlock bb : function.getBasicBlockList()) {
+            int depth = 0;
+            
+            for(TreeNode<IRIdentifier> node = nodeMap.get(bb.getID()); node != null; node = node.getParent()) {
+                IRIdentifier headerID = node.getElement();
+                
+                if(node.getChildren().size() != 0 || function.getBasicBlock(headerID).getSuccessorBlocks().contains(headerID)) {
+                    depth++;
+                }
+            }
+            
+            depths.put(bb.getID(), depth);
+        }
+        
+        return depths;
+    }
+    
     /**
      * Given DFS information, determines if from -> to is a backedge
      * @param from
@@ -988,39 +662,11 @@ public class IRUtil {
         List<IRIdentifier> list = new ArrayList<>();
         
         // Traverse in postorder
-        postorderDFS(function.getBasicBlockList().get(0).getID(), list, new HashSet<>(), function);
+        depthFirstSearch(function.getBasicBlockList().get(0).getID(), false, list, null, null, false, new HashSet<>(), function);
         
         return list;
     }
     
-    /**
-     * DFS for getPostorderList
-     * @param id
-     * @param list
-     * @param visited
-     * @param function
-     */
-    private static void postorderDFS(IRIdentifier id, List<IRIdentifier> list, Set<IRIdentifier> visited, IRFunction function) {
-        // mark visited
-        visited.add(id);
-        
-        // postorder depth-first
-        IRBranchInstruction exit = function.getBasicBlock(id).getExitInstruction();
-        IRIdentifier trueID = exit.getTrueTargetBlock();
-        IRIdentifier falseID = exit.getFalseTargetBlock();
-        
-        if(trueID != null && !visited.contains(trueID)) {
-            postorderDFS(trueID, list, visited, function);
-        }
-        
-        if(falseID != null && !visited.contains(falseID)) {
-            postorderDFS(falseID, list, visited, function);
-        }
-        
-        // add to list
-        list.add(id);
-    }
-    
     /**
      * Gets a list of BB identifiers in preorder order of the depth-first spanning tree, and a map from list indices to the list index of that BB's last descendant
      * @param function
@@ -1031,44 +677,11 @@ public class IRUtil {
         Map<Integer, Integer> preorderAncestryMap = new HashMap<>();
         
         // dfs
-        preorderDFS(function.getBasicBlockList().get(0).getID(), preorderList, preorderAncestryMap, new HashSet<>(), function);
+        depthFirstSearch(function.getBasicBlockList().get(0).getID(), false, null, preorderList, preorderAncestryMap, true, new HashSet<>(), function);
         
         return new Pair<>(preorderList, preorderAncestryMap);
     }
     
-    /**
-     * DFS for getPreorderInfo
-     * @param id
-     * @param preorderList
-     * @param preorderAncestryMap
-     * @param visited
-     * @param function
-     */
-    private static void preorderDFS(IRIdentifier id, List<IRIdentifier> preorderList, Map<Integer, Integer> preorderAncestryMap, Set<IRIdentifier> visited, IRFunction function) {
-        // Mark ID as visited
-        visited.add(id);
-        
-        // Record preorder
-        int preorderIndex = preorderList.size();
-        preorderList.add(id);
-        
-        // Search successors
-        IRBranchInstruction exit = function.getBasicBlock(id).getExitInstruction();
-        IRIdentifier trueID = exit.getTrueTargetBlock();
-        IRIdentifier falseID = exit.getFalseTargetBlock();
-        
-        if(trueID != null && !visited.contains(trueID)) {
-            preorderDFS(trueID, preorderList, preorderAncestryMap, visited, function);
-        }
-        
-        if(falseID != null && !visited.contains(falseID)) {
-            preorderDFS(falseID, preorderList, preorderAncestryMap, visited, function);
-        }
-        
-        // Record last descendant's preorder number
-        preorderAncestryMap.put(preorderIndex, preorderList.size() - 1);
-    }
-    
     /**
      * Performs depth-first search, recording a variety of information
      * Not sure if it'll be used but w/e
@@ -1080,31 +693,77 @@ public class IRUtil {
      * @param function
      */
     public static void generalDFS(IRIdentifier id, List<IRIdentifier> postorderList, List<IRIdentifier> preorderList, Map<Integer, Integer> preorderAncestryMap, Set<IRIdentifier> visited, IRFunction function) {
-        // Mark ID as visited
-        visited.add(id);
-        
-        // Record preorder
-        int preorderIndex = preorderList.size();
-        preorderList.add(id);
+        depthFirstSearch(id, false, postorderList, preorderList, preorderAncestryMap, false, visited, function);
+    }
         
-        // Search successors
-        IRBranchInstruction exit = function.getBasicBlock(id).getExitInstruction();
-        IRIdentifier trueID = exit.getTrueTargetBlock();
-        IRIdentifier falseID = exit.getFalseTargetBlock();
+    /**
+     * A block on the stack of depthFirstSearch
+     * @param id
+     * @param preorderIndex
+     * @param next Remaining successors to search
+     */
+    private record DFSFrame(IRIdentifier id, int preorderIndex, Iterator<IRIdentifier> next) {}
+    
+    /**
+     * Iterative depth-first search. Successors are searched true target first.
+     * @param id Block to start from
+     * @param reverse If true, searches predecessors rather than successors
+     * @param postorderList List of BB IDs in postorder order, or null
+     * @param preorderList List of BB IDs in preorder order, or null
+     * @param lastDescendantMap Maps preorder indices to the preorder index of the block's last descendant, or null. Requires preorderList.
+     * @param inclusive If false, the last descendant's index is recorded plus one
+     * @param visited
+     * @param function
+     */
+    private static void depthFirstSearch(IRIdentifier id, boolean reverse, List<IRIdentifier> postorderList, List<IRIdentifier> preorderList, Map<Integer, Integer> lastDescendantMap, boolean inclusive, Set<IRIdentifier> visited, IRFunction function) {
+        Deque<DFSFrame> stack = new ArrayDeque<>();
         
-        if(trueID != null && !visited.contains(trueID)) {
-            generalDFS(trueID, postorderList, preorderList, preorderAncestryMap, visited, function);
-        }
+        visited.add(id);
+        stack.push(new DFSFrame(id, (preorderList == null) ? 0 : preorderList.size(), dfsNeighbors(id, reverse, function)));
         
-        if(falseID != null && !visited.contains(falseID)) {
-            generalDFS(falseID, postorderList, preorderList, preorderAncestryMap, visited, function);
+        if(preorderList != null) {
+            preorderList.add(id);
         }
         
-        // Record postorder
-        postorderList.add(id);
+        while(!stack.isEmpty()) {
+            DFSFrame frame = stack.peek();
         
-        // Record last descendant's preorder number
-        preorderAncestryMap.put(preorderIndex, preorderList.size());
+            if(frame.next().hasNext()) {
+                // Search the next unvisited neighbor
+                IRIdentifier nextID = frame.next().next();
+                
+                if(!visited.contains(nextID)) {
+                    visited.add(nextID);
+                    stack.push(new DFSFrame(nextID, (preorderList == null) ? 0 : preorderList.size(), dfsNeighbors(nextID, reverse, function)));
+                    
+                    if(preorderList != null) {
+                        preorderList.add(nextID);
+                    }
+                }
+            } else {
+                // Done with this block
+                stack.pop();
+                
+                if(postorderList != null) {
+                    postorderList.add(frame.id());
+                }
+                
+                if(lastDescendantMap != null) {
+                    lastDescendantMap.put(frame.preorderIndex(), inclusive ? preorderList.size() - 1 : preorderList.size());
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param id
+     * @param reverse
+     * @param function
+     * @return Successors of a block, or predecessors if reverse is set
+     */
+    private static Iterator<IRIdentifier> dfsNeighbors(IRIdentifier id, boolean reverse, IRFunction function) {
+        IRBasicBlock bb = function.getBasicBlock(id);
+        return reverse ? bb.getPredecessorBlocks().iterator() : bb.getSuccessorBlocks().iterator();
     }
     
     /**
@@ -1271,12 +930,118 @@ public class IRUtil {
     
     /**
      * Constructs a map from identifiers to defines that use them
-     * Calls getDefinitionMap
+     * Served from the function's use chains
      * @param function
      * @return
      */
     public static Map<IRIdentifier, List<IRDefinition>> getUseMap(IRFunction function) {
-        return getUseMap(function, getDefinitionList(function));
+        IRUseChains chains = function.getUseChains();
+        Map<IRIdentifier, List<IRDefinition>> useMap = new HashMap<>();
+        
+        for(IRIdentifier usedID : chains.getUsedValues()) {
+            List<IRDefinition> uses = new ArrayList<>();
+            
+            for(IRInstruction user : chains.getUses(usedID)) {
+                if(user instanceof IRLinearInstruction li) {
+                    addLinearUses(uses, usedID, li);
+                } else if(user instanceof IRBranchInstruction bi) {
+                    addBranchUses(uses, usedID, bi, function);
+                }
+            }
+            
+            if(uses.size() != 0) {
+                useMap.put(usedID, uses);
+            }
+        }
+        
+        return useMap;
+    }
+    
+    /**
+     * Adds the uses of usedID by li to uses, matching getUseMap(IRFunction, List)
+     * @param uses
+     * @param usedID
+     * @param li
+     */
+    private static void addLinearUses(List<IRDefinition> uses, IRIdentifier usedID, IRLinearInstruction li) {
+        // Only LIs with a destination are definitions
+        if(li.getDestinationID() == null) {
+            return;
+        }
+        
+        IRDefinition def = new IRDefinition(li.getDestinationID(), li);
+        
+        if(usedID.equals(li.getLeftSourceValue())) {
+            uses.add(def);
+        }
+        
+        if(usedID.equals(li.getRightSourceValue())) {
+            uses.add(def);
+        }
+        
+        if(usedID.equals(li.getLeftComparisonValue())) {
+            uses.add(def);
+        }
+        
+        if(usedID.equals(li.getRightComparisonValue())) {
+            uses.add(def);
+        }
+        
+        if(li.getOp() == IRLinearOperation.CALLR || li.getOp() == IRLinearOperation.CALLN) {
+            for(IRValue mappedVal : li.getCallArgumentMapping().getMap().values()) {
+                if(usedID.equals(mappedVal)) {
+                    uses.add(def);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Adds the uses of usedID by bi to uses, matching getUseMap(IRFunction, List)
+     * Mapped values are uses by the target's argument.
+     * @param uses
+     * @param usedID
+     * @param bi
+     * @param function
+     */
+    private static void addBranchUses(List<IRDefinition> uses, IRIdentifier usedID, IRBranchInstruction bi, IRFunction function) {
+        if(bi.getCondition() != IRCondition.NONE) {
+            IRDefinition def = new IRDefinition(bi.getBasicBlock().getID(), bi);
+            
+            if(usedID.equals(bi.getCompareLeft())) {
+                uses.add(def);
+            }
+            
+            if(usedID.equals(bi.getCompareRight())) {
+                uses.add(def);
+            }
+        }
+        
+        addMappingUses(uses, usedID, bi.getTrueTargetBlock(), bi.getTrueArgumentMapping(), function);
+        addMappingUses(uses, usedID, bi.getFalseTargetBlock(), bi.getFalseArgumentMapping(), function);
+    }
+    
+    /**
+     * Adds the uses of usedID by the arguments of a branch target
+     * @param uses
+     * @param usedID
+     * @param targetID
+     * @param mapping
+     * @param function
+     */
+    private static void addMappingUses(List<IRDefinition> uses, IRIdentifier usedID, IRIdentifier targetID, IRArgumentMapping mapping, IRFunction function) {
+        if(targetID == null || mapping == null) {
+            return;
+        }
+        
+        IRBasicBlock targetBB = function.getBasicBlock(targetID);
+        List<IRIdentifier> targetArgs = targetBB.getArgumentList().getNameList();
+        
+        for(Entry<IRIdentifier, IRValue> entry : mapping.getMap().entrySet()) {
+            if(usedID.equals(entry.getValue()) && targetArgs.contains(entry.getKey())) {
+                uses.add(new IRDefinition(entry.getKey(), targetBB));
+            }
+        }
     }
     
     /**
@@ -1302,9 +1067,40 @@ public class IRUtil {
      * @param to
      */
     public static void replaceInFunction(IRFunction function, IRValue from, IRValue to) {
-        // Replace in basic blocks
-        for(IRBasicBlock block : function.getBasicBlockList()) {
-            replaceInBlock(block, from, to);
+        if(!(from instanceof IRIdentifier fromID)) {
+            // Only identifiers have use chains
+            for(IRBasicBlock block : function.getBasicBlockList()) {
+                replaceInBlock(block, from, to);
+            }
+            
+            return;
+        }
+        
+        IRUseChains chains = function.getUseChains();
+        
+        // Replace in users. Copied as replacing removes them from the chain
+        List<IRInstruction> users = new ArrayList<>(chains.getUses(fromID));
+        
+        for(IRInstruction user : users) {
+            if(user instanceof IRLinearInstruction li) {
+                replaceInLI(li, from, to);
+            } else if(user instanceof IRBranchInstruction bi) {
+                replaceInBI(bi, from, to);
+            }
+        }
+        
+        // Remove defining instruction if it exists
+        IRLinearInstruction def = chains.getDefinition(fromID);
+        
+        if(def != null) {
+            def.getBasicBlock().removeInstruction(def);
+        }
+        
+        // Remove defining argument if it exists
+        IRBasicBlock argBB = chains.getArgumentDefinition(fromID);
+        
+        if(argBB != null) {
+            removeBlockArgument(argBB, fromID);
         }
     }
     
@@ -1323,7 +1119,7 @@ public class IRUtil {
             
             if(from.equals(li.getDestinationID())) {
                 // LI defines from. Remove it.
-                lis.remove(i--);
+                bb.removeInstruction(i--);
             } else {
                 // Might be used. Replace in inst
                 replaceInLI(li, from, to);
@@ -1338,24 +1134,33 @@ public class IRUtil {
         
         // Find defining argument if it exists
         if(from instanceof IRIdentifier fromID) {
-            if(bb.getArgumentList().removeArgument(fromID)) {
-                // from was defined by an argument, which has been removed
-                // Remove from predecessors' mappings
-                for(IRIdentifier predID : bb.getPredecessorBlocks()) {
-                    IRBasicBlock predBB = bb.getFunction().getBasicBlock(predID);
-                    IRBranchInstruction predExit = predBB.getExitInstruction();
-                    IRIdentifier predTrueSuccessor = predExit.getTrueTargetBlock();
-                    IRIdentifier predFalseSuccessor = predExit.getFalseTargetBlock();
+            removeBlockArgument(bb, fromID);
+        }
+    }
+    
+    /**
+     * Removes an argument of bb and its mappings in bb's predecessors, if bb has the argument
+     * @param bb
+     * @param argID
+     */
+    private static void removeBlockArgument(IRBasicBlock bb, IRIdentifier argID) {
+        if(bb.removeArgument(argID)) {
+            // argID was defined by an argument, which has been removed
+            // Remove from predecessors' mappings
+            for(IRIdentifier predID : bb.getPredecessorBlocks()) {
+                IRBasicBlock predBB = bb.getFunction().getBasicBlock(predID);
+                IRBranchInstruction predExit = predBB.getExitInstruction();
+                IRIdentifier predTrueSuccessor = predExit.getTrueTargetBlock();
+                IRIdentifier predFalseSuccessor = predExit.getFalseTargetBlock();
                     
-                    if(bb.getID().equals(predTrueSuccessor)) {
-                        // We're the true successor
-                        predExit.getTrueArgumentMapping().removeArgument(fromID);
-                    }
+                if(bb.getID().equals(predTrueSuccessor)) {
+                    // We're the true successor
+                    predExit.getTrueArgumentMapping().removeArgument(argID);
+                }
                     
-                    if(bb.getID().equals(predFalseSuccessor)) {
-                        // We're the false successor
-                        predExit.getFalseArgumentMapping().removeArgument(fromID);
-                    }
+                if(bb.getID().equals(predFalseSuccessor)) {
+                    // We're the false successor
+                    predExit.getFalseArgumentMapping().removeArgument(argID);
                 }
             }
         }
@@ -1384,19 +1189,11 @@ public class IRUtil {
         IRArgumentMapping falseMap = bi.getFalseArgumentMapping();
         
         if(trueMap != null) {
-            for(Entry<IRIdentifier, IRValue> entry : trueMap.getMap().entrySet()) {
-                if(entry.getValue().equals(from)) {
-                    entry.setValue(to);
-                }
-            }
+            trueMap.replaceValue(from, to);
         }
         
         if(falseMap != null) {
-            for(Entry<IRIdentifier, IRValue> entry : falseMap.getMap().entrySet()) {
-                if(entry.getValue().equals(from)) {
-                    entry.setValue(to);
-                }
-            }
+            falseMap.replaceValue(from, to);
         }
     }
     
@@ -1428,11 +1225,7 @@ public class IRUtil {
         }
         
         if(li.getCallArgumentMapping() != null) {
-            for(Entry<IRIdentifier, IRValue> mapping : li.getCallArgumentMapping().getMap().entrySet()) {
-                if(from.equals(mapping.getValue())) {
-                    mapping.setValue(to);
-                }
-            }
+            li.getCallArgumentMapping().replaceValue(from, to);
         }
     }
 }